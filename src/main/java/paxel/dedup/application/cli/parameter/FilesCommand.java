@@ -7,11 +7,16 @@ import paxel.dedup.infrastructure.config.InfrastructureConfig;
 import paxel.dedup.repo.domain.files.FilesProcess;
 import picocli.CommandLine;
 
+import java.nio.file.Path;
+
 @CommandLine.Command(name = "files", description = "Manages files in a repo", mixinStandardHelpOptions = true)
 @RequiredArgsConstructor
 @NoArgsConstructor(force = true)
 public class FilesCommand {
 
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec;
+
     @CommandLine.ParentCommand
     CliParameter cliParameter;
     private final InfrastructureConfig infrastructureConfig;
@@ -69,8 +74,31 @@ public class FilesCommand {
         return new FilesProcess(cliParameter, repo, dedupConfig, null, infrastructureConfig.getFileSystem()).types();
     }
 
+    @CommandLine.Command(name = "similar", description = "Lists images or videos in a repo that look like the given file", mixinStandardHelpOptions = true)
+    public int similar(
+            @CommandLine.Parameters(description = "Repo") String repo,
+            @CommandLine.Parameters(description = "Image or video file") Path file,
+            @CommandLine.Option(names = {"--threshold"}, description = "Minimal similarity (0-100, default ${DEFAULT-VALUE})", defaultValue = "90") int threshold) {
+        if (threshold < 0 || threshold > 100) {
+            printUsageError("--threshold must be between 0 and 100.");
+            return CommandLine.ExitCode.USAGE;
+        }
+        initDefaultConfig();
+
+        return new FilesProcess(cliParameter, repo, dedupConfig, null, infrastructureConfig.getFileSystem()).similar(file, threshold);
+    }
+
 
     private void initDefaultConfig() {
         dedupConfig = infrastructureConfig.getDedupConfig();
     }
+
+    private void printUsageError(String message) {
+        if (spec != null && spec.commandLine() != null) {
+            spec.commandLine().getErr().println("Error: " + message);
+            spec.commandLine().usage(spec.commandLine().getErr());
+        } else {
+            System.err.println("Error: " + message);
+        }
+    }
 }
@@ -3,7 +3,10 @@ package paxel.dedup.application.cli.parameter;
 import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import paxel.dedup.domain.model.ImageHash;
 import paxel.dedup.domain.model.Repo;
+import paxel.dedup.domain.model.VideoFrameSampler;
+import paxel.dedup.domain.model.VideoSampling;
 import paxel.dedup.domain.model.errors.DedupConfigErrorHandler;
 import paxel.dedup.domain.model.errors.DedupError;
 import paxel.dedup.infrastructure.config.DedupConfig;
@@ -15,6 +18,7 @@ import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
+import java.time.Duration;
 import java.util.List;
 
 @Command(name = "repo", description = "manipulates repos", mixinStandardHelpOptions = true)
@@ -38,9 +42,16 @@ public class RepoCommand {
             @Option(defaultValue = "10", names = {"--indices", "-i"}, description = "Number of index files") int indices,
             @Option(names = {"--codec"}, description = "Line codec to use: json|messagepack", defaultValue = "messagepack") String codec,
             @Option(names = {"--compressed"}, description = "Use GZIP compression for index files") boolean compressed,
-            @Option(names = {"--strict"}, description = "Fail if selected codec is unavailable") boolean strict) {
+            @Option(names = {"--strict"}, description = "Fail if selected codec is unavailable") boolean strict,
+            @Option(names = {"--image-hash"}, description = "Image fingerprint: dhash|phash|ahash", defaultValue = "dhash") String imageHash,
+            @Option(names = {"--video-frames"}, description = "Number of frames sampled per video", defaultValue = "" + VideoFrameSampler.DEFAULT_FRAMES) int videoFrames,
+            @Option(names = {"--precise-video-seek"}, description = "Decode the exact frame positions instead of the nearest key frames (slow on long GOPs)") boolean preciseVideoSeek) {
         initDefaultConfig();
 
+        if (videoFrames < 1) {
+            printUsageError("--video-frames must be at least 1.");
+            return CommandLine.ExitCode.USAGE;
+        }
         Result<Integer, DedupError> result = new CreateRepoProcess(cliParameter, name, path, indices, dedupConfig).create();
         if (result.hasFailed()) {
             new DedupConfigErrorHandler().dump(result.error());
@@ -67,6 +78,24 @@ public class RepoCommand {
                     log.debug("Failed to persist codec selection (non-strict mode)", e);
                 }
             }
+            ImageHash targetImageHash = parseImageHash(imageHash);
+            if (targetImageHash == null) {
+                log.warn("Unknown image hash '{}' . Supported: dhash, phash, ahash. Falling back to dhash.", imageHash);
+            } else if (targetImageHash != ImageHash.DHASH) {
+                Result<Repo, DedupError> imageHashResult = dedupConfig.setImageHash(name, targetImageHash);
+                if (imageHashResult.hasFailed()) {
+                    log.error("Failed to persist image hash selection: {}", imageHashResult.error().describe());
+                    return -12;
+                }
+            }
+            VideoSampling videoSampling = new VideoSampling(videoFrames, preciseVideoSeek);
+            if (!VideoSampling.DEFAULT.equals(videoSampling)) {
+                Result<Repo, DedupError> videoSamplingResult = dedupConfig.setVideoSampling(name, videoSampling);
+                if (videoSamplingResult.hasFailed()) {
+                    log.error("Failed to persist video sampling: {}", videoSamplingResult.error().describe());
+                    return -13;
+                }
+            }
         }
         return rc;
     }
@@ -103,16 +132,61 @@ public class RepoCommand {
             @Option(names = {"-t", "--threads"}, description = "Number of threads used for hashing", defaultValue = "2") int threads,
             @Option(names = {"-a", "--all"}, description = "All repos") boolean all,
             @Option(names = {"--no-progress"}, description = "Don't show progress page") boolean noProgress,
-            @Option(names = {"--refresh-fingerprints"}, description = "Refresh fingerprints for files that don't have one") boolean refreshFingerprints) {
+            @Option(names = {"--refresh-fingerprints"}, description = "Refresh fingerprints for files that don't have one") boolean refreshFingerprints,
+            @Option(names = {"--from-list"}, description = "Only update the newline or NUL separated paths read from this file ('-' for stdin) instead of walking the repo") String fromList,
+            @Option(names = {"--verify-moves"}, description = "Hash files detected as moved instead of trusting size, modification time and inode") boolean verifyMoves,
+            @Option(names = {"--parallel-repos"}, description = "Maximum number of repos updated at the same time", defaultValue = "" + UpdateReposProcess.DEFAULT_PARALLEL_REPOS) int parallelRepos,
+            @Option(names = {"--decode-memory"}, description = "Memory in MB for decoding images, videos and PDFs at the same time (default: a quarter of the max heap)", defaultValue = "0") long decodeMemory,
+            @Option(names = {"--video-budget"}, description = "Seconds of decoding per video, a slower video keeps a partial fingerprint", defaultValue = "10") long videoBudget,
+            @Option(names = {"--enrich-timeout"}, description = "Seconds a single file may be fingerprinted, a slower file is indexed with its hash only", defaultValue = "" + UpdateReposProcess.DEFAULT_ENRICH_TIMEOUT) long enrichTimeout,
+            @Option(names = {"--enrichment-cache"}, description = "MB of fingerprints and attributes kept by content hash for all repos, 0 disables the cache", defaultValue = "" + EnrichmentCache.DEFAULT_SIZE) long enrichmentCache,
+            @Option(names = {"--archives"}, description = "Also index the files inside ZIP and TAR archives, without extracting them") boolean archives,
+            @Option(names = {"--chunks"}, description = "Also index content-defined chunks of files of at least 1 MB, for dupes --chunks") boolean chunks) {
         initDefaultConfig();
 
         if (!all && hasNoRepos(repos)) {
             printUsageError("No repos specified. Provide at least one repo name or use --all.");
             return CommandLine.ExitCode.USAGE;
         }
+        if (fromList != null && (all || repos.size() != 1)) {
+            printUsageError("--from-list requires exactly one repo.");
+            return CommandLine.ExitCode.USAGE;
+        }
+        if (parallelRepos < 1) {
+            printUsageError("--parallel-repos must be at least 1.");
+            return CommandLine.ExitCode.USAGE;
+        }
+        if (decodeMemory < 0) {
+            printUsageError("--decode-memory must not be negative.");
+            return CommandLine.ExitCode.USAGE;
+        }
+        if (videoBudget < 1) {
+            printUsageError("--video-budget must be at least 1.");
+            return CommandLine.ExitCode.USAGE;
+        }
+        if (enrichTimeout < 1) {
+            printUsageError("--enrich-timeout must be at least 1.");
+            return CommandLine.ExitCode.USAGE;
+        }
+        if (enrichmentCache < 0) {
+            printUsageError("--enrichment-cache must not be negative.");
+            return CommandLine.ExitCode.USAGE;
+        }
         List<String> allNames = repos == null ? List.of() : repos;
+        UpdateOptions options = UpdateOptions.builder()
+                .refreshFingerprints(refreshFingerprints)
+                .fromList(fromList)
+                .verifyMoves(verifyMoves)
+                .parallelRepos(parallelRepos)
+                .decodeMemory(decodeMemory)
+                .videoBudget(Duration.ofSeconds(videoBudget))
+                .enrichTimeout(Duration.ofSeconds(enrichTimeout))
+                .enrichmentCacheSize(enrichmentCache)
+                .archives(archives)
+                .chunks(chunks)
+                .build();
         Result<Integer, DedupError> result = new UpdateReposProcess(cliParameter, allNames, all, threads, dedupConfig,
-                !noProgress, refreshFingerprints, infrastructureConfig.getFileSystem()).update();
+                !noProgress, infrastructureConfig.getFileSystem(), options).update();
         if (result.hasFailed()) {
             new DedupConfigErrorHandler().dump(result.error());
             return -50;
@@ -124,9 +198,17 @@ public class RepoCommand {
     public int config(
             @Parameters(description = "Name of the repo") String name,
             @Option(names = {"--codec"}, description = "Line codec to use: json|messagepack") String codec,
-            @Option(names = {"--compressed"}, description = "Use GZIP compression for index files") Boolean compressed) {
+            @Option(names = {"--compressed"}, description = "Use GZIP compression for index files") Boolean compressed,
+            @Option(names = {"--image-hash"}, description = "Image fingerprint: dhash|phash|ahash. Images are fingerprinted again on the next update") String imageHash,
+            @Option(names = {"--video-frames"}, description = "Number of frames sampled per video. Videos are fingerprinted again on the next update") Integer videoFrames,
+            @Option(names = {"--precise-video-seek"}, arity = "0..1", description = "Decode the exact frame positions instead of the nearest key frames. Videos are fingerprinted again on the next update") Boolean preciseVideoSeek) {
         initDefaultConfig();
 
+        if (videoFrames != null && videoFrames < 1) {
+            printUsageError("--video-frames must be at least 1.");
+            return CommandLine.ExitCode.USAGE;
+        }
+
         Result<Repo, DedupError> repoResult = dedupConfig.getRepo(name);
         if (repoResult.hasFailed()) {
             log.error("Repo '{}' not found: {}", name, repoResult.error().describe());
@@ -149,6 +231,20 @@ public class RepoCommand {
         boolean targetCompressed = compressed != null ? compressed : repo.compressed();
 
         Result<Repo, DedupError> result = dedupConfig.setRepoConfig(name, targetCodec, targetCompressed);
+        if (result.isSuccess() && imageHash != null) {
+            ImageHash targetImageHash = parseImageHash(imageHash);
+            if (targetImageHash == null) {
+                log.warn("Unknown image hash '{}' . Supported: dhash, phash, ahash. Keeping current.", imageHash);
+            } else if (targetImageHash != repo.imageHash()) {
+                result = dedupConfig.setImageHash(name, targetImageHash);
+            }
+        }
+        if (result.isSuccess() && (videoFrames != null || preciseVideoSeek != null)) {
+            VideoSampling targetVideoSampling = videoSampling(repo.videoSampling(), videoFrames, preciseVideoSeek);
+            if (!targetVideoSampling.equals(repo.videoSampling())) {
+                result = dedupConfig.setVideoSampling(name, targetVideoSampling);
+            }
+        }
         if (result.isSuccess()) {
             log.info("Updated config for repo '{}'", name);
             return 0;
@@ -247,16 +343,37 @@ public class RepoCommand {
             @Option(names = {"--delete"}, description = "Delete duplicates, keeping the first one") boolean delete,
             @Option(names = {"--interactive"}, description = "Interactive mode with a web UI") boolean interactive,
             @Option(names = {"--width"}, description = "Width filter expression (e.g. >=1920, <=800, =1024)") String widthFilter,
-            @Option(names = {"--height"}, description = "Height filter expression (e.g. >=1080, <720, =600)") String heightFilter) {
+            @Option(names = {"--height"}, description = "Height filter expression (e.g. >=1080, <720, =600)") String heightFilter,
+            @Option(names = {"--by-metadata"}, description = "Group photos and videos of the same shot by camera, capture time, duration, size and codec. With --threshold only files of the same shot are compared") boolean byMetadata,
+            @Option(names = {"--chunks"}, description = "Group files that share content chunks (indexed by update --chunks). --threshold is the percentage of the smaller file that is shared, default " + DuplicateRepoProcess.DEFAULT_CHUNK_THRESHOLD) boolean chunks) {
         initDefaultConfig();
 
         if (!all && hasNoRepos(repos)) {
             printUsageError("No repos specified. Provide at least one repo name or use --all.");
             return CommandLine.ExitCode.USAGE;
         }
+        if (threshold != null && (threshold < 0 || threshold > 100)) {
+            printUsageError("--threshold must be between 0 and 100.");
+            return CommandLine.ExitCode.USAGE;
+        }
+        if (chunks && (delete || movePath != null || interactive)) {
+            printUsageError("--chunks only reports files that share content, it can't be combined with --delete, --move or --interactive.");
+            return CommandLine.ExitCode.USAGE;
+        }
+        if (chunks && byMetadata) {
+            printUsageError("--chunks and --by-metadata can't be combined.");
+            return CommandLine.ExitCode.USAGE;
+        }
+        if (byMetadata && (threshold == null || threshold == 0) && (delete || movePath != null || interactive)) {
+            printUsageError("--by-metadata alone doesn't compare the content, --delete, --move and --interactive require a --threshold.");
+            return CommandLine.ExitCode.USAGE;
+        }
         List<String> allNames = repos == null ? List.of() : repos;
         DuplicateRepoProcess.DupePrintMode printMode = getDupePrintMode(print);
-        Result<Integer, DedupError> result = new DuplicateRepoProcess(cliParameter, allNames, all, dedupConfig, threshold, printMode, mdPath, htmlPath, movePath, delete, interactive, widthFilter, heightFilter).dupes();
+        Result<Integer, DedupError> result = new DuplicateRepoProcess(cliParameter, allNames, all, dedupConfig, threshold, printMode, mdPath, htmlPath, movePath, delete, interactive, widthFilter, heightFilter)
+                .byMetadata(byMetadata)
+                .byChunks(chunks)
+                .dupes();
         if (result.hasFailed()) {
             new DedupConfigErrorHandler().dump(result.error());
             return -80;
@@ -281,6 +398,26 @@ public class RepoCommand {
         return repos.isEmpty();
     }
 
+    private VideoSampling videoSampling(VideoSampling current, Integer videoFrames, Boolean preciseVideoSeek) {
+        VideoSampling target = current;
+        if (videoFrames != null) {
+            target = target.withFrames(videoFrames);
+        }
+        if (preciseVideoSeek != null) {
+            target = target.withPreciseSeek(preciseVideoSeek);
+        }
+        return target;
+    }
+
+    private static ImageHash parseImageHash(String imageHash) {
+        return switch (imageHash.toLowerCase()) {
+            case "dhash" -> ImageHash.DHASH;
+            case "phash" -> ImageHash.PHASH;
+            case "ahash" -> ImageHash.AHASH;
+            default -> null;
+        };
+    }
+
     private void printUsageError(String message) {
         if (spec != null && spec.commandLine() != null) {
             spec.commandLine().getErr().println("Error: " + message);
@@ -0,0 +1,160 @@
+package paxel.dedup.domain.model;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import paxel.dedup.domain.port.out.FileSystem;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A spectral fingerprint of the sound of an audio file, after Haitsma and Kalker: the decoded PCM is mixed down to
+ * mono, reduced to about 5.5 kHz and cut into overlapping frames of 0.37 s. Each frame gives one 32 bit
+ * sub-fingerprint, one bit per pair of neighbouring bands between 300 and 2000 Hz, set if the energy difference of the
+ * bands grew since the previous frame.
+ * <p>
+ * The bits survive re-encoding, resampling and volume changes, and a trimmed copy has the same sub-fingerprints at
+ * other positions. The file is streamed, only the first {@link #MAX_SECONDS} seconds after leading silence are used,
+ * so the memory per file is a few KB. Only formats {@code javax.sound.sampled} can read are supported, which without
+ * further service providers are WAV, AIFF and AU.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class AcousticFingerprinter {
+    public static final int MAX_SECONDS = 30;
+    static final int FRAME = 2048;
+    static final int HOP = 256;
+    private static final float TARGET_RATE = 5512.5f;
+    private static final int BANDS = 33;
+    private static final double MIN_HZ = 300;
+    private static final double MAX_HZ = 2000;
+    private static final double SILENCE = 64.0 / Short.MAX_VALUE;
+    private static final Fft FFT = new Fft(FRAME);
+    private static final double[] WINDOW = new double[FRAME];
+
+    static {
+        for (int i = 0; i < FRAME; i++) {
+            WINDOW[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (FRAME - 1));
+        }
+    }
+
+    private final FileSystem fileSystem;
+
+    /**
+     * @return the sub-fingerprints or {@code null} if the format is not supported or the sound too short
+     */
+    public int[] calculate(Path path) {
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(new BufferedInputStream(fileSystem.newInputStream(path)))) {
+            return calculate(in);
+        } catch (UnsupportedAudioFileException e) {
+            log.debug("{}: no decoder for the audio format", path);
+            return null;
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("{}: could not decode the audio: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    int[] calculate(AudioInputStream source) throws IOException {
+        AudioFormat format = source.getFormat();
+        int channels = format.getChannels();
+        float sampleRate = format.getSampleRate();
+        AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sampleRate, 16, channels, channels * 2, sampleRate, false);
+        AudioInputStream in = source;
+        if (!format.matches(pcm)) {
+            in = AudioSystem.getAudioInputStream(pcm, source);
+        }
+
+        int factor = Math.max(1, Math.round(sampleRate / TARGET_RATE));
+        double rate = sampleRate / factor;
+        int[] edges = new int[BANDS + 1];
+        for (int band = 0; band <= BANDS; band++) {
+            edges[band] = (int) Math.round(MIN_HZ * Math.pow(MAX_HZ / MIN_HZ, (double) band / BANDS) * FRAME / rate);
+        }
+        long limit = (long) (MAX_SECONDS * rate);
+        int[] fingerprint = new int[(int) Math.max(0, (limit - FRAME) / HOP + 1)];
+        int count = 0;
+
+        double[] ring = new double[FRAME];
+        double[] re = new double[FRAME];
+        double[] im = new double[FRAME];
+        double[] energies = new double[BANDS];
+        double[] previous = null;
+        long produced = 0;
+        double sum = 0;
+        int summed = 0;
+        int frameSize = channels * 2;
+        byte[] buffer = new byte[frameSize * 4096];
+        int n;
+        while (produced < limit && (n = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+            for (int offset = 0; offset + frameSize <= n && produced < limit; offset += frameSize) {
+                double mono = 0;
+                for (int c = 0; c < channels; c++) {
+                    int at = offset + c * 2;
+                    mono += (short) ((buffer[at] & 0xff) | (buffer[at + 1] << 8));
+                }
+                // averaging the samples of one output sample is the low pass of the decimation
+                sum += mono / channels / Short.MAX_VALUE;
+                if (++summed < factor) {
+                    continue;
+                }
+                double sample = sum / factor;
+                sum = 0;
+                summed = 0;
+                if (produced == 0 && Math.abs(sample) < SILENCE) {
+                    continue;
+                }
+                ring[(int) (produced % FRAME)] = sample;
+                produced++;
+                if (produced >= FRAME && (produced - FRAME) % HOP == 0) {
+                    bandEnergies(ring, (int) (produced % FRAME), re, im, edges, energies);
+                    if (previous != null) {
+                        fingerprint[count++] = bits(energies, previous);
+                    } else {
+                        previous = new double[BANDS];
+                    }
+                    System.arraycopy(energies, 0, previous, 0, BANDS);
+                }
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        return Arrays.copyOf(fingerprint, count);
+    }
+
+    /**
+     * @param oldest the index of the oldest sample in the ring
+     */
+    private static void bandEnergies(double[] ring, int oldest, double[] re, double[] im, int[] edges, double[] energies) {
+        for (int i = 0; i < FRAME; i++) {
+            re[i] = ring[(oldest + i) % FRAME] * WINDOW[i];
+            im[i] = 0;
+        }
+        FFT.transform(re, im);
+        for (int band = 0; band < BANDS; band++) {
+            double energy = 0;
+            for (int bin = edges[band]; bin < Math.max(edges[band] + 1, edges[band + 1]); bin++) {
+                energy += re[bin] * re[bin] + im[bin] * im[bin];
+            }
+            energies[band] = energy;
+        }
+    }
+
+    private static int bits(double[] energies, double[] previous) {
+        int bits = 0;
+        for (int band = 0; band < BANDS - 1; band++) {
+            double difference = energies[band] - energies[band + 1] - (previous[band] - previous[band + 1]);
+            if (difference > 0) {
+                bits |= 1 << band;
+            }
+        }
+        return bits;
+    }
+}
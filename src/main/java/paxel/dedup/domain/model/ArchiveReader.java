@@ -0,0 +1,258 @@
+package paxel.dedup.domain.model;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Streams the regular entries of ZIP and TAR (optionally gzipped) archives and hashes each of them on the fly.
+ * Nothing is extracted: an entry is read once through a fixed buffer, so the memory does not depend on the size of the
+ * archive or its entries. The hashes are formatted like the hashes of loose files, so that a file and its copy inside
+ * an archive have the same hash.
+ * <p>
+ * Nested archives are indexed as entries, they are not opened.
+ */
+public final class ArchiveReader {
+
+    /**
+     * Separates the path of the archive from the path of the entry in the archive, e.g. {@code photos.zip!/2024/a.jpg}.
+     */
+    public static final String SEPARATOR = "!/";
+    private static final int BLOCK = 512;
+    private static final BinaryFormatter HEX = new HexFormatter();
+
+    public enum Format {ZIP, TAR, TAR_GZ}
+
+    /**
+     * A regular file in an archive.
+     *
+     * @param path         the path in the archive, with {@code /} as separator and without leading {@code /}
+     * @param lastModified the modification time stored in the archive in millis, or 0
+     * @param head         the first {@link MimetypeProvider#HEAD_SIZE} bytes for the mime detection
+     */
+    public record Entry(String path, long size, long lastModified, String hash, byte[] head) {
+        /**
+         * @return the file name of the entry
+         */
+        public String name() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+    }
+
+    /**
+     * @return the format of an archive by its file name, or {@code null} if it is no supported archive
+     */
+    public Format format(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".zip")) {
+            return Format.ZIP;
+        }
+        if (name.endsWith(".tar")) {
+            return Format.TAR;
+        }
+        if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            return Format.TAR_GZ;
+        }
+        return null;
+    }
+
+    /**
+     * Reads all regular entries of the archive. Directories, links and special files are skipped.
+     *
+     * @param in       the archive, not closed
+     * @param consumer called with every entry in archive order
+     * @throws IOException if the archive can't be read or is corrupt. The entries before were already consumed.
+     */
+    public void read(InputStream in, Format format, Consumer<Entry> consumer) throws IOException {
+        switch (format) {
+            case ZIP -> readZip(new ZipInputStream(in), consumer);
+            case TAR -> readTar(in, consumer);
+            case TAR_GZ -> readTar(new GZIPInputStream(in, 64 * 1024), consumer);
+        }
+    }
+
+    private void readZip(ZipInputStream zip, Consumer<Entry> consumer) throws IOException {
+        byte[] buffer = new byte[MimetypeProvider.HEAD_SIZE];
+        for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+            if (!entry.isDirectory()) {
+                // the size in the local header is missing for streamed entries, the bytes are counted instead
+                consumer.accept(hash(normalize(entry.getName()), zip, Long.MAX_VALUE, Math.max(0, entry.getTime()), buffer));
+            }
+        }
+    }
+
+    /**
+     * Reads ustar, GNU and pax archives: 512 byte headers, each followed by the data padded to 512 bytes.
+     */
+    private void readTar(InputStream raw, Consumer<Entry> consumer) throws IOException {
+        InputStream in = new BufferedInputStream(raw, 64 * 1024);
+        byte[] header = new byte[BLOCK];
+        byte[] buffer = new byte[MimetypeProvider.HEAD_SIZE];
+        // long names and sizes of GNU and pax extension headers apply to the next entry
+        String nextPath = null;
+        long nextSize = -1;
+        while (in.readNBytes(header, 0, BLOCK) == BLOCK && !isZero(header)) {
+            long size = number(header, 124, 12);
+            long lastModified = number(header, 136, 12) * 1000;
+            byte type = header[156];
+            long padding = (BLOCK - size % BLOCK) % BLOCK;
+            switch (type) {
+                case 'L' -> nextPath = trimNul(new String(readSmall(in, size), StandardCharsets.UTF_8));
+                case 'x' -> {
+                    String pax = new String(readSmall(in, size), StandardCharsets.UTF_8);
+                    String path = pax(pax, "path");
+                    String paxSize = pax(pax, "size");
+                    if (path != null) {
+                        nextPath = path;
+                    }
+                    if (paxSize != null) {
+                        nextSize = Long.parseLong(paxSize);
+                    }
+                }
+                case '0', 0, '7' -> {
+                    String path = Objects.requireNonNullElseGet(nextPath, () -> name(header));
+                    if (nextSize >= 0) {
+                        size = nextSize;
+                        padding = (BLOCK - size % BLOCK) % BLOCK;
+                    }
+                    nextPath = null;
+                    nextSize = -1;
+                    Entry entry = hash(normalize(path), in, size, lastModified, buffer);
+                    if (entry.size() != size) {
+                        throw new EOFException(path + ": truncated archive");
+                    }
+                    consumer.accept(entry);
+                }
+                default -> {
+                    // directories, links, devices and global headers
+                    nextPath = null;
+                    nextSize = -1;
+                    in.skipNBytes(size);
+                }
+            }
+            in.skipNBytes(padding);
+        }
+    }
+
+    /**
+     * Hashes up to {@code limit} bytes like {@link Sha1Hasher}, small entries like the index does: their content is
+     * the hash.
+     */
+    private Entry hash(String path, InputStream in, long limit, long lastModified, byte[] buffer) throws IOException {
+        MessageDigest digest = Digest.SHA_1.get();
+        int n = in.readNBytes(buffer, 0, (int) Math.min(buffer.length, limit));
+        byte[] head = Arrays.copyOf(buffer, n);
+        long size = 0;
+        while (n > 0) {
+            digest.update(buffer, 0, n);
+            size += n;
+            n = in.read(buffer, 0, (int) Math.min(buffer.length, limit - size));
+        }
+        if (size < 20) {
+            // like loose files in the RepoManager, tiny files are their own hash
+            return new Entry(path, size, lastModified, HEX.format(head), head);
+        }
+        return new Entry(path, size, lastModified, HEX.format(digest.digest()), head);
+    }
+
+    private byte[] readSmall(InputStream in, long size) throws IOException {
+        if (size > 1024 * 1024) {
+            throw new IOException("extension header of " + size + " bytes");
+        }
+        byte[] bytes = in.readNBytes((int) size);
+        if (bytes.length != size) {
+            throw new EOFException("truncated archive");
+        }
+        return bytes;
+    }
+
+    private String name(byte[] header) {
+        String name = string(header, 0, 100);
+        if (string(header, 257, 5).equals("ustar")) {
+            String prefix = string(header, 345, 155);
+            if (!prefix.isEmpty()) {
+                return prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    /**
+     * @return the value of a pax record {@code "<length> <key>=<value>\n"} or {@code null}
+     */
+    private String pax(String records, String key) {
+        for (String line : records.split("\n")) {
+            int space = line.indexOf(' ');
+            if (space > 0 && line.startsWith(key + "=", space + 1)) {
+                return line.substring(space + key.length() + 2);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return an octal number, or a big endian binary number if the first bit is set (GNU)
+     */
+    private long number(byte[] header, int offset, int length) {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7f;
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (header[i] & 0xff);
+            }
+            return value;
+        }
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = header[i];
+            if (b >= '0' && b <= '7') {
+                value = value * 8 + (b - '0');
+            } else if (b == 0 || (b == ' ' && value > 0)) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    private String string(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private String trimNul(String value) {
+        int nul = value.indexOf(0);
+        if (nul < 0) {
+            return value;
+        }
+        return value.substring(0, nul);
+    }
+
+    private String normalize(String path) {
+        String normalized = path.replace('\\', '/');
+        while (normalized.startsWith("./") || normalized.startsWith("/")) {
+            normalized = normalized.substring(normalized.indexOf('/') + 1);
+        }
+        return normalized;
+    }
+
+    private boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
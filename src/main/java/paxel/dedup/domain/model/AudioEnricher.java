@@ -0,0 +1,37 @@
+package paxel.dedup.domain.model;
+
+import paxel.dedup.domain.port.out.Enricher;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Reads the tags of audio files, hashes a chunk after them and calculates the acoustic fingerprint of formats that
+ * can be decoded. The spectral analysis makes it CPU bound.
+ */
+public class AudioEnricher implements Enricher {
+
+    @Override
+    public Set<String> mimeTypes() {
+        return Set.of("audio/");
+    }
+
+    @Override
+    public Profile profile() {
+        return Profile.CPU;
+    }
+
+    @Override
+    public int concurrency() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void enrich(Path path, long size, Context context, RepoFile.RepoFileBuilder entry) {
+        entry.attributes(context.extractors().metadata().extract(path))
+                .audioHash(context.decodeScheduler().run(context.decodeScheduler().audioCost(),
+                        () -> context.extractors().audio().calculateAudioHash(path)))
+                .audioFingerprint(context.decodeScheduler().run(context.decodeScheduler().audioCost(),
+                        () -> context.extractors().acoustic().calculate(path)));
+    }
+}
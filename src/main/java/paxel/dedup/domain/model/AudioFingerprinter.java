@@ -14,6 +14,7 @@ import java.util.HexFormat;
 public class AudioFingerprinter {
     private final FileSystem fileSystem;
     private static final int CHUNK_SIZE = 100 * 1024; // 100KB
+    private static final ThreadLocal<byte[]> CHUNKS = ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE]);
 
     public String calculateAudioHash(Path path) {
         try (InputStream is = fileSystem.newInputStream(path)) {
@@ -37,7 +38,7 @@ public class AudioFingerprinter {
                 // so we just accept those 10 bytes as part of the chunk for simplicity.
             }
 
-            byte[] chunk = new byte[CHUNK_SIZE];
+            byte[] chunk = CHUNKS.get();
             int totalRead = 0;
             int n;
             while (totalRead < CHUNK_SIZE && (n = is.read(chunk, totalRead, CHUNK_SIZE - totalRead)) != -1) {
@@ -46,7 +47,7 @@ public class AudioFingerprinter {
 
             if (totalRead == 0) return null;
 
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            MessageDigest digest = Digest.SHA_256.get();
             digest.update(chunk, 0, totalRead);
             return HexFormat.of().formatHex(digest.digest());
         } catch (Exception e) {
@@ -0,0 +1,114 @@
+package paxel.dedup.domain.model;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Cuts a stream of bytes into content-defined chunks, FastCDC style: a gear hash rolls over the bytes and a chunk ends
+ * where its top bits are zero. An insertion or deletion only moves the boundaries next to it, so two versions of a VM
+ * image or a growing log share most of their chunks, even if their bytes shifted.
+ * <p>
+ * The gear hash is not computed for the first {@link #MIN_SIZE} bytes of a chunk, and it needs more zero bits before
+ * {@link #AVERAGE_SIZE} than after (normalized chunking), so that the chunk sizes cluster around the average.
+ * <p>
+ * A chunk is a 46 bit hash of its bytes and its length in one long, see {@link #length(long)}. The hash is no
+ * cryptographic digest: it is good enough to find files that share content, not to prove that they do.
+ * An instance is for one file and one thread.
+ */
+public final class ContentChunker {
+    public static final int MIN_SIZE = 16 * 1024;
+    public static final int AVERAGE_SIZE = 64 * 1024;
+    public static final int MAX_SIZE = 256 * 1024;
+    private static final int LENGTH_BITS = 18;
+    private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+    /**
+     * 2 bits more than the average size before it, 2 bits less after it.
+     */
+    private static final long MASK_SMALL = -1L << (Long.SIZE - 18);
+    private static final long MASK_LARGE = -1L << (Long.SIZE - 14);
+    private static final long[] GEAR = new long[256];
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    static {
+        // fixed seed: chunks are stored in the repos and must stay comparable
+        SplittableRandom random = new SplittableRandom(0x6ea2_c4d5L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private long[] chunks = new long[64];
+    private int count;
+    private long gear;
+    private long digest = FNV_OFFSET;
+    private int size;
+
+    public void accept(byte[] buffer, int from, int length) {
+        for (int i = from; i < from + length; i++) {
+            int b = buffer[i] & 0xff;
+            digest = (digest ^ b) * FNV_PRIME;
+            size++;
+            if (size < MIN_SIZE) {
+                continue;
+            }
+            gear = (gear << 1) + GEAR[b];
+            if ((gear & mask()) == 0 || size >= MAX_SIZE) {
+                cut();
+            }
+        }
+    }
+
+    /**
+     * Ends the last chunk.
+     *
+     * @return the distinct chunks in ascending order, empty if no bytes were accepted
+     */
+    public long[] finish() {
+        if (size > 0) {
+            cut();
+        }
+        long[] sorted = Arrays.copyOf(chunks, count);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+
+    /**
+     * @return the number of bytes of a chunk
+     */
+    public static int length(long chunk) {
+        return (int) (chunk & LENGTH_MASK) + 1;
+    }
+
+    /**
+     * @return the stricter mask below the average size, so that chunks tend to the average size
+     */
+    private long mask() {
+        if (size < AVERAGE_SIZE) {
+            return MASK_SMALL;
+        }
+        return MASK_LARGE;
+    }
+
+    private void cut() {
+        if (count == chunks.length) {
+            chunks = Arrays.copyOf(chunks, count * 2);
+        }
+        chunks[count++] = (mix(digest) & ~LENGTH_MASK) | (size - 1);
+        gear = 0;
+        digest = FNV_OFFSET;
+        size = 0;
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+}
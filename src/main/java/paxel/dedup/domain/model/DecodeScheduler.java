@@ -0,0 +1,104 @@
+package paxel.dedup.domain.model;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Admits memory hungry decode jobs (images, video frames, PDFs) against a memory budget.
+ * Each job acquires as many permits as its estimated memory cost, so many cheap files decode
+ * in parallel while only a few giant ones do. A job that costs more than the whole budget
+ * waits until it can have the budget for itself.
+ * <p>
+ * The semaphore is not fair on purpose: a waiting giant job does not stop cheap jobs that still fit.
+ */
+public class DecodeScheduler {
+
+    private static final long KB = 1024;
+    private static final long MB = 1024 * KB;
+    private static final long MIN_COST = MB;
+    private static final long PDF_BASE_COST = 8 * MB;
+    private static final long AUDIO_COST = 16 * MB;
+    /**
+     * JCodec keeps reference frames and converts each grabbed frame to RGB.
+     */
+    private static final long VIDEO_BYTES_PER_PIXEL = 16;
+    private static final Dimension DEFAULT_VIDEO_SIZE = new Dimension(1920, 1080);
+
+    private final Semaphore permits;
+    private final int capacity;
+
+    /**
+     * @param budget the memory in bytes that all admitted jobs together may use
+     */
+    public DecodeScheduler(long budget) {
+        // permits are KB so that budgets beyond 2 GB fit into an int
+        this.capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(1, budget / KB));
+        this.permits = new Semaphore(capacity);
+    }
+
+    /**
+     * @return a scheduler with a quarter of the max heap as budget
+     */
+    public static DecodeScheduler forHeap() {
+        return new DecodeScheduler(Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    /**
+     * Runs the job as soon as its estimated cost fits into the budget.
+     *
+     * @param cost the estimated memory use in bytes
+     */
+    public <T> T run(long cost, Supplier<T> job) {
+        int needed = permitsFor(cost);
+        permits.acquireUninterruptibly(needed);
+        try {
+            return job.get();
+        } finally {
+            permits.release(needed);
+        }
+    }
+
+    /**
+     * @return the memory in bytes currently used by admitted jobs
+     */
+    public long inUse() {
+        return (capacity - permits.availablePermits()) * KB;
+    }
+
+    int permitsFor(long cost) {
+        return (int) Math.min(capacity, Math.max(1, Math.max(cost, MIN_COST) / KB));
+    }
+
+    /**
+     * @param imageSize the size from the image header or {@code null} if unknown
+     */
+    public long imageCost(Dimension imageSize) {
+        if (imageSize == null) {
+            return MIN_COST;
+        }
+        // 4 bytes per decoded ARGB pixel at the subsampling the fingerprinter uses, plus a few full width scan lines of the reader
+        long step = ImageFingerprinter.subsampling(imageSize);
+        return imageSize.area() / (step * step) * 4 + imageSize.getWidth() * 4L * 16;
+    }
+
+    /**
+     * @param frameSize the size of the video frames or {@code null} if unknown
+     */
+    public long videoCost(Dimension frameSize) {
+        if (frameSize == null) {
+            return DEFAULT_VIDEO_SIZE.area() * VIDEO_BYTES_PER_PIXEL;
+        }
+        return frameSize.area() * VIDEO_BYTES_PER_PIXEL;
+    }
+
+    /**
+     * @param fileSize the size of the PDF or office document in bytes
+     */
+    public long pdfCost(long fileSize) {
+        return PDF_BASE_COST + 2 * fileSize;
+    }
+
+    public long audioCost() {
+        return AUDIO_COST;
+    }
+}
@@ -0,0 +1,34 @@
+package paxel.dedup.domain.model;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * One digest per algorithm and thread, instead of a provider lookup for every file.
+ * The returned digest is reset and must not leave the calling thread.
+ */
+enum Digest {
+    SHA_1("SHA-1"),
+    SHA_256("SHA-256");
+
+    private final ThreadLocal<MessageDigest> digests;
+
+    Digest(String algorithm) {
+        digests = ThreadLocal.withInitial(() -> create(algorithm));
+    }
+
+    MessageDigest get() {
+        MessageDigest digest = digests.get();
+        digest.reset();
+        return digest;
+    }
+
+    private MessageDigest create(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-1 and SHA-256
+            throw new IllegalStateException(algorithm + " not available", e);
+        }
+    }
+}
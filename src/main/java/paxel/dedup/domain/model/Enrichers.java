@@ -0,0 +1,74 @@
+package paxel.dedup.domain.model;
+
+import paxel.dedup.domain.port.out.Enricher;
+
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * The installed {@link Enricher}s and which of them handles a mime type.
+ */
+public class Enrichers {
+
+    private static volatile Enrichers installed;
+
+    private final List<Enricher> enrichers;
+
+    public Enrichers(List<Enricher> enrichers) {
+        this.enrichers = List.copyOf(enrichers);
+    }
+
+    /**
+     * @return the enrichers found by the {@link ServiceLoader} of the class path, loaded once
+     */
+    public static Enrichers installed() {
+        Enrichers result = installed;
+        if (result == null) {
+            synchronized (Enrichers.class) {
+                result = installed;
+                if (result == null) {
+                    result = new Enrichers(ServiceLoader.load(Enricher.class).stream().map(ServiceLoader.Provider::get).toList());
+                    installed = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public List<Enricher> all() {
+        return enrichers;
+    }
+
+    /**
+     * An exact mime type beats a prefix, a longer prefix beats a shorter one, and earlier enrichers win ties.
+     *
+     * @return the enricher for the mime type or {@code null} if there is none
+     */
+    public Enricher forMimeType(String mimeType) {
+        if (mimeType == null) {
+            return null;
+        }
+        Enricher best = null;
+        int bestMatch = -1;
+        for (Enricher enricher : enrichers) {
+            for (String type : enricher.mimeTypes()) {
+                int match = match(type, mimeType);
+                if (match > bestMatch) {
+                    best = enricher;
+                    bestMatch = match;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static int match(String type, String mimeType) {
+        if (type.equals(mimeType)) {
+            return Integer.MAX_VALUE;
+        }
+        if (type.endsWith("/") && mimeType.startsWith(type)) {
+            return type.length();
+        }
+        return -1;
+    }
+}
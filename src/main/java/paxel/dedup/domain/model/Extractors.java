@@ -0,0 +1,64 @@
+package paxel.dedup.domain.model;
+
+import paxel.dedup.domain.port.out.FileSystem;
+
+/**
+ * The fingerprinters and extractors of the enrich stage, created once per update instead of once per file.
+ * <p>
+ * The Tika parsers, the metadata extractor, the text fingerprinter, the acoustic fingerprinter and the video sampler are thread safe and
+ * shared by all threads. Image readers are not, so every thread gets its own {@link ImageFingerprinter#forThread()}
+ * that keeps one reader per image format. Digests are reused per thread by the fingerprinters.
+ */
+public class Extractors {
+    private final MetadataExtractor metadataExtractor;
+    private final PdfFingerprinter pdfFingerprinter;
+    private final TextFingerprinter textFingerprinter;
+    private final AudioFingerprinter audioFingerprinter;
+    private final AcousticFingerprinter acousticFingerprinter;
+    private final VideoFingerprinter videoFingerprinter;
+    private final ThreadLocal<ImageFingerprinter> imageFingerprinters = ThreadLocal.withInitial(ImageFingerprinter::forThread);
+
+    public Extractors(FileSystem fileSystem) {
+        this(fileSystem, new VideoFingerprinter());
+    }
+
+    public Extractors(FileSystem fileSystem, VideoFingerprinter videoFingerprinter) {
+        this.metadataExtractor = new MetadataExtractor(fileSystem);
+        this.pdfFingerprinter = new PdfFingerprinter(fileSystem);
+        this.textFingerprinter = new TextFingerprinter(fileSystem);
+        this.audioFingerprinter = new AudioFingerprinter(fileSystem);
+        this.acousticFingerprinter = new AcousticFingerprinter(fileSystem);
+        this.videoFingerprinter = videoFingerprinter;
+    }
+
+    /**
+     * @return the image fingerprinter of the calling thread
+     */
+    public ImageFingerprinter image() {
+        return imageFingerprinters.get();
+    }
+
+    public VideoFingerprinter video() {
+        return videoFingerprinter;
+    }
+
+    public MetadataExtractor metadata() {
+        return metadataExtractor;
+    }
+
+    public PdfFingerprinter pdf() {
+        return pdfFingerprinter;
+    }
+
+    public TextFingerprinter text() {
+        return textFingerprinter;
+    }
+
+    public AudioFingerprinter audio() {
+        return audioFingerprinter;
+    }
+
+    public AcousticFingerprinter acoustic() {
+        return acousticFingerprinter;
+    }
+}
@@ -6,10 +6,27 @@ import paxel.lib.Result;
 
 import java.nio.file.Path;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface FileHasher extends AutoCloseable {
     CompletableFuture<Result<String, DedupError>> hash(Path path);
 
+    /**
+     * Hashes the file and passes its first bytes, up to {@link MimetypeProvider#HEAD_SIZE}, to {@code head}, so that
+     * the mime type can be detected without reading the file again. Hashers that don't keep them never call it.
+     */
+    default CompletableFuture<Result<String, DedupError>> hash(Path path, Consumer<byte[]> head) {
+        return hash(path);
+    }
+
+    /**
+     * Hashes the file like {@link #hash(Path, Consumer)} and feeds all its bytes to {@code chunker} in the same pass.
+     * Hashers that don't chunk never feed it.
+     */
+    default CompletableFuture<Result<String, DedupError>> hash(Path path, Consumer<byte[]> head, ContentChunker chunker) {
+        return hash(path, head);
+    }
+
     @Override
     @SneakyThrows
     void close();
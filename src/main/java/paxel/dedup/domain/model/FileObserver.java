@@ -9,6 +9,9 @@ public interface FileObserver {
     default void file(Path f) {
     }
 
+    default void missing(Path f) {
+    }
+
     default void addDir(Path f) {
     }
 
@@ -0,0 +1,64 @@
+package paxel.dedup.domain.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Reads an image fingerprint that is stored as number, or as hex string by older versions.
+ */
+public class FingerprintDeserializer extends StdDeserializer<Long> {
+
+    private static final int HEX_DIGITS = 16;
+
+    public FingerprintDeserializer() {
+        super(Long.class);
+    }
+
+    @Override
+    public Long deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_STRING) {
+            return parse(p.getText());
+        }
+        return p.getLongValue();
+    }
+
+    /**
+     * Parses the hex representation that was used in the index before fingerprints were stored as numbers.
+     *
+     * @return the fingerprint or {@code null} if the text is blank or no hex number
+     */
+    public Long parse(String hex) {
+        if (hex == null || hex.isBlank() || hex.length() > HEX_DIGITS) {
+            return null;
+        }
+        try {
+            return Long.parseUnsignedLong(hex, 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses concatenated 16 digit hex fingerprints, as older versions stored the key frames of a video.
+     *
+     * @return the fingerprints or {@code null} if the text is no sequence of hex fingerprints
+     */
+    public long[] parseAll(String hex) {
+        if (hex == null || hex.isEmpty() || hex.length() % HEX_DIGITS != 0) {
+            return null;
+        }
+        long[] fingerprints = new long[hex.length() / HEX_DIGITS];
+        for (int i = 0; i < fingerprints.length; i++) {
+            Long fingerprint = parse(hex.substring(i * HEX_DIGITS, (i + 1) * HEX_DIGITS));
+            if (fingerprint == null) {
+                return null;
+            }
+            fingerprints[i] = fingerprint;
+        }
+        return fingerprints;
+    }
+}
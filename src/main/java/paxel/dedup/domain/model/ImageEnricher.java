@@ -0,0 +1,54 @@
+package paxel.dedup.domain.model;
+
+import paxel.dedup.domain.port.out.Enricher;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fingerprints images with the algorithm of the repo, records their size and their camera and capture time.
+ */
+public class ImageEnricher implements Enricher {
+
+    private final MetadataSignature metadataSignature = new MetadataSignature();
+
+    @Override
+    public Set<String> mimeTypes() {
+        return Set.of("image/");
+    }
+
+    @Override
+    public Profile profile() {
+        return Profile.CPU;
+    }
+
+    @Override
+    public int concurrency() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void enrich(Path path, long size, Context context, RepoFile.RepoFileBuilder entry) {
+        ImageFingerprinter imageFingerprinter = context.extractors().image();
+        long cost = context.decodeScheduler().imageCost(imageFingerprinter.readDimension(path));
+        ImageFingerprinter.FingerprintResult fr = context.decodeScheduler().run(cost, () -> imageFingerprinter.calculate(path, context.imageHash()));
+        Map<String, String> exif = context.extractors().metadata().exif(path);
+        entry.attributes(exif)
+                .metadataSignature(metadataSignature.photo(exif, fr.imageSize()))
+                .fingerprint(fr.fingerprint())
+                .fingerprintAlgorithm(fingerprintAlgorithm(fr, context.imageHash()))
+                .imageSize(fr.imageSize());
+    }
+
+    /**
+     * @return the algorithm to store with the fingerprint, {@code null} for dHash entries, which stay as before the
+     * algorithm could be chosen
+     */
+    private ImageHash fingerprintAlgorithm(ImageFingerprinter.FingerprintResult fr, ImageHash imageHash) {
+        if (fr.fingerprint() == null || imageHash == ImageHash.DHASH) {
+            return null;
+        }
+        return imageHash;
+    }
+}
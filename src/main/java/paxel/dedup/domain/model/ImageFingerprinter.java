@@ -1,49 +1,205 @@
 package paxel.dedup.domain.model;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.*;
+import java.util.List;
 
 public class ImageFingerprinter {
 
-    public record FingerprintResult(String fingerprint, Dimension imageSize) {
+    /**
+     * Images are decoded with subsampling so that the shorter side keeps at least this many pixels.
+     * That is plenty for a 9x9 hash and keeps a 48 MP photo at a few hundred KB instead of ~200 MB.
+     */
+    static final int MIN_DECODED_SIDE = 256;
+    /**
+     * Side of the raster that pHash and aHash are calculated from.
+     */
+    private static final int RASTER_SIDE = 32;
+    private static final int HASH_SIDE = 8;
+    /**
+     * {@code COSINES[u][x]} is the DCT-II basis {@code cos((2x + 1) u pi / 64)} of the raster.
+     */
+    private static final double[][] COSINES = new double[HASH_SIDE][RASTER_SIDE];
+
+    static {
+        for (int u = 0; u < HASH_SIDE; u++) {
+            for (int x = 0; x < RASTER_SIDE; x++) {
+                COSINES[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * RASTER_SIDE));
+            }
+        }
+    }
+
+    /**
+     * The readers by their provider if they are reused, {@code null} if every image gets a new reader.
+     */
+    private final Map<ImageReaderSpi, ImageReader> readers;
+    private List<ImageReaderSpi> providers;
+
+    public ImageFingerprinter() {
+        this(false);
+    }
+
+    private ImageFingerprinter(boolean reuseReaders) {
+        if (reuseReaders) {
+            readers = new HashMap<>();
+        } else {
+            readers = null;
+        }
+    }
+
+    /**
+     * Creates a fingerprinter that keeps one reader per image format instead of creating and disposing one per image.
+     * It must be confined to one thread.
+     */
+    public static ImageFingerprinter forThread() {
+        return new ImageFingerprinter(true);
+    }
+
+    public record FingerprintResult(Long fingerprint, Dimension imageSize) {
     }
 
     /**
      * Calculates a simple dHash (difference hash) for an image and returns its size.
      * The image is normalized (rotation and mirroring) to be invariant to these transformations.
+     * The size is read from the header and the image is decoded subsampled.
      */
     public FingerprintResult calculate(Path path) {
+        return calculate(path, ImageHash.DHASH);
+    }
+
+    /**
+     * Calculates the hash of the given algorithm for an image and returns its size.
+     */
+    public FingerprintResult calculate(Path path, ImageHash algorithm) {
         try {
-            BufferedImage img = ImageIO.read(path.toFile());
-            return calculate(img);
+            FingerprintResult result = read(path, reader -> {
+                Dimension imageSize = new Dimension(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = subsampling(imageSize);
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return calculate(reader.read(0, param), imageSize, algorithm);
+            });
+            return Objects.requireNonNullElseGet(result, () -> new FingerprintResult(null, null));
         } catch (IOException | RuntimeException e) {
             return new FingerprintResult(null, null);
         }
     }
 
+    /**
+     * Reads the size of an image from its header without decoding the pixels.
+     *
+     * @return the size or {@code null} if the file is no readable image
+     */
+    public Dimension readDimension(Path path) {
+        try {
+            return read(path, reader -> new Dimension(reader.getWidth(0), reader.getHeight(0)));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static int subsampling(Dimension imageSize) {
+        return Math.max(1, Math.min(imageSize.getWidth(), imageSize.getHeight()) / MIN_DECODED_SIDE);
+    }
+
+    private <T> T read(Path path, ReaderFunction<T> function) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+            if (in == null) {
+                return null;
+            }
+            ImageReader reader = reader(in);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                reader.setInput(in, true, true);
+                return function.apply(reader);
+            } finally {
+                if (readers == null) {
+                    reader.dispose();
+                } else {
+                    reader.reset();
+                }
+            }
+        }
+    }
+
+    private ImageReader reader(ImageInputStream in) throws IOException {
+        if (readers == null) {
+            Iterator<ImageReader> candidates = ImageIO.getImageReaders(in);
+            if (!candidates.hasNext()) {
+                return null;
+            }
+            return candidates.next();
+        }
+        if (providers == null) {
+            // the same providers in the same order as ImageIO.getImageReaders
+            providers = new ArrayList<>();
+            IIORegistry.getDefaultInstance().getServiceProviders(ImageReaderSpi.class, true).forEachRemaining(providers::add);
+        }
+        for (ImageReaderSpi provider : providers) {
+            if (provider.canDecodeInput(in)) {
+                ImageReader reader = readers.get(provider);
+                if (reader == null) {
+                    reader = provider.createReaderInstance();
+                    readers.put(provider, reader);
+                }
+                return reader;
+            }
+        }
+        return null;
+    }
+
     public FingerprintResult calculate(BufferedImage img) {
+        return calculate(img, ImageHash.DHASH);
+    }
+
+    public FingerprintResult calculate(BufferedImage img, ImageHash algorithm) {
         if (img == null) return new FingerprintResult(null, null);
+        return calculate(img, new Dimension(img.getWidth(), img.getHeight()), algorithm);
+    }
 
-        Dimension imageSize = new Dimension(img.getWidth(), img.getHeight());
+    private FingerprintResult calculate(BufferedImage img, Dimension imageSize, ImageHash algorithm) {
+        if (img == null) return new FingerprintResult(null, null);
+        long hash = switch (algorithm) {
+            case DHASH -> dHash(canonicalize(raster(img, 9), 9));
+            case PHASH -> pHash(raster(img, RASTER_SIDE));
+            case AHASH -> aHash(raster(img, RASTER_SIDE));
+        };
+        return new FingerprintResult(hash, imageSize);
+    }
 
-        // 1. Resize to 9x9 grayscale for normalization and dHash
-        BufferedImage scaled = new BufferedImage(9, 9, BufferedImage.TYPE_BYTE_GRAY);
+    /**
+     * Scales the image to a square grayscale raster.
+     */
+    private byte[] raster(BufferedImage img, int side) {
+        BufferedImage scaled = new BufferedImage(side, side, BufferedImage.TYPE_BYTE_GRAY);
         Graphics2D g = scaled.createGraphics();
         g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g.drawImage(img, 0, 0, 9, 9, null);
+        g.drawImage(img, 0, 0, side, side, null);
         g.dispose();
 
-        // 2. Extract pixels to a simple byte array to avoid multiple BufferedImage allocations
-        byte[] pixels = new byte[81];
-        scaled.getRaster().getDataElements(0, 0, 9, 9, pixels);
-
-        // 3. Canonicalize orientation (all 8 Dihedral variants)
-        pixels = canonicalize(pixels);
+        // Extract pixels to a simple byte array to avoid multiple BufferedImage allocations
+        byte[] pixels = new byte[side * side];
+        scaled.getRaster().getDataElements(0, 0, side, side, pixels);
+        return pixels;
+    }
 
-        // 4. Compute 64-bit dHash (8x8 differences)
+    /**
+     * 64-bit dHash: the 8x8 horizontal differences of a 9x9 raster in canonical orientation.
+     */
+    private long dHash(byte[] pixels) {
         long hash = 0;
         for (int y = 0; y < 8; y++) {
             for (int x = 0; x < 8; x++) {
@@ -54,10 +210,119 @@ public class ImageFingerprinter {
                 }
             }
         }
-        return new FingerprintResult(String.format("%016x", hash), imageSize);
+        return hash;
     }
 
-    private byte[] canonicalize(byte[] img) {
+    /**
+     * 64-bit pHash: the 8x8 lowest frequencies of the separable DCT-II of the raster, compared with their median.
+     * Only the needed frequencies are calculated.
+     * <p>
+     * Mirroring the image negates the odd frequencies and transposing it swaps the axes, so the orientation is
+     * normalized on the coefficients: both first harmonics positive and the stronger one horizontal.
+     */
+    private long pHash(byte[] pixels) {
+        double[] rows = new double[RASTER_SIDE * HASH_SIDE];
+        for (int y = 0; y < RASTER_SIDE; y++) {
+            for (int u = 0; u < HASH_SIDE; u++) {
+                double sum = 0;
+                for (int x = 0; x < RASTER_SIDE; x++) {
+                    sum += (pixels[y * RASTER_SIDE + x] & 0xFF) * COSINES[u][x];
+                }
+                rows[y * HASH_SIDE + u] = sum;
+            }
+        }
+        double[] coefficients = new double[HASH_SIDE * HASH_SIDE];
+        for (int v = 0; v < HASH_SIDE; v++) {
+            for (int u = 0; u < HASH_SIDE; u++) {
+                double sum = 0;
+                for (int y = 0; y < RASTER_SIDE; y++) {
+                    sum += rows[y * HASH_SIDE + u] * COSINES[v][y];
+                }
+                coefficients[v * HASH_SIDE + u] = sum;
+            }
+        }
+
+        double horizontal = coefficients[1];
+        double vertical = coefficients[HASH_SIDE];
+        boolean transpose = Math.abs(vertical) > Math.abs(horizontal);
+        double[] oriented = new double[coefficients.length];
+        for (int v = 0; v < HASH_SIDE; v++) {
+            for (int u = 0; u < HASH_SIDE; u++) {
+                double value = coefficients[v * HASH_SIDE + u];
+                if (horizontal < 0 && u % 2 == 1) value = -value;
+                if (vertical < 0 && v % 2 == 1) value = -value;
+                oriented[index(v, u, transpose)] = value;
+            }
+        }
+
+        double[] sorted = oriented.clone();
+        Arrays.sort(sorted);
+        double median = (sorted[sorted.length / 2 - 1] + sorted[sorted.length / 2]) / 2;
+        long hash = 0;
+        for (int i = 0; i < oriented.length; i++) {
+            if (oriented[i] > median) {
+                hash |= 1L << i;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 64-bit aHash: the sums of the 4x4 blocks of the raster compared with the mean block.
+     * The orientation is normalized by the first moments of the blocks, like the harmonics of the pHash.
+     */
+    private long aHash(byte[] pixels) {
+        int block = RASTER_SIDE / HASH_SIDE;
+        long[] sums = new long[HASH_SIDE * HASH_SIDE];
+        long total = 0;
+        for (int y = 0; y < RASTER_SIDE; y++) {
+            for (int x = 0; x < RASTER_SIDE; x++) {
+                int value = pixels[y * RASTER_SIDE + x] & 0xFF;
+                sums[(y / block) * HASH_SIDE + x / block] += value;
+                total += value;
+            }
+        }
+
+        long horizontal = 0;
+        long vertical = 0;
+        for (int v = 0; v < HASH_SIDE; v++) {
+            for (int u = 0; u < HASH_SIDE; u++) {
+                horizontal += (2L * u - (HASH_SIDE - 1)) * sums[v * HASH_SIDE + u];
+                vertical += (2L * v - (HASH_SIDE - 1)) * sums[v * HASH_SIDE + u];
+            }
+        }
+        boolean transpose = Math.abs(vertical) > Math.abs(horizontal);
+        long hash = 0;
+        for (int v = 0; v < HASH_SIDE; v++) {
+            for (int u = 0; u < HASH_SIDE; u++) {
+                if (sums[v * HASH_SIDE + u] * sums.length > total) {
+                    int x = mirror(u, horizontal < 0);
+                    int y = mirror(v, vertical < 0);
+                    hash |= 1L << index(y, x, transpose);
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return the bit of the cell in a hash, with rows and columns swapped if {@code transpose}
+     */
+    private int index(int row, int column, boolean transpose) {
+        if (transpose) {
+            return column * HASH_SIDE + row;
+        }
+        return row * HASH_SIDE + column;
+    }
+
+    private int mirror(int position, boolean mirrored) {
+        if (mirrored) {
+            return HASH_SIDE - 1 - position;
+        }
+        return position;
+    }
+
+    private byte[] canonicalize(byte[] img, int side) {
         byte[] best = null;
 
         byte[] current = img;
@@ -68,20 +333,20 @@ public class ImageFingerprinter {
             }
 
             // Check diagonal flip (transpose) of current rotation
-            byte[] flipped = flipDiagonal(current);
+            byte[] flipped = flipDiagonal(current, side);
             if (compare(flipped, best) > 0) {
                 best = flipped; // flipDiagonal already returns a new array
             }
 
             if (r < 3) { // No need to rotate for the last iteration
-                current = rotate90(current);
+                current = rotate90(current, side);
             }
         }
         return best;
     }
 
     private int compare(byte[] a, byte[] b) {
-        for (int i = 0; i < 81; i++) {
+        for (int i = 0; i < a.length; i++) {
             int v1 = a[i] & 0xFF;
             int v2 = b[i] & 0xFF;
             if (v1 != v2) return v1 - v2;
@@ -89,25 +354,29 @@ public class ImageFingerprinter {
         return 0;
     }
 
-    private byte[] rotate90(byte[] img) {
-        byte[] rotated = new byte[81];
-        for (int y = 0; y < 9; y++) {
-            for (int x = 0; x < 9; x++) {
-                // (x, y) -> (8-y, x)
-                rotated[x * 9 + (8 - y)] = img[y * 9 + x];
+    private byte[] rotate90(byte[] img, int side) {
+        byte[] rotated = new byte[side * side];
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                // (x, y) -> (side-1-y, x)
+                rotated[x * side + (side - 1 - y)] = img[y * side + x];
             }
         }
         return rotated;
     }
 
-    private byte[] flipDiagonal(byte[] img) {
-        byte[] flipped = new byte[81];
-        for (int y = 0; y < 9; y++) {
-            for (int x = 0; x < 9; x++) {
+    private byte[] flipDiagonal(byte[] img, int side) {
+        byte[] flipped = new byte[side * side];
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
                 // (x, y) -> (y, x)
-                flipped[x * 9 + y] = img[y * 9 + x];
+                flipped[x * side + y] = img[y * side + x];
             }
         }
         return flipped;
     }
+
+    private interface ReaderFunction<T> {
+        T apply(ImageReader reader) throws IOException;
+    }
 }
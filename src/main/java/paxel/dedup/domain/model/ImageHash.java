@@ -0,0 +1,21 @@
+package paxel.dedup.domain.model;
+
+/**
+ * The perceptual hash used for the image fingerprints of a repo. All of them are 64 bit and compared by Hamming
+ * distance, but only fingerprints of the same algorithm can be compared with each other.
+ */
+public enum ImageHash {
+    /**
+     * Difference hash: compares neighbouring pixels of a 9x9 raster. Cheap, but sensitive to re-encoding.
+     */
+    DHASH,
+    /**
+     * Perceptual hash: the low frequencies of the DCT of a 32x32 raster compared with their median.
+     * Robust against resizing, re-compression and slight colour changes.
+     */
+    PHASH,
+    /**
+     * Average hash: the 8x8 block means of the 32x32 raster compared with the overall mean.
+     */
+    AHASH
+}
@@ -0,0 +1,484 @@
+package paxel.dedup.domain.model;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the metadata of a few common formats directly from their headers, without a content parser.
+ * <p>
+ * MP4/QuickTime: duration from {@code mvhd} and the frame size from the first video {@code tkhd}, skipping the
+ * media data, and the codec of the first video track. MP3: the ID3v2 text frames at the start of the file. PDF: the
+ * page count and document information, which PDFBox resolves from the trailer and cross-reference table without
+ * touching the page content. JPEG and TIFF based raw images: camera and capture time from the EXIF tags.
+ */
+class MediaHeaderReader {
+
+    /**
+     * Larger header boxes and frames are not metadata we want and are skipped.
+     */
+    private static final int MAX_HEADER_BYTES = 64 * 1024;
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+    private static final int TYPE_ASCII = 2;
+    private static final int TAG_MAKE = 0x010f;
+    private static final int TAG_MODEL = 0x0110;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final Set<Integer> TEXT_TAGS = Set.of(TAG_MAKE, TAG_MODEL, TAG_DATE_TIME, TAG_DATE_TIME_ORIGINAL);
+
+    enum Format {
+        MP4("duration"), ID3("duration"), PDF("pages"), UNKNOWN(null);
+
+        /**
+         * The attribute that a parser has to fill if the header doesn't have it.
+         */
+        final String essential;
+
+        Format(String essential) {
+            this.essential = essential;
+        }
+    }
+
+    Format detect(byte[] magic, int length) {
+        if (length >= 8 && magic[4] == 'f' && magic[5] == 't' && magic[6] == 'y' && magic[7] == 'p') {
+            return Format.MP4;
+        }
+        if (length >= 3 && magic[0] == 'I' && magic[1] == 'D' && magic[2] == '3') {
+            return Format.ID3;
+        }
+        if (length >= 5 && magic[0] == '%' && magic[1] == 'P' && magic[2] == 'D' && magic[3] == 'F' && magic[4] == '-') {
+            return Format.PDF;
+        }
+        return Format.UNKNOWN;
+    }
+
+    /**
+     * Walks the top level boxes up to {@code moov}. The media data before it is skipped, not read.
+     */
+    Map<String, String> mp4(InputStream stream) throws IOException {
+        Map<String, String> attributes = new HashMap<>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        while (true) {
+            long size;
+            try {
+                size = in.readInt() & 0xffffffffL;
+            } catch (EOFException e) {
+                return attributes;
+            }
+            String type = readType(in);
+            long payload = payloadSize(in, size);
+            if (type.equals("moov")) {
+                boxes(in, payload, attributes, null);
+                return attributes;
+            }
+            if (size == 0) {
+                // the box extends to the end of the file
+                return attributes;
+            }
+            skipFully(in, payload);
+        }
+    }
+
+    /**
+     * @param handler the handler type of the enclosing media box, {@code vide} for video tracks
+     */
+    private void boxes(DataInputStream in, long length, Map<String, String> attributes, String handler) throws IOException {
+        long read = 0;
+        while (read + 8 <= length) {
+            long size = in.readInt() & 0xffffffffL;
+            String type = readType(in);
+            long boxSize = size;
+            if (size == 0) {
+                // the last box extends to the end of its parent
+                boxSize = length - read;
+            }
+            long payload = payloadSize(in, boxSize);
+            switch (type) {
+                case "trak", "mdia", "minf", "stbl" -> boxes(in, payload, attributes, handler);
+                case "mvhd" -> mvhd(ByteBuffer.wrap(readHeader(in, payload)), attributes);
+                case "tkhd" -> tkhd(ByteBuffer.wrap(readHeader(in, payload)), attributes);
+                case "hdlr" -> {
+                    String handlerType = hdlr(ByteBuffer.wrap(readHeader(in, payload)));
+                    // the media handler of mdia comes first, the data handler in minf is no track type
+                    if (handler == null) {
+                        handler = handlerType;
+                    }
+                }
+                case "stsd" -> {
+                    if ("vide".equals(handler)) {
+                        stsd(ByteBuffer.wrap(readHeader(in, payload)), attributes);
+                    } else {
+                        skipFully(in, payload);
+                    }
+                }
+                default -> skipFully(in, payload);
+            }
+            read += payload + headerSize(size);
+        }
+        skipFully(in, length - read);
+    }
+
+    private void mvhd(ByteBuffer box, Map<String, String> attributes) {
+        int version = box.get();
+        long timescale;
+        long duration;
+        if (version == 1) {
+            box.position(20);
+            timescale = box.getInt() & 0xffffffffL;
+            duration = box.getLong();
+        } else {
+            box.position(12);
+            timescale = box.getInt() & 0xffffffffL;
+            duration = box.getInt() & 0xffffffffL;
+        }
+        if (timescale > 0 && duration > 0 && (version == 1 || duration != 0xffffffffL)) {
+            attributes.put("duration", String.valueOf((double) duration / timescale));
+        }
+    }
+
+    private void tkhd(ByteBuffer box, Map<String, String> attributes) {
+        int version = box.get();
+        // width and height are the last two 16.16 fixed point values, audio tracks have none
+        if (version == 1) {
+            box.position(88);
+        } else {
+            box.position(76);
+        }
+        int width = box.getInt() >>> 16;
+        int height = box.getInt() >>> 16;
+        if (width > 0 && height > 0 && !attributes.containsKey("width")) {
+            attributes.put("width", String.valueOf(width));
+            attributes.put("height", String.valueOf(height));
+        }
+    }
+
+    private String hdlr(ByteBuffer box) {
+        // version and flags, pre-defined, then the handler type
+        box.position(8);
+        byte[] type = new byte[4];
+        box.get(type);
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * The codec is the format of the first sample entry, e.g. {@code avc1} or {@code hvc1}.
+     */
+    private void stsd(ByteBuffer box, Map<String, String> attributes) {
+        // version and flags, entry count, size of the first entry
+        box.position(12);
+        byte[] format = new byte[4];
+        box.get(format);
+        attributes.putIfAbsent("codec", new String(format, StandardCharsets.ISO_8859_1).trim());
+    }
+
+    /**
+     * @return the bytes of size and type, large boxes have a 64 bit size after the type
+     */
+    private long headerSize(long size) {
+        if (size == 1) {
+            return 16;
+        }
+        return 8;
+    }
+
+    private long payloadSize(DataInputStream in, long size) throws IOException {
+        if (size == 1) {
+            long large = in.readLong();
+            if (large < 16) {
+                throw new IOException("Invalid box size " + large);
+            }
+            return large - 16;
+        }
+        if (size == 0) {
+            return Long.MAX_VALUE;
+        }
+        if (size < 8) {
+            throw new IOException("Invalid box size " + size);
+        }
+        return size - 8;
+    }
+
+    private String readType(DataInputStream in) throws IOException {
+        byte[] type = new byte[4];
+        in.readFully(type);
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Reads the text frames of an ID3v2.2, 2.3 or 2.4 tag. Pictures and other large frames are skipped.
+     */
+    Map<String, String> id3(InputStream stream) throws IOException {
+        Map<String, String> attributes = new HashMap<>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        byte[] header = new byte[10];
+        in.readFully(header);
+        int major = header[3];
+        int flags = header[5];
+        if (major < 2 || major > 4 || (flags & 0x80) != 0) {
+            // unsynchronised tags would have to be decoded first
+            return attributes;
+        }
+        long remaining = syncSafe(header, 6);
+        if (major > 2 && (flags & 0x40) != 0) {
+            // the extended header size includes its own size field in 2.4, but not in 2.3
+            byte[] extended = new byte[4];
+            in.readFully(extended);
+            long size = ByteBuffer.wrap(extended).getInt() & 0xffffffffL;
+            if (major == 4) {
+                size = syncSafe(extended, 0) - 4;
+            }
+            skipFully(in, size);
+            remaining -= size + 4;
+        }
+        int idLength = 4;
+        int headerLength = 10;
+        if (major == 2) {
+            // three character ids and three byte sizes
+            idLength = 3;
+            headerLength = 6;
+        }
+        byte[] frameHeader = new byte[headerLength];
+        while (remaining >= headerLength) {
+            in.readFully(frameHeader);
+            remaining -= headerLength;
+            if (frameHeader[0] == 0) {
+                // padding
+                break;
+            }
+            String id = new String(frameHeader, 0, idLength, StandardCharsets.ISO_8859_1);
+            long size;
+            if (major == 2) {
+                size = ((frameHeader[3] & 0xff) << 16) | ((frameHeader[4] & 0xff) << 8) | (frameHeader[5] & 0xff);
+            } else if (major == 4) {
+                size = syncSafe(frameHeader, 4);
+            } else {
+                size = ByteBuffer.wrap(frameHeader, 4, 4).getInt() & 0xffffffffL;
+            }
+            if (size > remaining) {
+                break;
+            }
+            remaining -= size;
+            String key = id3Key(id);
+            if (key == null || size > MAX_HEADER_BYTES) {
+                skipFully(in, size);
+                continue;
+            }
+            byte[] frame = new byte[(int) size];
+            in.readFully(frame);
+            String text = text(frame);
+            if (text.isBlank()) {
+                continue;
+            }
+            if (key.equals("duration")) {
+                try {
+                    attributes.put(key, String.valueOf(Long.parseLong(text.trim()) / 1000.0));
+                } catch (NumberFormatException e) {
+                    // not a length in milliseconds
+                }
+            } else {
+                attributes.put(key, text);
+            }
+        }
+        return attributes;
+    }
+
+    private String id3Key(String id) {
+        return switch (id) {
+            case "TIT2", "TT2" -> "title";
+            case "TPE1", "TP1" -> "artist";
+            case "TALB", "TAL" -> "album";
+            case "TCON", "TCO" -> "genre";
+            case "TLEN", "TLE" -> "duration";
+            default -> null;
+        };
+    }
+
+    /**
+     * Decodes a text frame: one encoding byte followed by one or more zero separated values, of which the first is used.
+     */
+    private String text(byte[] frame) {
+        if (frame.length < 2) {
+            return "";
+        }
+        Charset charset = switch (frame[0]) {
+            case 1 -> StandardCharsets.UTF_16;
+            case 2 -> StandardCharsets.UTF_16BE;
+            case 3 -> StandardCharsets.UTF_8;
+            default -> StandardCharsets.ISO_8859_1;
+        };
+        return untilNul(new String(frame, 1, frame.length - 1, charset));
+    }
+
+    private String untilNul(String text) {
+        int end = text.indexOf('\0');
+        if (end < 0) {
+            return text;
+        }
+        return text.substring(0, end);
+    }
+
+    private long syncSafe(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0x7fL) << 21) | ((bytes[offset + 1] & 0x7fL) << 14)
+                | ((bytes[offset + 2] & 0x7fL) << 7) | (bytes[offset + 3] & 0x7fL);
+    }
+
+    /**
+     * Reads the camera and the capture time from the EXIF tags of a JPEG, where they are in the APP1 segment, or of a
+     * TIFF based raw image, where they are at the start of the file. The image data is not read.
+     */
+    Map<String, String> exif(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        int start = in.readUnsignedShort();
+        if (start == 0xffd8) {
+            while (true) {
+                int marker = in.readUnsignedShort();
+                if ((marker & 0xff00) != 0xff00 || marker == 0xffda || marker == 0xffd9) {
+                    // the scan data starts without EXIF segment
+                    return Map.of();
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (marker == 0xffe1 && length > EXIF_HEADER.length) {
+                    byte[] segment = new byte[length];
+                    in.readFully(segment);
+                    if (Arrays.equals(segment, 0, EXIF_HEADER.length, EXIF_HEADER, 0, EXIF_HEADER.length)) {
+                        return tiff(ByteBuffer.wrap(segment, EXIF_HEADER.length, length - EXIF_HEADER.length).slice());
+                    }
+                } else {
+                    skipFully(in, length);
+                }
+            }
+        }
+        if (start == 0x4949 || start == 0x4d4d) {
+            byte[] header = new byte[MAX_HEADER_BYTES];
+            header[0] = (byte) (start >> 8);
+            header[1] = (byte) start;
+            int length = 2 + in.readNBytes(header, 2, header.length - 2);
+            return tiff(ByteBuffer.wrap(header, 0, length));
+        }
+        return Map.of();
+    }
+
+    private Map<String, String> tiff(ByteBuffer tiff) {
+        Map<String, String> attributes = new HashMap<>();
+        if (tiff.limit() < 8) {
+            return attributes;
+        }
+        if (tiff.get(0) == 'I') {
+            tiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else {
+            tiff.order(ByteOrder.BIG_ENDIAN);
+        }
+        if (tiff.getShort(2) != 42) {
+            return attributes;
+        }
+        Map<Integer, String> tags = new HashMap<>();
+        int exifOffset = ifd(tiff, tiff.getInt(4), tags);
+        ifd(tiff, exifOffset, tags);
+
+        String camera = camera(tags.getOrDefault(TAG_MAKE, ""), tags.getOrDefault(TAG_MODEL, ""));
+        if (!camera.isEmpty()) {
+            attributes.put("camera", camera);
+        }
+        String taken = tags.getOrDefault(TAG_DATE_TIME_ORIGINAL, tags.get(TAG_DATE_TIME));
+        if (taken != null && !taken.isEmpty()) {
+            attributes.put("taken", taken);
+        }
+        return attributes;
+    }
+
+    private String camera(String make, String model) {
+        // most models repeat the make
+        if (model.toLowerCase().startsWith(make.toLowerCase())) {
+            return model;
+        }
+        return (make + " " + model).trim();
+    }
+
+    /**
+     * Collects the text tags of one image file directory. Offsets outside the read bytes are ignored.
+     *
+     * @return the offset of the EXIF directory or 0
+     */
+    private int ifd(ByteBuffer tiff, int offset, Map<Integer, String> tags) {
+        if (offset < 8 || offset + 2 > tiff.limit()) {
+            return 0;
+        }
+        int exifOffset = 0;
+        int count = tiff.getShort(offset) & 0xffff;
+        for (int i = 0; i < count && offset + 2 + (i + 1) * 12 <= tiff.limit(); i++) {
+            int entry = offset + 2 + i * 12;
+            int tag = tiff.getShort(entry) & 0xffff;
+            int type = tiff.getShort(entry + 2) & 0xffff;
+            int length = tiff.getInt(entry + 4);
+            if (tag == TAG_EXIF_IFD) {
+                exifOffset = tiff.getInt(entry + 8);
+            } else if (type == TYPE_ASCII && TEXT_TAGS.contains(tag) && length > 0 && length <= 256) {
+                // values of up to four bytes are stored in the entry instead of an offset
+                int at = entry + 8;
+                if (length > 4) {
+                    at = tiff.getInt(entry + 8);
+                }
+                if (at >= 0 && at + length <= tiff.limit()) {
+                    byte[] text = new byte[length];
+                    tiff.get(at, text);
+                    tags.put(tag, untilNul(new String(text, StandardCharsets.ISO_8859_1)).trim());
+                }
+            }
+        }
+        return exifOffset;
+    }
+
+    /**
+     * PDFBox only parses the trailer and cross-reference table on load, the page count and document information
+     * are resolved from there. PDFBox needs random access, so the real file is used instead of the {@code FileSystem}.
+     */
+    Map<String, String> pdf(Path path) throws IOException {
+        Map<String, String> attributes = new HashMap<>();
+        try (PDDocument document = PDDocument.load(path.toFile(), MemoryUsageSetting.setupMainMemoryOnly())) {
+            attributes.put("pages", String.valueOf(document.getNumberOfPages()));
+            PDDocumentInformation information = document.getDocumentInformation();
+            if (information.getTitle() != null && !information.getTitle().isBlank()) {
+                attributes.put("title", information.getTitle());
+            }
+            if (information.getAuthor() != null && !information.getAuthor().isBlank()) {
+                attributes.put("author", information.getAuthor());
+            }
+        }
+        return attributes;
+    }
+
+    private byte[] readHeader(DataInputStream in, long size) throws IOException {
+        if (size > MAX_HEADER_BYTES) {
+            throw new IOException("Header box too large: " + size);
+        }
+        byte[] box = new byte[(int) size];
+        in.readFully(box);
+        return box;
+    }
+
+    private void skipFully(InputStream in, long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    return;
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package paxel.dedup.domain.model;
 
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.io.BoundedInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.metadata.XMPDM;
 import org.apache.tika.parser.ParseContext;
-import org.apache.tika.sax.BodyContentHandler;
+import org.xml.sax.helpers.DefaultHandler;
 import paxel.dedup.domain.port.out.FileSystem;
 
 import java.io.InputStream;
@@ -12,38 +14,120 @@ import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Extracts a few metadata attributes (duration, pages, frame size, tags) of media files and documents.
+ * <p>
+ * MP4, MP3 and PDF headers are read directly by the {@link MediaHeaderReader}. Other formats, or headers that lack
+ * the duration or page count, are given to Tika. Its body content is discarded and at most
+ * {@link #MAX_PARSED_BYTES} are parsed, as the metadata is at the start of nearly all formats.
+ */
+@Slf4j
 public class MetadataExtractor {
+    static final long MAX_PARSED_BYTES = 4 * 1024 * 1024;
+    private static final int MAGIC_LENGTH = 8;
+
     private final FileSystem fileSystem;
+    private final MediaHeaderReader headerReader = new MediaHeaderReader();
 
     public MetadataExtractor(FileSystem fileSystem) {
         this.fileSystem = fileSystem;
     }
 
     public Map<String, String> extract(Path path) {
+        return extract(path, null);
+    }
+
+    /**
+     * Extracts the attributes like {@link #extract(Path)}, but takes the ones the header lacks from metadata that a
+     * parse of the document already collected instead of parsing it again.
+     *
+     * @param parsed the metadata of a {@link TextFingerprinter#parse(Path, Metadata)} or {@code null} to parse
+     */
+    public Map<String, String> extract(Path path, Metadata parsed) {
         Map<String, String> attributes = new HashMap<>();
+        MediaHeaderReader.Format format = MediaHeaderReader.Format.UNKNOWN;
+        try {
+            format = detect(path);
+            attributes.putAll(readHeader(path, format));
+        } catch (Exception e) {
+            log.debug("{}: {} header not readable ({}), using the parser", path, format, e.getMessage());
+        }
+        if (parsed != null) {
+            attributes(parsed).forEach(attributes::putIfAbsent);
+        } else if (format.essential == null || !attributes.containsKey(format.essential)) {
+            parse(path).forEach(attributes::putIfAbsent);
+        }
+        return attributes;
+    }
+
+    /**
+     * @return the camera and capture time of a JPEG or TIFF based raw image, empty if it has no EXIF tags
+     */
+    public Map<String, String> exif(Path path) {
         try (InputStream stream = fileSystem.newInputStream(path)) {
-            Metadata metadata = new Metadata();
-            MimetypeProvider.getTika().getParser().parse(stream, new BodyContentHandler(-1), metadata, new ParseContext());
-
-            // Extract useful attributes
-            addIfPresent(attributes, "title", metadata.get(TikaCoreProperties.TITLE));
-            addIfPresent(attributes, "author", metadata.get(TikaCoreProperties.CREATOR));
-            addIfPresent(attributes, "artist", metadata.get(XMPDM.ARTIST));
-            addIfPresent(attributes, "duration", metadata.get(XMPDM.DURATION));
-            addIfPresent(attributes, "width", metadata.get("tiff:ImageWidth"));
-            addIfPresent(attributes, "height", metadata.get("tiff:ImageLength"));
-            addIfPresent(attributes, "pages", metadata.get("xmpTPg:NPages")); // PDF pages
-            if (attributes.get("pages") == null) {
-                addIfPresent(attributes, "pages", metadata.get("Page-Count"));
-            }
+            return headerReader.exif(stream);
+        } catch (Exception e) {
+            log.debug("{}: EXIF not readable ({})", path, e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private MediaHeaderReader.Format detect(Path path) throws Exception {
+        try (InputStream stream = fileSystem.newInputStream(path)) {
+            byte[] magic = stream.readNBytes(MAGIC_LENGTH);
+            return headerReader.detect(magic, magic.length);
+        }
+    }
 
-            // Add other common ones if needed
-            addIfPresent(attributes, "album", metadata.get(XMPDM.ALBUM));
-            addIfPresent(attributes, "genre", metadata.get(XMPDM.GENRE));
+    private Map<String, String> readHeader(Path path, MediaHeaderReader.Format format) throws Exception {
+        switch (format) {
+            case PDF -> {
+                return headerReader.pdf(path);
+            }
+            case MP4 -> {
+                try (InputStream stream = fileSystem.newInputStream(path)) {
+                    return headerReader.mp4(stream);
+                }
+            }
+            case ID3 -> {
+                try (InputStream stream = fileSystem.newInputStream(path)) {
+                    return headerReader.id3(stream);
+                }
+            }
+            default -> {
+                return Map.of();
+            }
+        }
+    }
 
+    private Map<String, String> parse(Path path) {
+        Metadata metadata = new Metadata();
+        try (InputStream stream = new BoundedInputStream(MAX_PARSED_BYTES, fileSystem.newInputStream(path))) {
+            MimetypeProvider.getTika().getParser().parse(stream, new DefaultHandler(), metadata, new ParseContext());
         } catch (Exception e) {
-            // Log or handle error if necessary, for now return empty or partial
+            // a parser that runs into the byte limit still has the metadata it found before
+            log.debug("{}: metadata parsing incomplete: {}", path, e.getMessage());
         }
+        return attributes(metadata);
+    }
+
+    private Map<String, String> attributes(Metadata metadata) {
+        Map<String, String> attributes = new HashMap<>();
+        // Extract useful attributes
+        addIfPresent(attributes, "title", metadata.get(TikaCoreProperties.TITLE));
+        addIfPresent(attributes, "author", metadata.get(TikaCoreProperties.CREATOR));
+        addIfPresent(attributes, "artist", metadata.get(XMPDM.ARTIST));
+        addIfPresent(attributes, "duration", metadata.get(XMPDM.DURATION));
+        addIfPresent(attributes, "width", metadata.get("tiff:ImageWidth"));
+        addIfPresent(attributes, "height", metadata.get("tiff:ImageLength"));
+        addIfPresent(attributes, "pages", metadata.get("xmpTPg:NPages")); // PDF pages
+        if (attributes.get("pages") == null) {
+            addIfPresent(attributes, "pages", metadata.get("Page-Count"));
+        }
+
+        // Add other common ones if needed
+        addIfPresent(attributes, "album", metadata.get(XMPDM.ALBUM));
+        addIfPresent(attributes, "genre", metadata.get(XMPDM.GENRE));
         return attributes;
     }
 
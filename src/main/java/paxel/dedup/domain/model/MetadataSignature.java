@@ -0,0 +1,63 @@
+package paxel.dedup.domain.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * A compact hash of the metadata that identifies a shot, long before the perceptual fingerprints are compared: camera,
+ * capture time and size of photos, duration, frame size and codec of videos. Copies of a shot that were re-encoded,
+ * scaled in quality or stripped of other tags keep the signature, so equal signatures are a linear time grouping and
+ * a cheap pre-filter for the Hamming search.
+ */
+public class MetadataSignature {
+    private static final int BYTES = 8;
+
+    /**
+     * @param attributes the EXIF attributes {@code camera} and {@code taken}
+     * @param imageSize  the size of the image or {@code null}
+     * @return the signature or {@code null} if the capture time is not known. Camera model and size alone are shared
+     * by all photos of a camera
+     */
+    public String photo(Map<String, String> attributes, Dimension imageSize) {
+        String taken = attributes.get("taken");
+        if (taken == null) {
+            return null;
+        }
+        return hash("photo", attributes.get("camera"), taken, size(imageSize));
+    }
+
+    /**
+     * @param attributes the attributes {@code duration}, {@code width}, {@code height} and {@code codec}
+     * @return the signature or {@code null} if the duration or the frame size is not known. The duration alone is
+     * shared by too many clips
+     */
+    public String video(Map<String, String> attributes) {
+        String duration = attributes.get("duration");
+        String width = attributes.get("width");
+        String height = attributes.get("height");
+        if (duration == null || width == null || height == null) {
+            return null;
+        }
+        try {
+            // containers round the duration differently
+            long seconds = Math.round(Double.parseDouble(duration));
+            return hash("video", String.valueOf(seconds), width + "x" + height, attributes.get("codec"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String size(Dimension imageSize) {
+        if (imageSize == null) {
+            return "?";
+        }
+        // rotated copies swap width and height
+        return Math.max(imageSize.getWidth(), imageSize.getHeight()) + "x" + Math.min(imageSize.getWidth(), imageSize.getHeight());
+    }
+
+    private String hash(String... parts) {
+        byte[] digest = Digest.SHA_1.get().digest(String.join("\n", parts).getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest, 0, BYTES);
+    }
+}
@@ -6,20 +6,104 @@ import paxel.dedup.domain.model.errors.ErrorType;
 import paxel.lib.Result;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Detects the mime type of a file in two stages.
+ * <p>
+ * An extension that only one common format uses is resolved from a table without touching the file. Any other file
+ * is detected by Tika from its first {@link #HEAD_SIZE} bytes, which the hasher already read. Tika sees nothing but
+ * these bytes and the name, so the result is cached per name suffix and digest of the whole head: XML, Office and
+ * other container formats are told apart by bytes far behind the magic number. The least recently used results are
+ * dropped beyond {@link #MAX_CACHED}.
+ */
 public class MimetypeProvider {
     private static final Tika TIKA = new Tika();
+    /**
+     * The bytes of the file that are sniffed for magic numbers.
+     */
+    public static final int HEAD_SIZE = 8192;
+    static final int MAX_CACHED = 10_000;
+    /**
+     * Extensions that don't need sniffing, their mime types are named by Tika.
+     */
+    private static final Map<String, String> UNAMBIGUOUS = Stream.of(
+                    "jpg", "jpeg", "png", "gif", "bmp", "webp", "tif", "tiff", "heic", "heif", "psd", "cr2", "nef", "dng",
+                    "mp4", "m4v", "mov", "mkv", "avi", "webm", "wmv", "mpg", "mpeg", "3gp",
+                    "mp3", "flac", "wav", "m4a", "wma", "opus",
+                    "pdf")
+            .collect(Collectors.toUnmodifiableMap(Function.identity(), e -> TIKA.detect("file." + e)));
+    private static final Map<String, String> DETECTED = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHED;
+        }
+    });
 
     public static Tika getTika() {
         return TIKA;
     }
 
     public Result<String, DedupError> get(Path file) {
-        try {
-            return Result.ok(TIKA.detect(file));
-        } catch (IOException e) {
-            return Result.err(DedupError.of(ErrorType.IO, file + ": mimetype detection failed", e));
+        return get(file, null);
+    }
+
+    /**
+     * @param head the first bytes of the file or {@code null} if they have to be read
+     */
+    public Result<String, DedupError> get(Path file, byte[] head) {
+        String name = Objects.toString(file.getFileName(), "");
+        String extension = extension(name);
+        String known = UNAMBIGUOUS.get(extension);
+        if (known != null) {
+            return Result.ok(known);
+        }
+        if (head == null) {
+            try {
+                head = readHead(file);
+            } catch (IOException e) {
+                return Result.err(DedupError.of(ErrorType.IO, file + ": mimetype detection failed", e));
+            }
+        }
+        String key = suffix(name) + ":" + HexFormat.of().formatHex(Digest.SHA_1.get().digest(head));
+        String cached = DETECTED.get(key);
+        if (cached != null) {
+            return Result.ok(cached);
+        }
+        String detected = TIKA.detect(head, name);
+        DETECTED.put(key, detected);
+        return Result.ok(detected);
+    }
+
+    /**
+     * @return the part of the name Tika's glob patterns look at: from the first dot, or the whole name without one
+     */
+    private static String suffix(String name) {
+        int dot = name.indexOf('.');
+        if (dot < 0) {
+            return name;
+        }
+        return name.substring(dot);
+    }
+
+    private static String extension(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) {
+            return "";
+        }
+        return name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static byte[] readHead(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] head = new byte[HEAD_SIZE];
+            return Arrays.copyOf(head, in.readNBytes(head, 0, HEAD_SIZE));
         }
     }
 }
@@ -0,0 +1,138 @@
+package paxel.dedup.domain.model;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Streams text into a MinHash signature of its word shingles: the text is split into lower case words, every run of
+ * {@link #SHINGLE} consecutive words is hashed, and the signature keeps the smallest value of each of {@link #SIZE}
+ * hash functions over all shingles. The share of equal positions of two signatures estimates the Jaccard similarity of
+ * their shingle sets, so an edited or re-exported document keeps most of its signature.
+ * <p>
+ * Only the first {@link #MAX_CHARS} characters are used. An instance is for one text and one thread.
+ */
+public final class MinHash {
+    public static final int SIZE = 64;
+    public static final int SHINGLE = 5;
+    public static final int MAX_CHARS = 1 << 20;
+    private static final long[] MULTIPLIERS = new long[SIZE];
+    private static final long[] ADDENDS = new long[SIZE];
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    static {
+        // fixed seed: signatures are stored in the repos and must stay comparable
+        SplittableRandom random = new SplittableRandom(0x5eed_d0c5L);
+        for (int i = 0; i < SIZE; i++) {
+            MULTIPLIERS[i] = random.nextLong() | 1;
+            ADDENDS[i] = random.nextLong();
+        }
+    }
+
+    private final long[] minimums = new long[SIZE];
+    private final long[] words = new long[SHINGLE];
+    private long wordCount;
+    private long word = FNV_OFFSET;
+    private boolean inWord;
+    private long chars;
+    private long shingles;
+
+    public MinHash() {
+        Arrays.fill(minimums, Long.MAX_VALUE);
+    }
+
+    /**
+     * @return {@code false} if the text reached {@link #MAX_CHARS} and further text is ignored
+     */
+    public boolean accept(char[] text, int from, int length) {
+        int end = from + (int) Math.min(length, MAX_CHARS - chars);
+        for (int i = from; i < end; i++) {
+            char c = text[i];
+            if (Character.isLetterOrDigit(c)) {
+                word = (word ^ Character.toLowerCase(c)) * FNV_PRIME;
+                inWord = true;
+            } else if (inWord) {
+                endWord();
+            }
+        }
+        chars += end - from;
+        return chars < MAX_CHARS;
+    }
+
+    public boolean accept(String text) {
+        return accept(text.toCharArray(), 0, text.length());
+    }
+
+    /**
+     * @return the signature or {@code null} if the text has no words
+     */
+    public int[] signature() {
+        if (inWord) {
+            endWord();
+        }
+        if (shingles == 0 && wordCount > 0) {
+            // shorter than one shingle: the words are the only shingle
+            add(shingle((int) wordCount));
+        }
+        if (shingles == 0) {
+            return null;
+        }
+        int[] signature = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            signature[i] = (int) minimums[i];
+        }
+        return signature;
+    }
+
+    /**
+     * @return the estimated Jaccard similarity of the shingles of both texts
+     */
+    public static double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < SIZE; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / SIZE;
+    }
+
+    private void endWord() {
+        words[(int) (wordCount % SHINGLE)] = word;
+        wordCount++;
+        word = FNV_OFFSET;
+        inWord = false;
+        if (wordCount >= SHINGLE) {
+            add(shingle(SHINGLE));
+        }
+    }
+
+    /**
+     * @return the hash of the last {@code count} words, in order
+     */
+    private long shingle(int count) {
+        long hash = FNV_OFFSET;
+        for (long w = wordCount - count; w < wordCount; w++) {
+            hash = (hash ^ words[(int) (w % SHINGLE)]) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private void add(long shingle) {
+        long mixed = mix(shingle);
+        for (int i = 0; i < SIZE; i++) {
+            // multiply-shift hashing: the upper 32 bits of an odd multiple are a universal hash family
+            long value = (mixed * MULTIPLIERS[i] + ADDENDS[i]) >>> 32;
+            if (value < minimums[i]) {
+                minimums[i] = value;
+            }
+        }
+        shingles++;
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+}
@@ -0,0 +1,43 @@
+package paxel.dedup.domain.model;
+
+import org.apache.tika.metadata.Metadata;
+import paxel.dedup.domain.port.out.Enricher;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Reads the metadata of office documents and calculates the {@link MinHash} signature of their text. Without the Tika
+ * parsers for the formats on the class path, the documents have no text.
+ */
+public class OfficeEnricher implements Enricher {
+
+    @Override
+    public Set<String> mimeTypes() {
+        return Set.of("application/msword",
+                "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+                "application/vnd.oasis.opendocument.text",
+                "application/rtf",
+                "application/epub+zip");
+    }
+
+    @Override
+    public Profile profile() {
+        return Profile.CPU;
+    }
+
+    @Override
+    public int concurrency() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void enrich(Path path, long size, Context context, RepoFile.RepoFileBuilder entry) {
+        long cost = context.decodeScheduler().pdfCost(size);
+        // one parse under one admission yields the text and the metadata
+        Metadata metadata = new Metadata();
+        TextFingerprinter.Text text = context.decodeScheduler().run(cost, () -> context.extractors().text().parse(path, metadata));
+        entry.attributes(context.extractors().metadata().extract(path, metadata))
+                .textSignature(text.signature());
+    }
+}
@@ -0,0 +1,111 @@
+package paxel.dedup.domain.model;
+
+import lombok.RequiredArgsConstructor;
+import paxel.dedup.domain.port.out.FileSystem;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * Feeds a {@link FileObserver} from an explicit list of paths instead of walking a directory tree.
+ * The list is separated by newlines or NUL bytes (e.g. {@code find -print0}). Relative entries are resolved
+ * against the root. Existing regular files are reported as {@link FileObserver#file(Path)}, vanished ones as
+ * {@link FileObserver#missing(Path)}. Entries outside the root, paths that can't be checked and a list that can't be
+ * read are reported as failures, like the unreadable directories of a walk.
+ */
+@RequiredArgsConstructor
+public class PathListWalker {
+
+    private final FileObserver fileObserver;
+    private final FileSystem fileSystem;
+
+    /**
+     * Reads the list from a file.
+     */
+    public void walk(Path root, Path list) {
+        InputStream in;
+        try {
+            in = fileSystem.newInputStream(list);
+        } catch (IOException e) {
+            fileObserver.fail(list, e);
+            fileObserver.scanFinished();
+            fileObserver.close();
+            return;
+        }
+        try (in) {
+            walk(root, in);
+        } catch (IOException e) {
+            fileObserver.fail(list, e);
+        }
+    }
+
+    public void walk(Path root, InputStream list) {
+        Path normalizedRoot = root.toAbsolutePath().normalize();
+        try {
+            BufferedInputStream in = new BufferedInputStream(list);
+            ByteArrayOutputStream entry = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n' || b == 0) {
+                    process(normalizedRoot, entry);
+                    entry.reset();
+                } else {
+                    entry.write(b);
+                }
+            }
+            process(normalizedRoot, entry);
+        } catch (IOException e) {
+            fileObserver.fail(normalizedRoot, e);
+        } finally {
+            fileObserver.scanFinished();
+            fileObserver.close();
+        }
+    }
+
+    private void process(Path root, ByteArrayOutputStream entry) {
+        String name = entry.toString(StandardCharsets.UTF_8);
+        if (name.endsWith("\r")) {
+            // CRLF lists
+            name = name.substring(0, name.length() - 1);
+        }
+        if (name.isEmpty()) {
+            return;
+        }
+        Path path;
+        try {
+            path = root.resolve(name).normalize();
+        } catch (RuntimeException e) {
+            fileObserver.fail(root, e);
+            return;
+        }
+        if (!path.startsWith(root)) {
+            fileObserver.fail(path, new IllegalArgumentException(path + ": not inside " + root));
+            return;
+        }
+        if (fileSystem.isRegularFile(path) && !fileSystem.isSymbolicLink(path)) {
+            fileObserver.file(path);
+        } else if (!fileSystem.exists(path)) {
+            gone(path);
+        }
+        // directories and special files are ignored: the list names files, we don't walk
+    }
+
+    /**
+     * Reports a path that doesn't seem to exist as missing, unless that can't be told, e.g. without permission to
+     * read its directory.
+     */
+    private void gone(Path path) {
+        try {
+            fileSystem.getLastModifiedTime(path);
+        } catch (NoSuchFileException e) {
+            fileObserver.missing(path);
+        } catch (IOException | RuntimeException e) {
+            fileObserver.fail(path, e);
+        }
+    }
+}
@@ -5,6 +5,8 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Builder;
 import lombok.With;
 
+import java.util.Objects;
+
 
 @Builder
 @With
@@ -13,7 +15,9 @@ public record Repo(
         String absolutePath,
         int indices,
         Codec codec,
-        boolean compressed
+        boolean compressed,
+        ImageHash imageHash,
+        VideoSampling videoSampling
 ) {
 
     public enum Codec {JSON, MESSAGEPACK}
@@ -23,8 +27,15 @@ public record Repo(
                               @JsonProperty("absolutePath") String absolutePath,
                               @JsonProperty("indices") int indices,
                               @JsonProperty("codec") Codec codec,
-                              @JsonProperty("compressed") Boolean compressed) {
-        return new Repo(name, absolutePath, indices, codec != null ? codec : Codec.JSON, compressed != null ? compressed : false);
+                              @JsonProperty("compressed") Boolean compressed,
+                              @JsonProperty("imageHash") ImageHash imageHash,
+                              @JsonProperty("videoSampling") VideoSampling videoSampling) {
+        return new Repo(name, absolutePath, indices, Objects.requireNonNullElse(codec, Codec.JSON), Boolean.TRUE.equals(compressed),
+                Objects.requireNonNullElse(imageHash, ImageHash.DHASH), Objects.requireNonNullElse(videoSampling, VideoSampling.DEFAULT));
+    }
+
+    public Repo(String name, String absolutePath, int indices, Codec codec, boolean compressed) {
+        this(name, absolutePath, indices, codec, compressed, ImageHash.DHASH, VideoSampling.DEFAULT);
     }
 
     // Backward-compatible convenience constructor used in code/tests
@@ -32,6 +43,7 @@ public record Repo(
         this(name, absolutePath, indices, Codec.JSON, false);
     }
 
+
     @Override
     public String toString() {
         return name + ": " + absolutePath;
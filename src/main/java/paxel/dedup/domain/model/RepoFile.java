@@ -3,6 +3,7 @@ package paxel.dedup.domain.model;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.Builder;
 import lombok.With;
 
@@ -18,12 +19,21 @@ public record RepoFile(
         @JsonProperty(value = "l") long lastModified,
         @JsonProperty(value = "d", defaultValue = "false") boolean missing,
         @JsonProperty(value = "m") String mimeType,
-        @JsonProperty(value = "f") String fingerprint,
+        @JsonProperty(value = "f") Long fingerprint,
         @JsonProperty(value = "vh") String videoHash,
         @JsonProperty(value = "ph") String pdfHash,
         @JsonProperty(value = "ah") String audioHash,
         @JsonProperty(value = "is") Dimension imageSize,
-        @JsonProperty(value = "at") Map<String, String> attributes) {
+        @JsonProperty(value = "at") Map<String, String> attributes,
+        @JsonProperty(value = "fk") String fileKey,
+        @JsonProperty(value = "vf") long[] videoFingerprint,
+        @JsonProperty(value = "fa") ImageHash fingerprintAlgorithm,
+        @JsonProperty(value = "af") int[] audioFingerprint,
+        @JsonProperty(value = "ts") int[] textSignature,
+        @JsonProperty(value = "ms") String metadataSignature,
+        @JsonProperty(value = "vs") VideoSampling frameSampling) {
+
+    private static final FingerprintDeserializer LEGACY_FINGERPRINTS = new FingerprintDeserializer();
 
     @JsonCreator
     public RepoFile(
@@ -33,12 +43,19 @@ public record RepoFile(
             @JsonProperty(value = "l") long lastModified,
             @JsonProperty(value = "d", defaultValue = "false") boolean missing,
             @JsonProperty(value = "m") String mimeType,
-            @JsonProperty(value = "f") String fingerprint,
+            @JsonProperty(value = "f") @JsonDeserialize(using = FingerprintDeserializer.class) Long fingerprint,
             @JsonProperty(value = "vh") String videoHash,
             @JsonProperty(value = "ph") String pdfHash,
             @JsonProperty(value = "ah") String audioHash,
             @JsonProperty(value = "is") Dimension imageSize,
-            @JsonProperty(value = "at") Map<String, String> attributes) {
+            @JsonProperty(value = "at") Map<String, String> attributes,
+            @JsonProperty(value = "fk") String fileKey,
+            @JsonProperty(value = "vf") long[] videoFingerprint,
+            @JsonProperty(value = "fa") ImageHash fingerprintAlgorithm,
+            @JsonProperty(value = "af") int[] audioFingerprint,
+            @JsonProperty(value = "ts") int[] textSignature,
+            @JsonProperty(value = "ms") String metadataSignature,
+            @JsonProperty(value = "vs") VideoSampling frameSampling) {
         this.hash = hash;
         this.relativePath = relativePath;
         this.size = size != null ? size : 0L;
@@ -46,10 +63,54 @@ public record RepoFile(
         this.missing = missing;
         this.mimeType = mimeType;
         this.fingerprint = fingerprint;
-        this.videoHash = videoHash;
+        long[] legacyVideoFingerprint = null;
+        if (videoFingerprint == null) {
+            legacyVideoFingerprint = LEGACY_FINGERPRINTS.parseAll(videoHash);
+        }
+        if (legacyVideoFingerprint != null) {
+            // older versions stored the key frame fingerprints as concatenated hex in the video hash
+            this.videoFingerprint = legacyVideoFingerprint;
+            this.videoHash = null;
+        } else {
+            this.videoFingerprint = videoFingerprint;
+            this.videoHash = videoHash;
+        }
         this.pdfHash = pdfHash;
         this.audioHash = audioHash;
         this.imageSize = imageSize;
         this.attributes = attributes != null ? Map.copyOf(attributes) : Map.of();
+        this.fileKey = fileKey;
+        this.fingerprintAlgorithm = fingerprintAlgorithm;
+        this.audioFingerprint = audioFingerprint;
+        this.textSignature = textSignature;
+        this.metadataSignature = metadataSignature;
+        this.frameSampling = frameSampling;
+    }
+
+    /**
+     * @return the algorithm of the image {@link #fingerprint()}, entries without one use {@link ImageHash#DHASH}
+     */
+    public ImageHash imageHash() {
+        if (fingerprintAlgorithm == null) {
+            return ImageHash.DHASH;
+        }
+        return fingerprintAlgorithm;
+    }
+
+    /**
+     * @return the frames of the {@link #videoFingerprint()}, entries without a sampling use {@link VideoSampling#DEFAULT}
+     */
+    public VideoSampling videoSampling() {
+        if (frameSampling == null) {
+            return VideoSampling.DEFAULT;
+        }
+        return frameSampling;
+    }
+
+    /**
+     * @return {@code true} if this is an entry inside an archive, which was never a file of its own
+     */
+    public boolean archiveEntry() {
+        return relativePath != null && relativePath.contains(ArchiveReader.SEPARATOR);
     }
 }
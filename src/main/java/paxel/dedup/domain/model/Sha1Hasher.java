@@ -10,9 +10,11 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @RequiredArgsConstructor
 public class Sha1Hasher implements FileHasher {
@@ -22,18 +24,35 @@ public class Sha1Hasher implements FileHasher {
 
     @Override
     public CompletableFuture<Result<String, DedupError>> hash(Path path) {
-        return CompletableFuture.supplyAsync(() -> hashMe(path), executorService);
+        return hash(path, head -> {
+        });
+    }
+
+    @Override
+    public CompletableFuture<Result<String, DedupError>> hash(Path path, Consumer<byte[]> head) {
+        return hash(path, head, null);
+    }
+
+    @Override
+    public CompletableFuture<Result<String, DedupError>> hash(Path path, Consumer<byte[]> head, ContentChunker chunker) {
+        return CompletableFuture.supplyAsync(() -> hashMe(path, head, chunker), executorService);
         //  return CompletableFuture.completedFuture(hashMe(path));
     }
 
-    private Result<String, DedupError> hashMe(Path path) {
+    private Result<String, DedupError> hashMe(Path path, Consumer<byte[]> head, ContentChunker chunker) {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-1");
-            byte[] buffer = new byte[8192];
+            MessageDigest digest = Digest.SHA_1.get();
+            byte[] buffer = new byte[MimetypeProvider.HEAD_SIZE];
             try (InputStream fis = Files.newInputStream(path)) {
-                int bytesRead;
-                while ((bytesRead = fis.read(buffer)) > 0) {
+                // the first read fills the buffer, so that it holds the whole head for the mime detection
+                int bytesRead = fis.readNBytes(buffer, 0, buffer.length);
+                head.accept(Arrays.copyOf(buffer, bytesRead));
+                while (bytesRead > 0) {
                     digest.update(buffer, 0, bytesRead);
+                    if (chunker != null) {
+                        chunker.accept(buffer, 0, bytesRead);
+                    }
+                    bytesRead = fis.read(buffer);
                 }
             }
             byte[] hashBytes = digest.digest();
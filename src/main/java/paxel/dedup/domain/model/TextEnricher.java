@@ -0,0 +1,32 @@
+package paxel.dedup.domain.model;
+
+import paxel.dedup.domain.port.out.Enricher;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Calculates the {@link MinHash} signature of plain text files, streamed with a fixed buffer.
+ */
+public class TextEnricher implements Enricher {
+
+    @Override
+    public Set<String> mimeTypes() {
+        return Set.of("text/");
+    }
+
+    @Override
+    public Profile profile() {
+        return Profile.CPU;
+    }
+
+    @Override
+    public int concurrency() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void enrich(Path path, long size, Context context, RepoFile.RepoFileBuilder entry) {
+        entry.textSignature(context.extractors().text().read(path));
+    }
+}
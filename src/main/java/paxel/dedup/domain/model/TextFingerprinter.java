@@ -0,0 +1,119 @@
+package paxel.dedup.domain.model;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+import paxel.dedup.domain.port.out.FileSystem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Fingerprints the text of documents in one streaming pass: a hash of the first {@link #HASH_CHARS} characters without
+ * whitespace for exact matches, and a {@link MinHash} signature of up to {@link MinHash#MAX_CHARS} characters for
+ * similar ones. The text is never held in memory as a whole.
+ */
+public class TextFingerprinter {
+    public static final int HASH_CHARS = 5000;
+    private final AutoDetectParser parser = new AutoDetectParser();
+    private final FileSystem fileSystem;
+
+    public TextFingerprinter(FileSystem fileSystem) {
+        this.fileSystem = fileSystem;
+    }
+
+    /**
+     * @param hash      the hash of the start of the text or {@code null}
+     * @param signature the {@link MinHash} signature or {@code null}
+     */
+    public record Text(String hash, int[] signature) {
+        static final Text NONE = new Text(null, null);
+    }
+
+    /**
+     * Extracts the text of a PDF or office document with the Tika parsers on the class path.
+     */
+    public Text parse(Path path) {
+        return parse(path, new Metadata());
+    }
+
+    /**
+     * Extracts the text like {@link #parse(Path)} and collects the document metadata found by the same parse in the
+     * given {@link Metadata}, for {@link MetadataExtractor#extract(Path, Metadata)}.
+     */
+    public Text parse(Path path, Metadata metadata) {
+        TextHandler handler = new TextHandler();
+        try (InputStream stream = fileSystem.newInputStream(path)) {
+            parser.parse(stream, new BodyContentHandler(handler), metadata, new ParseContext());
+        } catch (Exception e) {
+            if (!handler.full) {
+                return Text.NONE;
+            }
+            // the parser was stopped at the size cap
+        }
+        return handler.text();
+    }
+
+    /**
+     * Reads a plain text file as UTF-8, malformed input is replaced.
+     *
+     * @return the {@link MinHash} signature or {@code null}
+     */
+    public int[] read(Path path) {
+        MinHash minHash = new MinHash();
+        try (Reader reader = new InputStreamReader(fileSystem.newInputStream(path), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = reader.read(buffer)) > 0) {
+                if (!minHash.accept(buffer, 0, n)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return minHash.signature();
+    }
+
+    private static final class TextHandler extends DefaultHandler {
+        private final StringBuilder head = new StringBuilder();
+        private final MinHash minHash = new MinHash();
+        private boolean full;
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            if (head.length() < HASH_CHARS) {
+                head.append(ch, start, Math.min(length, HASH_CHARS - head.length()));
+            }
+            if (!minHash.accept(ch, start, length)) {
+                full = true;
+                throw new SAXException("text exceeds " + MinHash.MAX_CHARS + " characters");
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            characters(ch, start, length);
+        }
+
+        Text text() {
+            // Normalize: lowercase, no whitespace
+            String normalized = head.toString().toLowerCase().replaceAll("\\s+", "");
+            if (normalized.isEmpty()) {
+                return Text.NONE;
+            }
+            MessageDigest digest = Digest.SHA_256.get();
+            byte[] hash = digest.digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return new Text(HexFormat.of().formatHex(hash), minHash.signature());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package paxel.dedup.domain.model;
+
+import paxel.dedup.domain.port.out.Enricher;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the metadata of videos and fingerprints their sampled frames.
+ * Decoding keeps reference frames of the full resolution, so only half the cores decode videos at the same time.
+ */
+public class VideoEnricher implements Enricher {
+
+    private final MetadataSignature metadataSignature = new MetadataSignature();
+
+    @Override
+    public Set<String> mimeTypes() {
+        return Set.of("video/");
+    }
+
+    @Override
+    public Profile profile() {
+        return Profile.CPU;
+    }
+
+    @Override
+    public int concurrency() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    @Override
+    public void enrich(Path path, long size, Context context, RepoFile.RepoFileBuilder entry) {
+        Map<String, String> attributes = context.extractors().metadata().extract(path);
+        entry.attributes(attributes)
+                .metadataSignature(metadataSignature.video(attributes));
+        VideoFingerprinter.TemporalHash temporalHash = context.decodeScheduler().run(context.decodeScheduler().videoCost(frameSize(attributes)),
+                () -> context.extractors().video().calculateTemporalHash(path, context.videoSampling()));
+        if (temporalHash != null) {
+            entry.videoFingerprint(temporalHash.fingerprint())
+                    .videoHash(temporalHash.fallbackHash());
+        }
+        if (temporalHash != null && temporalHash.fingerprint() != null && !VideoSampling.DEFAULT.equals(context.videoSampling())) {
+            // entries of the default sampling don't store it, like those of the default image hash
+            entry.frameSampling(context.videoSampling());
+        }
+    }
+
+    private static Dimension frameSize(Map<String, String> attributes) {
+        if (attributes.get("width") == null || attributes.get("height") == null) {
+            return null;
+        }
+        try {
+            return new Dimension(Integer.parseInt(attributes.get("width")), Integer.parseInt(attributes.get("height")));
+        } catch (NumberFormatException e) {
+            // unknown or not a plain number
+            return null;
+        }
+    }
+}
@@ -1,48 +1,79 @@
 package paxel.dedup.domain.model;
 
 import lombok.extern.slf4j.Slf4j;
-import org.jcodec.api.FrameGrab;
-import org.jcodec.common.model.Picture;
-import org.jcodec.scale.AWTUtil;
 
-import java.awt.image.BufferedImage;
 import java.nio.file.Path;
+import java.util.Arrays;
 
 @Slf4j
 public class VideoFingerprinter {
     private final ImageFingerprinter imageFingerprinter = new ImageFingerprinter();
+    private final VideoFrameSampler sampler;
 
-    public String calculateTemporalHash(Path path) {
-        try {
-            // JCodec FrameGrab can be flaky with some AVI or older codecs.
-            // We use the highest level API first.
-            FrameGrab grab = FrameGrab.createFrameGrab(org.jcodec.common.io.NIOUtils.readableChannel(path.toFile()));
-            double duration = grab.getVideoTrack().getMeta().getTotalDuration();
-            if (duration <= 0) return null;
+    public VideoFingerprinter() {
+        this(new VideoFrameSampler());
+    }
 
-            StringBuilder sb = new StringBuilder();
-            double[] percentages = {0.1, 0.5, 0.9};
-            for (double p : percentages) {
-                grab.seekToSecondPrecise(duration * p);
-                Picture picture = grab.getNativeFrame();
-                if (picture != null) {
-                    BufferedImage bufferedImage = AWTUtil.toBufferedImage(picture);
-                    ImageFingerprinter.FingerprintResult fr = imageFingerprinter.calculate(bufferedImage);
-                    if (fr.fingerprint() != null) {
-                        sb.append(fr.fingerprint());
-                    } else {
-                        sb.append("0000000000000000");
-                    }
-                } else {
-                    sb.append("0000000000000000");
+    public VideoFingerprinter(VideoFrameSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    /**
+     * @param fingerprint  the dHash of each sampled frame or {@code null}. Shorter than the number of sampled frames
+     *                     if the time budget ran out
+     * @param fallbackHash a content hash of the file if the video could not be decoded
+     */
+    public record TemporalHash(long[] fingerprint, String fallbackHash) {
+    }
+
+    /**
+     * @return the fingerprint of the sampled frames, a fallback hash or {@code null} if neither could be calculated
+     */
+    public TemporalHash calculateTemporalHash(Path path) {
+        return calculateTemporalHash(path, sampler);
+    }
+
+    /**
+     * @param sampling the frames of the repo, the time budget stays the same
+     * @return the fingerprint of the sampled frames, a fallback hash or {@code null} if neither could be calculated
+     */
+    public TemporalHash calculateTemporalHash(Path path, VideoSampling sampling) {
+        return calculateTemporalHash(path, sampler.with(sampling));
+    }
+
+    private TemporalHash calculateTemporalHash(Path path, VideoFrameSampler frameSampler) {
+        try {
+            long[] fingerprint = new long[frameSampler.frames()];
+            VideoFrameSampler.Sample sample = frameSampler.sample(path, (index, frame) -> {
+                ImageFingerprinter.FingerprintResult fr = imageFingerprinter.calculate(frame);
+                if (fr.fingerprint() != null) {
+                    fingerprint[index] = fr.fingerprint();
+                }
+            });
+            if (sample.decoded() == 0 && sample.complete()) {
+                return null;
+            }
+            if (!sample.complete()) {
+                log.info("{}: time budget exceeded after {} of {} frames, keeping a partial fingerprint", path, sample.decoded(), frameSampler.frames());
+                if (sample.decoded() == 0) {
+                    return fallback(path);
                 }
+                return new TemporalHash(Arrays.copyOf(fingerprint, sample.visited()), null);
             }
-            return sb.toString();
+            return new TemporalHash(fingerprint, null);
         } catch (Exception e) {
             // If JCodec fails to decode, we try a content-based fallback hash to still support duplicate detection.
             log.info("Could not calculate temporal hash for {} using JCodec ({}). Falling back to content-based hash.", path, e.getMessage());
-            return calculateFallbackHash(path);
+            return fallback(path);
+        }
+    }
+
+    private TemporalHash fallback(Path path) {
+        String fallbackHash = calculateFallbackHash(path);
+        if (fallbackHash == null) {
+            return null;
         }
+        return new TemporalHash(null, fallbackHash);
     }
 
     private String calculateFallbackHash(Path path) {
@@ -53,7 +84,7 @@ public class VideoFingerprinter {
             int n = is.read(chunk);
             if (n <= 0) return null;
 
-            java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
+            java.security.MessageDigest digest = Digest.SHA_256.get();
             digest.update(chunk, 0, n);
             return "fallback:" + java.util.HexFormat.of().formatHex(digest.digest());
         } catch (Exception e) {
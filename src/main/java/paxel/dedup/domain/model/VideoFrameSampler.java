@@ -0,0 +1,151 @@
+package paxel.dedup.domain.model;
+
+import org.jcodec.api.FrameGrab;
+import org.jcodec.api.JCodecException;
+import org.jcodec.common.DemuxerTrackMeta;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.io.SeekableByteChannel;
+import org.jcodec.common.model.Picture;
+import org.jcodec.scale.AWTUtil;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Decodes evenly spread frames of a video with one decoder per file, for fingerprints and filmstrips.
+ * <p>
+ * In key frame mode each position is moved to the nearest key frame, which decodes without its predecessors.
+ * A precise seek decodes from the previous key frame up to the position, which takes seconds on streams with long
+ * GOPs. The time budget is checked before each frame, so a slow file yields the frames decoded so far instead of
+ * stalling the thread.
+ */
+public class VideoFrameSampler {
+
+    public static final int DEFAULT_FRAMES = 3;
+    public static final Duration DEFAULT_BUDGET = Duration.ofSeconds(10);
+
+    private final int frames;
+    private final boolean keyFramesOnly;
+    private final Duration budget;
+    private final LongSupplier nanoTime;
+
+    public VideoFrameSampler() {
+        this(VideoSampling.DEFAULT, DEFAULT_BUDGET);
+    }
+
+    /**
+     * @param sampling the frames of the repo
+     * @param budget   the time per file after which no further frame is decoded
+     */
+    public VideoFrameSampler(VideoSampling sampling, Duration budget) {
+        this(sampling.frames(), !sampling.preciseSeek(), budget);
+    }
+
+    /**
+     * @param frames        the number of frames, spread from 10% to 90% of the duration
+     * @param keyFramesOnly seek to the nearest key frame instead of the exact position
+     * @param budget        the time per file after which no further frame is decoded
+     */
+    public VideoFrameSampler(int frames, boolean keyFramesOnly, Duration budget) {
+        this(frames, keyFramesOnly, budget, System::nanoTime);
+    }
+
+    VideoFrameSampler(int frames, boolean keyFramesOnly, Duration budget, LongSupplier nanoTime) {
+        if (frames < 1) {
+            throw new IllegalArgumentException("At least one frame is needed: " + frames);
+        }
+        this.frames = frames;
+        this.keyFramesOnly = keyFramesOnly;
+        this.budget = budget;
+        this.nanoTime = nanoTime;
+    }
+
+    public int frames() {
+        return frames;
+    }
+
+    /**
+     * @return a sampler of the given frames with the same time budget
+     */
+    public VideoFrameSampler with(VideoSampling sampling) {
+        return new VideoFrameSampler(sampling.frames(), !sampling.preciseSeek(), budget, nanoTime);
+    }
+
+    /**
+     * Receives the sampled frames in order.
+     */
+    public interface FrameConsumer {
+        void accept(int index, BufferedImage frame) throws IOException;
+    }
+
+    /**
+     * @param visited  the number of positions that were sought, all of them unless the time budget ran out
+     * @param decoded  the number of frames given to the consumer
+     * @param complete {@code false} if the time budget ran out before all frames were decoded
+     */
+    public record Sample(int visited, int decoded, boolean complete) {
+    }
+
+    /**
+     * Decodes the frames and hands them to the consumer. Frames that can't be decoded are skipped.
+     *
+     * @throws IOException     if the file can't be read
+     * @throws JCodecException if the container or codec is not supported
+     */
+    public Sample sample(Path path, FrameConsumer consumer) throws IOException, JCodecException {
+        long deadline = nanoTime.getAsLong() + budget.toNanos();
+        try (SeekableByteChannel channel = NIOUtils.readableChannel(path.toFile())) {
+            FrameGrab grab = FrameGrab.createFrameGrab(channel);
+            DemuxerTrackMeta meta = grab.getVideoTrack().getMeta();
+            double duration = meta.getTotalDuration();
+            if (duration <= 0) {
+                return new Sample(0, 0, true);
+            }
+            int[] keyFrames = meta.getSeekFrames();
+            int totalFrames = meta.getTotalFrames();
+            int decoded = 0;
+            for (int i = 0; i < frames; i++) {
+                if (nanoTime.getAsLong() - deadline > 0) {
+                    return new Sample(i, decoded, false);
+                }
+                double position = position(i);
+                if (keyFramesOnly && keyFrames != null && keyFrames.length > 0 && totalFrames > 0) {
+                    grab.seekToFrameSloppy(nearest(keyFrames, (int) (totalFrames * position)));
+                } else if (keyFramesOnly) {
+                    grab.seekToSecondSloppy(duration * position);
+                } else {
+                    grab.seekToSecondPrecise(duration * position);
+                }
+                Picture picture = grab.getNativeFrame();
+                if (picture != null) {
+                    consumer.accept(i, AWTUtil.toBufferedImage(picture));
+                    decoded++;
+                }
+            }
+            return new Sample(frames, decoded, true);
+        }
+    }
+
+    /**
+     * @return the relative position of frame {@code i}: 10%, 50% and 90% for three frames
+     */
+    double position(int i) {
+        if (frames == 1) {
+            return 0.5;
+        }
+        return 0.1 + 0.8 * i / (frames - 1);
+    }
+
+    static int nearest(int[] keyFrames, int frame) {
+        int best = keyFrames[0];
+        for (int candidate : keyFrames) {
+            if (Math.abs(candidate - frame) < Math.abs(best - frame)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+}
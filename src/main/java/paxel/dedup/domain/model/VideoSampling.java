@@ -0,0 +1,22 @@
+package paxel.dedup.domain.model;
+
+import lombok.With;
+
+/**
+ * Which frames of a video are fingerprinted. A setting of the repo like its {@link ImageHash}: fingerprints of another
+ * sampling never match, so entries made with one are fingerprinted again on the next update.
+ *
+ * @param frames      the number of frames, spread from 10% to 90% of the duration
+ * @param preciseSeek decode the exact frame positions instead of the nearest key frames
+ */
+@With
+public record VideoSampling(int frames, boolean preciseSeek) {
+
+    public static final VideoSampling DEFAULT = new VideoSampling(VideoFrameSampler.DEFAULT_FRAMES, false);
+
+    public VideoSampling {
+        if (frames < 1) {
+            throw new IllegalArgumentException("At least one frame is needed: " + frames);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package paxel.dedup.domain.port.out;
+
+import paxel.dedup.domain.model.DecodeScheduler;
+import paxel.dedup.domain.model.Extractors;
+import paxel.dedup.domain.model.ImageHash;
+import paxel.dedup.domain.model.RepoFile;
+import paxel.dedup.domain.model.VideoSampling;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Adds fingerprints and attributes of one kind of file to its index entry.
+ * <p>
+ * Implementations are found with {@link java.util.ServiceLoader}: list them in
+ * {@code META-INF/services/paxel.dedup.domain.port.out.Enricher} and give them a public no-arg constructor.
+ * An update runs every enricher on its own pool, sized by its {@link #profile()} and {@link #concurrency()},
+ * so slow video decoding doesn't hold up images and documents.
+ */
+public interface Enricher {
+
+    /**
+     * What limits the enricher.
+     */
+    enum Profile {
+        /**
+         * Decoding and hashing. The pool is at most as large as the update threads.
+         */
+        CPU,
+        /**
+         * Small reads. The pool may be larger than the update threads.
+         */
+        IO
+    }
+
+    /**
+     * @param extractors      the shared fingerprinters and extractors
+     * @param decodeScheduler admits decoding against the memory budget of the update
+     * @param imageHash       the image fingerprint algorithm of the repo
+     * @param videoSampling   the video frames the repo fingerprints
+     */
+    record Context(Extractors extractors, DecodeScheduler decodeScheduler, ImageHash imageHash, VideoSampling videoSampling) {
+    }
+
+    /**
+     * @return the handled mime types, a type ending with {@code /} handles all its subtypes
+     */
+    Set<String> mimeTypes();
+
+    Profile profile();
+
+    /**
+     * @return the maximum number of files enriched at the same time
+     */
+    int concurrency();
+
+    /**
+     * Sets the fingerprints and attributes of the file on the entry. Hash, size and paths are already set.
+     *
+     * @param path  the file
+     * @param size  the size of the file in bytes
+     * @param entry the index entry of the file
+     */
+    void enrich(Path path, long size, Context context, RepoFile.RepoFileBuilder entry);
+}
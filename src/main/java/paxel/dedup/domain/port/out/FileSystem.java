@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.CopyOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -29,5 +30,21 @@ public interface FileSystem {
     void createDirectories(Path path) throws IOException;
     void copy(Path source, Path target, CopyOption... options) throws IOException;
     void move(Path source, Path target, CopyOption... options) throws IOException;
+
+    /**
+     * Identity of the file on its device (e.g. device and inode), if the platform provides one.
+     *
+     * @return the key or {@code null} if unknown
+     */
+    default String fileKey(Path path) throws IOException {
+        return null;
+    }
+
+    /**
+     * Opens the file for random access, e.g. to map the parts of an index that a lookup needs.
+     */
+    default FileChannel newFileChannel(Path path, StandardOpenOption... options) throws IOException {
+        throw new UnsupportedOperationException("random access is not supported by " + getClass().getSimpleName());
+    }
     // Add more as needed
 }
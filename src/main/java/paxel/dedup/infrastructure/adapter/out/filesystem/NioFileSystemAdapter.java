@@ -6,10 +6,12 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.CopyOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.util.stream.Stream;
 
@@ -103,4 +105,18 @@ public class NioFileSystemAdapter implements FileSystem {
     public void move(Path source, Path target, CopyOption... options) throws IOException {
         Files.move(source, target, options);
     }
+
+    @Override
+    public FileChannel newFileChannel(Path path, StandardOpenOption... options) throws IOException {
+        return FileChannel.open(path, options);
+    }
+
+    @Override
+    public String fileKey(Path path) throws IOException {
+        Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        if (key == null) {
+            return null;
+        }
+        return key.toString();
+    }
 }
@@ -1,7 +1,9 @@
 package paxel.dedup.infrastructure.config;
 
 import lombok.NonNull;
+import paxel.dedup.domain.model.ImageHash;
 import paxel.dedup.domain.model.Repo;
+import paxel.dedup.domain.model.VideoSampling;
 import paxel.dedup.domain.model.errors.DedupError;
 import paxel.lib.Result;
 
@@ -74,6 +76,24 @@ public interface DedupConfig {
                 getRepoDir().resolve(name).resolve("dedup_repo.yml") + ": failed persisting repo config"));
     }
 
+    /**
+     * Updates the image hash algorithm of the repo YAML while keeping all other settings.
+     */
+    @NonNull
+    default Result<Repo, DedupError> setImageHash(@NonNull String name, @NonNull ImageHash imageHash) {
+        return Result.err(DedupError.of(paxel.dedup.domain.model.errors.ErrorType.MODIFY_REPO,
+                getRepoDir().resolve(name).resolve("dedup_repo.yml") + ": failed persisting repo config"));
+    }
+
+    /**
+     * Updates the video frame sampling of the repo YAML while keeping all other settings.
+     */
+    @NonNull
+    default Result<Repo, DedupError> setVideoSampling(@NonNull String name, @NonNull VideoSampling videoSampling) {
+        return Result.err(DedupError.of(paxel.dedup.domain.model.errors.ErrorType.MODIFY_REPO,
+                getRepoDir().resolve(name).resolve("dedup_repo.yml") + ": failed persisting repo config"));
+    }
+
     /**
      * Updates the codec setting of the repo YAML while keeping name, path, and indices the same.
      *
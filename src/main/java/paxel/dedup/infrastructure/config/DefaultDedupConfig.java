@@ -5,7 +5,9 @@ import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import paxel.dedup.domain.model.ImageHash;
 import paxel.dedup.domain.model.Repo;
+import paxel.dedup.domain.model.VideoSampling;
 import paxel.dedup.domain.model.errors.DedupError;
 import paxel.dedup.domain.model.errors.ErrorType;
 import paxel.dedup.domain.port.out.FileSystem;
@@ -100,7 +102,7 @@ public final class DefaultDedupConfig implements DedupConfig {
             return repo.mapError(e -> DedupError.of(ErrorType.MODIFY_REPO, e.describe(), e.exception()));
         }
         Path ymlFile = repoRootPath.resolve(name).resolve(DEDUP_REPO_YML);
-        return writeRepoFile(name, path, repo.value().indices(), ymlFile)
+        return writeRepoFile(repo.value().withAbsolutePath(path.toAbsolutePath().toString()), ymlFile)
                 .map(Function.identity(), e -> DedupError.of(ErrorType.MODIFY_REPO, path + " modify failed", e));
     }
 
@@ -128,7 +130,10 @@ public final class DefaultDedupConfig implements DedupConfig {
 
 
     private Result<Repo, IOException> writeRepoFile(String name, Path path, int indices, Path ymlFile) {
-        Repo repo = new Repo(name, path.toAbsolutePath().toString(), indices, Repo.Codec.MESSAGEPACK, false);
+        return writeRepoFile(new Repo(name, path.toAbsolutePath().toString(), indices, Repo.Codec.MESSAGEPACK, false), ymlFile);
+    }
+
+    private Result<Repo, IOException> writeRepoFile(Repo repo, Path ymlFile) {
         try {
             fileSystem.write(ymlFile, objectMapper.writeValueAsBytes(repo));
         } catch (IOException e) {
@@ -218,7 +223,7 @@ public final class DefaultDedupConfig implements DedupConfig {
             return Result.err(DedupError.of(ErrorType.RENAME_REPO, repoRootPath.resolve(newName) + " rename failed", e));
         }
         Path ymlFile = repoRootPath.resolve(newName).resolve(DEDUP_REPO_YML);
-        Result<Repo, IOException> repoIOExceptionResult = writeRepoFile(newName, Paths.get(repo.value().absolutePath()), repo.value().indices(), ymlFile);
+        Result<Repo, IOException> repoIOExceptionResult = writeRepoFile(repo.value().withName(newName), ymlFile);
 
         return repoIOExceptionResult
                 .map(a -> true, e -> DedupError.of(ErrorType.RENAME_REPO, ymlFile + " write failed", e));
@@ -232,7 +237,7 @@ public final class DefaultDedupConfig implements DedupConfig {
         }
         Path ymlFile = repoRootPath.resolve(name).resolve(DEDUP_REPO_YML);
         try {
-            Repo updated = new Repo(name, repo.value().absolutePath(), repo.value().indices(), codec, compressed);
+            Repo updated = repo.value().withCodec(codec).withCompressed(compressed);
             fileSystem.write(ymlFile, objectMapper.writeValueAsBytes(updated));
             return Result.ok(updated);
         } catch (IOException e) {
@@ -240,6 +245,28 @@ public final class DefaultDedupConfig implements DedupConfig {
         }
     }
 
+    @Override
+    public @NonNull Result<Repo, DedupError> setImageHash(@NonNull String name, @NonNull ImageHash imageHash) {
+        Result<Repo, DedupError> repo = this.getRepo(name);
+        if (repo.hasFailed()) {
+            return repo.mapError(e -> DedupError.of(ErrorType.MODIFY_REPO, e.describe(), e.exception()));
+        }
+        Path ymlFile = repoRootPath.resolve(name).resolve(DEDUP_REPO_YML);
+        return writeRepoFile(repo.value().withImageHash(imageHash), ymlFile)
+                .map(Function.identity(), e -> DedupError.of(ErrorType.MODIFY_REPO, ymlFile + " write failed", e));
+    }
+
+    @Override
+    public @NonNull Result<Repo, DedupError> setVideoSampling(@NonNull String name, @NonNull VideoSampling videoSampling) {
+        Result<Repo, DedupError> repo = this.getRepo(name);
+        if (repo.hasFailed()) {
+            return repo.mapError(e -> DedupError.of(ErrorType.MODIFY_REPO, e.describe(), e.exception()));
+        }
+        Path ymlFile = repoRootPath.resolve(name).resolve(DEDUP_REPO_YML);
+        return writeRepoFile(repo.value().withVideoSampling(videoSampling), ymlFile)
+                .map(Function.identity(), e -> DedupError.of(ErrorType.MODIFY_REPO, ymlFile + " write failed", e));
+    }
+
     @Override
     @Deprecated
     public @NonNull Result<Repo, DedupError> setCodec(@NonNull String name, @NonNull Repo.Codec codec) {
@@ -72,6 +72,8 @@ public class DiffProcess {
         try {
             sourceRepo.stream()
                     .filter(repoFile -> !repoFile.missing())
+                    // files inside archives can't be changed on their own
+                    .filter(repoFile -> !repoFile.archiveEntry())
                     .filter(repoFilter)
                     .forEach(r -> {
                         List<RepoFile> byHash = targetRepo.getByHashAndSize(r.hash(), r.size());
@@ -121,6 +123,8 @@ public class DiffProcess {
         try {
             sourceRepo.stream()
                     .filter(repoFile -> !repoFile.missing())
+                    // files inside archives can't be changed on their own
+                    .filter(repoFile -> !repoFile.archiveEntry())
                     .filter(repoFilter)
                     .forEach(r -> {
                         List<RepoFile> byHash = targetRepo.getByHashAndSize(r.hash(), r.size());
@@ -200,7 +204,7 @@ public class DiffProcess {
     }
 
     private void handleCopyIfRequested(boolean copyNew, boolean contentPresentInB, RepoFile entry, RepoManager sourceRepo, RepoManager targetRepo, SyncCounters counters) {
-        if (!copyNew) {
+        if (!copyNew || entry.archiveEntry()) {
             return;
         }
         if (contentPresentInB) {
@@ -254,6 +258,7 @@ public class DiffProcess {
     private void handleDelete(List<RepoFile> matches, RepoManager targetRepo, SyncCounters counters) {
         matches.stream()
                 .filter(b -> !b.missing())
+                .filter(b -> !b.archiveEntry())
                 .forEach(b -> performDelete(b, targetRepo, counters));
     }
 
@@ -8,6 +8,7 @@ import paxel.dedup.domain.model.errors.DedupError;
 import paxel.dedup.domain.port.out.FileSystem;
 import paxel.dedup.infrastructure.config.DedupConfig;
 import paxel.dedup.repo.domain.repo.RepoManager;
+import paxel.dedup.repo.domain.repo.SimilarityIndex;
 import paxel.lib.Result;
 
 import java.io.IOException;
@@ -16,6 +17,7 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 
@@ -64,6 +66,8 @@ public class FilesProcess {
         try {
             result.value().stream()
                     .filter(repoFile -> !repoFile.missing())
+                    // files inside archives can't be changed on their own
+                    .filter(repoFile -> !repoFile.archiveEntry())
                     .filter(repoFilter)
                     .sorted(Comparator.comparing(RepoFile::relativePath))
                     .forEach(r -> {
@@ -90,6 +94,8 @@ public class FilesProcess {
         try {
             result.value().stream()
                     .filter(repoFile -> !repoFile.missing())
+                    // files inside archives can't be changed on their own
+                    .filter(repoFile -> !repoFile.archiveEntry())
                     .filter(repoFilter)
                     .forEach(r -> {
                         Path targetFile = replaceSuffix(Paths.get(target).resolve(r.relativePath()), appendix);
@@ -145,6 +151,59 @@ public class FilesProcess {
         return 0;
     }
 
+    /**
+     * Prints the images or videos of the repo that look like the given file.
+     * Only the similarity index of the repo is read, not the repo index itself.
+     *
+     * @param threshold the minimal similarity in percent
+     */
+    public int similar(Path file, int threshold) {
+        Result<Repo, DedupError> repo = dedupConfig.getRepo(source);
+        if (repo.hasFailed()) {
+            log.error("Could not open {} {}", source, repo.error());
+            return -121;
+        }
+        SimilarityIndex similarityIndex = RepoManager.forRepo(repo.value(), dedupConfig, fileSystem).getSimilarityIndex();
+        if (!similarityIndex.exists()) {
+            log.error("{} has no similarity index yet, run 'repo update {}' first", source, source);
+            return -124;
+        }
+
+        String mimeType = new MimetypeProvider().get(file).getValueOr("");
+        SimilarityIndex.Kind kind;
+        long[] fingerprint = null;
+        if (mimeType.startsWith("image/")) {
+            kind = SimilarityIndex.Kind.image(repo.value().imageHash());
+            Long imageFingerprint = new ImageFingerprinter().calculate(file, repo.value().imageHash()).fingerprint();
+            if (imageFingerprint != null) {
+                fingerprint = new long[]{imageFingerprint};
+            }
+        } else if (mimeType.startsWith("video/")) {
+            kind = SimilarityIndex.Kind.VIDEO;
+            VideoFingerprinter.TemporalHash temporalHash = new VideoFingerprinter().calculateTemporalHash(file, repo.value().videoSampling());
+            if (temporalHash != null) {
+                fingerprint = temporalHash.fingerprint();
+            }
+        } else {
+            log.error("{} is no image or video: {}", file, mimeType);
+            return -125;
+        }
+        if (fingerprint == null) {
+            log.error("Could not fingerprint {}", file);
+            return -126;
+        }
+
+        Result<List<SimilarityIndex.Match>, DedupError> matches = similarityIndex.search(kind, fingerprint, threshold);
+        if (matches.hasFailed()) {
+            log.error("Could not search {} {}", source, matches.error());
+            return -127;
+        }
+        for (SimilarityIndex.Match match : matches.value()) {
+            log.info(String.format("%3d%%  %s", match.similarity(), match.relativePath()));
+        }
+        return 0;
+    }
+
     private Result<RepoManager, Integer> openRepo(String name) {
         Result<Repo, DedupError> repo = dedupConfig.getRepo(name);
         if (repo.hasFailed()) {
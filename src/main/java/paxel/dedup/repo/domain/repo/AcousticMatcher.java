@@ -0,0 +1,138 @@
+package paxel.dedup.repo.domain.repo;
+
+import java.util.Arrays;
+
+/**
+ * Finds audio files that sound alike by their acoustic fingerprints, without comparing every pair.
+ * <p>
+ * Every sub-fingerprint is a hash bucket. Copies of the same recording share some sub-fingerprints exactly, even
+ * after re-encoding, and a trimmed copy shares them at shifted positions. So every pair of files in a bucket votes for
+ * the offset between the two positions, and only the offset with the most votes of each pair is verified: the
+ * aligned sub-fingerprints must overlap for {@link #MIN_OVERLAP} frames and differ in at most
+ * {@link #MAX_BIT_ERROR_RATE} of their bits.
+ */
+class AcousticMatcher {
+
+    /**
+     * The bit error rate below which Haitsma and Kalker consider two sub-fingerprint blocks the same recording.
+     */
+    static final double MAX_BIT_ERROR_RATE = 0.35;
+    /**
+     * About three seconds of sub-fingerprints.
+     */
+    static final int MIN_OVERLAP = 64;
+    /**
+     * Sub-fingerprints that occur more often are silence or hum and no evidence for a match.
+     */
+    private static final int MAX_BUCKET = 256;
+    private static final int FILE_BITS = 24;
+    private static final int OFFSET_BITS = 15;
+    private static final int MAX_OFFSET = (1 << (OFFSET_BITS - 1)) - 1;
+    private static final int SUB_FINGERPRINT_BITS = 32;
+
+    /**
+     * Unites the files whose fingerprints match.
+     *
+     * @param fingerprints the sub-fingerprints per file, {@code null} for files without
+     */
+    void match(int[][] fingerprints, ConcurrentUnionFind components) {
+        if (fingerprints.length >= 1 << FILE_BITS) {
+            throw new IllegalArgumentException(fingerprints.length + " audio files exceed the matcher");
+        }
+        // every sub-fingerprint with its global position, sorted by value, so that each bucket is a run
+        int[] starts = new int[fingerprints.length + 1];
+        for (int file = 0; file < fingerprints.length; file++) {
+            starts[file + 1] = starts[file] + length(fingerprints[file]);
+        }
+        long[] entries = new long[starts[fingerprints.length]];
+        int[] fileOf = new int[entries.length];
+        for (int file = 0; file < fingerprints.length; file++) {
+            for (int position = 0; position < starts[file + 1] - starts[file]; position++) {
+                int global = starts[file] + position;
+                entries[global] = ((long) fingerprints[file][position] << 32) | global;
+                fileOf[global] = file;
+            }
+        }
+        Arrays.sort(entries);
+
+        LongList votes = new LongList();
+        for (int from = 0, to; from < entries.length; from = to) {
+            to = from + 1;
+            while (to < entries.length && entries[to] >>> 32 == entries[from] >>> 32) {
+                to++;
+            }
+            if (to - from < 2 || to - from > MAX_BUCKET) {
+                continue;
+            }
+            for (int i = from; i < to; i++) {
+                int x = (int) entries[i];
+                for (int j = i + 1; j < to; j++) {
+                    int y = (int) entries[j];
+                    int a = Math.min(fileOf[x], fileOf[y]);
+                    int b = Math.max(fileOf[x], fileOf[y]);
+                    if (a != b) {
+                        int inA = x;
+                        int inB = y;
+                        if (fileOf[x] != a) {
+                            inA = y;
+                            inB = x;
+                        }
+                        int offset = inB - starts[b] - (inA - starts[a]);
+                        if (Math.abs(offset) <= MAX_OFFSET) {
+                            votes.add(((long) a << (FILE_BITS + OFFSET_BITS)) | ((long) b << OFFSET_BITS) | (offset + MAX_OFFSET));
+                        }
+                    }
+                }
+            }
+        }
+
+        // equal votes are runs, the runs of a pair are consecutive
+        long[] sorted = votes.toSortedArray();
+        long pairMask = ~((1L << OFFSET_BITS) - 1);
+        for (int from = 0, to; from < sorted.length; from = to) {
+            long pair = sorted[from] & pairMask;
+            long best = sorted[from];
+            int bestVotes = 0;
+            to = from;
+            while (to < sorted.length && (sorted[to] & pairMask) == pair) {
+                int run = to;
+                while (to < sorted.length && sorted[to] == sorted[run]) {
+                    to++;
+                }
+                if (to - run > bestVotes) {
+                    bestVotes = to - run;
+                    best = sorted[run];
+                }
+            }
+            int a = (int) (best >>> (FILE_BITS + OFFSET_BITS));
+            int b = (int) (best >>> OFFSET_BITS) & ((1 << FILE_BITS) - 1);
+            int offset = (int) (best & ((1 << OFFSET_BITS) - 1)) - MAX_OFFSET;
+            if (matches(fingerprints[a], fingerprints[b], offset)) {
+                components.union(a, b);
+            }
+        }
+    }
+
+    private int length(int[] fingerprint) {
+        if (fingerprint == null) {
+            return 0;
+        }
+        return fingerprint.length;
+    }
+
+    /**
+     * @param offset the position in {@code b} of the first sub-fingerprint of {@code a}
+     */
+    boolean matches(int[] a, int[] b, int offset) {
+        int from = Math.max(0, -offset);
+        int to = Math.min(a.length, b.length - offset);
+        if (to - from < MIN_OVERLAP) {
+            return false;
+        }
+        long errors = 0;
+        for (int i = from; i < to; i++) {
+            errors += Integer.bitCount(a[i] ^ b[i + offset]);
+        }
+        return errors <= MAX_BIT_ERROR_RATE * SUB_FINGERPRINT_BITS * (to - from);
+    }
+}
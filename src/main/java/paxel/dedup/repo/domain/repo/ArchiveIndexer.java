@@ -0,0 +1,33 @@
+package paxel.dedup.repo.domain.repo;
+
+import lombok.RequiredArgsConstructor;
+import paxel.dedup.domain.model.MimetypeProvider;
+import paxel.dedup.domain.model.RepoFile;
+import paxel.dedup.domain.model.errors.DedupError;
+import paxel.lib.Result;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Indexes the entries of archives in the archive stage of the {@link UpdateStages}, so that a large archive neither
+ * blocks the walker nor the hash stage.
+ */
+@RequiredArgsConstructor
+class ArchiveIndexer {
+
+    private final RepoManager repoManager;
+    private final UpdateStages stages;
+    private final MimetypeProvider mimetypeProvider = new MimetypeProvider();
+
+    /**
+     * @param previous the entries of the archive indexed before
+     * @return the number of indexed entries
+     */
+    CompletableFuture<Result<Integer, DedupError>> submit(Path absolutePath, List<RepoFile> previous) {
+        return stages.archive()
+                .submit(() -> CompletableFuture.supplyAsync(() -> repoManager.addArchive(absolutePath, previous, mimetypeProvider),
+                        stages.archiveExecutor()));
+    }
+}
@@ -0,0 +1,46 @@
+package paxel.dedup.repo.domain.repo;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * A processing stage that accepts at most {@code capacity} tasks at a time.
+ * Submitting to a full stage blocks the submitting thread until a task finished,
+ * which propagates backpressure to the previous stage and finally to the walker.
+ */
+class BoundedStage {
+
+    private final String name;
+    private final int capacity;
+    private final Semaphore permits;
+
+    BoundedStage(String name, int capacity) {
+        this.name = name;
+        this.capacity = capacity;
+        this.permits = new Semaphore(capacity);
+    }
+
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task) {
+        permits.acquireUninterruptibly();
+        CompletableFuture<T> future;
+        try {
+            future = task.get();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        return future.whenComplete((r, e) -> permits.release());
+    }
+
+    /**
+     * @return the number of tasks queued or running in this stage
+     */
+    int depth() {
+        return capacity - permits.availablePermits();
+    }
+
+    String describe() {
+        return name + " " + depth() + "/" + capacity;
+    }
+}
@@ -0,0 +1,181 @@
+package paxel.dedup.repo.domain.repo;
+
+import lombok.extern.slf4j.Slf4j;
+import paxel.dedup.domain.model.ContentChunker;
+import paxel.dedup.domain.model.errors.DedupError;
+import paxel.dedup.domain.model.errors.ErrorType;
+import paxel.dedup.domain.port.out.FileSystem;
+import paxel.lib.Result;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The {@link ContentChunker content-defined chunks} of the large files of a repo in a binary log next to its index
+ * files.
+ * <p>
+ * The chunks are a function of the content, so they are stored by the hash of the file, not by its path: moved and
+ * copied files need no record, and records of contents that are gone are simply not asked for. A later record of a
+ * hash replaces an earlier one. {@code repo prune} copies the records of the remaining contents only.
+ */
+@Slf4j
+public class ChunkIndex {
+    public static final String FILE_NAME = "chunks.bin";
+    /**
+     * Smaller files are not chunked: they have few chunks, and whole-file duplicates are found by their hash.
+     */
+    public static final long MIN_FILE_SIZE = 1024 * 1024;
+
+    private static final int MAGIC = 0x4443484b;
+    private static final int VERSION = 1;
+
+    private final Path file;
+    private final FileSystem fileSystem;
+    private OutputStream out;
+
+    public ChunkIndex(Path file, FileSystem fileSystem) {
+        this.file = file;
+        this.fileSystem = fileSystem;
+    }
+
+    public boolean exists() {
+        return fileSystem.exists(file);
+    }
+
+    /**
+     * Appends the chunks of a content.
+     *
+     * @param chunks the sorted distinct chunks, see {@link ContentChunker#finish()}
+     */
+    public synchronized Result<Void, DedupError> add(String hash, long[] chunks) {
+        try {
+            if (out == null) {
+                boolean created = !fileSystem.exists(file);
+                out = fileSystem.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                if (created) {
+                    out.write(header());
+                }
+            }
+            // one write per record, so a crash leaves at most a truncated tail
+            out.write(record(hash, chunks));
+            return Result.ok(null);
+        } catch (IOException e) {
+            return Result.err(DedupError.of(ErrorType.WRITE, file + ": write failed", e));
+        }
+    }
+
+    /**
+     * @return the hashes of all contents with chunks, empty if the repo has no chunk index
+     */
+    public Result<Set<String>, DedupError> hashes() {
+        Set<String> hashes = new HashSet<>();
+        Result<Void, DedupError> scan = scan((hash, count, in) -> {
+            hashes.add(hash);
+            in.skipNBytes((long) count * Long.BYTES);
+        });
+        return scan.map(v -> hashes, Function.identity());
+    }
+
+    /**
+     * Streams the log once and keeps the chunks of the given contents only.
+     *
+     * @return the latest chunks by hash, empty if the repo has no chunk index
+     */
+    public Result<Map<String, long[]>, DedupError> read(Set<String> hashes) {
+        Map<String, long[]> chunks = new HashMap<>();
+        Result<Void, DedupError> scan = scan((hash, count, in) -> {
+            if (!hashes.contains(hash)) {
+                in.skipNBytes((long) count * Long.BYTES);
+                return;
+            }
+            long[] values = new long[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = in.readLong();
+            }
+            chunks.put(hash, values);
+        });
+        return scan.map(v -> chunks, Function.identity());
+    }
+
+    /**
+     * Writes the latest chunks of the given contents to another index, one record each.
+     */
+    public Result<Void, DedupError> copyTo(ChunkIndex target, Set<String> hashes) {
+        Result<Map<String, long[]>, DedupError> read = read(hashes);
+        if (read.hasFailed()) {
+            return Result.err(read.error());
+        }
+        for (Map.Entry<String, long[]> entry : read.value().entrySet()) {
+            Result<Void, DedupError> add = target.add(entry.getKey(), entry.getValue());
+            if (add.hasFailed()) {
+                return add;
+            }
+        }
+        return Result.ok(null);
+    }
+
+    private interface RecordReader {
+        /**
+         * Reads or skips the {@code count} chunks of the record.
+         */
+        void read(String hash, int count, DataInputStream in) throws IOException;
+    }
+
+    private Result<Void, DedupError> scan(RecordReader reader) {
+        if (!exists()) {
+            return Result.ok(null);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(fileSystem.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                return Result.err(DedupError.of(ErrorType.LOAD, file + ": unknown format"));
+            }
+            while (true) {
+                String hash;
+                try {
+                    hash = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                reader.read(hash, in.readInt(), in);
+            }
+        } catch (EOFException e) {
+            // a record is only used when it was read completely
+            log.debug("{}: truncated record at the end, ignored", file);
+        } catch (IOException e) {
+            return Result.err(DedupError.of(ErrorType.LOAD, file + ": read failed", e));
+        }
+        return Result.ok(null);
+    }
+
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.warn("{}: close failed", file, e);
+            }
+            out = null;
+        }
+    }
+
+    private static byte[] header() {
+        return new byte[]{(byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8), (byte) MAGIC, VERSION};
+    }
+
+    private static byte[] record(String hash, long[] chunks) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + hash.length() + chunks.length * Long.BYTES);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeUTF(hash);
+        data.writeInt(chunks.length);
+        for (long chunk : chunks) {
+            data.writeLong(chunk);
+        }
+        return bytes.toByteArray();
+    }
+}
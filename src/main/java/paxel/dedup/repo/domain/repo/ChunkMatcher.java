@@ -0,0 +1,119 @@
+package paxel.dedup.repo.domain.repo;
+
+import paxel.dedup.domain.model.ContentChunker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds files that share content by their {@link ContentChunker chunks}, without comparing every pair.
+ * <p>
+ * An inverted index from chunk to files yields the candidate pairs. To keep it small, only a sample of about
+ * {@link #SAMPLES} chunks per file is indexed: a chunk is sampled if the low bits of its hash are zero, and a larger
+ * file tests more bits. The sample of a larger file is a subset of the sample of a smaller one, so two files that share
+ * a sampled chunk of the larger file meet in a bucket. Every candidate is verified by merging the sorted chunks of both
+ * files. A small file inside a much larger one can be missed if none of the shared chunks is sampled.
+ */
+class ChunkMatcher {
+
+    /**
+     * Chunks indexed per file: all chunks of a file of up to 64 MB at the average chunk size.
+     */
+    static final int SAMPLES = 1024;
+    /**
+     * Chunks that occur in more files are zeros or padding and no evidence for a match.
+     */
+    private static final int MAX_BUCKET = 256;
+    private static final int FILE_BITS = 24;
+    private static final int LENGTH_BITS = 18;
+
+    /**
+     * Two files and the bytes of their common chunks.
+     */
+    record Shared(int a, int b, long bytes) {
+    }
+
+    /**
+     * Unites the files that share at least {@code threshold} percent of the smaller file.
+     *
+     * @param chunks the sorted distinct chunks per file, {@code null} for files without
+     * @param sizes  the size of each file
+     * @return the verified pairs, each once
+     */
+    List<Shared> match(long[][] chunks, long[] sizes, int threshold, ConcurrentUnionFind components) {
+        if (chunks.length >= 1 << FILE_BITS) {
+            throw new IllegalArgumentException(chunks.length + " files exceed the matcher");
+        }
+        LongList sampled = new LongList();
+        for (int file = 0; file < chunks.length; file++) {
+            if (chunks[file] == null) {
+                continue;
+            }
+            long rate = 1;
+            while (rate * SAMPLES < chunks[file].length) {
+                rate <<= 1;
+            }
+            for (long chunk : chunks[file]) {
+                if (((chunk >>> LENGTH_BITS) & (rate - 1)) == 0) {
+                    sampled.add((chunk >>> FILE_BITS) << FILE_BITS | file);
+                }
+            }
+        }
+        // equal chunks are runs, the low bits of the chunk (its length and some hash bits) are replaced by the file
+        long[] entries = sampled.toSortedArray();
+        LongList candidates = new LongList();
+        for (int from = 0, to; from < entries.length; from = to) {
+            to = from + 1;
+            while (to < entries.length && entries[to] >>> FILE_BITS == entries[from] >>> FILE_BITS) {
+                to++;
+            }
+            if (to - from < 2 || to - from > MAX_BUCKET) {
+                continue;
+            }
+            for (int i = from; i < to; i++) {
+                for (int j = i + 1; j < to; j++) {
+                    long a = entries[i] & ((1L << FILE_BITS) - 1);
+                    long b = entries[j] & ((1L << FILE_BITS) - 1);
+                    if (a != b) {
+                        candidates.add(Math.min(a, b) << FILE_BITS | Math.max(a, b));
+                    }
+                }
+            }
+        }
+
+        long[] pairs = candidates.toSortedArray();
+        List<Shared> shared = new ArrayList<>();
+        for (int i = 0; i < pairs.length; i++) {
+            if (i > 0 && pairs[i] == pairs[i - 1]) {
+                continue;
+            }
+            int a = (int) (pairs[i] >>> FILE_BITS);
+            int b = (int) (pairs[i] & ((1L << FILE_BITS) - 1));
+            long bytes = sharedBytes(chunks[a], chunks[b]);
+            if (bytes * 100 >= (long) threshold * Math.min(sizes[a], sizes[b])) {
+                components.union(a, b);
+                shared.add(new Shared(a, b, bytes));
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * @return the sum of the lengths of the chunks in both sorted arrays
+     */
+    long sharedBytes(long[] a, long[] b) {
+        long bytes = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                bytes += ContentChunker.length(a[i]);
+                i++;
+                j++;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,82 @@
+package paxel.dedup.repo.domain.repo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lock free union-find over the ids {@code 0..n-1}.
+ * Roots are always linked below the smaller root, so the root of a set is its smallest id and the
+ * resulting components do not depend on the order in which the pairs were merged.
+ */
+class ConcurrentUnionFind {
+
+    private final AtomicIntegerArray parent;
+
+    ConcurrentUnionFind(int size) {
+        parent = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            parent.set(i, i);
+        }
+    }
+
+    int find(int id) {
+        int current = id;
+        while (true) {
+            int p = parent.get(current);
+            if (p == current) {
+                return current;
+            }
+            int grandParent = parent.get(p);
+            if (grandParent != p) {
+                // path halving; losing the race only means the path stays a bit longer
+                parent.compareAndSet(current, p, grandParent);
+            }
+            current = grandParent;
+        }
+    }
+
+    void union(int a, int b) {
+        while (true) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB) {
+                return;
+            }
+            int low = Math.min(rootA, rootB);
+            int high = Math.max(rootA, rootB);
+            if (parent.compareAndSet(high, high, low)) {
+                return;
+            }
+            // high got linked by another thread in the meantime, retry with the new roots
+        }
+    }
+
+    /**
+     * Must only be called after all unions finished.
+     *
+     * @return the sets with more than one member, ordered by their smallest id, each with ascending ids
+     */
+    List<int[]> components() {
+        int size = parent.length();
+        int[] counts = new int[size];
+        for (int i = 0; i < size; i++) {
+            counts[find(i)]++;
+        }
+        int[][] members = new int[size][];
+        int[] filled = new int[size];
+        List<int[]> components = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            int root = find(i);
+            if (counts[root] < 2) {
+                continue;
+            }
+            if (members[root] == null) {
+                members[root] = new int[counts[root]];
+                components.add(members[root]);
+            }
+            members[root][filled[root]++] = i;
+        }
+        return components;
+    }
+}
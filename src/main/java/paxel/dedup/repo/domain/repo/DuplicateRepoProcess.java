@@ -3,6 +3,8 @@ package paxel.dedup.repo.domain.repo;
 import lombok.extern.slf4j.Slf4j;
 import paxel.dedup.application.cli.parameter.CliParameter;
 import paxel.dedup.domain.model.Dimension;
+import paxel.dedup.domain.model.ImageHash;
+import paxel.dedup.domain.model.MinHash;
 import paxel.dedup.domain.model.Repo;
 import paxel.dedup.domain.model.RepoFile;
 import paxel.dedup.domain.model.Statistics;
@@ -13,10 +15,21 @@ import paxel.dedup.infrastructure.config.DedupConfig;
 import paxel.lib.Result;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
 
 @Slf4j
 public class DuplicateRepoProcess {
 
+    /**
+     * Number of items a clustering task searches neighbours for.
+     */
+    private static final int CLUSTER_CHUNK = 1024;
+    /**
+     * Percentage of the smaller file that must be shared with {@link #byChunks} if no threshold is given.
+     */
+    public static final int DEFAULT_CHUNK_THRESHOLD = 50;
+
     public enum DupePrintMode {
         QUIET, PRINT
     }
@@ -35,6 +48,15 @@ public class DuplicateRepoProcess {
     private final String widthFilter;
     private final String heightFilter;
     private final FileSystem fileSystem;
+    private boolean byMetadata;
+    private boolean byChunks;
+    /**
+     * The most bytes each file shares with another file of its group, with {@link #byChunks}.
+     */
+    private final Map<RepoFile, Long> sharedBytes = new IdentityHashMap<>();
+    private final MinHashLsh minHashLsh = new MinHashLsh();
+    private final ChunkMatcher chunkMatcher = new ChunkMatcher();
+    private final AcousticMatcher acousticMatcher = new AcousticMatcher();
 
     public DuplicateRepoProcess(CliParameter cliParameter, List<String> names, boolean all, DedupConfig dedupConfig, Integer threshold, DupePrintMode printMode, String mdPath, String htmlPath, String movePath, boolean delete, boolean interactive) {
         this(cliParameter, names, all, dedupConfig, threshold, printMode, mdPath, htmlPath, movePath, delete, interactive, null, null, new NioFileSystemAdapter());
@@ -71,6 +93,24 @@ public class DuplicateRepoProcess {
         this(cliParameter, names, all, dedupConfig, threshold, printMode, mdPath, htmlPath, movePath, delete, interactive, widthFilter, heightFilter, new NioFileSystemAdapter());
     }
 
+    /**
+     * Groups photos and videos by their {@link RepoFile#metadataSignature()}: alone in linear time, or with a threshold
+     * as pre-filter that only compares the fingerprints of files with the same signature.
+     */
+    public DuplicateRepoProcess byMetadata(boolean byMetadata) {
+        this.byMetadata = byMetadata;
+        return this;
+    }
+
+    /**
+     * Groups large files that share content chunks, e.g. versions of a VM image or a growing log. Reads the
+     * {@link ChunkIndex} of the repos, so the files must have been indexed with chunks.
+     */
+    public DuplicateRepoProcess byChunks(boolean byChunks) {
+        this.byChunks = byChunks;
+        return this;
+    }
+
     public Result<Integer, DedupError> dupes() {
         Result<List<Repo>, DedupError> reposToProcess;
         if (all) {
@@ -95,8 +135,12 @@ public class DuplicateRepoProcess {
 
     private int dupe(List<Repo> repos) {
         List<List<RepoRepoFile>> groups;
-        if (threshold != null && threshold > 0) {
+        if (byChunks) {
+            groups = findSharedChunks(repos);
+        } else if (threshold != null && threshold > 0) {
             groups = findSimilar(repos);
+        } else if (byMetadata) {
+            groups = findSameMetadata(repos);
         } else {
             groups = findExact(repos);
         }
@@ -151,9 +195,7 @@ public class DuplicateRepoProcess {
 
     private void deleteOthers(List<List<RepoRepoFile>> groups) {
         for (List<RepoRepoFile> group : groups) {
-            // Keep the first one
-            for (int i = 1; i < group.size(); i++) {
-                RepoRepoFile rrf = group.get(i);
+            for (RepoRepoFile rrf : othersOf(group)) {
                 java.nio.file.Path absolutePath = java.nio.file.Paths.get(rrf.repo.absolutePath(), rrf.file.relativePath());
                 if (fileSystem.exists(absolutePath)) {
                     try {
@@ -180,9 +222,7 @@ public class DuplicateRepoProcess {
         }
 
         for (List<RepoRepoFile> group : groups) {
-            // Keep the first one
-            for (int i = 1; i < group.size(); i++) {
-                RepoRepoFile rrf = group.get(i);
+            for (RepoRepoFile rrf : othersOf(group)) {
                 java.nio.file.Path sourcePath = java.nio.file.Paths.get(rrf.repo.absolutePath(), rrf.file.relativePath());
                 java.nio.file.Path targetPath = targetDir.resolve(sourcePath.getFileName());
 
@@ -203,6 +243,65 @@ public class DuplicateRepoProcess {
         }
     }
 
+    /**
+     * Keeps the first loose file of a group and returns the other loose files that may be deleted or moved. Entries of
+     * archives are never removed and never kept in place of a loose file: they can't be deleted one by one, and a
+     * copy in an archive is no reason to delete the only loose copy. A similarity group is a connected component: in
+     * a chain a~b~c the file c can be far from a, so only the files that are themselves similar to the kept one are
+     * returned.
+     */
+    List<RepoRepoFile> othersOf(List<RepoRepoFile> group) {
+        List<RepoRepoFile> loose = group.stream().filter(rrf -> !rrf.file.archiveEntry()).toList();
+        if (loose.size() < 2) {
+            return List.of();
+        }
+        RepoFile kept = loose.getFirst().file;
+        List<RepoRepoFile> others = new ArrayList<>();
+        for (RepoRepoFile rrf : loose.subList(1, loose.size())) {
+            if (threshold == null || threshold == 0 || similarToKept(kept, rrf.file)) {
+                others.add(rrf);
+            } else {
+                log.info("Keeping {}: it is in the group of {}, but not similar to it", rrf.file.relativePath(), kept.relativePath());
+            }
+        }
+        return others;
+    }
+
+    /**
+     * Repeats the comparison that grouped the files, for one pair.
+     */
+    private boolean similarToKept(RepoFile kept, RepoFile other) {
+        if (Objects.equals(kept.hash(), other.hash()) && Objects.equals(kept.size(), other.size())) {
+            return true;
+        }
+        if (kept.fingerprint() != null && other.fingerprint() != null && kept.imageHash() == other.imageHash()
+                && Long.bitCount(kept.fingerprint() ^ other.fingerprint()) <= maxDistance(threshold, Long.SIZE)) {
+            return true;
+        }
+        long[] keptVideo = kept.videoFingerprint();
+        long[] otherVideo = other.videoFingerprint();
+        if (keptVideo != null && otherVideo != null && keptVideo.length > 0 && keptVideo.length == otherVideo.length
+                && distance(keptVideo, otherVideo) <= maxDistance(threshold, keptVideo.length * Long.SIZE)) {
+            return true;
+        }
+        if (kept.pdfHash() != null && !kept.pdfHash().isBlank() && kept.pdfHash().equals(other.pdfHash())) {
+            return true;
+        }
+        if (kept.textSignature() != null && other.textSignature() != null
+                && MinHash.similarity(kept.textSignature(), other.textSignature()) >= threshold / 100.0) {
+            return true;
+        }
+        if (kept.audioFingerprint() != null && other.audioFingerprint() != null) {
+            ConcurrentUnionFind pair = new ConcurrentUnionFind(2);
+            acousticMatcher.match(new int[][]{kept.audioFingerprint(), other.audioFingerprint()}, pair);
+            if (pair.find(1) == 0) {
+                return true;
+            }
+        }
+        return kept.audioHash() != null && !kept.audioHash().isBlank() && kept.audioHash().equals(other.audioHash())
+                && Math.abs(parseDuration(kept.attributes().get("duration")) - parseDuration(other.attributes().get("duration"))) <= 2.0;
+    }
+
     private void updateRepoIndex(RepoRepoFile rrf) {
         RepoManager rm = RepoManager.forRepo(rrf.repo, dedupConfig, fileSystem);
         Result<Statistics, DedupError> loadResult = rm.load();
@@ -242,10 +341,87 @@ public class DuplicateRepoProcess {
                 .toList();
     }
 
+    private List<List<RepoRepoFile>> findSameMetadata(List<Repo> repos) {
+        Map<String, List<RepoRepoFile>> all = new HashMap<>();
+
+        for (Repo repo : repos) {
+            RepoManager r = RepoManager.forRepo(repo, dedupConfig, fileSystem);
+            Result<Statistics, DedupError> load = r.load();
+            if (load.hasFailed()) {
+                return null;
+            }
+            r.stream()
+                    .filter(repoFile -> !repoFile.missing() && repoFile.metadataSignature() != null)
+                    .filter(this::matchesDimensionFilters)
+                    .forEach(repoFile -> all.computeIfAbsent(repoFile.metadataSignature(), k -> new ArrayList<>())
+                            .add(new RepoRepoFile(repo, repoFile)));
+        }
+
+        return all.values().stream()
+                .filter(group -> group.size() > 1)
+                .toList();
+    }
+
+    private List<List<RepoRepoFile>> findSharedChunks(List<Repo> repos) {
+        List<RepoRepoFile> files = new ArrayList<>();
+        List<long[]> chunks = new ArrayList<>();
+        for (Repo repo : repos) {
+            RepoManager r = RepoManager.forRepo(repo, dedupConfig, fileSystem);
+            Result<Statistics, DedupError> load = r.load();
+            if (load.hasFailed()) {
+                return null;
+            }
+            List<RepoFile> large = r.stream()
+                    .filter(rf -> !rf.missing() && rf.size() >= ChunkIndex.MIN_FILE_SIZE)
+                    .filter(this::matchesDimensionFilters)
+                    .toList();
+            Set<String> hashes = new HashSet<>();
+            large.forEach(rf -> hashes.add(rf.hash()));
+            Result<Map<String, long[]>, DedupError> read = r.getChunkIndex().read(hashes);
+            if (read.hasFailed()) {
+                log.error("{}: {}", repo.name(), read.error().describe());
+                return null;
+            }
+            for (RepoFile rf : large) {
+                long[] fileChunks = read.value().get(rf.hash());
+                if (fileChunks != null) {
+                    files.add(new RepoRepoFile(repo, rf));
+                    chunks.add(fileChunks);
+                }
+            }
+        }
+
+        // copies share all chunks: they are united by their hash, and only the first one is matched
+        ConcurrentUnionFind components = new ConcurrentUnionFind(files.size());
+        Map<String, Integer> firstByHash = new HashMap<>();
+        long[][] matched = new long[files.size()][];
+        for (int i = 0; i < files.size(); i++) {
+            RepoFile file = files.get(i).file;
+            Integer first = firstByHash.putIfAbsent(file.hash(), i);
+            if (first != null) {
+                components.union(first, i);
+                sharedBytes.put(file, file.size());
+                sharedBytes.put(files.get(first).file, file.size());
+            } else {
+                matched[i] = chunks.get(i);
+            }
+        }
+        long[] sizes = files.stream().mapToLong(f -> f.file.size()).toArray();
+        for (ChunkMatcher.Shared shared : chunkMatcher.match(matched, sizes, chunkThreshold(), components)) {
+            sharedBytes.merge(files.get(shared.a()).file, shared.bytes(), Math::max);
+            sharedBytes.merge(files.get(shared.b()).file, shared.bytes(), Math::max);
+        }
+        List<List<RepoRepoFile>> groups = toGroups(components, files);
+        if (groups.isEmpty()) {
+            log.info("No files with shared chunks found.");
+        }
+        return groups;
+    }
+
     private List<List<RepoRepoFile>> findSimilar(List<Repo> repos) {
         List<RepoRepoFile> images = new ArrayList<>();
         List<RepoRepoFile> videos = new ArrayList<>();
-        List<RepoRepoFile> pdfs = new ArrayList<>();
+        List<RepoRepoFile> documents = new ArrayList<>();
         List<RepoRepoFile> audios = new ArrayList<>();
 
         for (Repo repo : repos) {
@@ -258,16 +434,16 @@ public class DuplicateRepoProcess {
                     .filter(rf -> !rf.missing())
                     .filter(this::matchesDimensionFilters)
                     .forEach(rf -> {
-                        if (rf.fingerprint() != null && !rf.fingerprint().isBlank()) {
+                        if (rf.fingerprint() != null) {
                             images.add(new RepoRepoFile(repo, rf));
                         }
-                        if (rf.videoHash() != null && !rf.videoHash().isBlank()) {
+                        if (rf.videoFingerprint() != null && rf.videoFingerprint().length > 0) {
                             videos.add(new RepoRepoFile(repo, rf));
                         }
-                        if (rf.pdfHash() != null && !rf.pdfHash().isBlank()) {
-                            pdfs.add(new RepoRepoFile(repo, rf));
+                        if ((rf.pdfHash() != null && !rf.pdfHash().isBlank()) || rf.textSignature() != null) {
+                            documents.add(new RepoRepoFile(repo, rf));
                         }
-                        if (rf.audioHash() != null && !rf.audioHash().isBlank()) {
+                        if ((rf.audioHash() != null && !rf.audioHash().isBlank()) || rf.audioFingerprint() != null) {
                             audios.add(new RepoRepoFile(repo, rf));
                         }
                     });
@@ -275,22 +451,35 @@ public class DuplicateRepoProcess {
 
         List<List<RepoRepoFile>> groups = new ArrayList<>();
 
-        // Image Similarity (Hamming Distance)
-        if (!images.isEmpty()) {
-            groups.addAll(groupByHamming(images, 64)); // dHash is 64-bit
+        // Image Similarity (Hamming Distance), only fingerprints of the same algorithm are comparable
+        Map<ImageHash, List<RepoRepoFile>> imagesByHash = new EnumMap<>(ImageHash.class);
+        for (RepoRepoFile image : images) {
+            imagesByHash.computeIfAbsent(image.file.imageHash(), k -> new ArrayList<>()).add(image);
+        }
+        for (List<RepoRepoFile> sameHash : imagesByHash.values()) {
+            for (List<RepoRepoFile> bucket : metadataBuckets(sameHash)) {
+                groups.addAll(groupByHamming(bucket, 64)); // all image hashes are 64-bit
+            }
         }
 
-        // Video Similarity (Hamming Distance on 192-bit Temporal Hash)
-        if (!videos.isEmpty()) {
-            groups.addAll(groupByHamming(videos, 192)); // 3 * 64 bits
+        // Video Similarity (Hamming Distance on the Temporal Hash), 64 bits per sampled frame.
+        // Partial fingerprints and other frame counts have a different length and are only compared among themselves
+        Map<Integer, List<RepoRepoFile>> videosByLength = new TreeMap<>();
+        for (RepoRepoFile video : videos) {
+            videosByLength.computeIfAbsent(video.file.videoFingerprint().length, k -> new ArrayList<>()).add(video);
+        }
+        for (Map.Entry<Integer, List<RepoRepoFile>> sameLength : videosByLength.entrySet()) {
+            for (List<RepoRepoFile> bucket : metadataBuckets(sameLength.getValue())) {
+                groups.addAll(groupByHamming(bucket, sameLength.getKey() * Long.SIZE));
+            }
         }
 
-        // PDF Similarity (Exact Match of text hash)
-        if (!pdfs.isEmpty()) {
-            groups.addAll(groupByExactHash(pdfs, RepoFile::pdfHash));
+        // Document Similarity (Exact Match of the PDF text hash, or MinHash of the text)
+        if (!documents.isEmpty()) {
+            groups.addAll(groupByText(documents));
         }
 
-        // Audio Similarity (Duration + Chunk Hash)
+        // Audio Similarity (Acoustic Fingerprint, or Duration + Chunk Hash for undecodable formats)
         if (!audios.isEmpty()) {
             groups.addAll(groupByAudio(audios));
         }
@@ -302,90 +491,131 @@ public class DuplicateRepoProcess {
         return groups;
     }
 
+    /**
+     * @return all items, or with {@link #byMetadata} the items per metadata signature, without the items that have none
+     */
+    private Collection<List<RepoRepoFile>> metadataBuckets(List<RepoRepoFile> items) {
+        if (!byMetadata) {
+            return List.of(items);
+        }
+        Map<String, List<RepoRepoFile>> buckets = new HashMap<>();
+        for (RepoRepoFile item : items) {
+            if (item.file.metadataSignature() != null) {
+                buckets.computeIfAbsent(item.file.metadataSignature(), k -> new ArrayList<>()).add(item);
+            }
+        }
+        return buckets.values().stream().filter(bucket -> bucket.size() > 1).toList();
+    }
+
     private List<List<RepoRepoFile>> groupByHamming(List<RepoRepoFile> items, int bitLength) {
-        List<List<RepoRepoFile>> groups = new ArrayList<>();
-        Set<Integer> handled = new HashSet<>();
+        // extract the fingerprints once, the search only XORs and counts bits
+        long[][] fingerprints = new long[items.size()][];
         for (int i = 0; i < items.size(); i++) {
-            if (handled.contains(i)) continue;
-
-            List<RepoRepoFile> group = new ArrayList<>();
-            group.add(items.get(i));
-
-            String f1 = getRelevantFingerprint(items.get(i).file, bitLength);
-            java.math.BigInteger b1 = new java.math.BigInteger(f1, 16);
-
-            for (int j = i + 1; j < items.size(); j++) {
-                if (handled.contains(j)) continue;
-
-                String f2 = getRelevantFingerprint(items.get(j).file, bitLength);
-                java.math.BigInteger b2 = new java.math.BigInteger(f2, 16);
+            fingerprints[i] = getRelevantFingerprint(items.get(i).file, bitLength);
+        }
+        int maxDistance = maxDistance(threshold, bitLength);
+        if (maxDistance < 0) {
+            return List.of();
+        }
+        HammingIndex index = new HammingIndex(fingerprints, bitLength / Long.SIZE);
+        ConcurrentUnionFind components = new ConcurrentUnionFind(items.size());
+        // a searcher has a scratch array as large as the index, so they are reused instead of created per chunk
+        Queue<HammingIndex.Searcher> searchers = new ConcurrentLinkedQueue<>();
+        forEachChunk(items.size(), (from, to) -> {
+            HammingIndex.Searcher searcher = Objects.requireNonNullElseGet(searchers.poll(), index::searcher);
+            for (int i = from; i < to; i++) {
+                int a = i;
+                long[] f1 = fingerprints[i];
+                searcher.neighbours(i, maxDistance, j -> {
+                    if (j > a && distance(f1, fingerprints[j]) <= maxDistance) {
+                        components.union(a, j);
+                    }
+                });
+            }
+            searchers.add(searcher);
+        });
+        return toGroups(components, items);
+    }
 
-                int distance = hammingDistance(b1, b2);
-                double similarity = (1.0 - (double) distance / bitLength) * 100.0;
+    /**
+     * Runs the work for consecutive ranges of {@code 0..size-1} on all cores.
+     */
+    private void forEachChunk(int size, ChunkWork work) {
+        int chunks = (size + CLUSTER_CHUNK - 1) / CLUSTER_CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(c -> work.run(c * CLUSTER_CHUNK, Math.min(size, (c + 1) * CLUSTER_CHUNK)));
+    }
 
-                if (similarity >= threshold) {
-                    group.add(items.get(j));
-                    handled.add(j);
-                }
-            }
-            if (group.size() > 1) {
-                groups.add(group);
+    private List<List<RepoRepoFile>> toGroups(ConcurrentUnionFind components, List<RepoRepoFile> items) {
+        List<List<RepoRepoFile>> groups = new ArrayList<>();
+        for (int[] component : components.components()) {
+            List<RepoRepoFile> group = new ArrayList<>(component.length);
+            for (int id : component) {
+                group.add(items.get(id));
             }
+            groups.add(group);
         }
         return groups;
     }
 
-    private String getRelevantFingerprint(RepoFile rf, int bitLength) {
-        if (bitLength == 64) return rf.fingerprint();
-        if (bitLength == 192) {
-            String vh = rf.videoHash();
-            if (vh != null && vh.startsWith("fallback:")) {
-                return null;
-            }
-            return vh;
+    /**
+     * @return the largest number of different bits that still reaches the similarity threshold
+     */
+    static int maxDistance(int threshold, int bitLength) {
+        int distance = -1;
+        while (distance < bitLength && (1.0 - (double) (distance + 1) / bitLength) * 100.0 >= threshold) {
+            distance++;
         }
-        return null;
+        return distance;
     }
 
-    private List<List<RepoRepoFile>> groupByExactHash(List<RepoRepoFile> items, java.util.function.Function<RepoFile, String> hashExtractor) {
-        Map<String, List<RepoRepoFile>> map = new HashMap<>();
-        for (RepoRepoFile item : items) {
-            String hash = hashExtractor.apply(item.file);
-            if (hash != null) {
-                map.computeIfAbsent(hash, k -> new ArrayList<>()).add(item);
+    private long[] getRelevantFingerprint(RepoFile rf, int bitLength) {
+        if (bitLength == 64 && rf.fingerprint() != null) return new long[]{rf.fingerprint()};
+        return rf.videoFingerprint();
+    }
+
+    private List<List<RepoRepoFile>> groupByText(List<RepoRepoFile> documents) {
+        ConcurrentUnionFind components = new ConcurrentUnionFind(documents.size());
+        minHashLsh.match(documents.stream().map(d -> d.file.textSignature()).toArray(int[][]::new), threshold / 100.0, components);
+
+        // PDFs without signature, e.g. indexed by older versions, still match by the hash of their text
+        Map<String, Integer> firstByHash = new HashMap<>();
+        for (int i = 0; i < documents.size(); i++) {
+            String pdfHash = documents.get(i).file.pdfHash();
+            if (pdfHash != null && !pdfHash.isBlank()) {
+                Integer first = firstByHash.putIfAbsent(pdfHash, i);
+                if (first != null) {
+                    components.union(first, i);
+                }
             }
         }
-        return map.values().stream().filter(g -> g.size() > 1).toList();
+        return toGroups(components, documents);
     }
 
     private List<List<RepoRepoFile>> groupByAudio(List<RepoRepoFile> audios) {
-        List<List<RepoRepoFile>> groups = new ArrayList<>();
-        Set<Integer> handled = new HashSet<>();
+        ConcurrentUnionFind components = new ConcurrentUnionFind(audios.size());
+        acousticMatcher.match(audios.stream().map(a -> a.file.audioFingerprint()).toArray(int[][]::new), components);
+
+        // only files with the same chunk hash can match, so pairs are only generated within those buckets
+        Map<String, List<Integer>> buckets = new HashMap<>();
         for (int i = 0; i < audios.size(); i++) {
-            if (handled.contains(i)) continue;
-
-            List<RepoRepoFile> group = new ArrayList<>();
-            group.add(audios.get(i));
-            RepoFile r1 = audios.get(i).file;
-            double d1 = parseDuration(r1.attributes().get("duration"));
-
-            for (int j = i + 1; j < audios.size(); j++) {
-                if (handled.contains(j)) continue;
-
-                RepoFile r2 = audios.get(j).file;
-                if (Objects.equals(r1.audioHash(), r2.audioHash())) {
-                    double d2 = parseDuration(r2.attributes().get("duration"));
-                    if (Math.abs(d1 - d2) <= 2.0) { // 2s tolerance
-                        group.add(audios.get(j));
-                        handled.add(j);
+            String audioHash = audios.get(i).file.audioHash();
+            if (audioHash != null && !audioHash.isBlank()) {
+                buckets.computeIfAbsent(audioHash, k -> new ArrayList<>()).add(i);
+            }
+        }
+        double[] durations = audios.stream().mapToDouble(a -> parseDuration(a.file.attributes().get("duration"))).toArray();
+        buckets.values().parallelStream().filter(bucket -> bucket.size() > 1).forEach(bucket -> {
+            for (int i = 0; i < bucket.size(); i++) {
+                for (int j = i + 1; j < bucket.size(); j++) {
+                    int a = bucket.get(i);
+                    int b = bucket.get(j);
+                    if (Math.abs(durations[a] - durations[b]) <= 2.0) { // 2s tolerance
+                        components.union(a, b);
                     }
                 }
             }
-            if (group.size() > 1) {
-                groups.add(group);
-            }
-        }
-        return groups;
+        });
+        return toGroups(components, audios);
     }
 
     private double parseDuration(String duration) {
@@ -432,10 +662,6 @@ public class DuplicateRepoProcess {
         }
     }
 
-    private int hammingDistance(java.math.BigInteger b1, java.math.BigInteger b2) {
-        return b1.xor(b2).bitCount();
-    }
-
     private boolean matchesDimensionFilters(RepoFile rf) {
         if (widthFilter == null && heightFilter == null) return true;
         Dimension is = rf.imageSize();
@@ -445,9 +671,36 @@ public class DuplicateRepoProcess {
         return true;
     }
 
+    /**
+     * @return {@code true} if the groups are files of the same content, not of similar content or the same metadata
+     */
+    private boolean exact() {
+        return (threshold == null || threshold == 0) && !byMetadata && !byChunks;
+    }
+
+    private String similarity() {
+        if (byChunks) {
+            return "Shared chunks: " + chunkThreshold() + "%";
+        }
+        if (threshold == null || threshold == 0) {
+            return "Same Metadata";
+        }
+        if (byMetadata) {
+            return "Threshold: " + threshold + "%, Same Metadata";
+        }
+        return "Threshold: " + threshold + "%";
+    }
+
+    private int chunkThreshold() {
+        if (threshold == null || threshold == 0) {
+            return DEFAULT_CHUNK_THRESHOLD;
+        }
+        return threshold;
+    }
+
     private void printGroups(List<List<RepoRepoFile>> groups) {
         for (List<RepoRepoFile> group : groups) {
-            if (threshold != null && threshold > 0) {
+            if (!exact()) {
                 printSimilarGroup(group);
             } else {
                 printDuplicateGroup(group);
@@ -455,14 +708,48 @@ public class DuplicateRepoProcess {
         }
     }
 
+    private String formatFingerprint(RepoFile rf) {
+        if (rf.fingerprint() != null) {
+            return formatFingerprint(rf.fingerprint());
+        }
+        if (rf.videoFingerprint() != null) {
+            StringBuilder sb = new StringBuilder();
+            for (long fingerprint : rf.videoFingerprint()) {
+                sb.append(formatFingerprint(fingerprint));
+            }
+            return sb.toString();
+        }
+        return null;
+    }
+
+    private String formatFingerprint(long fingerprint) {
+        return String.format("%016x", fingerprint);
+    }
+
+    /**
+     * @return the summed distance of two fingerprints of the same length
+     */
+    private int distance(long[] a, long[] b) {
+        int distance = 0;
+        for (int i = 0; i < a.length; i++) {
+            distance += Long.bitCount(a[i] ^ b[i]);
+        }
+        return distance;
+    }
+
     private void printSimilarGroup(List<RepoRepoFile> group) {
-        log.info("Similar Group (Threshold: {}%):", threshold);
+        log.info("Similar Group ({}):", similarity());
         for (RepoRepoFile rrf : group) {
             Dimension is = rrf.file.imageSize();
             String isInfo = is != null ? ", image: " + is : "";
-            log.info(String.format("  %s: %s/%s (size: %s%s, modified: %s, fingerprint: %s)",
+            Long shared = sharedBytes.get(rrf.file);
+            String sharedInfo = "";
+            if (shared != null) {
+                sharedInfo = ", shared: " + formatSize(shared);
+            }
+            log.info(String.format("  %s: %s/%s (size: %s%s%s, modified: %s, fingerprint: %s)",
                     rrf.repo.name(), rrf.repo.absolutePath(), rrf.file.relativePath(),
-                    formatSize(rrf.file.size()), isInfo, formatDate(rrf.file.lastModified()), rrf.file.fingerprint()));
+                    formatSize(rrf.file.size()), sharedInfo, isInfo, formatDate(rrf.file.lastModified()), formatFingerprint(rrf.file)));
             if (rrf.file.attributes() != null && !rrf.file.attributes().isEmpty()) {
                 log.info("    Attributes: " + rrf.file.attributes());
             }
@@ -510,8 +797,8 @@ public class DuplicateRepoProcess {
     private void generateMarkdownReport(List<List<RepoRepoFile>> groups) {
         StringBuilder sb = new StringBuilder();
         sb.append("# Duplicate/Similar Files Report\n\n");
-        if (threshold != null && threshold > 0) {
-            sb.append("Type: Similarity (Threshold: ").append(threshold).append("%)\n\n");
+        if (!exact()) {
+            sb.append("Type: Similarity (").append(similarity()).append(")\n\n");
         } else {
             sb.append("Type: Exact Duplicates\n\n");
         }
@@ -519,7 +806,7 @@ public class DuplicateRepoProcess {
         int groupIndex = 1;
         for (List<RepoRepoFile> group : groups) {
             sb.append("## Group ").append(groupIndex++).append("\n");
-            if (threshold == null || threshold == 0) {
+            if (exact()) {
                 sb.append("Hash: `").append(group.getFirst().file.hash()).append("` (").append(formatSize(group.getFirst().file.size())).append(")\n\n");
             }
             for (RepoRepoFile rrf : group) {
@@ -527,6 +814,8 @@ public class DuplicateRepoProcess {
                 sb.append("- **Repo:** ").append(rrf.repo.name()).append("\n");
                 sb.append("  - **Path:** `").append(rrf.file.relativePath()).append("`\n");
                 sb.append("  - **Size:** ").append(formatSize(rrf.file.size())).append("\n");
+                if (sharedBytes.containsKey(rrf.file))
+                    sb.append("  - **Shared:** ").append(formatSize(sharedBytes.get(rrf.file))).append("\n");
                 if (rrf.file.imageSize() != null)
                     sb.append("  - **Image:** ").append(rrf.file.imageSize()).append("\n");
 
@@ -563,8 +852,8 @@ public class DuplicateRepoProcess {
         sb.append("code { background: #f4f4f4; padding: 2px 4px; border-radius: 3px; }\n");
         sb.append("</style>\n</head>\n<body>\n");
         sb.append("<h1>Duplicate/Similar Files Report</h1>\n");
-        if (threshold != null && threshold > 0) {
-            sb.append("<p>Type: Similarity (Threshold: ").append(threshold).append("%)</p>\n");
+        if (!exact()) {
+            sb.append("<p>Type: Similarity (").append(similarity()).append(")</p>\n");
         } else {
             sb.append("<p>Type: Exact Duplicates</p>\n");
         }
@@ -573,7 +862,7 @@ public class DuplicateRepoProcess {
         for (List<RepoRepoFile> group : groups) {
             sb.append("<div class=\"group\">\n");
             sb.append("<h2>Group ").append(groupIndex++).append("</h2>\n");
-            if (threshold == null || threshold == 0) {
+            if (exact()) {
                 sb.append("<p>Hash: <code>").append(group.getFirst().file.hash()).append("</code> (").append(formatSize(group.getFirst().file.size())).append(")</p>\n");
             }
             for (RepoRepoFile rrf : group) {
@@ -582,6 +871,8 @@ public class DuplicateRepoProcess {
                 sb.append("<strong>Repo:</strong> ").append(rrf.repo.name()).append("<br>\n");
                 sb.append("<strong>Path:</strong> <code>").append(rrf.file.relativePath()).append("</code><br>\n");
                 sb.append("<strong>Size:</strong> ").append(formatSize(rrf.file.size())).append("<br>\n");
+                if (sharedBytes.containsKey(rrf.file))
+                    sb.append("<strong>Shared:</strong> ").append(formatSize(sharedBytes.get(rrf.file))).append("<br>\n");
                 if (rrf.file.imageSize() != null)
                     sb.append("<strong>Image:</strong> ").append(rrf.file.imageSize()).append("<br>\n");
 
@@ -616,4 +907,8 @@ public class DuplicateRepoProcess {
     record RepoRepoFile(Repo repo, RepoFile file) {
 
     }
+
+    private interface ChunkWork {
+        void run(int from, int to);
+    }
 }
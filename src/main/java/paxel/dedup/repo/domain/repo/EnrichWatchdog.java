@@ -0,0 +1,205 @@
+package paxel.dedup.repo.domain.repo;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the enrichment of each file under a deadline that starts when a worker picks it up.
+ * <p>
+ * A decoder that hangs on a malformed file can't be stopped, only interrupted. At the deadline the file is completed
+ * with the fallback result instead, the worker is interrupted and abandoned and the pool gets a replacement thread,
+ * so one poisoned file neither blocks the update nor costs a worker. The pool shrinks back when the abandoned
+ * worker returns. Its decode budget stays reserved until then, as it may still hold the memory.
+ */
+@Slf4j
+class EnrichWatchdog implements AutoCloseable {
+
+    private static final int RUNNING = 0;
+    private static final int DONE = 1;
+    private static final int ABANDONED = 2;
+
+    /**
+     * @param path    the file that timed out
+     * @param timeout the deadline it exceeded
+     */
+    record TimedOut(Path path, Duration timeout) {
+    }
+
+    /**
+     * @param value     the result of the work or of the fallback
+     * @param completed {@code true} if the work finished within the deadline, {@code false} if the fallback replaced it
+     */
+    record Outcome<T>(T value, boolean completed) {
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Duration timeout;
+    private final ScheduledThreadPoolExecutor timer;
+    private final Queue<TimedOut> timedOut = new ConcurrentLinkedQueue<>();
+    private int replaced;
+
+    /**
+     * @param threads the number of workers that are not abandoned
+     * @param timeout the time a file may be enriched
+     */
+    EnrichWatchdog(int threads, Duration timeout) {
+        this.timeout = timeout;
+        // daemon threads, so that an abandoned worker doesn't keep the JVM alive
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), daemon("enrich"));
+        timer = new ScheduledThreadPoolExecutor(1, daemon("enrich-watchdog"));
+        // one deadline per file is scheduled and almost all of them are cancelled
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * @param work     the enrichment
+     * @param fallback the result if the enrichment exceeds the deadline
+     * @return the outcome of the work or of the fallback, or the exception of the work
+     */
+    <T> CompletableFuture<Outcome<T>> run(Path path, Supplier<T> work, Supplier<T> fallback) {
+        CompletableFuture<Outcome<T>> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            Thread worker = Thread.currentThread();
+            AtomicInteger state = new AtomicInteger(RUNNING);
+            ScheduledFuture<?> deadline = timer.schedule(() -> {
+                if (abandon(state, worker)) {
+                    timedOut.add(new TimedOut(path, timeout));
+                    log.warn("{}: enrichment exceeded {} ms, indexed without fingerprint", path, timeout.toMillis());
+                    completeWith(result, fallback);
+                }
+            }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+            try {
+                T value = work.get();
+                if (state.compareAndSet(RUNNING, DONE)) {
+                    result.complete(new Outcome<>(value, true));
+                }
+            } catch (RuntimeException | Error e) {
+                if (state.compareAndSet(RUNNING, DONE)) {
+                    result.completeExceptionally(e);
+                }
+            } finally {
+                if (!deadline.cancel(false)) {
+                    // the deadline is running and may still interrupt this thread
+                    awaitDeadline(deadline);
+                }
+                if (state.get() == ABANDONED) {
+                    log.info("{}: abandoned enrichment returned", path);
+                    retire();
+                }
+                // the interrupt was meant for the abandoned file, not the next one
+                Thread.interrupted();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Interrupts the worker and adds a thread for it, before anything else and under the lock of {@link #retire()},
+     * so the worker can't return in between.
+     *
+     * @return {@code true} if the work was still running and is abandoned now
+     */
+    private synchronized boolean abandon(AtomicInteger state, Thread worker) {
+        if (!state.compareAndSet(RUNNING, ABANDONED)) {
+            return false;
+        }
+        worker.interrupt();
+        replace();
+        return true;
+    }
+
+    /**
+     * Waits until a deadline that could not be cancelled has finished. The interrupt of the deadline itself doesn't end
+     * the wait.
+     */
+    private static void awaitDeadline(Future<?> deadline) {
+        while (true) {
+            try {
+                deadline.get();
+                return;
+            } catch (InterruptedException e) {
+                // cleared by the worker afterwards
+            } catch (ExecutionException | CancellationException e) {
+                return;
+            }
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static <T> void completeWith(CompletableFuture<Outcome<T>> result, Supplier<T> fallback) {
+        try {
+            result.complete(new Outcome<>(fallback.get(), false));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Adds a thread for the abandoned one.
+     */
+    private synchronized void replace() {
+        replaced++;
+        executor.setMaximumPoolSize(executor.getMaximumPoolSize() + 1);
+        executor.setCorePoolSize(executor.getCorePoolSize() + 1);
+    }
+
+    /**
+     * Removes the thread added for an abandoned worker that returned. The pool terminates the surplus thread when idle.
+     * Without a replacement there is nothing to remove.
+     */
+    private synchronized void retire() {
+        if (replaced == 0) {
+            return;
+        }
+        replaced--;
+        executor.setCorePoolSize(executor.getCorePoolSize() - 1);
+        executor.setMaximumPoolSize(executor.getMaximumPoolSize() - 1);
+    }
+
+    /**
+     * @return the files that exceeded the deadline so far
+     */
+    List<TimedOut> timedOut() {
+        return List.copyOf(timedOut);
+    }
+
+    /**
+     * @return the number of workers, including abandoned ones
+     */
+    int poolSize() {
+        return executor.getCorePoolSize();
+    }
+
+    /**
+     * Waits for the files that are being enriched. Abandoned workers are not waited for.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            // every file still running finishes or is abandoned within the timeout, abandoned workers may never return
+            if (!executor.awaitTermination(timeout.toMillis() + 1000, TimeUnit.MILLISECONDS)) {
+                log.warn("{} abandoned enrichment workers still running", executor.getActiveCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+}
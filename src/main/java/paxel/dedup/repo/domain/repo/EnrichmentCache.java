@@ -0,0 +1,213 @@
+package paxel.dedup.repo.domain.repo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import paxel.dedup.domain.model.ImageHash;
+import paxel.dedup.domain.model.RepoFile;
+import paxel.dedup.domain.model.VideoSampling;
+import paxel.dedup.domain.model.errors.DedupError;
+import paxel.dedup.domain.model.errors.ErrorType;
+import paxel.dedup.domain.port.out.FileSystem;
+import paxel.dedup.domain.port.out.LineCodec;
+import paxel.dedup.infrastructure.adapter.out.serialization.JacksonMapperLineCodec;
+import paxel.lib.Result;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The fingerprints and attributes of file contents, shared by all repos and keyed by hash and size.
+ * <p>
+ * The same photo in several repos is decoded once: the update of the next repo finds its enrichment by the hash.
+ * The entries are kept encoded in least recently used order and the oldest are evicted above the size limit.
+ * The cache is read on open and rewritten in that order on {@link #close()} if it changed, so the recency survives
+ * the run. Concurrent runs don't merge their caches, the last one closed wins.
+ */
+@Slf4j
+public class EnrichmentCache implements AutoCloseable {
+    public static final String FILE_NAME = "enrichment.cache";
+    /**
+     * Size limit in MB of the cache.
+     */
+    public static final int DEFAULT_SIZE = 256;
+
+    private record Key(String hash, long size) {
+    }
+
+    private final Path file;
+    private final long maxBytes;
+    private final FileSystem fileSystem;
+    private final LineCodec<RepoFile> lineCodec = new JacksonMapperLineCodec<>(new ObjectMapper(), RepoFile.class);
+    private final LinkedHashMap<Key, byte[]> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private long bytes;
+    private boolean changed;
+    private long hits;
+    private long misses;
+
+    private EnrichmentCache(Path file, long maxBytes, FileSystem fileSystem) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.fileSystem = fileSystem;
+    }
+
+    /**
+     * @return a cache that stores nothing
+     */
+    public static EnrichmentCache disabled() {
+        return new EnrichmentCache(null, 0, null);
+    }
+
+    /**
+     * Reads the cache file, a missing file is an empty cache.
+     *
+     * @param maxBytes the size limit of the encoded entries, 0 disables the cache
+     */
+    public static Result<EnrichmentCache, DedupError> open(Path file, long maxBytes, FileSystem fileSystem) {
+        if (maxBytes <= 0) {
+            return Result.ok(disabled());
+        }
+        EnrichmentCache cache = new EnrichmentCache(file, maxBytes, fileSystem);
+        if (!fileSystem.exists(file)) {
+            return Result.ok(cache);
+        }
+        try (BufferedReader reader = fileSystem.newBufferedReader(file)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                // hash, size and the encoded entry, so that the entries are only decoded on a hit
+                String[] parts = line.split("\t", 3);
+                if (parts.length != 3) {
+                    log.debug("{}: malformed line ignored", file);
+                    continue;
+                }
+                try {
+                    cache.store(new Key(parts[0], Long.parseLong(parts[1])), parts[2].getBytes(StandardCharsets.UTF_8));
+                } catch (NumberFormatException e) {
+                    log.debug("{}: malformed line ignored", file);
+                }
+            }
+        } catch (IOException e) {
+            return Result.err(DedupError.of(ErrorType.LOAD, file + ": could not read the enrichment cache", e));
+        }
+        cache.changed = false;
+        return Result.ok(cache);
+    }
+
+    /**
+     * @param mimeType  the mime type of the file, an entry of a file detected differently is not used
+     * @param imageHash the image fingerprint algorithm of the repo, an image entry with another one is not used
+     * @param sampling  the video frames of the repo, a video entry of other frames is not used
+     * @return the cached enrichment of the content or {@code null}
+     */
+    public synchronized RepoFile get(String hash, long size, String mimeType, ImageHash imageHash, VideoSampling sampling) {
+        if (maxBytes == 0) {
+            return null;
+        }
+        byte[] encoded = entries.get(new Key(hash, size));
+        if (encoded != null) {
+            changed = true;
+            try {
+                RepoFile cached = lineCodec.decode(ByteBuffer.wrap(encoded));
+                if (Objects.equals(cached.mimeType(), mimeType) && matches(cached, imageHash, sampling)) {
+                    hits++;
+                    return cached;
+                }
+            } catch (IOException e) {
+                log.debug("{}: entry of {} unreadable", file, hash, e);
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    private boolean matches(RepoFile cached, ImageHash imageHash, VideoSampling sampling) {
+        if (cached.fingerprint() != null && cached.imageHash() != imageHash) {
+            return false;
+        }
+        return cached.videoFingerprint() == null || cached.videoSampling().equals(sampling);
+    }
+
+    /**
+     * Stores the hash, size, mime type and enrichment of an entry. Path, timestamps and file key are not cached.
+     */
+    public synchronized void put(RepoFile enriched) {
+        if (maxBytes == 0) {
+            return;
+        }
+        RepoFile content = enriched.toBuilder()
+                .relativePath(null)
+                .lastModified(0)
+                .missing(false)
+                .fileKey(null)
+                .build();
+        try {
+            ByteBuffer encoded = lineCodec.encode(content);
+            byte[] line = new byte[encoded.remaining()];
+            encoded.get(line);
+            store(new Key(enriched.hash(), enriched.size()), line);
+        } catch (IOException e) {
+            log.debug("{}: entry of {} not encodable", file, enriched.hash(), e);
+        }
+    }
+
+    private void store(Key key, byte[] encoded) {
+        byte[] previous = entries.put(key, encoded);
+        if (previous != null) {
+            bytes -= previous.length;
+        }
+        bytes += encoded.length;
+        changed = true;
+        Iterator<byte[]> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the cache, least recently used first, if it changed.
+     */
+    @Override
+    public synchronized void close() {
+        if (maxBytes == 0 || !changed) {
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            fileSystem.createDirectories(file.getParent());
+            try (OutputStream out = new BufferedOutputStream(fileSystem.newOutputStream(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))) {
+                for (Map.Entry<Key, byte[]> entry : entries.entrySet()) {
+                    out.write((entry.getKey().hash() + "\t" + entry.getKey().size() + "\t").getBytes(StandardCharsets.UTF_8));
+                    out.write(entry.getValue());
+                    out.write('\n');
+                }
+            }
+            // a crash while writing keeps the previous cache
+            fileSystem.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            changed = false;
+        } catch (IOException e) {
+            log.warn("{}: could not write the enrichment cache", file, e);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package paxel.dedup.repo.domain.repo;
+
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Multi-index hashing for near neighbour search in Hamming space.
+ * <p>
+ * Each fingerprint is cut into 16 bit blocks and every block gets its own lookup table.
+ * If two fingerprints differ in at most {@code r} bits, then by the pigeonhole principle at least one of the
+ * {@code m} blocks differs in at most {@code r / m} bits. So a search only visits the buckets within that
+ * small radius of each block and verifies the candidates with the full distance.
+ * <p>
+ * If the radius is too large for the buckets to pay off, the search scans all fingerprints in blocks with the
+ * {@link HammingKernel}, from a copy of the fingerprints by word.
+ * <p>
+ * The index is immutable after construction. Searches run through a {@link Searcher}, one per thread.
+ */
+class HammingIndex {
+
+    static final int BLOCK_BITS = 16;
+    private static final int BLOCK_VALUES = 1 << BLOCK_BITS;
+    private static final int BLOCKS_PER_WORD = Long.SIZE / BLOCK_BITS;
+    /**
+     * Fingerprints per call of the {@link HammingKernel} in a scan.
+     */
+    private static final int SCAN_BLOCK = 1024;
+
+    private final long[][] fingerprints;
+    private final int words;
+    private final int blocks;
+    /**
+     * Per block: the ids sorted by block value and the start of each value in that array.
+     */
+    private final int[][] offsets;
+    private final int[][] ids;
+    /**
+     * Per block radius: the block masks with at most that many bits set, {@code null} if a linear scan is cheaper.
+     */
+    private final int[][] masksByRadius = new int[BLOCK_BITS + 1][];
+    /**
+     * The fingerprints by word for scans, created on the first scan.
+     */
+    private volatile long[][] columns;
+    private final HammingKernel kernel;
+
+    /**
+     * @param fingerprints the fingerprints, shorter ones are padded with zero words
+     * @param words        the number of 64 bit words per fingerprint
+     */
+    HammingIndex(long[][] fingerprints, int words) {
+        this(fingerprints, words, HammingKernel.best());
+    }
+
+    HammingIndex(long[][] fingerprints, int words, HammingKernel kernel) {
+        this.fingerprints = fingerprints;
+        this.kernel = kernel;
+        this.words = words;
+        this.blocks = words * BLOCKS_PER_WORD;
+        this.offsets = new int[blocks][];
+        this.ids = new int[blocks][];
+        for (int block = 0; block < blocks; block++) {
+            // counting sort by block value
+            int[] start = new int[BLOCK_VALUES + 1];
+            for (long[] fingerprint : fingerprints) {
+                start[blockValue(fingerprint, block) + 1]++;
+            }
+            for (int v = 0; v < BLOCK_VALUES; v++) {
+                start[v + 1] += start[v];
+            }
+            int[] next = Arrays.copyOf(start, BLOCK_VALUES);
+            int[] sorted = new int[fingerprints.length];
+            for (int id = 0; id < fingerprints.length; id++) {
+                sorted[next[blockValue(fingerprints[id], block)]++] = id;
+            }
+            offsets[block] = start;
+            ids[block] = sorted;
+        }
+        for (int radius = 0; radius <= BLOCK_BITS; radius++) {
+            int r = radius;
+            int[] masks = IntStream.range(0, BLOCK_VALUES).filter(m -> Integer.bitCount(m) <= r).toArray();
+            if ((long) masks.length * blocks >= fingerprints.length || masks.length >= BLOCK_VALUES) {
+                // probing that many buckets is more work than looking at everything
+                break;
+            }
+            masksByRadius[radius] = masks;
+        }
+    }
+
+    int size() {
+        return fingerprints.length;
+    }
+
+    /**
+     * @return a new searcher, which must only be used by one thread at a time
+     */
+    Searcher searcher() {
+        return new Searcher();
+    }
+
+    class Searcher {
+        private final int[] visited = new int[fingerprints.length];
+        private final long[] query = new long[words];
+        private final int[] distances = new int[SCAN_BLOCK];
+        private int stamp;
+
+        private void scan(int id, int maxDistance, IntConsumer consumer) {
+            long[][] byWord = columns();
+            for (int w = 0; w < words; w++) {
+                query[w] = word(fingerprints[id], w);
+            }
+            for (int from = 0; from < fingerprints.length; from += SCAN_BLOCK) {
+                int count = Math.min(SCAN_BLOCK, fingerprints.length - from);
+                kernel.distances(query, byWord, from, count, distances);
+                for (int i = 0; i < count; i++) {
+                    if (distances[i] <= maxDistance && from + i != id) {
+                        consumer.accept(from + i);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Reports every other fingerprint within {@code maxDistance} bits of fingerprint {@code id}, each once,
+         * in no particular order. Missing words of shorter fingerprints count as zero.
+         */
+        void neighbours(int id, int maxDistance, IntConsumer consumer) {
+            long[] query = fingerprints[id];
+            int blockRadius = maxDistance / blocks;
+            if (blockRadius > BLOCK_BITS || masksByRadius[blockRadius] == null) {
+                scan(id, maxDistance, consumer);
+                return;
+            }
+            int[] masks = masksByRadius[blockRadius];
+            int current = ++stamp;
+            visited[id] = current;
+            for (int block = 0; block < blocks; block++) {
+                int value = blockValue(query, block);
+                int[] start = offsets[block];
+                int[] sorted = ids[block];
+                for (int mask : masks) {
+                    int bucket = value ^ mask;
+                    for (int i = start[bucket]; i < start[bucket + 1]; i++) {
+                        int other = sorted[i];
+                        if (visited[other] != current) {
+                            visited[other] = current;
+                            if (distance(query, fingerprints[other]) <= maxDistance) {
+                                consumer.accept(other);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private long[][] columns() {
+        long[][] result = columns;
+        if (result == null) {
+            synchronized (this) {
+                result = columns;
+                if (result == null) {
+                    result = new long[words][fingerprints.length];
+                    for (int i = 0; i < fingerprints.length; i++) {
+                        for (int w = 0; w < words; w++) {
+                            result[w][i] = word(fingerprints[i], w);
+                        }
+                    }
+                    columns = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private int distance(long[] a, long[] b) {
+        int distance = 0;
+        for (int w = 0; w < words; w++) {
+            distance += Long.bitCount(word(a, w) ^ word(b, w));
+        }
+        return distance;
+    }
+
+    private static long word(long[] fingerprint, int w) {
+        if (w < fingerprint.length) {
+            return fingerprint[w];
+        }
+        return 0L;
+    }
+
+    private static int blockValue(long[] fingerprint, int block) {
+        long word = word(fingerprint, block / BLOCKS_PER_WORD);
+        return (int) (word >>> ((block % BLOCKS_PER_WORD) * BLOCK_BITS)) & (BLOCK_VALUES - 1);
+    }
+}
@@ -0,0 +1,59 @@
+package paxel.dedup.repo.domain.repo;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hamming distances from one query to a block of fingerprints at once.
+ * <p>
+ * The fingerprints are stored by word: {@code columns[w][i]} is word {@code w} of fingerprint {@code i}, so that a
+ * block of consecutive fingerprints is a block of consecutive longs per word, which SIMD lanes load in one go.
+ */
+interface HammingKernel {
+
+    /**
+     * Writes the distance of {@code query} to the fingerprints {@code from .. from + count - 1} into
+     * {@code distances[0 .. count - 1]}.
+     *
+     * @param query   the query, one long per column
+     * @param columns the fingerprints by word, all columns have the same length
+     */
+    void distances(long[] query, long[][] columns, int from, int count, int[] distances);
+
+    /**
+     * @return the vectorised kernel if it was built with the Maven profile {@code vector} and the JVM runs with
+     * {@code --add-modules jdk.incubator.vector}, else the scalar one
+     */
+    static HammingKernel best() {
+        return Selection.BEST;
+    }
+
+    /**
+     * The kernel that uses {@link Long#bitCount(long)}, which the JIT compiles to one POPCNT per word.
+     */
+    static HammingKernel scalar() {
+        return ScalarHammingKernel.INSTANCE;
+    }
+
+    @Slf4j
+    final class Selection {
+        private static final HammingKernel BEST = select();
+
+        private Selection() {
+        }
+
+        private static HammingKernel select() {
+            if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+                return scalar();
+            }
+            try {
+                // loaded by name, the class is only compiled by the vector profile and can't even be linked without
+                // the incubator module
+                return (HammingKernel) Class.forName(HammingKernel.class.getPackageName() + ".VectorHammingKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                log.debug("Vector Hamming kernel not available, using the scalar one", e);
+                return scalar();
+            }
+        }
+    }
+}
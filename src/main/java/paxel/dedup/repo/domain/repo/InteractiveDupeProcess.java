@@ -162,7 +162,7 @@ public class InteractiveDupeProcess {
                     if (isVideo) {
                         // Generate a small filmstrip preview
                         try {
-                            java.util.List<String> frames = new VideoFilmstripGenerator(fileSystem)
+                            java.util.List<String> frames = new VideoFilmstripGenerator(fileSystem, rrf.file().videoSampling())
                                     .generateBase64Filmstrip(java.nio.file.Paths.get(path));
                             if (!frames.isEmpty()) {
                                 html.append("<div class='filmstrip'>");
@@ -0,0 +1,24 @@
+package paxel.dedup.repo.domain.repo;
+
+import java.util.Arrays;
+
+/**
+ * A growing list of primitive longs, for the candidate pairs of the matchers.
+ */
+final class LongList {
+    private long[] values = new long[1024];
+    private int size;
+
+    void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    long[] toSortedArray() {
+        long[] result = Arrays.copyOf(values, size);
+        Arrays.sort(result);
+        return result;
+    }
+}
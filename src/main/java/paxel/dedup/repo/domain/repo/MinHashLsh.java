@@ -0,0 +1,100 @@
+package paxel.dedup.repo.domain.repo;
+
+import paxel.dedup.domain.model.MinHash;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Finds documents with similar {@link MinHash} signatures by locality sensitive hashing instead of comparing every pair.
+ * <p>
+ * The signatures are cut into bands of {@code rows} values. Documents with an equal band are candidates, and only the
+ * candidates are verified by their estimated similarity. Two documents of similarity {@code s} share at least one of
+ * {@code b} bands with the chance {@code 1 - (1 - s^rows)^b}, an S-curve that is steepest around {@code (1/b)^(1/rows)}.
+ * {@link #rows(double)} places that point below the threshold, so that few similar pairs are missed.
+ * <p>
+ * Copies of a document have the same signature, so equal signatures are united up front and only one of them takes
+ * part in the banding. A band that more than {@link #MAX_BUCKET} distinct signatures share is boilerplate and skipped,
+ * so that the pairs of a bucket never grow quadratic with the repo.
+ */
+class MinHashLsh {
+
+    /**
+     * Distinct signatures per bucket that are still compared pairwise.
+     */
+    private static final int MAX_BUCKET = 256;
+
+    /**
+     * Unites the documents whose signatures are at least {@code threshold} similar.
+     *
+     * @param signatures the signatures per document, {@code null} for documents without
+     * @param threshold  the similarity between 0 and 1
+     */
+    void match(int[][] signatures, double threshold, ConcurrentUnionFind components) {
+        int rows = rows(threshold);
+        // the first document of each signature represents its copies
+        int[] representatives = new int[signatures.length];
+        int distinct = 0;
+        Map<IntBuffer, Integer> firsts = new HashMap<>();
+        for (int document = 0; document < signatures.length; document++) {
+            if (signatures[document] != null) {
+                Integer first = firsts.putIfAbsent(IntBuffer.wrap(signatures[document]), document);
+                if (first == null) {
+                    representatives[distinct++] = document;
+                } else {
+                    components.union(first, document);
+                }
+            }
+        }
+        long[] entries = new long[distinct];
+        for (int from = 0; from < MinHash.SIZE; from += rows) {
+            // band hash and document, sorted so that each bucket is a run
+            for (int i = 0; i < distinct; i++) {
+                int document = representatives[i];
+                entries[i] = ((long) bandHash(signatures[document], from, rows) << 32) | document;
+            }
+            Arrays.sort(entries);
+            for (int start = 0, end; start < distinct; start = end) {
+                end = start + 1;
+                while (end < distinct && entries[end] >>> 32 == entries[start] >>> 32) {
+                    end++;
+                }
+                if (end - start > MAX_BUCKET) {
+                    continue;
+                }
+                for (int i = start; i < end; i++) {
+                    for (int j = i + 1; j < end; j++) {
+                        int a = (int) entries[i];
+                        int b = (int) entries[j];
+                        // documents that are equal in many bands are verified once
+                        if (components.find(a) != components.find(b)
+                                && MinHash.similarity(signatures[a], signatures[b]) >= threshold) {
+                            components.union(a, b);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the largest number of rows per band whose S-curve starts at least 10% below the threshold
+     */
+    int rows(double threshold) {
+        int rows = 1;
+        while (rows * 2 <= MinHash.SIZE && Math.pow((double) (rows * 2) / MinHash.SIZE, 1.0 / (rows * 2)) <= threshold * 0.9) {
+            rows *= 2;
+        }
+        return rows;
+    }
+
+    private int bandHash(int[] signature, int from, int rows) {
+        int hash = 1;
+        for (int i = from; i < Math.min(from + rows, MinHash.SIZE); i++) {
+            hash = 31 * hash + signature[i];
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,97 @@
+package paxel.dedup.repo.domain.repo;
+
+import paxel.dedup.domain.model.RepoFile;
+import paxel.dedup.domain.port.out.FileSystem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Detects files that were moved or renamed inside a repo during an update.
+ * A new path is matched against the indexed entries that were not seen yet by size and last modified.
+ * If both sides know their file key (device and inode) the keys must be equal, otherwise the file names must be.
+ * The lookup is built lazily on the first new file, so an update without new files pays nothing.
+ * Not thread safe: it is used by the walker thread only.
+ */
+class MoveDetector {
+
+    private final ReconciliationSet remaining;
+    private final FileSystem fileSystem;
+    private Map<MoveKey, List<Integer>> candidates;
+
+    MoveDetector(ReconciliationSet remaining, FileSystem fileSystem) {
+        this.remaining = remaining;
+        this.fileSystem = fileSystem;
+    }
+
+    /**
+     * Finds the not yet seen index entry the given new file was most likely moved from.
+     *
+     * @param absolutePath the new file
+     * @return the move or {@code null} if the file looks new
+     */
+    Move find(Path absolutePath) {
+        if (remaining.isEmpty()) {
+            return null;
+        }
+        long size;
+        long lastModified;
+        String fileKey;
+        try {
+            size = fileSystem.size(absolutePath);
+            lastModified = fileSystem.getLastModifiedTime(absolutePath).toMillis();
+            fileKey = fileSystem.fileKey(absolutePath);
+        } catch (IOException e) {
+            // the regular update path will report it
+            return null;
+        }
+        List<Integer> indices = getCandidates().get(new MoveKey(size, lastModified));
+        if (indices == null) {
+            return null;
+        }
+        for (int index : indices) {
+            if (remaining.isSeen(index)) {
+                continue;
+            }
+            Path path = remaining.absolutePath(index);
+            RepoFile previous = remaining.get(index);
+            if (matches(absolutePath, fileKey, path, previous)) {
+                return new Move(path, previous, fileKey);
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(Path absolutePath, String fileKey, Path previousPath, RepoFile previous) {
+        if (fileKey != null && previous.fileKey() != null) {
+            return fileKey.equals(previous.fileKey());
+        }
+        return Objects.equals(absolutePath.getFileName(), previousPath.getFileName());
+    }
+
+    private Map<MoveKey, List<Integer>> getCandidates() {
+        if (candidates == null) {
+            candidates = new HashMap<>();
+            for (int i = 0; i < remaining.size(); i++) {
+                // entries inside archives were never files of their own, and an extracted file needs its enrichment
+                if (!remaining.isSeen(i) && !remaining.get(i).archiveEntry()) {
+                    RepoFile repoFile = remaining.get(i);
+                    candidates.computeIfAbsent(new MoveKey(repoFile.size(), repoFile.lastModified()), k -> new ArrayList<>(1))
+                            .add(i);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    record Move(Path from, RepoFile previous, String fileKey) {
+    }
+
+    private record MoveKey(long size, long lastModified) {
+    }
+}
@@ -0,0 +1,43 @@
+package paxel.dedup.repo.domain.repo;
+
+import paxel.dedup.domain.model.RepoFile;
+
+import java.nio.file.Path;
+
+/**
+ * A file on its way through the update stages, after it was compared with the index.
+ *
+ * @param previous the current index entry of the path or {@code null}
+ */
+record PendingFile(Path absolutePath, String relativePath, long size, long lastModified, RepoFile previous,
+                   Change change) {
+
+    enum Change {
+        /**
+         * The file vanished before it could be processed.
+         */
+        GONE,
+        /**
+         * Size and last modified match the index.
+         */
+        UNCHANGED,
+        /**
+         * The file is unchanged but was marked missing in the index.
+         */
+        REAPPEARED,
+        /**
+         * Size and last modified match, but the image fingerprint was made with another algorithm than the repo uses:
+         * the file only has to be enriched again.
+         */
+        STALE_FINGERPRINT,
+        /**
+         * Size and last modified match, but the content has no record in the {@link ChunkIndex} yet: the file only has
+         * to be read for its chunks.
+         */
+        UNCHUNKED,
+        /**
+         * New or modified: the file has to be hashed and enriched.
+         */
+        MODIFIED
+    }
+}
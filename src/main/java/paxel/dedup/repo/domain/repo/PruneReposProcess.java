@@ -4,9 +4,11 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.DurationFormatUtils;
 import paxel.dedup.application.cli.parameter.CliParameter;
+import paxel.dedup.domain.model.ImageHash;
 import paxel.dedup.domain.model.Repo;
 import paxel.dedup.domain.model.RepoFile;
 import paxel.dedup.domain.model.Statistics;
+import paxel.dedup.domain.model.VideoSampling;
 import paxel.dedup.domain.model.errors.DedupError;
 import paxel.dedup.domain.model.errors.ErrorType;
 import paxel.dedup.infrastructure.adapter.out.filesystem.NioFileSystemAdapter;
@@ -14,7 +16,9 @@ import paxel.dedup.infrastructure.config.DedupConfig;
 import paxel.lib.Result;
 
 import java.nio.file.Paths;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @RequiredArgsConstructor
 @Slf4j
@@ -88,6 +92,18 @@ public class PruneReposProcess {
                 // Set codec on the temp repo before we start writing
                 dedupConfig.setCodec(newName, targetCodec);
             }
+            if (oldRepo.imageHash() != ImageHash.DHASH) {
+                Result<Repo, DedupError> imageHash = dedupConfig.setImageHash(newName, oldRepo.imageHash());
+                if (imageHash.hasFailed()) {
+                    return imageHash.mapError(f -> DedupError.of(ErrorType.UPDATE_REPO, f.describe(), f.exception()));
+                }
+            }
+            if (!VideoSampling.DEFAULT.equals(oldRepo.videoSampling())) {
+                Result<Repo, DedupError> videoSampling = dedupConfig.setVideoSampling(newName, oldRepo.videoSampling());
+                if (videoSampling.hasFailed()) {
+                    return videoSampling.mapError(f -> DedupError.of(ErrorType.UPDATE_REPO, f.describe(), f.exception()));
+                }
+            }
             Result<Statistics, DedupError> loadNew = streamRepo(repoManager, statistics, repo.value());
             if (loadNew.hasFailed())
                 return loadNew;
@@ -138,6 +154,21 @@ public class PruneReposProcess {
                 statistics.inc("failed");
             }
         });
+        // replaces the log of the added entries with a snapshot
+        Result<Void, DedupError> similarityIndex = temp.ensureSimilarityIndex();
+        if (similarityIndex.hasFailed()) {
+            log.warn("{}: similarity index not created, {}", newRepo.name(), similarityIndex.error().describe());
+        }
+        // the chunk index is no index file: only the chunks of contents that are still there are carried over
+        if (repoManager.getChunkIndex().exists()) {
+            Set<String> hashes = new HashSet<>();
+            repoManager.stream().filter(f -> !f.missing()).forEach(f -> hashes.add(f.hash()));
+            Result<Void, DedupError> copy = repoManager.getChunkIndex().copyTo(temp.getChunkIndex(), hashes);
+            temp.getChunkIndex().close();
+            if (copy.hasFailed()) {
+                log.warn("{}: chunk index not carried over, {}", newRepo.name(), copy.error().describe());
+            }
+        }
         return Result.ok(statistics);
     }
 }
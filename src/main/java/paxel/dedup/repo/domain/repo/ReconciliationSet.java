@@ -0,0 +1,167 @@
+package paxel.dedup.repo.domain.repo;
+
+import paxel.dedup.domain.model.ArchiveReader;
+import paxel.dedup.domain.model.RepoFile;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The live index entries of a repo and whether the current update has seen them yet.
+ * Entries that are still unseen when the walk finished were deleted.
+ * <p>
+ * Only references to the {@link RepoFile}s already held by the index are kept, sorted by relative path,
+ * plus one bit per entry. No paths are created up front, so the overhead is about 8 bytes per indexed file.
+ * Not thread safe: it is used by the walker thread only.
+ */
+class ReconciliationSet {
+
+    private static final Comparator<RepoFile> BY_PATH = Comparator.comparing(RepoFile::relativePath);
+
+    private final Path root;
+    private final RepoFile[] entries;
+    private final BitSet seen;
+    private int unseen;
+
+    private ReconciliationSet(Path root, RepoFile[] entries) {
+        this.root = root;
+        this.entries = entries;
+        this.seen = new BitSet(entries.length);
+        this.unseen = entries.length;
+    }
+
+    /**
+     * @param root    the absolute path of the repo
+     * @param entries the live (not missing) index entries
+     */
+    static ReconciliationSet of(Path root, Stream<RepoFile> entries) {
+        RepoFile[] sorted = entries.toArray(RepoFile[]::new);
+        Arrays.sort(sorted, BY_PATH);
+        return new ReconciliationSet(root, sorted);
+    }
+
+    /**
+     * @return a set without entries, used when only some paths are reconciled
+     */
+    static ReconciliationSet empty(Path root) {
+        return new ReconciliationSet(root, new RepoFile[0]);
+    }
+
+    /**
+     * Marks the entry of the given file as seen.
+     *
+     * @return the entry, or {@code null} if the file is not indexed or was already seen
+     */
+    RepoFile markSeen(Path absolutePath) {
+        int index = indexOf(absolutePath);
+        if (index < 0 || seen.get(index)) {
+            return null;
+        }
+        seen.set(index);
+        unseen--;
+        return entries[index];
+    }
+
+    /**
+     * Marks the entries inside the given archive as seen. They share the prefix {@code archive!/}, so they are a run in
+     * the sorted entries.
+     *
+     * @return the entries that were not seen yet
+     */
+    List<RepoFile> markSeenWithin(Path archive) {
+        if (entries.length == 0 || !archive.startsWith(root)) {
+            return List.of();
+        }
+        String prefix = root.relativize(archive) + ArchiveReader.SEPARATOR;
+        List<RepoFile> within = new ArrayList<>();
+        for (int index = lowerBound(prefix); index < entries.length && entries[index].relativePath().startsWith(prefix); index++) {
+            if (!seen.get(index)) {
+                seen.set(index);
+                unseen--;
+                within.add(entries[index]);
+            }
+        }
+        return within;
+    }
+
+    /**
+     * @return the number of entries not seen yet
+     */
+    int remaining() {
+        return unseen;
+    }
+
+    boolean isEmpty() {
+        return unseen == 0;
+    }
+
+    /**
+     * @return the number of all entries, seen or not
+     */
+    int size() {
+        return entries.length;
+    }
+
+    RepoFile get(int index) {
+        return entries[index];
+    }
+
+    boolean isSeen(int index) {
+        return seen.get(index);
+    }
+
+    Path absolutePath(int index) {
+        return root.resolve(entries[index].relativePath());
+    }
+
+    /**
+     * @return the entries that were not seen
+     */
+    Stream<RepoFile> unseen() {
+        return IntStream.range(0, entries.length).filter(i -> !seen.get(i)).mapToObj(i -> entries[i]);
+    }
+
+    private int indexOf(Path absolutePath) {
+        if (entries.length == 0 || !absolutePath.startsWith(root)) {
+            return -1;
+        }
+        String relative = root.relativize(absolutePath).toString();
+        int low = 0;
+        int high = entries.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = entries[mid].relativePath().compareTo(relative);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first entry that is not less than the given path
+     */
+    private int lowerBound(String relativePath) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries[mid].relativePath().compareTo(relativePath) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
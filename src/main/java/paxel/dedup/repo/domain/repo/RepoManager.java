@@ -6,6 +6,7 @@ import lombok.extern.slf4j.Slf4j;
 import paxel.dedup.domain.model.*;
 import paxel.dedup.domain.model.errors.DedupError;
 import paxel.dedup.domain.model.errors.ErrorType;
+import paxel.dedup.domain.port.out.Enricher;
 import paxel.dedup.domain.port.out.FileSystem;
 import paxel.dedup.domain.port.out.LineCodec;
 import paxel.dedup.infrastructure.adapter.out.serialization.FrameIteratorFactoryFactory;
@@ -14,6 +15,7 @@ import paxel.dedup.infrastructure.config.DedupConfig;
 import paxel.lib.Result;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
@@ -21,6 +23,8 @@ import java.nio.file.attribute.FileTime;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -34,6 +38,31 @@ public class RepoManager {
     @Getter
     private final Path repoDir;
     private final BinaryFormatter binaryFormatter = new HexFormatter();
+    private final ArchiveReader archiveReader = new ArchiveReader();
+    @Getter
+    private final SimilarityIndex similarityIndex;
+    @Getter
+    private final ChunkIndex chunkIndex;
+    /**
+     * Chunk files of at least {@link ChunkIndex#MIN_FILE_SIZE} while they are hashed.
+     */
+    private boolean indexChunks;
+    /**
+     * The contents with a record in the chunk index, while chunks are indexed.
+     */
+    private final Set<String> chunked = ConcurrentHashMap.newKeySet();
+    /**
+     * Decode budget for files added outside a staged update.
+     */
+    private static final DecodeScheduler DEFAULT_DECODE_SCHEDULER = DecodeScheduler.forHeap();
+    /**
+     * Extractors for files added outside a staged update, created on first use.
+     */
+    private Extractors extractors;
+    /**
+     * Enrichments of file contents shared with other repos.
+     */
+    private EnrichmentCache enrichmentCache = EnrichmentCache.disabled();
 
 
     public RepoManager(Repo repo, DedupConfig dedupConfig, LineCodec<RepoFile> lineCodec, FileSystem fileSystem) {
@@ -41,6 +70,8 @@ public class RepoManager {
         this.fileSystem = fileSystem;
         this.lineCodec = lineCodec;
         repoDir = dedupConfig.getRepoDir().resolve(repo.name());
+        similarityIndex = new SimilarityIndex(repoDir.resolve(SimilarityIndex.FILE_NAME), fileSystem);
+        chunkIndex = new ChunkIndex(repoDir.resolve(ChunkIndex.FILE_NAME), fileSystem);
     }
 
     /**
@@ -76,6 +107,8 @@ public class RepoManager {
             }
         }
         indices.clear();
+        similarityIndex.close();
+        chunkIndex.close();
         Statistics sum = new Statistics(repoDir.toString());
 
         for (int index = 0; index < repo.indices(); index++) {
@@ -105,6 +138,18 @@ public class RepoManager {
         return Result.ok(sum);
     }
 
+    /**
+     * Creates the {@link SimilarityIndex} from the loaded index files, if the repo has none in the current format yet.
+     * Only commands that write the repo call this, reading commands never touch the similarity index.
+     */
+    public Result<Void, DedupError> ensureSimilarityIndex() {
+        if (similarityIndex.exists()) {
+            return Result.ok(null);
+        }
+        // the newest entry of a path has to be written last
+        return similarityIndex.rebuild(stream().sorted(Comparator.comparing(RepoFile::lastModified)));
+    }
+
     public Stream<RepoFile> stream() {
         return indices.values().stream().flatMap(IndexManager::stream);
     }
@@ -140,98 +185,386 @@ public class RepoManager {
     }
 
     public Result<RepoFile, DedupError> addRepoFile(RepoFile repoFile) {
-        return indices.get((int) (repoFile.size() % repo.indices()))
+        RepoFile previous = getByPath(repoFile.relativePath());
+        Result<RepoFile, DedupError> result = indices.get((int) (repoFile.size() % repo.indices()))
                 .add(repoFile)
                 .map(f -> repoFile, Function.identity());
+        if (result.isSuccess()) {
+            // the similarity index is derived data, the entry is stored even if it can't be updated
+            Result<Void, DedupError> update = similarityIndex.update(previous, repoFile);
+            if (update.hasFailed()) {
+                log.warn("Could not update the similarity index {}", update.error().describe());
+            }
+        }
+        return result;
     }
 
     public CompletableFuture<Result<RepoFile, DedupError>> addPath(Path absolutePath, FileHasher fileHasher, MimetypeProvider mimetypeProvider) {
-        if (!fileSystem.exists(absolutePath)) {
-            return CompletableFuture.completedFuture(Result.ok(null));
+        Result<PendingFile, DedupError> statResult = stat(absolutePath);
+        if (statResult.hasFailed()) {
+            return CompletableFuture.completedFuture(Result.err(statResult.error()));
+        }
+        PendingFile pending = statResult.value();
+        switch (pending.change()) {
+            case GONE, UNCHANGED -> {
+                return CompletableFuture.completedFuture(Result.ok(null));
+            }
+            case REAPPEARED -> {
+                return CompletableFuture.completedFuture(addRepoFile(pending.previous().withMissing(false)));
+            }
+            case UNCHUNKED -> {
+                return hash(pending, fileHasher).thenApply(hashResult -> hashResult.map(hash -> (RepoFile) null, Function.identity()));
+            }
+            case STALE_FINGERPRINT -> {
+                String mimeType = mimetypeProvider.get(absolutePath).getValueOr(null);
+                return CompletableFuture.completedFuture(addRepoFile(enrich(pending, pending.previous().hash(), mimeType, DEFAULT_DECODE_SCHEDULER, extractors())));
+            }
+            default -> {
+                AtomicReference<byte[]> head = new AtomicReference<>();
+                return hash(pending, fileHasher, head::set).thenApply(hashResult -> {
+                    if (hashResult.hasFailed())
+                        return Result.err(hashResult.error());
+                    String mimeType = mimetypeProvider.get(absolutePath, head.get()).getValueOr(null);
+                    return addRepoFile(enrich(pending, hashResult.value(), mimeType, DEFAULT_DECODE_SCHEDULER, extractors()));
+                });
+            }
         }
+    }
+
+    /**
+     * First update stage: reads size and last modified of the file and compares them with the index.
+     */
+    Result<PendingFile, DedupError> stat(Path absolutePath) {
         Path relativize = Paths.get(repo.absolutePath()).relativize(absolutePath);
+        if (!fileSystem.exists(absolutePath)) {
+            return Result.ok(new PendingFile(absolutePath, relativize.toString(), 0, 0, null, PendingFile.Change.GONE));
+        }
         RepoFile oldRepoFile = getByPath(relativize.toString());
 
         Result<Long, DedupError> sizeResult = getSize(absolutePath);
         if (sizeResult.hasFailed()) {
-            return CompletableFuture.completedFuture(sizeResult.mapError(f -> DedupError.of(ErrorType.WRITE, f.describe(), f.exception())));
+            return sizeResult.mapError(f -> DedupError.of(ErrorType.WRITE, f.describe(), f.exception()));
         }
         Result<FileTime, DedupError> lastModifiedResult = getLastModifiedTime(absolutePath);
         if (lastModifiedResult.hasFailed()) {
-            return CompletableFuture.completedFuture(lastModifiedResult.mapError(f -> DedupError.of(ErrorType.WRITE, f.describe(), f.exception())));
+            return lastModifiedResult.mapError(f -> DedupError.of(ErrorType.WRITE, f.describe(), f.exception()));
         }
 
-        Long size = sizeResult.value();
-        FileTime fileTime = lastModifiedResult.value();
+        long size = sizeResult.value();
+        long lastModified = lastModifiedResult.value().toMillis();
 
-        if (oldRepoFile != null) {
-            if (Objects.equals(oldRepoFile.size(), size)) {
-                if (fileTime.toMillis() <= oldRepoFile.lastModified()) {
-                    if (!oldRepoFile.missing()) {
-                        return CompletableFuture.completedFuture(Result.ok(null));
-                    } else {
-                        // repapeared
-                        return CompletableFuture.completedFuture(addRepoFile(oldRepoFile.withMissing(false)));
-                    }
-                }
+        PendingFile.Change change = PendingFile.Change.MODIFIED;
+        if (oldRepoFile != null && Objects.equals(oldRepoFile.size(), size) && lastModified <= oldRepoFile.lastModified()) {
+            if (!oldRepoFile.missing()) {
+                change = unchanged(oldRepoFile);
+            } else {
+                // repapeared
+                change = PendingFile.Change.REAPPEARED;
             }
         }
+        return Result.ok(new PendingFile(absolutePath, relativize.toString(), size, lastModified, oldRepoFile, change));
+    }
+
+    /**
+     * @return the work left for an entry whose size and modification time are unchanged
+     */
+    private PendingFile.Change unchanged(RepoFile oldRepoFile) {
+        if (hasStaleFingerprint(oldRepoFile)) {
+            return PendingFile.Change.STALE_FINGERPRINT;
+        }
+        if (lacksChunks(oldRepoFile)) {
+            return PendingFile.Change.UNCHUNKED;
+        }
+        return PendingFile.Change.UNCHANGED;
+    }
+
+    /**
+     * @return {@code true} if the image fingerprint of the entry was calculated with another algorithm than the repo uses,
+     * or its video fingerprint of other frames
+     */
+    public boolean hasStaleFingerprint(RepoFile repoFile) {
+        if (repoFile.fingerprint() != null && repoFile.imageHash() != repo.imageHash()) {
+            return true;
+        }
+        return repoFile.videoFingerprint() != null && !repoFile.videoSampling().equals(repo.videoSampling());
+    }
+
+    /**
+     * Second update stage: hashes the content of a modified file.
+     */
+    CompletableFuture<Result<String, DedupError>> hash(PendingFile pending, FileHasher fileHasher) {
+        return hash(pending, fileHasher, head -> {
+        });
+    }
+
+    /**
+     * @param head receives the first bytes of the file for the mime detection, if the hasher keeps them
+     */
+    CompletableFuture<Result<String, DedupError>> hash(PendingFile pending, FileHasher fileHasher, Consumer<byte[]> head) {
+        if (indexChunks && pending.size() >= ChunkIndex.MIN_FILE_SIZE) {
+            return hashAndChunk(pending, fileHasher, head);
+        }
+        return calcHash(pending.absolutePath(), pending.size(), fileHasher, head).thenApply(hashResult -> {
+            if (hashResult.hasFailed())
+                return hashResult.mapError(l -> DedupError.of(ErrorType.WRITE, pending.absolutePath() + ": hashing failed", l.exception()));
+            return hashResult;
+        });
+    }
 
-        return calcHash(absolutePath, size, fileHasher).thenApply(hashResult -> {
+    private CompletableFuture<Result<String, DedupError>> hashAndChunk(PendingFile pending, FileHasher fileHasher, Consumer<byte[]> head) {
+        ContentChunker chunker = new ContentChunker();
+        return fileHasher.hash(pending.absolutePath(), head, chunker).thenApply(hashResult -> {
             if (hashResult.hasFailed())
-                return hashResult.mapError(l -> DedupError.of(ErrorType.WRITE, absolutePath + ": hashing failed", l.exception()));
-
-            String mimeType = mimetypeProvider.get(absolutePath).getValueOr(null);
-            String fingerprint = null;
-            String videoHash = null;
-            String pdfHash = null;
-            String audioHash = null;
-            Dimension imageSize = null;
-            Map<String, String> attributes = Map.of();
-            if (mimeType != null) {
-                if (mimeType.startsWith("image/")) {
-                    ImageFingerprinter.FingerprintResult fr = new ImageFingerprinter().calculate(absolutePath);
-                    fingerprint = fr.fingerprint();
-                    imageSize = fr.imageSize();
-                } else if (mimeType.startsWith("video/")) {
-                    attributes = new MetadataExtractor(fileSystem).extract(absolutePath);
-                    videoHash = new VideoFingerprinter().calculateTemporalHash(absolutePath);
-                } else if (mimeType.equals("application/pdf")) {
-                    attributes = new MetadataExtractor(fileSystem).extract(absolutePath);
-                    pdfHash = new PdfFingerprinter(fileSystem).calculatePdfHash(absolutePath);
-                } else if (mimeType.startsWith("audio/")) {
-                    attributes = new MetadataExtractor(fileSystem).extract(absolutePath);
-                    audioHash = new AudioFingerprinter(fileSystem).calculateAudioHash(absolutePath);
+                return hashResult.mapError(l -> DedupError.of(ErrorType.WRITE, pending.absolutePath() + ": hashing failed", l.exception()));
+            long[] chunks = chunker.finish();
+            if (chunks.length > 0) {
+                // the chunk index is derived data, the entry is stored even if it can't be updated
+                Result<Void, DedupError> add = chunkIndex.add(hashResult.value(), chunks);
+                if (add.hasFailed()) {
+                    log.warn("Could not update the chunk index {}", add.error().describe());
+                } else {
+                    chunked.add(hashResult.value());
                 }
             }
+            return hashResult;
+        });
+    }
+
+    /**
+     * Chunks the large files hashed from now on into the {@link ChunkIndex}. Unchanged files whose content has no
+     * chunks yet are read once more for them.
+     */
+    public Result<Void, DedupError> indexChunks(boolean indexChunks) {
+        this.indexChunks = indexChunks;
+        chunked.clear();
+        if (!indexChunks) {
+            return Result.ok(null);
+        }
+        Result<Set<String>, DedupError> hashes = chunkIndex.hashes();
+        if (hashes.hasFailed()) {
+            return Result.err(hashes.error());
+        }
+        chunked.addAll(hashes.value());
+        return Result.ok(null);
+    }
+
+    /**
+     * @return {@code true} if chunks are indexed and the content of the entry has none yet
+     */
+    public boolean lacksChunks(RepoFile repoFile) {
+        return indexChunks && !repoFile.missing() && repoFile.size() >= ChunkIndex.MIN_FILE_SIZE && !chunked.contains(repoFile.hash());
+    }
+
+    /**
+     * Third update stage: extracts fingerprints and attributes of a file with detected mime type.
+     * The result still has to be added via {@link #addRepoFile(RepoFile)}.
+     *
+     * @param extractors the fingerprinters and extractors, reused for all files
+     */
+    RepoFile enrich(PendingFile pending, String hash, String mimeType, DecodeScheduler decodeScheduler, Extractors extractors) {
+        Enricher enricher = Enrichers.installed().forMimeType(mimeType);
+        if (enricher == null) {
+            return unenriched(pending, hash, mimeType);
+        }
+        RepoFile cached = cached(pending, hash, mimeType);
+        if (cached != null) {
+            return cached;
+        }
+        RepoFile enriched = enrich(pending, hash, mimeType, enricher, enrichContext(extractors, decodeScheduler));
+        remember(enriched);
+        return enriched;
+    }
+
+    /**
+     * Extracts fingerprints and attributes of a file with known mime type.
+     *
+     * @param enricher the enricher of the mime type or {@code null} if there is none
+     */
+    RepoFile enrich(PendingFile pending, String hash, String mimeType, Enricher enricher, Enricher.Context context) {
+        RepoFile.RepoFileBuilder entry = entry(pending, hash, mimeType);
+        if (enricher == null) {
+            return entry.build();
+        }
+        enricher.enrich(pending.absolutePath(), pending.size(), context, entry);
+        return entry.build();
+    }
+
+    /**
+     * Adds a completed enrichment to the {@link EnrichmentCache}, to be reused for the same content.
+     */
+    void remember(RepoFile enriched) {
+        enrichmentCache.put(enriched);
+    }
+
+    /**
+     * The entry of a file whose content was already enriched in this or another repo, without decoding it again.
+     *
+     * @return the entry or {@code null} if the {@link EnrichmentCache} doesn't know the content
+     */
+    RepoFile cached(PendingFile pending, String hash, String mimeType) {
+        RepoFile cached = enrichmentCache.get(hash, pending.size(), mimeType, repo.imageHash(), repo.videoSampling());
+        if (cached == null) {
+            return null;
+        }
+        return entry(pending, hash, mimeType)
+                .fingerprint(cached.fingerprint())
+                .fingerprintAlgorithm(cached.fingerprintAlgorithm())
+                .imageSize(cached.imageSize())
+                .videoHash(cached.videoHash())
+                .videoFingerprint(cached.videoFingerprint())
+                .frameSampling(cached.frameSampling())
+                .pdfHash(cached.pdfHash())
+                .audioHash(cached.audioHash())
+                .audioFingerprint(cached.audioFingerprint())
+                .textSignature(cached.textSignature())
+                .metadataSignature(cached.metadataSignature())
+                .attributes(cached.attributes())
+                .build();
+    }
+
+    /**
+     * Shares the enrichments of file contents with other repos, for files added from now on.
+     */
+    public void useEnrichmentCache(EnrichmentCache enrichmentCache) {
+        this.enrichmentCache = enrichmentCache;
+    }
+
+    /**
+     * The entry of a file whose enrichment was given up: the hash and mime type, but no fingerprints or attributes.
+     */
+    RepoFile unenriched(PendingFile pending, String hash, String mimeType) {
+        return entry(pending, hash, mimeType).build();
+    }
+
+    Enricher.Context enrichContext(Extractors extractors, DecodeScheduler decodeScheduler) {
+        return new Enricher.Context(extractors, decodeScheduler, repo.imageHash(), repo.videoSampling());
+    }
+
+    private RepoFile.RepoFileBuilder entry(PendingFile pending, String hash, String mimeType) {
+        return RepoFile.builder()
+                .size(pending.size())
+                .relativePath(pending.relativePath())
+                .lastModified(pending.lastModified())
+                .hash(hash)
+                .mimeType(mimeType)
+                .attributes(Map.of())
+                .fileKey(getFileKey(pending.absolutePath()));
+    }
 
-            RepoFile repoFile = RepoFile.builder()
-                    .size(size)
-                    .relativePath(relativize.toString())
-                    .lastModified(fileTime.toMillis())
-                    .hash(hashResult.value())
-                    .mimeType(mimeType)
-                    .fingerprint(fingerprint)
-                    .videoHash(videoHash)
-                    .pdfHash(pdfHash)
-                    .audioHash(audioHash)
-                    .imageSize(imageSize)
-                    .attributes(attributes)
-                    .build();
-
-            return addRepoFile(repoFile);
+    /**
+     * Re-indexes a file that was moved inside the repo under its new path, reusing the hash, fingerprints and
+     * attributes of its previous entry. The previous path is marked missing.
+     *
+     * @param absolutePath the new location
+     * @param previous     the entry of the old location
+     * @param fileKey      the file key of the new location
+     * @param verifyHasher if not {@code null} the file is hashed to verify the move
+     * @param reindex      takes the file as {@link PendingFile.Change#MODIFIED} if the verification fails, so that it is
+     *                     hashed and enriched like any other changed file
+     */
+    public CompletableFuture<Result<RepoFile, DedupError>> addMovedPath(Path absolutePath, RepoFile previous, String fileKey, FileHasher verifyHasher,
+                                                                        Function<PendingFile, CompletableFuture<Result<RepoFile, DedupError>>> reindex) {
+        Result<RepoFile, DedupError> gone = addRepoFile(previous.withMissing(true));
+        if (gone.hasFailed()) {
+            return CompletableFuture.completedFuture(gone);
+        }
+        RepoFile moved = previous.toBuilder()
+                .relativePath(Paths.get(repo.absolutePath()).relativize(absolutePath).toString())
+                .missing(false)
+                .fileKey(fileKey)
+                .build();
+        if (verifyHasher == null) {
+            return CompletableFuture.completedFuture(addRepoFile(moved));
+        }
+        return calcHash(absolutePath, previous.size(), verifyHasher).thenCompose(hashResult -> {
+            if (hashResult.isSuccess() && Objects.equals(hashResult.value(), previous.hash())) {
+                return CompletableFuture.completedFuture(addRepoFile(moved));
+            }
+            log.debug("{}: content differs from {}, indexing as new file", absolutePath, previous.relativePath());
+            Result<PendingFile, DedupError> pending = stat(absolutePath);
+            if (pending.hasFailed()) {
+                return CompletableFuture.completedFuture(Result.err(pending.error()));
+            }
+            return reindex.apply(modified(pending.value()));
         });
     }
 
+    /**
+     * @return the file as modified, whatever size and last modified say, unless it is gone
+     */
+    private PendingFile modified(PendingFile pending) {
+        if (pending.change() == PendingFile.Change.GONE) {
+            return pending;
+        }
+        return new PendingFile(pending.absolutePath(), pending.relativePath(), pending.size(), pending.lastModified(),
+                pending.previous(), PendingFile.Change.MODIFIED);
+    }
+
+    /**
+     * Indexes the regular files inside a ZIP or TAR archive as {@code archive!/inner/path}, hashed while the archive is
+     * streamed. Nothing is extracted, and the entries are not enriched.
+     *
+     * @param previous the entries of the archive indexed before. Those the archive doesn't contain anymore are marked missing.
+     * @return the number of indexed entries
+     */
+    Result<Integer, DedupError> addArchive(Path absolutePath, List<RepoFile> previous, MimetypeProvider mimetypeProvider) {
+        ArchiveReader.Format format = archiveReader.format(absolutePath.getFileName().toString());
+        if (format == null) {
+            return Result.ok(0);
+        }
+        String archive = Paths.get(repo.absolutePath()).relativize(absolutePath).toString();
+        Set<String> indexed = new HashSet<>();
+        AtomicReference<DedupError> writeError = new AtomicReference<>();
+        try (InputStream in = fileSystem.newInputStream(absolutePath)) {
+            archiveReader.read(in, format, entry -> {
+                String relativePath = archive + ArchiveReader.SEPARATOR + entry.path();
+                Result<RepoFile, DedupError> add = addRepoFile(RepoFile.builder()
+                        .size(entry.size())
+                        .relativePath(relativePath)
+                        .lastModified(entry.lastModified())
+                        .hash(entry.hash())
+                        .mimeType(mimetypeProvider.get(Paths.get(entry.name()), entry.head()).getValueOr(null))
+                        .attributes(Map.of())
+                        .build());
+                if (add.hasFailed()) {
+                    writeError.compareAndSet(null, add.error());
+                }
+                indexed.add(relativePath);
+            });
+        } catch (IOException | RuntimeException e) {
+            // the entries read so far stay indexed, the previous ones are kept as they were
+            return Result.err(DedupError.of(ErrorType.LOAD, absolutePath + ": could not read archive: " + e, e));
+        }
+        if (writeError.get() != null) {
+            return Result.err(writeError.get());
+        }
+        for (RepoFile gone : previous) {
+            if (!indexed.contains(gone.relativePath())) {
+                Result<RepoFile, DedupError> missing = addRepoFile(gone.withMissing(true));
+                if (missing.hasFailed()) {
+                    return Result.err(missing.error());
+                }
+            }
+        }
+        return Result.ok(indexed.size());
+    }
+
     private CompletableFuture<Result<String, DedupError>> calcHash(Path absolutePath, long size, FileHasher fileHasher) {
+        return calcHash(absolutePath, size, fileHasher, head -> {
+        });
+    }
+
+    private CompletableFuture<Result<String, DedupError>> calcHash(Path absolutePath, long size, FileHasher fileHasher, Consumer<byte[]> head) {
         if (size < 20) {
             try {
-                return CompletableFuture.completedFuture(Result.ok(binaryFormatter.format(fileSystem.readAllBytes(absolutePath))));
+                byte[] content = fileSystem.readAllBytes(absolutePath);
+                head.accept(content);
+                return CompletableFuture.completedFuture(Result.ok(binaryFormatter.format(content)));
             } catch (IOException e) {
                 return CompletableFuture.completedFuture(Result.err(DedupError.of(ErrorType.LOAD, absolutePath + ": " + e, e)));
             }
         }
-        return fileHasher.hash(absolutePath);
+        return fileHasher.hash(absolutePath, head);
     }
 
     private Result<FileTime, DedupError> getLastModifiedTime(Path absolutePath) {
@@ -242,6 +575,22 @@ public class RepoManager {
         }
     }
 
+    private synchronized Extractors extractors() {
+        if (extractors == null) {
+            extractors = new Extractors(fileSystem);
+        }
+        return extractors;
+    }
+
+    private String getFileKey(Path absolutePath) {
+        try {
+            return fileSystem.fileKey(absolutePath);
+        } catch (IOException e) {
+            // optional information, only used to detect moves
+            return null;
+        }
+    }
+
     private Result<Long, DedupError> getSize(Path absolutePath) {
         try {
             return Result.ok(fileSystem.size(absolutePath));
@@ -254,6 +603,8 @@ public class RepoManager {
         for (IndexManager index : indices.values()) {
             index.close();
         }
+        similarityIndex.close();
+        chunkIndex.close();
     }
 
 }
\ No newline at end of file
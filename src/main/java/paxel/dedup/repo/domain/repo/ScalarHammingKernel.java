@@ -0,0 +1,29 @@
+package paxel.dedup.repo.domain.repo;
+
+/**
+ * The {@link HammingKernel} without the Vector API. The loop over a column has no dependencies between iterations,
+ * so the JIT unrolls it and keeps several POPCNTs in flight.
+ */
+final class ScalarHammingKernel implements HammingKernel {
+
+    static final ScalarHammingKernel INSTANCE = new ScalarHammingKernel();
+
+    private ScalarHammingKernel() {
+    }
+
+    @Override
+    public void distances(long[] query, long[][] columns, int from, int count, int[] distances) {
+        long q0 = query[0];
+        long[] c0 = columns[0];
+        for (int i = 0; i < count; i++) {
+            distances[i] = Long.bitCount(q0 ^ c0[from + i]);
+        }
+        for (int w = 1; w < columns.length; w++) {
+            long q = query[w];
+            long[] column = columns[w];
+            for (int i = 0; i < count; i++) {
+                distances[i] += Long.bitCount(q ^ column[from + i]);
+            }
+        }
+    }
+}
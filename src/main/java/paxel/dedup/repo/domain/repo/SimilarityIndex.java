@@ -0,0 +1,590 @@
+package paxel.dedup.repo.domain.repo;
+
+import lombok.extern.slf4j.Slf4j;
+import paxel.dedup.domain.model.ImageHash;
+import paxel.dedup.domain.model.RepoFile;
+import paxel.dedup.domain.model.errors.DedupError;
+import paxel.dedup.domain.model.errors.ErrorType;
+import paxel.dedup.domain.port.out.FileSystem;
+import paxel.lib.Result;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The image and video fingerprints of a repo in two binary files next to its index files.
+ * <p>
+ * The snapshot ({@value #FILE_NAME}) holds the fingerprints grouped by kind and length, and for every 16 bit block of
+ * them a table of (block value, id) sorted by value. A query maps the snapshot and only reads the buckets within the
+ * block radius, like the {@link HammingIndex}: two fingerprints within {@code r} bits share a block within
+ * {@code r / blocks} bits. If the radius is too large for that to pay off, only the fingerprints of the matching group
+ * are scanned.
+ * <p>
+ * Changes since the snapshot are appended to a log ({@value #LOG_FILE_NAME}), the last record of a path wins. A query
+ * reads the log completely, so it is merged into a new snapshot when it has more than {@link #COMPACT_RECORDS} records
+ * or a quarter of the snapshot. The snapshot is created from the index by {@code repo update} and {@code repo prune}.
+ */
+@Slf4j
+public class SimilarityIndex {
+    public static final String FILE_NAME = "similarity.bin";
+    public static final String LOG_FILE_NAME = "similarity.log";
+    /**
+     * Log records that are searched linearly before they are merged into the snapshot.
+     */
+    static final int COMPACT_RECORDS = 4096;
+
+    private static final int MAGIC = 0x4453494d;
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final int LOG_VERSION = 1;
+    private static final int BLOCK_BITS = 16;
+    private static final int BLOCK_VALUES = 1 << BLOCK_BITS;
+    private static final int BLOCKS_PER_WORD = Long.SIZE / BLOCK_BITS;
+    /**
+     * Kind, words, count and the offsets of fingerprints, path offsets, paths and block tables.
+     */
+    private static final int GROUP_HEADER = 1 + 2 + 4 + 4 * Long.BYTES;
+
+    /**
+     * The type of a record. {@link #IMAGE} is a dHash, images are only compared with images of the same algorithm.
+     */
+    public enum Kind {
+        REMOVED, IMAGE, VIDEO, IMAGE_PHASH, IMAGE_AHASH;
+
+        public static Kind image(ImageHash imageHash) {
+            return switch (imageHash) {
+                case DHASH -> IMAGE;
+                case PHASH -> IMAGE_PHASH;
+                case AHASH -> IMAGE_AHASH;
+            };
+        }
+    }
+
+    /**
+     * @param distance the number of different bits
+     * @param bits     the number of compared bits
+     */
+    public record Match(String relativePath, Kind kind, int distance, int bits) {
+        public int similarity() {
+            return (int) Math.round((1.0 - (double) distance / bits) * 100.0);
+        }
+    }
+
+    private record Entry(Kind kind, long[] fingerprint) {
+    }
+
+    private final Path file;
+    private final Path logFile;
+    private final FileSystem fileSystem;
+    private OutputStream out;
+    private int logRecords;
+
+    public SimilarityIndex(Path file, FileSystem fileSystem) {
+        this.file = file;
+        this.logFile = file.resolveSibling(LOG_FILE_NAME);
+        this.fileSystem = fileSystem;
+    }
+
+    /**
+     * @return {@code true} if the snapshot was created in the current format
+     */
+    public boolean exists() {
+        if (!fileSystem.exists(file)) {
+            return false;
+        }
+        try (InputStream in = fileSystem.newInputStream(file)) {
+            return Arrays.equals(in.readNBytes(5), header(SNAPSHOT_VERSION));
+        } catch (IOException e) {
+            log.warn("{}: could not read the header", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Replaces snapshot and log with the fingerprints of the given entries. A later entry of a path replaces an
+     * earlier one.
+     */
+    public synchronized Result<Void, DedupError> rebuild(Stream<RepoFile> repoFiles) {
+        close();
+        Map<String, Entry> entries = new HashMap<>();
+        repoFiles.forEach(repoFile -> {
+            Kind kind = kindOf(repoFile);
+            if (kind == Kind.REMOVED) {
+                entries.remove(repoFile.relativePath());
+            } else {
+                entries.put(repoFile.relativePath(), new Entry(kind, fingerprintOf(repoFile)));
+            }
+        });
+        try {
+            writeSnapshot(entries);
+            return Result.ok(null);
+        } catch (IOException e) {
+            return Result.err(DedupError.of(ErrorType.WRITE, file + ": rebuild failed", e));
+        }
+    }
+
+    /**
+     * Appends the change from {@code previous} to {@code current} to the log if it affects the fingerprint of the path.
+     *
+     * @param previous the entry that was replaced or {@code null}
+     * @param current  the new entry
+     */
+    public synchronized Result<Void, DedupError> update(RepoFile previous, RepoFile current) {
+        Kind kind = kindOf(current);
+        Kind previousKind = Kind.REMOVED;
+        if (previous != null) {
+            previousKind = kindOf(previous);
+        }
+        if (kind == previousKind && (kind == Kind.REMOVED || Arrays.equals(fingerprintOf(previous), fingerprintOf(current)))) {
+            return Result.ok(null);
+        }
+        try {
+            if (out == null) {
+                boolean created = !fileSystem.exists(logFile);
+                logRecords = 0;
+                if (!created) {
+                    logRecords = readLog(new HashMap<>());
+                }
+                out = fileSystem.newOutputStream(logFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                if (created) {
+                    out.write(header(LOG_VERSION));
+                }
+            }
+            // one write per record, so a crash leaves at most a truncated tail
+            long[] fingerprint = new long[0];
+            if (kind != Kind.REMOVED) {
+                fingerprint = fingerprintOf(current);
+            }
+            out.write(record(kind, current.relativePath(), fingerprint));
+            logRecords++;
+            return Result.ok(null);
+        } catch (IOException e) {
+            return Result.err(DedupError.of(ErrorType.WRITE, logFile + ": write failed", e));
+        }
+    }
+
+    /**
+     * Finds the entries of the same kind that reach the similarity threshold.
+     * Video fingerprints of different length count every missing frame as fully different.
+     *
+     * @param threshold the minimal similarity in percent
+     * @return the matches ordered by distance and path
+     */
+    public Result<List<Match>, DedupError> search(Kind kind, long[] fingerprint, int threshold) {
+        int maxDistance = DuplicateRepoProcess.maxDistance(threshold, Long.SIZE * fingerprint.length);
+        Map<String, Match> matches = new HashMap<>();
+        Map<String, Entry> changed = new HashMap<>();
+        try {
+            if (fileSystem.exists(logFile)) {
+                readLog(changed);
+            }
+            if (exists() && maxDistance >= 0) {
+                try (FileChannel channel = fileSystem.newFileChannel(file, StandardOpenOption.READ)) {
+                    for (Group group : readGroups(channel)) {
+                        if (group.kind != kind) {
+                            continue;
+                        }
+                        group.search(fingerprint, maxDistance, (relativePath, distance, bits) -> {
+                            // the log has the latest state of its paths
+                            if (!changed.containsKey(relativePath)) {
+                                matches.put(relativePath, new Match(relativePath, kind, distance, bits));
+                            }
+                        });
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return Result.err(DedupError.of(ErrorType.LOAD, file + ": search failed", e));
+        }
+        changed.forEach((relativePath, entry) -> {
+            if (entry.kind == kind) {
+                int distance = distance(fingerprint, entry.fingerprint);
+                if (distance <= maxDistance) {
+                    matches.put(relativePath, new Match(relativePath, kind, distance, Long.SIZE * Math.max(fingerprint.length, entry.fingerprint.length)));
+                }
+            }
+        });
+        return Result.ok(matches.values().stream()
+                .sorted(Comparator.comparingInt(Match::distance).thenComparing(Match::relativePath))
+                .toList());
+    }
+
+    /**
+     * Closes the log, and merges it into the snapshot if it grew too large during this session.
+     */
+    public synchronized void close() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.warn("{}: close failed", logFile, e);
+        }
+        out = null;
+        if (logRecords > COMPACT_RECORDS && exists()) {
+            try {
+                if (logRecords > readSnapshotSize() / 4) {
+                    compact();
+                }
+            } catch (IOException | RuntimeException e) {
+                // the log stays valid, the next session tries again
+                log.warn("{}: compaction failed", file, e);
+            }
+        }
+    }
+
+    static Kind kindOf(RepoFile repoFile) {
+        if (repoFile.missing()) {
+            return Kind.REMOVED;
+        }
+        if (repoFile.fingerprint() != null) {
+            return Kind.image(repoFile.imageHash());
+        }
+        if (repoFile.videoFingerprint() != null && repoFile.videoFingerprint().length > 0) {
+            return Kind.VIDEO;
+        }
+        return Kind.REMOVED;
+    }
+
+    private static long[] fingerprintOf(RepoFile repoFile) {
+        if (repoFile.fingerprint() != null) {
+            return new long[]{repoFile.fingerprint()};
+        }
+        return repoFile.videoFingerprint();
+    }
+
+    /**
+     * @return the summed distance of both fingerprints; missing frames on the shorter side count as fully different
+     */
+    private int distance(long[] a, long[] b) {
+        int common = Math.min(a.length, b.length);
+        int distance = 0;
+        for (int i = 0; i < common; i++) {
+            distance += Long.bitCount(a[i] ^ b[i]);
+        }
+        return distance + Long.SIZE * (Math.max(a.length, b.length) - common);
+    }
+
+    private void compact() throws IOException {
+        Map<String, Entry> entries = new HashMap<>();
+        try (FileChannel channel = fileSystem.newFileChannel(file, StandardOpenOption.READ)) {
+            for (Group group : readGroups(channel)) {
+                for (int id = 0; id < group.count; id++) {
+                    entries.put(group.path(id), new Entry(group.kind, group.fingerprint(id)));
+                }
+            }
+        }
+        Map<String, Entry> changed = new HashMap<>();
+        readLog(changed);
+        changed.forEach((relativePath, entry) -> {
+            if (entry.kind == Kind.REMOVED) {
+                entries.remove(relativePath);
+            } else {
+                entries.put(relativePath, entry);
+            }
+        });
+        writeSnapshot(entries);
+    }
+
+    /**
+     * Writes the snapshot next to the old one, replaces it and drops the log. A crash before the log is deleted only
+     * applies the same changes twice.
+     */
+    private void writeSnapshot(Map<String, Entry> entries) throws IOException {
+        // groups of the same kind and length, each ordered by path
+        TreeMap<Integer, List<String>> groups = new TreeMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            groups.computeIfAbsent(entry.getValue().kind.ordinal() << 16 | entry.getValue().fingerprint.length, k -> new ArrayList<>())
+                    .add(entry.getKey());
+        }
+        Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(fileSystem.newOutputStream(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 64 * 1024))) {
+            data.write(header(SNAPSHOT_VERSION));
+            data.writeInt(groups.size());
+            long offset = 4 + 1 + 4 + (long) groups.size() * GROUP_HEADER;
+            List<byte[][]> pathsByGroup = new ArrayList<>();
+            for (Map.Entry<Integer, List<String>> group : groups.entrySet()) {
+                List<String> paths = group.getValue();
+                Collections.sort(paths);
+                int words = group.getKey() & 0xffff;
+                byte[][] encoded = new byte[paths.size()][];
+                long pathBytes = 0;
+                for (int i = 0; i < encoded.length; i++) {
+                    encoded[i] = paths.get(i).getBytes(StandardCharsets.UTF_8);
+                    pathBytes += encoded[i].length;
+                }
+                pathsByGroup.add(encoded);
+                long fingerprints = offset;
+                long pathOffsets = fingerprints + (long) paths.size() * words * Long.BYTES;
+                long pathData = pathOffsets + (paths.size() + 1L) * Long.BYTES;
+                long tables = pathData + pathBytes;
+                data.writeByte(group.getKey() >>> 16);
+                data.writeShort(words);
+                data.writeInt(paths.size());
+                data.writeLong(fingerprints);
+                data.writeLong(pathOffsets);
+                data.writeLong(pathData);
+                data.writeLong(tables);
+                offset = tables + (long) paths.size() * words * BLOCKS_PER_WORD * Long.BYTES;
+            }
+            int index = 0;
+            for (List<String> paths : groups.values()) {
+                byte[][] encoded = pathsByGroup.get(index++);
+                long[][] fingerprints = paths.stream().map(p -> entries.get(p).fingerprint).toArray(long[][]::new);
+                for (long[] fingerprint : fingerprints) {
+                    for (long word : fingerprint) {
+                        data.writeLong(word);
+                    }
+                }
+                long pathOffset = 0;
+                data.writeLong(pathOffset);
+                for (byte[] path : encoded) {
+                    pathOffset += path.length;
+                    data.writeLong(pathOffset);
+                }
+                for (byte[] path : encoded) {
+                    data.write(path);
+                }
+                int blocks = 0;
+                if (fingerprints.length > 0) {
+                    blocks = fingerprints[0].length * BLOCKS_PER_WORD;
+                }
+                long[] table = new long[fingerprints.length];
+                for (int block = 0; block < blocks; block++) {
+                    for (int id = 0; id < fingerprints.length; id++) {
+                        table[id] = (long) blockValue(fingerprints[id], block) << 32 | id;
+                    }
+                    Arrays.sort(table);
+                    for (long key : table) {
+                        data.writeLong(key);
+                    }
+                }
+            }
+        }
+        fileSystem.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        fileSystem.deleteIfExists(logFile);
+        logRecords = 0;
+    }
+
+    private int readSnapshotSize() throws IOException {
+        try (FileChannel channel = fileSystem.newFileChannel(file, StandardOpenOption.READ)) {
+            return readGroups(channel).stream().mapToInt(group -> group.count).sum();
+        }
+    }
+
+    private static List<Group> readGroups(FileChannel channel) throws IOException {
+        ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 9));
+        if (head.remaining() < 9 || head.getInt() != MAGIC || (head.get() & 0xff) != SNAPSHOT_VERSION) {
+            throw new IOException("unknown format, run 'repo update' to recreate the similarity index");
+        }
+        int count = head.getInt();
+        ByteBuffer headers = channel.map(FileChannel.MapMode.READ_ONLY, 9, (long) count * GROUP_HEADER);
+        List<Group> groups = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            groups.add(new Group(channel, Kind.values()[headers.get()], headers.getShort() & 0xffff, headers.getInt(),
+                    headers.getLong(), headers.getLong(), headers.getLong(), headers.getLong()));
+        }
+        return groups;
+    }
+
+    /**
+     * Reads the log into the latest state per path.
+     *
+     * @return the number of records
+     */
+    private int readLog(Map<String, Entry> into) throws IOException {
+        int records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(fileSystem.newInputStream(logFile)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != LOG_VERSION) {
+                throw new IOException(logFile + ": unknown format");
+            }
+            while (true) {
+                int recordKind = in.read();
+                if (recordKind < 0) {
+                    break;
+                }
+                String relativePath = in.readUTF();
+                long[] fingerprint = new long[in.readUnsignedShort()];
+                for (int i = 0; i < fingerprint.length; i++) {
+                    fingerprint[i] = in.readLong();
+                }
+                into.put(relativePath, new Entry(Kind.values()[recordKind], fingerprint));
+                records++;
+            }
+        } catch (EOFException e) {
+            log.debug("{}: truncated record at the end, ignored", logFile);
+        }
+        return records;
+    }
+
+    private static int blockValue(long[] fingerprint, int block) {
+        return (int) (fingerprint[block / BLOCKS_PER_WORD] >>> (block % BLOCKS_PER_WORD * BLOCK_BITS)) & (BLOCK_VALUES - 1);
+    }
+
+    private static byte[] header(int version) {
+        return new byte[]{(byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8), (byte) MAGIC, (byte) version};
+    }
+
+    private static byte[] record(Kind kind, String relativePath, long[] fingerprint) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + relativePath.length());
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeByte(kind.ordinal());
+        data.writeUTF(relativePath);
+        data.writeShort(fingerprint.length);
+        for (long value : fingerprint) {
+            data.writeLong(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface MatchConsumer {
+        void accept(String relativePath, int distance, int bits);
+    }
+
+    /**
+     * The fingerprints of one kind and length in the snapshot. Its regions are mapped when they are first needed.
+     */
+    private static final class Group {
+        private final FileChannel channel;
+        private final Kind kind;
+        private final int words;
+        private final int count;
+        private final long fingerprintsOffset;
+        private final long pathOffsetsOffset;
+        private final long pathsOffset;
+        private final long tablesOffset;
+        private LongBuffer fingerprints;
+        private LongBuffer pathOffsets;
+        private ByteBuffer paths;
+
+        Group(FileChannel channel, Kind kind, int words, int count, long fingerprintsOffset, long pathOffsetsOffset, long pathsOffset, long tablesOffset) {
+            this.channel = channel;
+            this.kind = kind;
+            this.words = words;
+            this.count = count;
+            this.fingerprintsOffset = fingerprintsOffset;
+            this.pathOffsetsOffset = pathOffsetsOffset;
+            this.pathsOffset = pathsOffset;
+            this.tablesOffset = tablesOffset;
+        }
+
+        void search(long[] query, int maxDistance, MatchConsumer consumer) throws IOException {
+            int common = Math.min(words, query.length);
+            // every missing word counts as fully different
+            int budget = maxDistance - Long.SIZE * Math.abs(words - query.length);
+            if (count == 0 || budget < 0) {
+                return;
+            }
+            int bits = Long.SIZE * Math.max(words, query.length);
+            IntConsumer verify = id -> {
+                int distance = distance(query, id);
+                if (distance <= maxDistance) {
+                    consumer.accept(path(id), distance, bits);
+                }
+            };
+            int blocks = common * BLOCKS_PER_WORD;
+            int radius = budget / blocks;
+            int[] masks = null;
+            if (radius < BLOCK_BITS) {
+                masks = masks(radius);
+            }
+            if (masks == null || (long) masks.length * blocks >= count) {
+                // probing that many buckets is more work than reading the group
+                for (int id = 0; id < count; id++) {
+                    verify.accept(id);
+                }
+                return;
+            }
+            BitSet visited = new BitSet(count);
+            for (int block = 0; block < blocks; block++) {
+                LongBuffer table = map(tablesOffset + (long) block * count * Long.BYTES, (long) count * Long.BYTES).asLongBuffer();
+                int value = blockValue(query, block);
+                for (int mask : masks) {
+                    long bucket = value ^ mask;
+                    for (int i = lowerBound(table, bucket << 32); i < count && table.get(i) >>> 32 == bucket; i++) {
+                        int id = (int) table.get(i);
+                        if (!visited.get(id)) {
+                            visited.set(id);
+                            verify.accept(id);
+                        }
+                    }
+                }
+            }
+        }
+
+        long[] fingerprint(int id) {
+            long[] fingerprint = new long[words];
+            fingerprints().get(id * words, fingerprint);
+            return fingerprint;
+        }
+
+        String path(int id) {
+            if (pathOffsets == null) {
+                pathOffsets = mapUnchecked(pathOffsetsOffset, (count + 1L) * Long.BYTES).asLongBuffer();
+                paths = mapUnchecked(pathsOffset, pathOffsets.get(count));
+            }
+            int from = (int) pathOffsets.get(id);
+            byte[] bytes = new byte[(int) pathOffsets.get(id + 1) - from];
+            paths.get(from, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int distance(long[] query, int id) {
+            LongBuffer all = fingerprints();
+            int common = Math.min(words, query.length);
+            int distance = Long.SIZE * Math.abs(words - query.length);
+            for (int w = 0; w < common; w++) {
+                distance += Long.bitCount(query[w] ^ all.get(id * words + w));
+            }
+            return distance;
+        }
+
+        private LongBuffer fingerprints() {
+            if (fingerprints == null) {
+                fingerprints = mapUnchecked(fingerprintsOffset, (long) count * words * Long.BYTES).asLongBuffer();
+            }
+            return fingerprints;
+        }
+
+        private ByteBuffer map(long offset, long size) throws IOException {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        }
+
+        private ByteBuffer mapUnchecked(long offset, long size) {
+            try {
+                return map(offset, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static int lowerBound(LongBuffer table, long key) {
+            int low = 0;
+            int high = table.limit();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (table.get(mid) < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private static int[] masks(int radius) {
+            return IntStream.range(0, BLOCK_VALUES).filter(m -> Integer.bitCount(m) <= radius).toArray();
+        }
+    }
+}
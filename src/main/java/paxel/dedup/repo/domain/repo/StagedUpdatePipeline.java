@@ -0,0 +1,106 @@
+package paxel.dedup.repo.domain.repo;
+
+import lombok.RequiredArgsConstructor;
+import paxel.dedup.domain.model.FileHasher;
+import paxel.dedup.domain.model.MimetypeProvider;
+import paxel.dedup.domain.model.RepoFile;
+import paxel.dedup.domain.model.errors.DedupError;
+import paxel.dedup.domain.port.out.Enricher;
+import paxel.lib.Result;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Runs each file through the bounded {@link UpdateStages}: stat -> hash -> enrich -> index write.
+ * {@link #submit(Path)} blocks while the stat stage is full.
+ * The mime type picks the {@link Enricher} and with it the enrich stage; files without one skip enrichment.
+ */
+@RequiredArgsConstructor
+class StagedUpdatePipeline implements UpdatePipeline {
+
+    private final RepoManager repoManager;
+    private final FileHasher fileHasher;
+    private final UpdateStages stages;
+    private final MimetypeProvider mimetypeProvider = new MimetypeProvider();
+
+    @Override
+    public CompletableFuture<Result<RepoFile, DedupError>> submit(Path absolutePath) {
+        return stages.stat()
+                .submit(() -> CompletableFuture.supplyAsync(() -> repoManager.stat(absolutePath), stages.statExecutor()))
+                .thenCompose(this::afterStat);
+    }
+
+    @Override
+    public CompletableFuture<Result<RepoFile, DedupError>> submit(PendingFile pending) {
+        return afterStat(Result.ok(pending));
+    }
+
+    private CompletableFuture<Result<RepoFile, DedupError>> afterStat(Result<PendingFile, DedupError> statResult) {
+        if (statResult.hasFailed()) {
+            return CompletableFuture.completedFuture(Result.err(statResult.error()));
+        }
+        PendingFile pending = statResult.value();
+        return switch (pending.change()) {
+            case GONE, UNCHANGED -> CompletableFuture.completedFuture(Result.ok(null));
+            case REAPPEARED -> write(pending.previous().withMissing(false));
+            case STALE_FINGERPRINT -> afterHash(pending, Result.ok(pending.previous().hash()), null);
+            case UNCHUNKED -> stages.hash()
+                    .submit(() -> repoManager.hash(pending, fileHasher))
+                    .thenApply(hashResult -> hashResult.map(hash -> (RepoFile) null, Function.identity()));
+            case MODIFIED -> {
+                // the hasher keeps the first bytes, so that the mime detection doesn't open the file again
+                AtomicReference<byte[]> head = new AtomicReference<>();
+                yield stages.hash()
+                        .submit(() -> repoManager.hash(pending, fileHasher, head::set))
+                        .thenCompose(hashResult -> afterHash(pending, hashResult, head.get()));
+            }
+        };
+    }
+
+    /**
+     * @param head the first bytes of the file or {@code null} if they weren't read
+     */
+    private CompletableFuture<Result<RepoFile, DedupError>> afterHash(PendingFile pending, Result<String, DedupError> hashResult, byte[] head) {
+        if (hashResult.hasFailed()) {
+            return CompletableFuture.completedFuture(Result.err(hashResult.error()));
+        }
+        String hash = hashResult.value();
+        // detected before decoding, so that a file that times out is still indexed with its mime type
+        String mimeType = mimetypeProvider.get(pending.absolutePath(), head).getValueOr(null);
+        Enricher enricher = stages.enrichers().forMimeType(mimeType);
+        if (enricher == null) {
+            return write(repoManager.unenriched(pending, hash, mimeType));
+        }
+        // known content is not decoded again and doesn't queue behind the files of its enricher
+        RepoFile cached = repoManager.cached(pending, hash, mimeType);
+        if (cached != null) {
+            return write(cached);
+        }
+        Enricher.Context context = repoManager.enrichContext(stages.extractors(), stages.decodeScheduler());
+        UpdateStages.EnrichPool pool = stages.enrich(enricher);
+        return pool.stage()
+                .submit(() -> pool.watchdog().run(pending.absolutePath(),
+                        () -> repoManager.enrich(pending, hash, mimeType, enricher, context),
+                        () -> repoManager.unenriched(pending, hash, mimeType)))
+                .thenCompose(outcome -> {
+                    // an enrichment given up at its deadline may be incomplete and is not shared
+                    if (outcome.completed()) {
+                        repoManager.remember(outcome.value());
+                    }
+                    return write(outcome.value());
+                });
+    }
+
+    private CompletableFuture<Result<RepoFile, DedupError>> write(RepoFile repoFile) {
+        return stages.write()
+                .submit(() -> CompletableFuture.supplyAsync(() -> repoManager.addRepoFile(repoFile), stages.writeExecutor()));
+    }
+
+    @Override
+    public String describeQueues() {
+        return stages.describe();
+    }
+}
@@ -0,0 +1,44 @@
+package paxel.dedup.repo.domain.repo;
+
+import lombok.Builder;
+import lombok.With;
+import paxel.dedup.domain.model.VideoFrameSampler;
+import paxel.dedup.domain.model.VideoSampling;
+
+import java.time.Duration;
+
+/**
+ * How {@code repo update} indexes the files of a repo. Start from {@link #DEFAULTS} and change what differs.
+ *
+ * @param refreshFingerprints recalculate the fingerprints of unchanged files made with another algorithm
+ * @param fromList            optional list of changed paths ({@code -} for stdin). If set, no directory walk happens
+ * @param verifyMoves         hash files detected as moved anyway, to verify they still have the content of their
+ *                            previous location
+ * @param parallelRepos       maximum number of repos that are walked at the same time
+ * @param decodeMemory        memory budget in MB for decoding images, video frames and PDFs. 0 uses a quarter of the
+ *                            max heap
+ * @param videoBudget         the decoding time per video, a slower video keeps a partial fingerprint. The frames are
+ *                            the {@link VideoSampling} of each repo
+ * @param enrichTimeout       files whose fingerprints and attributes take longer are indexed with their hash only
+ * @param enrichmentCacheSize size limit in MB of the {@link EnrichmentCache} shared by all repos. 0 disables the cache
+ * @param archives            index the files inside ZIP and TAR archives as {@code archive!/inner/path}, too
+ * @param chunks              chunk the files of at least {@link ChunkIndex#MIN_FILE_SIZE} into the {@link ChunkIndex}
+ *                            of the repo
+ */
+@Builder(toBuilder = true)
+@With
+public record UpdateOptions(
+        boolean refreshFingerprints,
+        String fromList,
+        boolean verifyMoves,
+        int parallelRepos,
+        long decodeMemory,
+        Duration videoBudget,
+        Duration enrichTimeout,
+        long enrichmentCacheSize,
+        boolean archives,
+        boolean chunks
+) {
+    public static final UpdateOptions DEFAULTS = new UpdateOptions(false, null, false, UpdateReposProcess.DEFAULT_PARALLEL_REPOS, 0,
+            VideoFrameSampler.DEFAULT_BUDGET, Duration.ofSeconds(UpdateReposProcess.DEFAULT_ENRICH_TIMEOUT), 0, false, false);
+}
@@ -0,0 +1,45 @@
+package paxel.dedup.repo.domain.repo;
+
+import paxel.dedup.domain.model.FileHasher;
+import paxel.dedup.domain.model.MimetypeProvider;
+import paxel.dedup.domain.model.RepoFile;
+import paxel.dedup.domain.model.errors.DedupError;
+import paxel.lib.Result;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Takes the files found by the walker and brings them into the index.
+ */
+interface UpdatePipeline {
+
+    /**
+     * @return the added {@link RepoFile} or {@code null} if nothing changed
+     */
+    CompletableFuture<Result<RepoFile, DedupError>> submit(Path absolutePath);
+
+    /**
+     * Takes a file that was already compared with the index past the stat stage.
+     *
+     * @return the added {@link RepoFile} or {@code null} if nothing changed
+     */
+    default CompletableFuture<Result<RepoFile, DedupError>> submit(PendingFile pending) {
+        return submit(pending.absolutePath());
+    }
+
+    /**
+     * @return a short description of the current queue depths, or an empty string if there are no queues
+     */
+    default String describeQueues() {
+        return "";
+    }
+
+    /**
+     * Unbounded pipeline that processes each file with {@link RepoManager#addPath(Path, FileHasher, MimetypeProvider)}.
+     */
+    static UpdatePipeline direct(RepoManager repoManager, FileHasher fileHasher) {
+        MimetypeProvider mimetypeProvider = new MimetypeProvider();
+        return absolutePath -> repoManager.addPath(absolutePath, fileHasher, mimetypeProvider);
+    }
+}
@@ -7,22 +7,27 @@ import paxel.dedup.terminal.StatisticPrinter;
 import paxel.lib.Result;
 
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 class UpdateProgressPrinter implements FileObserver {
+    private static final Duration CLOSE_STATUS_INTERVAL = Duration.ofSeconds(10);
+
     private final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("HH:mm:ss (dd.MM.yyyy)");
 
     private final BetterPrediction betterPrediction;
-    private final Map<Path, RepoFile> remainingPaths;
+    private final ReconciliationSet remaining;
     private final StatisticPrinter progressPrinter;
     private final AtomicLong files = new AtomicLong();
     private final RepoManager repoManager;
@@ -34,23 +39,49 @@ class UpdateProgressPrinter implements FileObserver {
     private final AtomicLong hash = new AtomicLong();
     private final AtomicLong unchanged = new AtomicLong();
     private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong missing = new AtomicLong();
     private final AtomicReference<Throwable> firstError = new AtomicReference<>();
     private final Instant start;
     private final AtomicBoolean scanFinished = new AtomicBoolean();
     private final Clock clock;
     private final boolean refreshFingerprints;
-    private final List<CompletableFuture<?>> futures = Collections.synchronizedList(new ArrayList<>());
+    private final MoveDetector moveDetector;
+    private final boolean verifyMoves;
+    private final AtomicLong moved = new AtomicLong();
+    private final UpdatePipeline pipeline;
+    private final ArchiveIndexer archiveIndexer;
+    private final ArchiveReader archiveReader = new ArchiveReader();
+    private final AtomicLong archiveEntries = new AtomicLong();
+    private final Set<CompletableFuture<?>> futures = ConcurrentHashMap.newKeySet();
 
-    public UpdateProgressPrinter(Map<Path, RepoFile> remainingPaths, StatisticPrinter progressPrinter,
+    public UpdateProgressPrinter(ReconciliationSet remaining, StatisticPrinter progressPrinter,
                                  RepoManager repoManager, Statistics statistics, FileHasher fileHasher,
                                  boolean refreshFingerprints) {
-        this(remainingPaths, progressPrinter, repoManager, statistics, fileHasher, Clock.systemUTC(), refreshFingerprints);
+        this(remaining, progressPrinter, repoManager, statistics, fileHasher, Clock.systemUTC(), refreshFingerprints);
     }
 
-    public UpdateProgressPrinter(Map<Path, RepoFile> remainingPaths, StatisticPrinter progressPrinter,
+    public UpdateProgressPrinter(ReconciliationSet remaining, StatisticPrinter progressPrinter,
                                  RepoManager repoManager, Statistics statistics, FileHasher fileHasher,
                                  Clock clock, boolean refreshFingerprints) {
-        this.remainingPaths = remainingPaths;
+        this(remaining, progressPrinter, repoManager, statistics, fileHasher, clock, UpdateOptions.DEFAULTS.withRefreshFingerprints(refreshFingerprints),
+                null, UpdatePipeline.direct(repoManager, fileHasher), null);
+    }
+
+    /**
+     * @param options        {@link UpdateOptions#refreshFingerprints()} and {@link UpdateOptions#verifyMoves()} apply here
+     * @param moveDetector   if not {@code null} new files are matched against unseen index entries to reuse their hashes
+     * @param pipeline       processes new and changed files. {@link UpdatePipeline#submit(Path)} may block to apply backpressure
+     * @param archiveIndexer if not {@code null} the entries of new archives are indexed, too
+     */
+    public UpdateProgressPrinter(ReconciliationSet remaining, StatisticPrinter progressPrinter,
+                                 RepoManager repoManager, Statistics statistics, FileHasher fileHasher,
+                                 Clock clock, UpdateOptions options, MoveDetector moveDetector,
+                                 UpdatePipeline pipeline, ArchiveIndexer archiveIndexer) {
+        this.pipeline = pipeline;
+        this.archiveIndexer = archiveIndexer;
+        this.moveDetector = moveDetector;
+        this.verifyMoves = options.verifyMoves();
+        this.remaining = remaining;
         this.progressPrinter = progressPrinter;
         this.repoManager = repoManager;
         this.statistics = statistics;
@@ -58,15 +89,21 @@ class UpdateProgressPrinter implements FileObserver {
         this.clock = clock;
         this.start = clock.instant();
         this.betterPrediction = new BetterPrediction(clock);
-        this.refreshFingerprints = refreshFingerprints;
+        this.refreshFingerprints = options.refreshFingerprints();
     }
 
     @Override
     public void file(Path absolutePath) {
-        RepoFile existing = remainingPaths.remove(absolutePath);
+        RepoFile existing = remaining.markSeen(absolutePath);
+        boolean archiveChanged = false;
+        if (archiveIndexer != null && archiveReader.format(absolutePath.getFileName().toString()) != null) {
+            // unlike loose files, a known archive is checked for changes: its entries would stay stale otherwise
+            archiveChanged = existing != null && archiveModified(absolutePath);
+            indexArchive(absolutePath, existing == null || archiveChanged);
+        }
         long currentFiles = files.incrementAndGet();
         progressPrinter.setFiles(currentFiles + " last: " + absolutePath);
-        progressPrinter.setDeleted("" + remainingPaths.size());
+        progressPrinter.setDeleted("" + remaining.remaining());
 
         if (!scanFinished.get()) {
             progressPrinter.setProgress("Scanning... Found " + currentFiles + " files and " + allDirs.get() + " directories");
@@ -75,7 +112,9 @@ class UpdateProgressPrinter implements FileObserver {
             calcUpdate(start, progressPrinter, betterPrediction, files.get(), hash.get() + unchanged.get());
         }
 
-        boolean forceUpdate = false;
+        // entries fingerprinted with another algorithm than the repo uses are refreshed in any case,
+        // large files are read once more for the chunk index if they were indexed without
+        boolean forceUpdate = existing != null && (archiveChanged || repoManager.hasStaleFingerprint(existing) || repoManager.lacksChunks(existing));
         if (refreshFingerprints && existing != null) {
             if (existing.mimeType() != null && existing.mimeType().startsWith("image/")) {
                 if (existing.fingerprint() == null) {
@@ -89,8 +128,19 @@ class UpdateProgressPrinter implements FileObserver {
             existing = null;
         }
 
+        if (existing == null && !forceUpdate && moveDetector != null) {
+            MoveDetector.Move move = moveDetector.find(absolutePath);
+            if (move != null) {
+                remaining.markSeen(move.from());
+                progressPrinter.setDeleted("" + remaining.remaining());
+                trackMove(absolutePath, move, repoManager.addMovedPath(absolutePath, move.previous(), move.fileKey(),
+                        verifyHasher(), pipeline::submit));
+                return;
+            }
+        }
+
         if (existing == null) {
-            CompletableFuture<Result<RepoFile, DedupError>> future = repoManager.addPath(absolutePath, fileHasher, new MimetypeProvider());
+            CompletableFuture<Result<RepoFile, DedupError>> future = pipeline.submit(absolutePath);
             futures.add(future);
             future.thenAccept(add -> {
                 betterPrediction.trigger();
@@ -119,7 +169,7 @@ class UpdateProgressPrinter implements FileObserver {
             });
             news.incrementAndGet();
         } else {
-            // Already handled via remainingPaths.remove(absolutePath) but we should count it as unchanged/processed
+            // Already handled via remaining.markSeen(absolutePath) but we should count it as unchanged/processed
             unchanged.incrementAndGet();
             statistics.inc("unchanged");
             logHash(progressPrinter, hash, files, unchanged);
@@ -127,9 +177,93 @@ class UpdateProgressPrinter implements FileObserver {
         }
     }
 
+    /**
+     * The entries of an archive are reindexed if the archive is new or changed, or if they were never indexed.
+     */
+    private void indexArchive(Path absolutePath, boolean changed) {
+        List<RepoFile> previous = remaining.markSeenWithin(absolutePath);
+        if (!changed && !previous.isEmpty()) {
+            return;
+        }
+        CompletableFuture<Result<Integer, DedupError>> future = archiveIndexer.submit(absolutePath, previous);
+        futures.add(future);
+        future.thenAccept(indexed -> {
+            if (indexed.isSuccess()) {
+                statistics.set("archive entries", archiveEntries.addAndGet(indexed.value()));
+            } else {
+                fail(absolutePath, new IllegalStateException(indexed.error().describe(), indexed.error().exception()));
+            }
+        }).whenComplete((r, e) -> {
+            if (e != null) {
+                fail(absolutePath, e);
+            }
+            futures.remove(future);
+        });
+    }
+
+    /**
+     * @return {@code true} if size or last modified of the archive differ from its entry, or it can't be read
+     */
+    private boolean archiveModified(Path absolutePath) {
+        Result<PendingFile, DedupError> stat = repoManager.stat(absolutePath);
+        return stat.hasFailed() || stat.value().change() == PendingFile.Change.MODIFIED;
+    }
+
+    private FileHasher verifyHasher() {
+        if (verifyMoves) {
+            return fileHasher;
+        }
+        return null;
+    }
+
+    private void trackMove(Path absolutePath, MoveDetector.Move move, CompletableFuture<Result<RepoFile, DedupError>> future) {
+        futures.add(future);
+        future.thenAccept(add -> {
+            betterPrediction.trigger();
+            if (add.hasFailed()) {
+                fail(absolutePath, add.error().exception());
+                return;
+            }
+            if (add.value() != null && !Objects.equals(add.value().hash(), move.previous().hash())) {
+                // verification failed, it was indexed as a new file
+                statistics.inc("added");
+                hash.incrementAndGet();
+            } else {
+                statistics.inc("moved");
+                progressPrinter.setMoved("" + moved.incrementAndGet());
+                unchanged.incrementAndGet();
+            }
+            logHash(progressPrinter, hash, files, unchanged);
+            calcUpdate(start, progressPrinter, betterPrediction, files.get(), hash.get() + unchanged.get());
+        }).whenComplete((r, e) -> {
+            if (e != null) {
+                fail(absolutePath, e);
+            }
+            futures.remove(future);
+        });
+    }
+
+    @Override
+    public void missing(Path absolutePath) {
+        // explicitly reported as gone (e.g. from a path list): mark the indexed entry as missing
+        remaining.markSeen(absolutePath);
+        Path relative = Paths.get(repoManager.getRepo().absolutePath()).relativize(absolutePath);
+        RepoFile existing = repoManager.getByPath(relative.toString());
+        if (existing == null || existing.missing()) {
+            return;
+        }
+        Result<RepoFile, DedupError> result = repoManager.addRepoFile(existing.withMissing(true));
+        if (result.hasFailed()) {
+            fail(absolutePath, new IllegalStateException(result.error().describe(), result.error().exception()));
+            return;
+        }
+        progressPrinter.setDeleted("" + (remaining.remaining() + missing.incrementAndGet()));
+    }
+
     private void logHash(StatisticPrinter progressPrinter, AtomicLong hash, AtomicLong files, AtomicLong unchanged) {
         progressPrinter.setHashed(hash + " / " + (files.get() - unchanged.get()));
         progressPrinter.setUnchanged(unchanged + " / " + (files.get() - hash.get()));
+        progressPrinter.setQueues(pipeline.describeQueues());
         progressPrinter.setDuration(DurationFormatUtils.formatDurationWords(Duration.between(start, clock.instant()).toMillis(), true, true));
     }
 
@@ -181,14 +315,17 @@ class UpdateProgressPrinter implements FileObserver {
     public void close() {
         while (!futures.isEmpty()) {
             try {
-                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+                // every enrichment has a deadline, so this ends; until then show what is still pending
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(CLOSE_STATUS_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                progressPrinter.setProgress("waiting for " + futures.size() + " files " + pipeline.describeQueues());
             } catch (Exception e) {
                 fail(null, e);
             }
         }
         progressPrinter.setFiles(files.get() + " finished");
-        progressPrinter.setDeleted(remainingPaths.size() + " finished");
-        statistics.set("deleted", remainingPaths.size());
+        progressPrinter.setDeleted((remaining.remaining() + missing.get()) + " finished");
+        statistics.set("deleted", remaining.remaining() + missing.get());
     }
 
     private void calcUpdate(Instant start, StatisticPrinter progressPrinter, BetterPrediction betterPrediction, long total, long processed) {
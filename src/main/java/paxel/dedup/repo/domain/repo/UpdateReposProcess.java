@@ -1,12 +1,13 @@
 package paxel.dedup.repo.domain.repo;
 
-import lombok.RequiredArgsConstructor;
 import paxel.dedup.application.cli.parameter.CliParameter;
 import paxel.dedup.domain.model.*;
 import paxel.dedup.domain.model.errors.DedupError;
 import paxel.dedup.domain.port.out.FileSystem;
 import paxel.dedup.infrastructure.adapter.out.filesystem.NioFileSystemAdapter;
 import paxel.dedup.infrastructure.config.DedupConfig;
+import paxel.dedup.terminal.CombinedProgressPrinter;
+import paxel.dedup.terminal.ProgressPrinter;
 import paxel.dedup.terminal.StatisticPrinter;
 import paxel.dedup.terminal.TerminalProgress;
 import paxel.lib.Result;
@@ -15,29 +16,54 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Clock;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.IntConsumer;
 
-@RequiredArgsConstructor
 public class UpdateReposProcess {
 
+    public static final int DEFAULT_PARALLEL_REPOS = 4;
+    /**
+     * Seconds after which the enrichment of a single file is given up.
+     */
+    public static final int DEFAULT_ENRICH_TIMEOUT = 120;
+
     private final CliParameter cliParameter;
     private final List<String> names;
     private final boolean all;
     private final int threads;
     private final DedupConfig dedupConfig;
     private final boolean progress;
-    private final boolean refreshFingerprints;
     private final FileSystem fileSystem;
+    private final UpdateOptions options;
 
     public UpdateReposProcess(CliParameter cliParameter, List<String> names, boolean all, int threads, DedupConfig dedupConfig, boolean progress, boolean refreshFingerprints) {
         this(cliParameter, names, all, threads, dedupConfig, progress, refreshFingerprints, new NioFileSystemAdapter());
     }
 
+    public UpdateReposProcess(CliParameter cliParameter, List<String> names, boolean all, int threads, DedupConfig dedupConfig, boolean progress, boolean refreshFingerprints, FileSystem fileSystem) {
+        this(cliParameter, names, all, threads, dedupConfig, progress, fileSystem, UpdateOptions.DEFAULTS.withRefreshFingerprints(refreshFingerprints));
+    }
+
+    public UpdateReposProcess(CliParameter cliParameter, List<String> names, boolean all, int threads, DedupConfig dedupConfig, boolean progress, FileSystem fileSystem,
+                              UpdateOptions options) {
+        this.cliParameter = cliParameter;
+        this.names = names;
+        this.all = all;
+        this.threads = threads;
+        this.dedupConfig = dedupConfig;
+        this.progress = progress;
+        this.fileSystem = fileSystem;
+        this.options = options;
+    }
+
     public Result<Integer, DedupError> update() {
         Result<List<Repo>, DedupError> reposToUpdate;
         if (all) {
@@ -64,29 +90,32 @@ public class UpdateReposProcess {
         if (reposToUpdate.hasFailed()) {
             return Result.err(reposToUpdate.error());
         }
-
-        for (Repo repo : reposToUpdate.value()) {
-            Result<Statistics, DedupError> result = updateRepo(RepoManager.forRepo(repo, dedupConfig, fileSystem));
-            if (result.hasFailed()) {
-                return result.map(s -> -51, Function.identity());
-            }
+        if (options.fromList() != null && reposToUpdate.value().size() != 1) {
+            return Result.err(DedupError.of(paxel.dedup.domain.model.errors.ErrorType.UPDATE_REPO, "A path list can only be applied to exactly one repository."));
         }
-        return Result.ok(0);
-    }
-
 
-    private Result<Statistics, DedupError> updateRepo(RepoManager repoManager) {
-        Path root = Paths.get(repoManager.getRepo().absolutePath());
-        if (!fileSystem.exists(root)) {
-            return Result.err(DedupError.of(paxel.dedup.domain.model.errors.ErrorType.UPDATE_REPO, root + ": Repository directory does not exist."));
-        }
-        Result<Statistics, DedupError> load = repoManager.load();
-        if (load.hasFailed()) {
-            return load.mapError(f -> DedupError.of(paxel.dedup.domain.model.errors.ErrorType.UPDATE_REPO, repoManager.getRepoDir() + ": load failed", f.exception()));
+        List<Repo> repos = reposToUpdate.value();
+        List<StatisticPrinter> printers = new ArrayList<>();
+        ProgressPrinter display;
+        Consumer<String> errorSink;
+        IntConsumer onFinished;
+        if (repos.size() == 1) {
+            StatisticPrinter printer = new StatisticPrinter();
+            printers.add(printer);
+            display = printer;
+            errorSink = printer::setErrors;
+            onFinished = i -> {
+            };
+        } else {
+            CombinedProgressPrinter combined = new CombinedProgressPrinter(repos.size());
+            for (int i = 0; i < repos.size(); i++) {
+                printers.add(combined.get(i));
+            }
+            display = combined;
+            errorSink = combined::setErrors;
+            onFinished = combined::finished;
         }
-        Map<Path, RepoFile> remainingPaths = repoManager.stream().filter(r -> !r.missing()).collect(Collectors.toMap(r -> Paths.get(repoManager.getRepo().absolutePath(), r.relativePath()), Function.identity(), (old, update) -> update));
-        StatisticPrinter progressPrinter = new StatisticPrinter();
-        TerminalProgress terminalProgress = prepProgress(progressPrinter);
+        TerminalProgress terminalProgress = prepProgress(display);
         PrintStream originalErr = System.err;
         if (progress) {
             System.setErr(new PrintStream(new OutputStream() {
@@ -99,38 +128,174 @@ public class UpdateReposProcess {
                 public void write(byte[] b, int off, int len) {
                     String msg = new String(b, off, len);
                     if (!msg.isBlank()) {
-                        progressPrinter.setErrors(msg.trim());
+                        errorSink.accept(msg.trim());
                     }
                 }
             }));
         }
-        try (Sha1Hasher sha1Hasher = new Sha1Hasher(new HexFormatter(), Executors.newFixedThreadPool(threads))) {
-            progressPrinter.set(repoManager.getRepo().name(), repoManager.getRepo().absolutePath());
-            progressPrinter.setProgress("...stand by... collecting info");
-            Statistics statistics = new Statistics(repoManager.getRepo().absolutePath());
-
-            UpdateProgressPrinter observer = new UpdateProgressPrinter(remainingPaths, progressPrinter, repoManager, statistics, sha1Hasher, refreshFingerprints);
-            new ResilientFileWalker(observer, fileSystem).walk(root);
-
-            if (observer.getErrors() > 0 && observer.getAllDirs() <= 1 && observer.getFiles() == 0) {
-                Throwable first = observer.getFirstError();
-                Exception ex = first instanceof Exception ? (Exception) first : new Exception(first);
-                return Result.err(DedupError.of(paxel.dedup.domain.model.errors.ErrorType.UPDATE_REPO, root + ": Repository walk failed: " + first.getMessage(), ex));
+        // one walker per repo, all of them feed the same hashing and enrichment pools
+        ExecutorService walkers = Executors.newFixedThreadPool(Math.max(1, Math.min(options.parallelRepos(), repos.size())));
+        List<EnrichWatchdog.TimedOut> timedOut = new ArrayList<>();
+        // closed last, after the enrich pools added their results
+        try (EnrichmentCache enrichmentCache = enrichmentCache();
+             Sha1Hasher sha1Hasher = new Sha1Hasher(new HexFormatter(), Executors.newFixedThreadPool(threads));
+             UpdateStages stages = new UpdateStages(threads, decodeScheduler(), new Extractors(fileSystem, new VideoFingerprinter(new VideoFrameSampler(VideoSampling.DEFAULT, options.videoBudget()))), options.enrichTimeout(), Enrichers.installed())) {
+            List<Future<Result<Statistics, DedupError>>> updates = new ArrayList<>();
+            for (int i = 0; i < repos.size(); i++) {
+                int index = i;
+                RepoManager repoManager = RepoManager.forRepo(repos.get(i), dedupConfig, fileSystem);
+                repoManager.useEnrichmentCache(enrichmentCache);
+                updates.add(walkers.submit(() -> {
+                    try {
+                        return updateRepo(repoManager, printers.get(index), sha1Hasher, stages);
+                    } finally {
+                        onFinished.accept(index);
+                    }
+                }));
             }
-
-            for (RepoFile value : remainingPaths.values()) {
-                repoManager.addRepoFile(value.withMissing(true));
+            // wait for all repos before the shared pools are closed, report the first failure in repo order
+            Result<Integer, DedupError> result = Result.ok(0);
+            for (int i = 0; i < updates.size(); i++) {
+                Result<Statistics, DedupError> update = await(repos.get(i), updates.get(i));
+                if (update.hasFailed() && result.isSuccess()) {
+                    result = update.map(s -> -51, Function.identity());
+                }
             }
-            return Result.ok(statistics);
+            timedOut.addAll(stages.timedOut());
+            return result;
         } finally {
+            walkers.shutdown();
             if (progress) {
                 System.setErr(originalErr);
             }
             terminalProgress.deactivate();
+            reportTimeouts(timedOut);
+        }
+    }
+
+    /**
+     * Lists the files that were indexed without fingerprints, after the progress page is gone.
+     */
+    private void reportTimeouts(List<EnrichWatchdog.TimedOut> timedOut) {
+        if (timedOut.isEmpty()) {
+            return;
+        }
+        System.err.println(timedOut.size() + " files exceeded the enrich timeout of " + options.enrichTimeout().toSeconds()
+                + "s and were indexed without fingerprints:");
+        timedOut.forEach(t -> System.err.println("  " + t.path()));
+    }
+
+    /**
+     * The cache lives next to the repos in the config directory. An unreadable cache is not used.
+     */
+    private EnrichmentCache enrichmentCache() {
+        Path file = dedupConfig.getRepoDir().resolveSibling(EnrichmentCache.FILE_NAME);
+        Result<EnrichmentCache, DedupError> open = EnrichmentCache.open(file, options.enrichmentCacheSize() * 1024 * 1024, fileSystem);
+        if (open.hasFailed()) {
+            System.err.println(open.error().describe());
+            return EnrichmentCache.disabled();
+        }
+        return open.value();
+    }
+
+    private DecodeScheduler decodeScheduler() {
+        if (options.decodeMemory() > 0) {
+            return new DecodeScheduler(options.decodeMemory() * 1024 * 1024);
+        }
+        return DecodeScheduler.forHeap();
+    }
+
+    private Result<Statistics, DedupError> await(Repo repo, Future<Result<Statistics, DedupError>> update) {
+        try {
+            return update.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.err(DedupError.of(paxel.dedup.domain.model.errors.ErrorType.UPDATE_REPO, repo.name() + ": update interrupted", e));
+        } catch (ExecutionException e) {
+            return Result.err(DedupError.of(paxel.dedup.domain.model.errors.ErrorType.UPDATE_REPO, repo.name() + ": update failed", exception(e.getCause(), e)));
+        }
+    }
+
+    /**
+     * @return the throwable if it is an exception, else the fallback
+     */
+    private Exception exception(Throwable throwable, Exception fallback) {
+        if (throwable instanceof Exception exception) {
+            return exception;
+        }
+        return fallback;
+    }
+
+    /**
+     * @return the indexer of archive entries, or {@code null} if archives are indexed as files only
+     */
+    private ArchiveIndexer archiveIndexer(RepoManager repoManager, UpdateStages stages) {
+        if (!options.archives()) {
+            return null;
+        }
+        return new ArchiveIndexer(repoManager, stages);
+    }
+
+    private Result<Statistics, DedupError> updateRepo(RepoManager repoManager, StatisticPrinter progressPrinter, Sha1Hasher sha1Hasher, UpdateStages stages) {
+        Path root = Paths.get(repoManager.getRepo().absolutePath());
+        if (!fileSystem.exists(root)) {
+            return Result.err(DedupError.of(paxel.dedup.domain.model.errors.ErrorType.UPDATE_REPO, root + ": Repository directory does not exist."));
+        }
+        Result<Statistics, DedupError> load = repoManager.load();
+        if (load.hasFailed()) {
+            return load.mapError(f -> DedupError.of(paxel.dedup.domain.model.errors.ErrorType.UPDATE_REPO, repoManager.getRepoDir() + ": load failed", f.exception()));
+        }
+        Result<Void, DedupError> similarityIndex = repoManager.ensureSimilarityIndex();
+        if (similarityIndex.hasFailed()) {
+            System.err.println("Could not create the similarity index " + similarityIndex.error().describe());
+        }
+        Result<Void, DedupError> indexChunks = repoManager.indexChunks(options.chunks());
+        if (indexChunks.hasFailed()) {
+            return Result.err(indexChunks.error());
+        }
+        ReconciliationSet remaining;
+        if (options.fromList() != null) {
+            // only the listed paths are reconciled, everything else stays as it is
+            remaining = ReconciliationSet.empty(root);
+        } else {
+            remaining = ReconciliationSet.of(root, repoManager.stream().filter(r -> !r.missing()));
+        }
+        progressPrinter.set(repoManager.getRepo().name(), repoManager.getRepo().absolutePath());
+        progressPrinter.setProgress("...stand by... collecting info");
+        Statistics statistics = new Statistics(repoManager.getRepo().absolutePath());
+
+        UpdateProgressPrinter observer = new UpdateProgressPrinter(remaining, progressPrinter, repoManager, statistics,
+                sha1Hasher, Clock.systemUTC(), options, new MoveDetector(remaining, fileSystem),
+                new StagedUpdatePipeline(repoManager, sha1Hasher, stages), archiveIndexer(repoManager, stages));
+        if (options.fromList() != null) {
+            walkList(root, observer);
+        } else {
+            new ResilientFileWalker(observer, fileSystem).walk(root);
+        }
+
+        // an unreadable list or root, or nothing but failures
+        if (observer.getErrors() > 0 && observer.getAllDirs() <= 1 && observer.getFiles() == 0) {
+            Throwable first = observer.getFirstError();
+            return Result.err(DedupError.of(paxel.dedup.domain.model.errors.ErrorType.UPDATE_REPO, root + ": Repository walk failed: " + first.getMessage(),
+                    exception(first, new Exception(first))));
+        }
+
+        // with a list, only the listed paths were reconciled
+        remaining.unseen().forEach(value -> repoManager.addRepoFile(value.withMissing(true)));
+        return Result.ok(statistics);
+    }
+
+    private void walkList(Path root, UpdateProgressPrinter observer) {
+        PathListWalker walker = new PathListWalker(observer, fileSystem);
+        if ("-".equals(options.fromList())) {
+            // stdin is not ours to close
+            walker.walk(root, System.in);
+        } else {
+            walker.walk(root, Paths.get(options.fromList()));
         }
     }
 
-    private TerminalProgress prepProgress(StatisticPrinter progressPrinter) {
+    private TerminalProgress prepProgress(ProgressPrinter progressPrinter) {
         if (progress) {
             return TerminalProgress.initLanterna(progressPrinter);
         }
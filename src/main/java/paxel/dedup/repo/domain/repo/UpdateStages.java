@@ -0,0 +1,171 @@
+package paxel.dedup.repo.domain.repo;
+
+import lombok.SneakyThrows;
+import paxel.dedup.domain.model.DecodeScheduler;
+import paxel.dedup.domain.model.Enrichers;
+import paxel.dedup.domain.model.Extractors;
+import paxel.dedup.domain.port.out.Enricher;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The bounded stages of an update: stat -> hash -> enrich -> index write.
+ * The walker feeds the stat stage; every stage blocks its predecessor when it is full,
+ * so the number of queued files and tasks is bounded no matter how fast the walker is.
+ * Hashing itself runs on the executor of the {@link paxel.dedup.domain.model.FileHasher}.
+ * <p>
+ * Every {@link Enricher} has an enrich stage and pool of its own, so a queue of videos doesn't delay images.
+ * The entries of archives are read and hashed in the archive stage, beside the files.
+ */
+class UpdateStages implements AutoCloseable {
+
+    static final int STAT_CAPACITY = 256;
+    static final int WRITE_CAPACITY = 256;
+    private static final int QUEUE_PER_THREAD = 4;
+    /**
+     * Upper limit for the pool of an I/O bound enricher.
+     */
+    private static final int MAX_IO_THREADS = 64;
+
+    /**
+     * The stage and pool of one enricher.
+     */
+    record EnrichPool(BoundedStage stage, EnrichWatchdog watchdog) {
+    }
+
+    private final ExecutorService statExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+    private final BoundedStage stat = new BoundedStage("stat", STAT_CAPACITY);
+    private final BoundedStage hash;
+    private final BoundedStage archive;
+    private final ExecutorService archiveExecutor;
+    private final Map<Enricher, EnrichPool> enrichPools = new IdentityHashMap<>();
+    private final BoundedStage write = new BoundedStage("write", WRITE_CAPACITY);
+    private final DecodeScheduler decodeScheduler;
+    private final Extractors extractors;
+    private final Enrichers enrichers;
+
+    /**
+     * @param decodeScheduler admits image, video and PDF decoding of the enrich stages against a memory budget
+     * @param extractors      the fingerprinters and extractors shared by the threads of the enrich stages
+     * @param enrichTimeout   the time after which the enrichment of a file is given up
+     * @param enrichers       the enrichers, each gets its own stage and pool
+     */
+    UpdateStages(int threads, DecodeScheduler decodeScheduler, Extractors extractors, Duration enrichTimeout, Enrichers enrichers) {
+        this.decodeScheduler = decodeScheduler;
+        this.extractors = extractors;
+        this.enrichers = enrichers;
+        int workers = Math.max(1, threads);
+        hash = new BoundedStage("hash", workers * QUEUE_PER_THREAD);
+        archive = new BoundedStage("archive", workers * QUEUE_PER_THREAD);
+        archiveExecutor = Executors.newFixedThreadPool(workers);
+        for (Enricher enricher : enrichers.all()) {
+            int poolSize = Math.max(1, Math.min(enricher.concurrency(), maxThreads(enricher, workers)));
+            enrichPools.put(enricher, new EnrichPool(new BoundedStage(name(enricher), poolSize * QUEUE_PER_THREAD),
+                    new EnrichWatchdog(poolSize, enrichTimeout)));
+        }
+    }
+
+    /**
+     * @return the workers for enrichers that use the CPU, more for those that mostly wait on I/O
+     */
+    private int maxThreads(Enricher enricher, int workers) {
+        if (enricher.profile() == Enricher.Profile.CPU) {
+            return workers;
+        }
+        return MAX_IO_THREADS;
+    }
+
+    private String name(Enricher enricher) {
+        return enricher.getClass().getSimpleName().replace("Enricher", "").toLowerCase();
+    }
+
+    BoundedStage stat() {
+        return stat;
+    }
+
+    BoundedStage hash() {
+        return hash;
+    }
+
+    BoundedStage archive() {
+        return archive;
+    }
+
+    BoundedStage write() {
+        return write;
+    }
+
+    Enrichers enrichers() {
+        return enrichers;
+    }
+
+    /**
+     * @return the stage and pool of an enricher of {@link #enrichers()}
+     */
+    EnrichPool enrich(Enricher enricher) {
+        return enrichPools.get(enricher);
+    }
+
+    DecodeScheduler decodeScheduler() {
+        return decodeScheduler;
+    }
+
+    Extractors extractors() {
+        return extractors;
+    }
+
+    ExecutorService statExecutor() {
+        return statExecutor;
+    }
+
+    ExecutorService archiveExecutor() {
+        return archiveExecutor;
+    }
+
+    ExecutorService writeExecutor() {
+        return writeExecutor;
+    }
+
+    /**
+     * @return the files of all enrichers that exceeded the deadline so far
+     */
+    List<EnrichWatchdog.TimedOut> timedOut() {
+        List<EnrichWatchdog.TimedOut> timedOut = new ArrayList<>();
+        enrichPools.values().forEach(pool -> timedOut.addAll(pool.watchdog().timedOut()));
+        return timedOut;
+    }
+
+    String describe() {
+        return Stream.concat(Stream.of(stat, hash, archive), Stream.concat(enrichPools.values().stream().map(EnrichPool::stage), Stream.of(write)))
+                .map(BoundedStage::describe).collect(Collectors.joining(", "))
+                + ", decoding " + decodeScheduler.inUse() / (1024 * 1024) + " MB";
+    }
+
+    @SneakyThrows
+    @Override
+    public void close() {
+        statExecutor.shutdown();
+        if (!statExecutor.awaitTermination(1, TimeUnit.HOURS)) {
+            statExecutor.shutdownNow();
+        }
+        archiveExecutor.shutdown();
+        if (!archiveExecutor.awaitTermination(1, TimeUnit.HOURS)) {
+            archiveExecutor.shutdownNow();
+        }
+        enrichPools.values().forEach(pool -> pool.watchdog().close());
+        writeExecutor.shutdown();
+        if (!writeExecutor.awaitTermination(1, TimeUnit.HOURS)) {
+            writeExecutor.shutdownNow();
+        }
+    }
+}
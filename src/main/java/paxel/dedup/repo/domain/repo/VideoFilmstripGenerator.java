@@ -1,10 +1,8 @@
 package paxel.dedup.repo.domain.repo;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.jcodec.api.FrameGrab;
-import org.jcodec.common.model.Picture;
-import org.jcodec.scale.AWTUtil;
+import paxel.dedup.domain.model.VideoFrameSampler;
+import paxel.dedup.domain.model.VideoSampling;
 import paxel.dedup.domain.port.out.FileSystem;
 
 import javax.imageio.ImageIO;
@@ -17,9 +15,17 @@ import java.util.Base64;
 import java.util.List;
 
 @Slf4j
-@RequiredArgsConstructor
 public class VideoFilmstripGenerator {
     private final FileSystem fileSystem;
+    private final VideoFrameSampler sampler;
+
+    /**
+     * @param sampling the frames of the video fingerprint, see {@link paxel.dedup.domain.model.RepoFile#videoSampling()}
+     */
+    public VideoFilmstripGenerator(FileSystem fileSystem, VideoSampling sampling) {
+        this.fileSystem = fileSystem;
+        this.sampler = new VideoFrameSampler(sampling, VideoFrameSampler.DEFAULT_BUDGET);
+    }
 
     public List<String> generateBase64Filmstrip(Path path) {
         List<String> filmstrip = new ArrayList<>();
@@ -29,18 +35,8 @@ public class VideoFilmstripGenerator {
             // we'll use the real file path for JCodec as it's a library constraint.
             // In a strict hexagonal setup, we'd need a SeekableByteChannel port.
 
-            FrameGrab grab = FrameGrab.createFrameGrab(org.jcodec.common.io.NIOUtils.readableChannel(path.toFile()));
-            double duration = grab.getVideoTrack().getMeta().getTotalDuration();
-
-            double[] percentages = {0.1, 0.5, 0.9};
-            for (double p : percentages) {
-                grab.seekToSecondPrecise(duration * p);
-                Picture picture = grab.getNativeFrame();
-                if (picture != null) {
-                    BufferedImage bufferedImage = AWTUtil.toBufferedImage(picture);
-                    filmstrip.add(toBase64(bufferedImage));
-                }
-            }
+            // the same frames as the video fingerprint
+            sampler.sample(path, (index, frame) -> filmstrip.add(toBase64(frame)));
         } catch (Exception e) {
             log.info("Failed to generate video filmstrip for {}: {} (Using generic icon)", path, e.getMessage());
         }
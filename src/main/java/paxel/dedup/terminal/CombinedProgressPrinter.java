@@ -0,0 +1,94 @@
+package paxel.dedup.terminal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shows the progress of several repos that are processed at the same time.
+ * Running repos show all their lines, finished repos collapse into their first line.
+ */
+public class CombinedProgressPrinter implements ProgressPrinter {
+    private final List<StatisticPrinter> printers = new ArrayList<>();
+    private final Set<StatisticPrinter> finished = ConcurrentHashMap.newKeySet();
+    private volatile Runnable action = () -> {
+    };
+    private volatile String errors = "none";
+    private int maxLines;
+
+    /**
+     * @param count the number of repos
+     */
+    public CombinedProgressPrinter(int count) {
+        for (int i = 0; i < count; i++) {
+            StatisticPrinter printer = new StatisticPrinter();
+            printer.registerChangeListener(() -> action.run());
+            printers.add(printer);
+        }
+    }
+
+    public StatisticPrinter get(int index) {
+        return printers.get(index);
+    }
+
+    public void finished(int index) {
+        finished.add(printers.get(index));
+        action.run();
+    }
+
+    public void setErrors(String errors) {
+        this.errors = errors;
+        action.run();
+    }
+
+    /**
+     * Never shrinks, so lines of collapsed repos are overwritten with blanks instead of being left on screen.
+     */
+    @Override
+    public synchronized int getLines() {
+        int lines = 2;
+        for (StatisticPrinter printer : printers) {
+            lines += linesOf(printer);
+        }
+        maxLines = Math.max(maxLines, lines);
+        return maxLines;
+    }
+
+    /**
+     * @return one line for a finished repo, all of its lines while it runs
+     */
+    private int linesOf(StatisticPrinter printer) {
+        if (finished.contains(printer)) {
+            return 1;
+        }
+        return printer.getLines();
+    }
+
+    @Override
+    public String getLineAt(int row) {
+        if (row == 0) {
+            return "      Repos: " + finished.size() + " / " + printers.size() + " finished";
+        }
+        if (row == 1) {
+            return "     Errors: " + errors;
+        }
+        int offset = 2;
+        for (StatisticPrinter printer : printers) {
+            int lines = linesOf(printer);
+            if (row < offset + lines) {
+                if (finished.contains(printer)) {
+                    return printer.getLineAt(row - offset) + "  -  finished";
+                }
+                return printer.getLineAt(row - offset);
+            }
+            offset += lines;
+        }
+        return "";
+    }
+
+    @Override
+    public void registerChangeListener(Runnable r) {
+        this.action = r;
+    }
+}
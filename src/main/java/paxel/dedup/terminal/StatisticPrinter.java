@@ -14,6 +14,8 @@ public class StatisticPrinter implements ProgressPrinter {
     private String deleted = "";
     private String hashed = "";
     private String unchanged = "";
+    private String moved = "";
+    private String queues = "";
     private String duration = "";
     private String directories = "";
     private String errors = "none";
@@ -28,6 +30,8 @@ public class StatisticPrinter implements ProgressPrinter {
         lines.add(() -> "    Deleted: " + deleted);
         lines.add(() -> "     Hashed: " + hashed);
         lines.add(() -> "  Unchanged: " + unchanged);
+        lines.add(() -> "      Moved: " + moved);
+        lines.add(() -> "     Queues: " + queues);
         lines.add(() -> "     Errors: " + errors);
         lines.add(() -> " Mime-Types: " + mimetypes.entrySet().stream().sorted((o1, o2) -> Long.compare(o1.getValue(), o2.getValue()) * -1).map(e -> e.getKey() + ":" + e.getValue()).collect(Collectors.joining(", ")));
     }
@@ -86,6 +90,16 @@ public class StatisticPrinter implements ProgressPrinter {
         action.run();
     }
 
+    public void setMoved(String moved) {
+        this.moved = moved;
+        action.run();
+    }
+
+    public void setQueues(String queues) {
+        this.queues = queues;
+        action.run();
+    }
+
     public void setDuration(String duration) {
         this.duration = duration;
         action.run();
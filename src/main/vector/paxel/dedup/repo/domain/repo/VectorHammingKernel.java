@@ -0,0 +1,47 @@
+package paxel.dedup.repo.domain.repo;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@link HammingKernel} on the Vector API: XOR and population count of as many fingerprints as the preferred
+ * vector has long lanes per instruction.
+ * <p>
+ * A block of 1M image fingerprints is 8 MB per word, so a scan is bound by the memory bandwidth rather than by the
+ * POPCNTs and this kernel is about as fast as the {@link ScalarHammingKernel}; see {@code HammingKernelBenchmark}.
+ * Compiled from its own source root by the Maven profile {@code vector}, so that the default build doesn't need the
+ * incubator module, and only created by {@link HammingKernel#best()}, because it can't be loaded without it.
+ */
+final class VectorHammingKernel implements HammingKernel {
+
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    /**
+     * The int vector with as many lanes as {@link #LONGS}, to store the distances.
+     */
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, VectorShape.forBitSize(LONGS.vectorBitSize() / 2));
+
+    @Override
+    public void distances(long[] query, long[][] columns, int from, int count, int[] distances) {
+        int bound = LONGS.loopBound(count);
+        int i = 0;
+        for (; i < bound; i += LONGS.length()) {
+            LongVector sum = LongVector.zero(LONGS);
+            for (int w = 0; w < columns.length; w++) {
+                LongVector x = LongVector.fromArray(LONGS, columns[w], from + i).lanewise(VectorOperators.XOR, query[w]);
+                sum = sum.add(x.lanewise(VectorOperators.BIT_COUNT));
+            }
+            ((IntVector) sum.castShape(INTS, 0)).intoArray(distances, i);
+        }
+        // the tail that doesn't fill a vector
+        for (; i < count; i++) {
+            int distance = 0;
+            for (int w = 0; w < columns.length; w++) {
+                distance += Long.bitCount(query[w] ^ columns[w][from + i]);
+            }
+            distances[i] = distance;
+        }
+    }
+}
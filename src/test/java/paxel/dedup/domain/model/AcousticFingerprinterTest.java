@@ -0,0 +1,139 @@
+package paxel.dedup.domain.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import paxel.dedup.infrastructure.adapter.out.filesystem.NioFileSystemAdapter;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AcousticFingerprinterTest {
+
+    private static final int RATE = 44100;
+
+    @TempDir
+    Path tempDir;
+
+    private final AcousticFingerprinter fingerprinter = new AcousticFingerprinter(new NioFileSystemAdapter());
+
+    @Test
+    void shouldSurviveResamplingAndVolume() throws IOException {
+        // Arrange
+        double[] melody = melody(42, 10 * RATE);
+        Path original = write("original.wav", melody, RATE, 2, 1.0);
+        Path copy = write("copy.aiff", halfRate(melody), RATE / 2, 1, 0.4);
+
+        // Act
+        int[] a = fingerprinter.calculate(original);
+        int[] b = fingerprinter.calculate(copy);
+
+        // Assert
+        assertThat(a).isNotNull();
+        assertThat(b).isNotNull();
+        assertThat(bestBitErrorRate(a, b)).isLessThan(0.2);
+    }
+
+    @Test
+    void shouldFindTrimmedCopyAtAnOffset() throws IOException {
+        // Arrange
+        double[] melody = melody(42, 10 * RATE);
+        double[] trimmed = new double[melody.length - 2 * RATE];
+        System.arraycopy(melody, 2 * RATE, trimmed, 0, trimmed.length);
+
+        // Act
+        int[] a = fingerprinter.calculate(write("original.wav", melody, RATE, 1, 1.0));
+        int[] b = fingerprinter.calculate(write("trimmed.wav", trimmed, RATE, 1, 1.0));
+
+        // Assert
+        assertThat(bestBitErrorRate(a, b)).isLessThan(0.2);
+    }
+
+    @Test
+    void shouldDifferForOtherSounds() throws IOException {
+        // Act
+        int[] a = fingerprinter.calculate(write("a.wav", melody(42, 10 * RATE), RATE, 1, 1.0));
+        int[] b = fingerprinter.calculate(write("b.wav", melody(7, 10 * RATE), RATE, 1, 1.0));
+
+        // Assert
+        assertThat(bestBitErrorRate(a, b)).isGreaterThan(0.35);
+    }
+
+    @Test
+    void shouldIgnoreUnsupportedAndTooShortFiles() throws IOException {
+        // Arrange
+        Path text = tempDir.resolve("text.wav");
+        Files.writeString(text, "not a sound");
+        Path click = write("click.wav", melody(42, 1000), RATE, 1, 1.0);
+
+        // Act + Assert
+        assertThat(fingerprinter.calculate(text)).isNull();
+        assertThat(fingerprinter.calculate(click)).isNull();
+    }
+
+    /**
+     * A tone per quarter second, of random pitch, with a quieter fifth above.
+     */
+    private static double[] melody(long seed, int samples) {
+        Random random = new Random(seed);
+        double[] result = new double[samples];
+        double frequency = 0;
+        for (int i = 0; i < samples; i++) {
+            if (i % (RATE / 4) == 0) {
+                frequency = 300 + random.nextInt(1500);
+            }
+            double t = (double) i / RATE;
+            result[i] = 0.5 * Math.sin(2 * Math.PI * frequency * t) + 0.2 * Math.sin(3 * Math.PI * frequency * t);
+        }
+        return result;
+    }
+
+    private static double[] halfRate(double[] samples) {
+        double[] result = new double[samples.length / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (samples[2 * i] + samples[2 * i + 1]) / 2;
+        }
+        return result;
+    }
+
+    private Path write(String name, double[] samples, int rate, int channels, double volume) throws IOException {
+        byte[] pcm = new byte[samples.length * channels * 2];
+        boolean bigEndian = name.endsWith(".aiff");
+        for (int i = 0; i < samples.length; i++) {
+            short value = (short) (samples[i] * volume * Short.MAX_VALUE * 0.9);
+            for (int c = 0; c < channels; c++) {
+                int at = (i * channels + c) * 2;
+                pcm[at + (bigEndian ? 1 : 0)] = (byte) value;
+                pcm[at + (bigEndian ? 0 : 1)] = (byte) (value >> 8);
+            }
+        }
+        AudioFormat format = new AudioFormat(rate, 16, channels, true, bigEndian);
+        Path file = tempDir.resolve(name);
+        try (AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(pcm), format, samples.length)) {
+            AudioSystem.write(in, bigEndian ? AudioFileFormat.Type.AIFF : AudioFileFormat.Type.WAVE, file.toFile());
+        }
+        return file;
+    }
+
+    private static double bestBitErrorRate(int[] a, int[] b) {
+        double best = 1;
+        for (int offset = -b.length + 64; offset < a.length - 64; offset++) {
+            int errors = 0;
+            int overlap = 0;
+            for (int i = Math.max(0, offset); i < Math.min(a.length, b.length + offset); i++) {
+                errors += Integer.bitCount(a[i] ^ b[i - offset]);
+                overlap++;
+            }
+            best = Math.min(best, errors / (32.0 * overlap));
+        }
+        return best;
+    }
+}
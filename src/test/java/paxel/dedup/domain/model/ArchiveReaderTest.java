@@ -0,0 +1,144 @@
+package paxel.dedup.domain.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ArchiveReaderTest {
+
+    private static final byte[] CONTENT = "the content of a file that is long enough to be hashed".getBytes(StandardCharsets.UTF_8);
+
+    private final ArchiveReader reader = new ArchiveReader();
+
+    @Test
+    void detectsTheFormatByName() {
+        assertThat(reader.format("a.ZIP")).isEqualTo(ArchiveReader.Format.ZIP);
+        assertThat(reader.format("a.tar")).isEqualTo(ArchiveReader.Format.TAR);
+        assertThat(reader.format("a.tar.gz")).isEqualTo(ArchiveReader.Format.TAR_GZ);
+        assertThat(reader.format("a.tgz")).isEqualTo(ArchiveReader.Format.TAR_GZ);
+        assertThat(reader.format("a.gz")).isNull();
+        assertThat(RepoFile.builder().relativePath("a.zip" + ArchiveReader.SEPARATOR + "b.txt").build().archiveEntry()).isTrue();
+        assertThat(RepoFile.builder().relativePath("a.zip").build().archiveEntry()).isFalse();
+    }
+
+    @Test
+    void hashesZipEntriesLikeLooseFiles() throws Exception {
+        // Arrange
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(zip)) {
+            out.putNextEntry(new ZipEntry("docs/"));
+            out.putNextEntry(new ZipEntry("docs/a.txt"));
+            out.write(CONTENT);
+            out.putNextEntry(new ZipEntry("small.txt"));
+            out.write("tiny".getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Act
+        List<ArchiveReader.Entry> entries = read(zip.toByteArray(), ArchiveReader.Format.ZIP);
+
+        // Assert
+        assertThat(entries).extracting(ArchiveReader.Entry::path).containsExactly("docs/a.txt", "small.txt");
+        assertThat(entries.get(0).size()).isEqualTo(CONTENT.length);
+        assertThat(entries.get(0).hash()).isEqualTo(sha1(CONTENT));
+        assertThat(entries.get(0).head()).isEqualTo(CONTENT);
+        assertThat(entries.get(0).name()).isEqualTo("a.txt");
+        // small files are indexed by their content
+        assertThat(entries.get(1).hash()).isEqualTo(new HexFormatter().format("tiny".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void readsGzippedTarWithLongNames() throws Exception {
+        // Arrange
+        String longName = "a/".repeat(80) + "deep.txt";
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(tar)) {
+            writeTarEntry(out, "dir/", '5', new byte[0]);
+            writeTarEntry(out, "./first.txt", '0', CONTENT);
+            byte[] pax = paxRecord("path", longName);
+            writeTarEntry(out, "PaxHeader", 'x', pax);
+            writeTarEntry(out, "replaced-by-pax-path", '0', CONTENT);
+            writeTarEntry(out, "link", '2', new byte[0]);
+            out.write(new byte[1024]);
+        }
+
+        // Act
+        List<ArchiveReader.Entry> entries = read(tar.toByteArray(), ArchiveReader.Format.TAR_GZ);
+
+        // Assert
+        assertThat(entries).extracting(ArchiveReader.Entry::path).containsExactly("first.txt", longName);
+        assertThat(entries).extracting(ArchiveReader.Entry::hash).containsExactly(sha1(CONTENT), sha1(CONTENT));
+        assertThat(entries.get(0).lastModified()).isEqualTo(1_700_000_000_000L);
+    }
+
+    @Test
+    void failsOnTruncatedTar() throws Exception {
+        // Arrange
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeTarEntry(tar, "first.txt", '0', CONTENT);
+        byte[] truncated = Arrays.copyOf(tar.toByteArray(), 512 + 10);
+
+        // Act + Assert
+        assertThatThrownBy(() -> read(truncated, ArchiveReader.Format.TAR)).isInstanceOf(EOFException.class);
+    }
+
+    private List<ArchiveReader.Entry> read(byte[] archive, ArchiveReader.Format format) throws IOException {
+        List<ArchiveReader.Entry> entries = new ArrayList<>();
+        reader.read(new ByteArrayInputStream(archive), format, entries::add);
+        return entries;
+    }
+
+    private static String sha1(byte[] content) throws NoSuchAlgorithmException {
+        return new HexFormatter().format(MessageDigest.getInstance("SHA-1").digest(content));
+    }
+
+    private static byte[] paxRecord(String key, String value) {
+        String record = " " + key + "=" + value + "\n";
+        int length = record.length() + String.valueOf(record.length()).length();
+        if (String.valueOf(length).length() != String.valueOf(record.length()).length()) {
+            length++;
+        }
+        return (length + record).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeTarEntry(OutputStream out, String name, char type, byte[] content) throws IOException {
+        byte[] header = new byte[512];
+        put(header, 0, name);
+        put(header, 100, "0000644");
+        put(header, 124, String.format("%011o", content.length));
+        put(header, 136, String.format("%011o", 1_700_000_000L));
+        header[156] = (byte) type;
+        put(header, 257, "ustar");
+        put(header, 263, "00");
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        put(header, 148, String.format("%06o", checksum));
+        header[154] = 0;
+        out.write(header);
+        out.write(content);
+        out.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private static void put(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+}
@@ -0,0 +1,77 @@
+package paxel.dedup.domain.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentChunkerTest {
+
+    @Test
+    void keepsMostChunksAfterAnInsertion() {
+        // Arrange: the same 4 MB, once with 100 bytes inserted in the middle
+        byte[] original = random(4 * 1024 * 1024);
+        byte[] inserted = new byte[original.length + 100];
+        System.arraycopy(original, 0, inserted, 0, 2_000_000);
+        System.arraycopy(original, 2_000_000, inserted, 2_000_100, original.length - 2_000_000);
+
+        // Act
+        long[] a = chunk(original, 8192);
+        long[] b = chunk(inserted, 8192);
+
+        // Assert: only the chunks around the insertion differ
+        long shared = Arrays.stream(a).filter(chunk -> Arrays.binarySearch(b, chunk) >= 0).count();
+        assertThat(shared).isGreaterThanOrEqualTo(a.length - 2);
+        assertThat(a.length).isGreaterThan(16);
+    }
+
+    @Test
+    void coversAllBytesWithinTheChunkLimits() {
+        // Arrange
+        byte[] content = random(3 * 1024 * 1024 + 17);
+
+        // Act
+        long[] chunks = chunk(content, 8192);
+
+        // Assert: the content is random, so no chunk repeats
+        assertThat(Arrays.stream(chunks).map(ContentChunker::length).sum()).isEqualTo(content.length);
+        assertThat(Arrays.stream(chunks).allMatch(c -> ContentChunker.length(c) <= ContentChunker.MAX_SIZE)).isTrue();
+        assertThat(Arrays.stream(chunks).filter(c -> ContentChunker.length(c) < ContentChunker.MIN_SIZE).count()).isLessThanOrEqualTo(1L);
+    }
+
+    @Test
+    void doesNotDependOnTheBufferSize() {
+        byte[] content = random(2 * 1024 * 1024);
+
+        assertThat(chunk(content, 1000)).isEqualTo(chunk(content, 8192));
+    }
+
+    @Test
+    void cutsEqualChunksOfRepeatedContent() {
+        // Arrange: zeros cut at the maximum size only
+        byte[] zeros = new byte[ContentChunker.MAX_SIZE * 4];
+
+        // Act
+        long[] chunks = chunk(zeros, 8192);
+
+        // Assert
+        assertThat(chunks).hasSize(1);
+        assertThat(ContentChunker.length(chunks[0])).isEqualTo(ContentChunker.MAX_SIZE);
+    }
+
+    private static long[] chunk(byte[] content, int bufferSize) {
+        ContentChunker chunker = new ContentChunker();
+        for (int from = 0; from < content.length; from += bufferSize) {
+            chunker.accept(content, from, Math.min(bufferSize, content.length - from));
+        }
+        return chunker.finish();
+    }
+
+    private static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        new Random(7).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,93 @@
+package paxel.dedup.domain.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DecodeSchedulerTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    void cheapJobsPassWhileGiantJobDecodes() throws Exception {
+        // Arrange
+        DecodeScheduler scheduler = new DecodeScheduler(100 * MB);
+        CountDownLatch giantRunning = new CountDownLatch(1);
+        CountDownLatch releaseGiant = new CountDownLatch(1);
+        CompletableFuture<String> giant = CompletableFuture.supplyAsync(() -> scheduler.run(90 * MB, () -> {
+            giantRunning.countDown();
+            await(releaseGiant);
+            return "giant";
+        }));
+        assertThat(giantRunning.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Act
+        String cheap = scheduler.run(5 * MB, () -> "cheap");
+
+        // Assert
+        assertThat(cheap).isEqualTo("cheap");
+        assertThat(scheduler.inUse()).isEqualTo(90 * MB);
+        releaseGiant.countDown();
+        assertThat(giant.get(5, TimeUnit.SECONDS)).isEqualTo("giant");
+        assertThat(scheduler.inUse()).isZero();
+    }
+
+    @Test
+    void secondGiantJobWaitsForTheFirst() throws Exception {
+        // Arrange
+        DecodeScheduler scheduler = new DecodeScheduler(100 * MB);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch firstRunning = new CountDownLatch(1);
+        CompletableFuture.runAsync(() -> scheduler.run(80 * MB, () -> {
+            firstRunning.countDown();
+            await(releaseFirst);
+            return null;
+        }));
+        assertThat(firstRunning.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Act
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> scheduler.run(80 * MB, () -> "second"));
+
+        // Assert
+        assertThat(second).isNotCompleted();
+        Thread.sleep(100);
+        assertThat(second).isNotCompleted();
+        releaseFirst.countDown();
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("second");
+    }
+
+    @Test
+    void jobsLargerThanTheBudgetStillRunAlone() {
+        // Arrange
+        DecodeScheduler scheduler = new DecodeScheduler(10 * MB);
+
+        // Act
+        String result = scheduler.run(1024 * MB, () -> "panorama");
+
+        // Assert
+        assertThat(result).isEqualTo("panorama");
+        assertThat(scheduler.permitsFor(1024 * MB)).isEqualTo(scheduler.permitsFor(10 * MB));
+    }
+
+    @Test
+    void estimatesImageCostFromHeaderAndSubsampling() {
+        // 8000x6000 is decoded with subsampling 23
+        DecodeScheduler scheduler = DecodeScheduler.forHeap();
+        long cost = scheduler.imageCost(new Dimension(8000, 6000));
+
+        assertThat(cost).isLessThan(2 * MB);
+        assertThat(scheduler.imageCost(new Dimension(200, 100))).isEqualTo(200 * 100 * 4 + 200 * 4 * 16);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
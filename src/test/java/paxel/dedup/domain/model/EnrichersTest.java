@@ -0,0 +1,61 @@
+package paxel.dedup.domain.model;
+
+import org.junit.jupiter.api.Test;
+import paxel.dedup.domain.port.out.Enricher;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EnrichersTest {
+
+    @Test
+    void installsTheBuiltInEnrichersViaTheServiceLoader() {
+        // Act
+        Enrichers enrichers = Enrichers.installed();
+
+        // Assert
+        assertThat(enrichers.all()).extracting(e -> e.getClass().getSimpleName())
+                .containsExactly("ImageEnricher", "VideoEnricher", "PdfEnricher", "AudioEnricher", "TextEnricher", "OfficeEnricher");
+        assertThat(enrichers.forMimeType("image/jpeg")).isInstanceOf(ImageEnricher.class);
+        assertThat(enrichers.forMimeType("video/mp4")).isInstanceOf(VideoEnricher.class);
+        assertThat(enrichers.forMimeType("application/pdf")).isInstanceOf(PdfEnricher.class);
+        assertThat(enrichers.forMimeType("audio/mpeg")).isInstanceOf(AudioEnricher.class);
+        assertThat(enrichers.forMimeType("text/plain")).isInstanceOf(TextEnricher.class);
+        assertThat(enrichers.forMimeType("application/vnd.oasis.opendocument.text")).isInstanceOf(OfficeEnricher.class);
+        assertThat(enrichers.forMimeType("application/octet-stream")).isNull();
+        assertThat(enrichers.forMimeType(null)).isNull();
+    }
+
+    @Test
+    void prefersExactMimeTypesOverPrefixes() {
+        // Arrange
+        Enricher images = new Fixed(Set.of("image/"));
+        Enricher svg = new Fixed(Set.of("image/svg+xml"));
+        Enrichers enrichers = new Enrichers(List.of(images, svg));
+
+        // Act + Assert
+        assertThat(enrichers.forMimeType("image/svg+xml")).isSameAs(svg);
+        assertThat(enrichers.forMimeType("image/png")).isSameAs(images);
+        assertThat(enrichers.forMimeType("imagex/png")).isNull();
+    }
+
+    private record Fixed(Set<String> mimeTypes) implements Enricher {
+
+        @Override
+        public Profile profile() {
+            return Profile.CPU;
+        }
+
+        @Override
+        public int concurrency() {
+            return 1;
+        }
+
+        @Override
+        public void enrich(Path path, long size, Context context, RepoFile.RepoFileBuilder entry) {
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package paxel.dedup.domain.model;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import paxel.dedup.domain.port.out.FileSystem;
+import paxel.dedup.infrastructure.adapter.out.filesystem.NioFileSystemAdapter;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the enrichment of one small file with extractors created per file, as before, and with the reused
+ * {@link Extractors}. The difference is the setup cost: Tika parser lookup, image reader creation and digest lookup.
+ * Run {@link #main(String[])} from the test classpath; the gc profiler reports the allocation per file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ExtractorsBenchmark {
+
+    @Param({"image", "pdf", "audio"})
+    public String kind;
+
+    private final FileSystem fileSystem = new NioFileSystemAdapter();
+    private Extractors extractors;
+    private Path dir;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        extractors = new Extractors(fileSystem);
+        dir = Files.createTempDirectory("extractors");
+        switch (kind) {
+            case "image" -> {
+                file = dir.resolve("small.jpg");
+                BufferedImage img = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = img.createGraphics();
+                g.setPaint(new GradientPaint(0, 0, Color.BLUE, 320, 240, Color.ORANGE));
+                g.fillRect(0, 0, 320, 240);
+                g.dispose();
+                ImageIO.write(img, "jpg", file.toFile());
+            }
+            case "pdf" -> {
+                file = dir.resolve("doc.pdf");
+                try (PDDocument document = new PDDocument()) {
+                    document.addPage(new PDPage());
+                    document.save(file.toFile());
+                }
+            }
+            default -> {
+                file = dir.resolve("song.mp3");
+                byte[] bytes = new byte[200 * 1024];
+                new Random(42).nextBytes(bytes);
+                Files.write(file, bytes);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public Object perFile() {
+        return switch (kind) {
+            case "image" -> new ImageFingerprinter().calculate(file);
+            case "pdf" -> new PdfFingerprinter(fileSystem).calculatePdfHash(file);
+            default -> new AudioFingerprinter(fileSystem).calculateAudioHash(file);
+        };
+    }
+
+    @Benchmark
+    public Object reused() {
+        return switch (kind) {
+            case "image" -> extractors.image().calculate(file);
+            case "pdf" -> extractors.pdf().calculatePdfHash(file);
+            default -> extractors.audio().calculateAudioHash(file);
+        };
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ExtractorsBenchmark.class.getSimpleName()).addProfiler("gc").build()).run();
+    }
+}
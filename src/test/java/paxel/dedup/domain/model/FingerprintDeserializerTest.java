@@ -0,0 +1,24 @@
+package paxel.dedup.domain.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FingerprintDeserializerTest {
+
+    private final FingerprintDeserializer deserializer = new FingerprintDeserializer();
+
+    @Test
+    void shouldParseHex() {
+        assertThat(deserializer.parse("ffffffffffffffff")).isEqualTo(-1L);
+        assertThat(deserializer.parse("000000000000000f")).isEqualTo(15L);
+        assertThat(deserializer.parse(" ")).isNull();
+        assertThat(deserializer.parse("xyz")).isNull();
+    }
+
+    @Test
+    void shouldParseConcatenatedHex() {
+        assertThat(deserializer.parseAll("0000000000000001fffffffffffffffe")).containsExactly(1L, -2L);
+        assertThat(deserializer.parseAll("fallback:0123456")).isNull();
+    }
+}
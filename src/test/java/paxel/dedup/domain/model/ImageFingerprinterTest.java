@@ -7,6 +7,7 @@ import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -32,7 +33,7 @@ class ImageFingerprinterTest {
         ImageIO.write(baseImg, "png", baseFile.toFile());
 
         ImageFingerprinter fingerprinter = new ImageFingerprinter();
-        String baseFingerprint = fingerprinter.calculate(baseFile).fingerprint();
+        Long baseFingerprint = fingerprinter.calculate(baseFile).fingerprint();
         assertThat(baseFingerprint).isNotNull();
 
         // Test rotations
@@ -40,7 +41,7 @@ class ImageFingerprinterTest {
             BufferedImage rotatedImg = rotate(baseImg, angle);
             Path rotatedFile = tempDir.resolve("rotated_" + angle + ".png");
             ImageIO.write(rotatedImg, "png", rotatedFile.toFile());
-            String rotatedFingerprint = fingerprinter.calculate(rotatedFile).fingerprint();
+            Long rotatedFingerprint = fingerprinter.calculate(rotatedFile).fingerprint();
             assertThat(rotatedFingerprint).isEqualTo(baseFingerprint)
                     .as("Fingerprint for " + angle + " rotation should match");
         }
@@ -49,7 +50,7 @@ class ImageFingerprinterTest {
         BufferedImage flippedHImg = flipHorizontal(baseImg);
         Path flippedHFile = tempDir.resolve("flippedH.png");
         ImageIO.write(flippedHImg, "png", flippedHFile.toFile());
-        String flippedHFingerprint = fingerprinter.calculate(flippedHFile).fingerprint();
+        Long flippedHFingerprint = fingerprinter.calculate(flippedHFile).fingerprint();
         assertThat(flippedHFingerprint).isEqualTo(baseFingerprint)
                 .as("Fingerprint for horizontal flip should match");
 
@@ -57,11 +58,118 @@ class ImageFingerprinterTest {
         BufferedImage flippedVImg = flipVertical(baseImg);
         Path flippedVFile = tempDir.resolve("flippedV.png");
         ImageIO.write(flippedVImg, "png", flippedVFile.toFile());
-        String flippedVFingerprint = fingerprinter.calculate(flippedVFile).fingerprint();
+        Long flippedVFingerprint = fingerprinter.calculate(flippedVFile).fingerprint();
         assertThat(flippedVFingerprint).isEqualTo(baseFingerprint)
                 .as("Fingerprint for vertical flip should match");
     }
 
+    @Test
+    void shouldReadSizeFromHeaderAndDecodeLargeImagesSubsampled() throws IOException {
+        BufferedImage large = new BufferedImage(3000, 2000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = large.createGraphics();
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, 3000, 2000);
+        g.setColor(Color.WHITE);
+        g.fillRect(300, 200, 600, 1600);
+        g.fillRect(300, 1400, 1800, 400);
+        g.dispose();
+        Path file = tempDir.resolve("large.jpg");
+        ImageIO.write(large, "jpg", file.toFile());
+
+        ImageFingerprinter fingerprinter = new ImageFingerprinter();
+        ImageFingerprinter.FingerprintResult subsampled = fingerprinter.calculate(file);
+        ImageFingerprinter.FingerprintResult full = fingerprinter.calculate(ImageIO.read(file.toFile()));
+
+        assertThat(ImageFingerprinter.subsampling(subsampled.imageSize())).isEqualTo(7);
+        assertThat(subsampled.imageSize()).isEqualTo(new Dimension(3000, 2000));
+        assertThat(fingerprinter.readDimension(file)).isEqualTo(new Dimension(3000, 2000));
+        assertThat(subsampled.fingerprint()).isEqualTo(full.fingerprint());
+    }
+
+    @Test
+    void shouldReturnEmptyResultForNonImages() throws IOException {
+        Path file = tempDir.resolve("text.jpg");
+        Files.writeString(file, "not an image");
+
+        ImageFingerprinter fingerprinter = new ImageFingerprinter();
+
+        assertThat(fingerprinter.calculate(file).fingerprint()).isNull();
+        assertThat(fingerprinter.readDimension(file)).isNull();
+    }
+
+    @Test
+    void pHashAndAHashShouldBeInvariantToRotationAndMirroring() {
+        BufferedImage baseImg = scene();
+        ImageFingerprinter fingerprinter = new ImageFingerprinter();
+
+        for (ImageHash algorithm : new ImageHash[]{ImageHash.PHASH, ImageHash.AHASH}) {
+            Long baseFingerprint = fingerprinter.calculate(baseImg, algorithm).fingerprint();
+            assertThat(baseFingerprint).isNotNull();
+            for (int angle : new int[]{90, 180, 270}) {
+                assertThat(fingerprinter.calculate(rotate(baseImg, angle), algorithm).fingerprint())
+                        .as(algorithm + " for " + angle + " rotation should match")
+                        .isEqualTo(baseFingerprint);
+            }
+            assertThat(fingerprinter.calculate(flipHorizontal(baseImg), algorithm).fingerprint()).isEqualTo(baseFingerprint);
+            assertThat(fingerprinter.calculate(flipVertical(baseImg), algorithm).fingerprint()).isEqualTo(baseFingerprint);
+        }
+    }
+
+    @Test
+    void pHashShouldMatchResizedAndRecompressedCopies() throws IOException {
+        BufferedImage baseImg = scene();
+        BufferedImage small = new BufferedImage(120, 120, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = small.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g.drawImage(baseImg, 0, 0, 120, 120, null);
+        g.dispose();
+        Path file = tempDir.resolve("small.jpg");
+        ImageIO.write(small, "jpg", file.toFile());
+
+        ImageFingerprinter fingerprinter = new ImageFingerprinter();
+        long original = fingerprinter.calculate(baseImg, ImageHash.PHASH).fingerprint();
+        long copy = fingerprinter.calculate(file, ImageHash.PHASH).fingerprint();
+        long other = fingerprinter.calculate(rotate(flipHorizontal(baseImg), 45), ImageHash.PHASH).fingerprint();
+
+        assertThat(Long.bitCount(original ^ copy)).isLessThanOrEqualTo(6);
+        assertThat(Long.bitCount(original ^ other)).isGreaterThan(6);
+        assertThat(fingerprinter.calculate(baseImg, ImageHash.DHASH).fingerprint())
+                .isEqualTo(fingerprinter.calculate(baseImg).fingerprint());
+    }
+
+    @Test
+    void reusedReadersShouldGiveTheSameResultsAcrossFormats() throws IOException {
+        BufferedImage baseImg = scene();
+        Path png = tempDir.resolve("scene.png");
+        Path jpg = tempDir.resolve("scene.jpg");
+        Path broken = tempDir.resolve("broken.png");
+        ImageIO.write(baseImg, "png", png.toFile());
+        ImageIO.write(baseImg, "jpg", jpg.toFile());
+        Files.write(broken, new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0});
+
+        ImageFingerprinter fresh = new ImageFingerprinter();
+        ImageFingerprinter reusing = ImageFingerprinter.forThread();
+
+        // alternating formats and a file the reader fails on must not leave state behind in the reused readers
+        for (Path file : new Path[]{png, jpg, broken, png, jpg, png}) {
+            assertThat(reusing.calculate(file, ImageHash.PHASH)).isEqualTo(fresh.calculate(file, ImageHash.PHASH));
+            assertThat(reusing.readDimension(file)).isEqualTo(fresh.readDimension(file));
+        }
+    }
+
+    private BufferedImage scene() {
+        BufferedImage img = new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.BLUE, 400, 300, Color.ORANGE));
+        g.fillRect(0, 0, 400, 400);
+        g.setColor(Color.WHITE);
+        g.fillOval(40, 60, 160, 120);
+        g.setColor(Color.DARK_GRAY);
+        g.fillRect(250, 220, 100, 150);
+        g.dispose();
+        return img;
+    }
+
     private BufferedImage rotate(BufferedImage img, int angle) {
         int w = img.getWidth();
         int h = img.getHeight();
@@ -0,0 +1,139 @@
+package paxel.dedup.domain.model;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the image hashes by cost per image and by how well they separate re-encoded copies from other images.
+ * <p>
+ * {@code candidates} counts the pairs of unrelated images within the distance of a 90% threshold, which all have to be
+ * verified or end up as false groups. {@code misses} counts the downscaled JPEG copies that are further away than that.
+ * Run {@link #main(String[])} from the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ImageHashBenchmark {
+
+    private static final int IMAGES = 64;
+    private static final int MAX_DISTANCE = 6;
+
+    @Param({"DHASH", "PHASH", "AHASH"})
+    public ImageHash algorithm;
+
+    private final ImageFingerprinter fingerprinter = new ImageFingerprinter();
+    private BufferedImage[] originals;
+    private long[] fingerprints;
+    private long[] copies;
+    private int next;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Separation {
+        public long candidates;
+        public long misses;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        originals = new BufferedImage[IMAGES];
+        fingerprints = new long[IMAGES];
+        copies = new long[IMAGES];
+        for (int i = 0; i < IMAGES; i++) {
+            originals[i] = scene(random);
+            fingerprints[i] = fingerprinter.calculate(originals[i], algorithm).fingerprint();
+            copies[i] = fingerprinter.calculate(reencode(originals[i]), algorithm).fingerprint();
+        }
+    }
+
+    @Benchmark
+    public Long hash() {
+        next = (next + 1) % IMAGES;
+        return fingerprinter.calculate(originals[next], algorithm).fingerprint();
+    }
+
+    @Benchmark
+    public void separate(Separation separation) {
+        long candidates = 0;
+        long misses = 0;
+        for (int i = 0; i < IMAGES; i++) {
+            if (Long.bitCount(fingerprints[i] ^ copies[i]) > MAX_DISTANCE) {
+                misses++;
+            }
+            for (int j = i + 1; j < IMAGES; j++) {
+                if (Long.bitCount(fingerprints[i] ^ fingerprints[j]) <= MAX_DISTANCE) {
+                    candidates++;
+                }
+            }
+        }
+        // the counts are the same for every invocation, so they are reported as is
+        separation.candidates = candidates;
+        separation.misses = misses;
+    }
+
+    private static BufferedImage scene(Random random) {
+        BufferedImage img = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, randomColor(random), 800, 600, randomColor(random)));
+        g.fillRect(0, 0, 800, 600);
+        for (int i = 0; i < 12; i++) {
+            g.setColor(randomColor(random));
+            g.fillOval(random.nextInt(800) - 100, random.nextInt(600) - 100, 50 + random.nextInt(300), 50 + random.nextInt(300));
+        }
+        g.dispose();
+        return img;
+    }
+
+    private static Color randomColor(Random random) {
+        return new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+    }
+
+    /**
+     * Scales the image down to 37% and compresses it as JPEG with quality 0.5.
+     */
+    private static BufferedImage reencode(BufferedImage img) throws IOException {
+        int width = img.getWidth() * 37 / 100;
+        int height = img.getHeight() * 37 / 100;
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g.drawImage(img, 0, 0, width, height, null);
+        g.dispose();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(0.5f);
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(scaled, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ImageHashBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,208 @@
+package paxel.dedup.domain.model;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.jcodec.api.awt.AWTSequenceEncoder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import paxel.dedup.infrastructure.adapter.out.filesystem.NioFileSystemAdapter;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+class MetadataExtractorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final MetadataExtractor extractor = new MetadataExtractor(new NioFileSystemAdapter());
+
+    @Test
+    void readsDurationAndFrameSizeFromTheMp4Header() throws Exception {
+        // Arrange
+        Path video = tempDir.resolve("clip.mp4");
+        AWTSequenceEncoder encoder = AWTSequenceEncoder.createSequenceEncoder(video.toFile(), 25);
+        for (int i = 0; i < 50; i++) {
+            encoder.encodeImage(new BufferedImage(64, 48, BufferedImage.TYPE_3BYTE_BGR));
+        }
+        encoder.finish();
+
+        // Act
+        Map<String, String> attributes = extractor.extract(video);
+
+        // Assert
+        assertThat(attributes).contains(entry("width", "64"), entry("height", "48"), entry("codec", "avc1"));
+        assertThat(Double.parseDouble(attributes.get("duration"))).isEqualTo(2.0);
+    }
+
+    @Test
+    void readsTextFramesFromTheId3Tag() throws Exception {
+        // Arrange
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frame(frames, "TIT2", text("Song"));
+        frame(frames, "APIC", new byte[20_000]);
+        frame(frames, "TPE1", text("Band"));
+        frame(frames, "TLEN", text("183500"));
+        Path audio = tempDir.resolve("song.mp3");
+        Files.write(audio, tag(frames.toByteArray()));
+
+        // Act
+        Map<String, String> attributes = extractor.extract(audio);
+
+        // Assert
+        assertThat(attributes).containsOnly(entry("title", "Song"), entry("artist", "Band"), entry("duration", "183.5"));
+    }
+
+    @Test
+    void readsPagesAndTitleOfAPdf() throws Exception {
+        // Arrange
+        Path pdf = tempDir.resolve("doc.pdf");
+        try (PDDocument document = new PDDocument()) {
+            document.addPage(new PDPage());
+            document.addPage(new PDPage());
+            document.getDocumentInformation().setTitle("Report");
+            document.save(pdf.toFile());
+        }
+
+        // Act
+        Map<String, String> attributes = extractor.extract(pdf);
+
+        // Assert
+        assertThat(attributes).containsOnly(entry("pages", "2"), entry("title", "Report"));
+    }
+
+    @Test
+    void readsCameraAndCaptureTimeFromTheExifOfAJpeg() throws Exception {
+        // Arrange: an EXIF segment in front of the segments of a real JPEG
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "jpg", jpeg);
+        byte[] image = jpeg.toByteArray();
+        byte[] exif = exif("Canon", "Canon EOS 5D", "2019:06:01 12:00:00");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeShort(0xffd8);
+        data.writeShort(0xffe1);
+        data.writeShort(exif.length + 2);
+        data.write(exif);
+        data.write(image, 2, image.length - 2);
+        Path photo = tempDir.resolve("photo.jpg");
+        Files.write(photo, out.toByteArray());
+
+        // Act
+        Map<String, String> attributes = extractor.exif(photo);
+
+        // Assert
+        assertThat(attributes).containsOnly(entry("camera", "Canon EOS 5D"), entry("taken", "2019:06:01 12:00:00"));
+    }
+
+    @Test
+    void returnsNoExifForImagesWithoutIt() throws Exception {
+        // Arrange
+        Path photo = tempDir.resolve("plain.jpg");
+        ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "jpg", photo.toFile());
+
+        // Act + Assert
+        assertThat(extractor.exif(photo)).isEmpty();
+        assertThat(extractor.exif(tempDir.resolve("missing.jpg"))).isEmpty();
+    }
+
+    @Test
+    void returnsNothingForUnknownContent() throws Exception {
+        // Arrange
+        Path file = tempDir.resolve("data.bin");
+        Files.write(file, new byte[]{1, 2, 3});
+
+        // Act
+        Map<String, String> attributes = extractor.extract(file);
+
+        // Assert
+        assertThat(attributes).isEmpty();
+    }
+
+    @Test
+    void takesTheAttributesMissingInTheHeaderFromAnEarlierParse() throws Exception {
+        // Arrange
+        Path file = tempDir.resolve("data.bin");
+        Files.write(file, new byte[]{1, 2, 3});
+        Metadata parsed = new Metadata();
+        parsed.set(TikaCoreProperties.TITLE, "Report");
+        parsed.set("Page-Count", "3");
+
+        // Act
+        Map<String, String> attributes = extractor.extract(file, parsed);
+
+        // Assert
+        assertThat(attributes).containsOnly(entry("pages", "3"), entry("title", "Report"));
+    }
+
+    /**
+     * The EXIF header and a big endian TIFF structure: IFD0 with make, model and the pointer to the EXIF IFD, which
+     * holds the original capture time. The text values follow the directories.
+     */
+    private static byte[] exif(String make, String model, String taken) {
+        byte[] makeBytes = (make + "\0").getBytes(StandardCharsets.ISO_8859_1);
+        byte[] modelBytes = (model + "\0").getBytes(StandardCharsets.ISO_8859_1);
+        byte[] takenBytes = (taken + "\0").getBytes(StandardCharsets.ISO_8859_1);
+        int ifd0 = 8;
+        int exifIfd = ifd0 + 2 + 3 * 12 + 4;
+        int values = exifIfd + 2 + 12 + 4;
+        ByteBuffer tiff = ByteBuffer.allocate(values + makeBytes.length + modelBytes.length + takenBytes.length);
+        tiff.put(new byte[]{'M', 'M', 0, 42}).putInt(ifd0);
+        tiff.putShort((short) 3);
+        tiff.putShort((short) 0x010f).putShort((short) 2).putInt(makeBytes.length).putInt(values);
+        tiff.putShort((short) 0x0110).putShort((short) 2).putInt(modelBytes.length).putInt(values + makeBytes.length);
+        tiff.putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(exifIfd);
+        tiff.putInt(0);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x9003).putShort((short) 2).putInt(takenBytes.length).putInt(values + makeBytes.length + modelBytes.length);
+        tiff.putInt(0);
+        tiff.put(makeBytes).put(modelBytes).put(takenBytes);
+        byte[] header = {'E', 'x', 'i', 'f', 0, 0};
+        byte[] exif = new byte[header.length + tiff.capacity()];
+        System.arraycopy(header, 0, exif, 0, header.length);
+        System.arraycopy(tiff.array(), 0, exif, header.length, tiff.capacity());
+        return exif;
+    }
+
+    private static byte[] text(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] frame = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, frame, 1, bytes.length);
+        return frame;
+    }
+
+    private static void frame(ByteArrayOutputStream out, String id, byte[] content) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(id.getBytes(StandardCharsets.ISO_8859_1));
+        data.writeInt(content.length);
+        data.writeShort(0);
+        data.write(content);
+    }
+
+    /**
+     * An ID3v2.3 tag with some padding, followed by a few bytes standing in for the audio frames.
+     */
+    private static byte[] tag(byte[] frames) throws IOException {
+        int size = frames.length + 100;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{'I', 'D', '3', 3, 0, 0,
+                (byte) ((size >> 21) & 0x7f), (byte) ((size >> 14) & 0x7f), (byte) ((size >> 7) & 0x7f), (byte) (size & 0x7f)});
+        out.write(frames);
+        out.write(new byte[100]);
+        out.write(new byte[]{(byte) 0xff, (byte) 0xfb, (byte) 0x90, 0});
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,56 @@
+package paxel.dedup.domain.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetadataSignatureTest {
+
+    private final MetadataSignature signature = new MetadataSignature();
+
+    @Test
+    void shouldMatchPhotosOfTheSameShot() {
+        // Arrange
+        Map<String, String> exif = Map.of("camera", "Canon EOS 5D", "taken", "2019:06:01 12:00:00");
+
+        // Act
+        String original = signature.photo(exif, new Dimension(4000, 3000));
+        String rotated = signature.photo(exif, new Dimension(3000, 4000));
+        String later = signature.photo(Map.of("camera", "Canon EOS 5D", "taken", "2019:06:01 12:00:01"), new Dimension(4000, 3000));
+        String scaled = signature.photo(exif, new Dimension(2000, 1500));
+
+        // Assert
+        assertThat(original).hasSize(16);
+        assertThat(rotated).isEqualTo(original);
+        assertThat(later).isNotEqualTo(original);
+        assertThat(scaled).isNotEqualTo(original);
+        assertThat(signature.photo(Map.of(), new Dimension(4000, 3000))).isNull();
+        assertThat(signature.photo(Map.of("camera", "Canon EOS 5D"), new Dimension(4000, 3000))).isNull();
+    }
+
+    @Test
+    void shouldMatchVideosOfTheSameDurationSizeAndCodec() {
+        // Arrange
+        Map<String, String> video = Map.of("duration", "120.4", "width", "1920", "height", "1080", "codec", "avc1");
+
+        // Act
+        String original = signature.video(video);
+        String remuxed = signature.video(Map.of("duration", "119.6", "width", "1920", "height", "1080", "codec", "avc1"));
+        String reencoded = signature.video(Map.of("duration", "120.4", "width", "1920", "height", "1080", "codec", "hvc1"));
+
+        // Assert
+        assertThat(remuxed).isEqualTo(original);
+        assertThat(reencoded).isNotEqualTo(original);
+        assertThat(signature.video(Map.of("width", "1920"))).isNull();
+        assertThat(signature.video(Map.of("duration", "unknown", "width", "1920", "height", "1080"))).isNull();
+        assertThat(signature.video(Map.of("duration", "120.4", "codec", "avc1"))).isNull();
+    }
+
+    @Test
+    void shouldNotMixPhotosAndVideos() {
+        assertThat(signature.photo(Map.of("taken", "1"), null))
+                .isNotEqualTo(signature.video(Map.of("duration", "1", "width", "1", "height", "1")));
+    }
+}
@@ -33,4 +33,67 @@ class MimetypeProviderTest {
         Result<String, DedupError> result = provider.get(file);
         assertThat(result.hasFailed()).isTrue();
     }
+
+    @Test
+    void resolvesUnambiguousExtensionsWithoutReadingTheFile() {
+        // Arrange
+        Path file = tempDir.resolve("not-there.JPG");
+
+        // Act
+        Result<String, DedupError> result = provider.get(file);
+
+        // Assert
+        assertThat(result.value()).isEqualTo("image/jpeg");
+    }
+
+    @Test
+    void sniffsTheHeadReadByTheHasher() {
+        // Arrange
+        Path file = tempDir.resolve("picture");
+        byte[] head = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 13, 'I', 'H', 'D', 'R'};
+
+        // Act
+        Result<String, DedupError> result = provider.get(file, head);
+
+        // Assert
+        assertThat(result.value()).isEqualTo("image/png");
+    }
+
+    @Test
+    void detectsLikeTikaForAmbiguousExtensions() throws IOException {
+        // Arrange
+        Path pdf = tempDir.resolve("scan.bin");
+        Files.writeString(pdf, "%PDF-1.4\n%\u00e2\u00e3\n1 0 obj\n");
+        Path data = tempDir.resolve("other.bin");
+        Files.write(data, new byte[]{0, 1, 2, 3, 4, 5, (byte) 0xff});
+
+        // Act
+        String first = provider.get(pdf).value();
+        String cached = provider.get(pdf).value();
+        String other = provider.get(data).value();
+
+        // Assert
+        assertThat(first).isEqualTo(MimetypeProvider.getTika().detect(pdf));
+        assertThat(cached).isEqualTo(first);
+        assertThat(other).isEqualTo(MimetypeProvider.getTika().detect(data));
+    }
+
+    @Test
+    void tellsXmlFilesApartByTheirRootElement() throws IOException {
+        // Arrange: the same first 100 bytes, the root element decides
+        String prolog = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- " + "x".repeat(60) + " -->\n";
+        Path svg = tempDir.resolve("a.xml");
+        Files.writeString(svg, prolog + "<svg xmlns=\"http://www.w3.org/2000/svg\"></svg>");
+        Path plain = tempDir.resolve("b.xml");
+        Files.writeString(plain, prolog + "<note><to>you</to></note>");
+
+        // Act
+        String first = provider.get(plain).value();
+        String second = provider.get(svg).value();
+
+        // Assert
+        assertThat(first).isEqualTo(MimetypeProvider.getTika().detect(plain));
+        assertThat(second).isEqualTo(MimetypeProvider.getTika().detect(svg));
+        assertThat(second).isNotEqualTo(first);
+    }
 }
@@ -0,0 +1,85 @@
+package paxel.dedup.domain.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MinHashTest {
+
+    @Test
+    void shouldEstimateTheSimilarityOfEditedTexts() {
+        // Arrange: the same 2000 words, once with every 100th word replaced
+        String[] words = words(2000, new Random(42));
+        String original = String.join(" ", words);
+        for (int i = 0; i < words.length; i += 100) {
+            words[i] = "edited";
+        }
+        String edited = String.join("\n", words);
+
+        // Act
+        int[] a = signature(original);
+        int[] b = signature(edited);
+        int[] c = signature(String.join(" ", words(2000, new Random(7))));
+
+        // Assert: 5% of the shingles changed, so about 90% of them are shared
+        assertThat(MinHash.similarity(a, a)).isEqualTo(1.0);
+        assertThat(MinHash.similarity(a, b)).isGreaterThan(0.75);
+        assertThat(MinHash.similarity(a, c)).isLessThan(0.1);
+    }
+
+    @Test
+    void shouldIgnoreCaseWhitespaceAndPunctuation() {
+        assertThat(signature("The quick brown fox jumps over the lazy dog."))
+                .isEqualTo(signature("the  QUICK brown\tfox - jumps over the lazy dog"));
+    }
+
+    @Test
+    void shouldBeIndependentOfTheChunking() {
+        // Arrange
+        String text = String.join(" ", words(500, new Random(42)));
+        MinHash chunked = new MinHash();
+
+        // Act: chunks that split words
+        for (int from = 0; from < text.length(); from += 7) {
+            chunked.accept(text.substring(from, Math.min(text.length(), from + 7)));
+        }
+
+        // Assert
+        assertThat(chunked.signature()).isEqualTo(signature(text));
+    }
+
+    @Test
+    void shouldHandleShortAndEmptyTexts() {
+        assertThat(signature("two words")).isNotNull();
+        assertThat(signature("two words")).isNotEqualTo(signature("other words"));
+        assertThat(signature(" .,;- ")).isNull();
+    }
+
+    @Test
+    void shouldStopAtTheSizeCap() {
+        // Arrange
+        MinHash minHash = new MinHash();
+        char[] chunk = new char[MinHash.MAX_CHARS / 2];
+        java.util.Arrays.fill(chunk, 'a');
+
+        // Act + Assert
+        assertThat(minHash.accept(chunk, 0, chunk.length)).isTrue();
+        assertThat(minHash.accept(chunk, 0, chunk.length)).isFalse();
+    }
+
+    private static int[] signature(String text) {
+        MinHash minHash = new MinHash();
+        minHash.accept(text);
+        return minHash.signature();
+    }
+
+    private static String[] words(int count, Random random) {
+        String[] words = new String[count];
+        for (int i = 0; i < count; i++) {
+            words[i] = "w" + random.nextInt(5000);
+        }
+        return words;
+    }
+}
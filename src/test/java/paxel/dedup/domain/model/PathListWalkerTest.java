@@ -0,0 +1,86 @@
+package paxel.dedup.domain.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import paxel.dedup.infrastructure.adapter.out.filesystem.NioFileSystemAdapter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class PathListWalkerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void reportsListedFilesAndMissingPathsWithoutWalking() throws IOException {
+        // Arrange
+        Path root = tempDir.resolve("root");
+        Files.createDirectories(root.resolve("sub"));
+        Path file1 = Files.writeString(root.resolve("file1.txt"), "content1");
+        Path file2 = Files.writeString(root.resolve("sub/file2.txt"), "content2");
+        Files.writeString(root.resolve("unlisted.txt"), "content3");
+
+        List<Path> files = new ArrayList<>();
+        List<Path> missing = new ArrayList<>();
+        FileObserver observer = mock(FileObserver.class);
+        doAnswer(invocation -> files.add(invocation.getArgument(0))).when(observer).file(any(Path.class));
+        doAnswer(invocation -> missing.add(invocation.getArgument(0))).when(observer).missing(any(Path.class));
+
+        String list = "file1.txt\n" + file2 + "\r\n\ngone.txt\0sub";
+
+        // Act
+        new PathListWalker(observer, new NioFileSystemAdapter())
+                .walk(root, new ByteArrayInputStream(list.getBytes(StandardCharsets.UTF_8)));
+
+        // Assert
+        assertThat(files).containsExactly(file1, file2);
+        assertThat(missing).containsExactly(root.resolve("gone.txt"));
+        verify(observer, never()).addDir(any());
+        verify(observer).scanFinished();
+        verify(observer).close();
+    }
+
+    @Test
+    void rejectsPathsOutsideOfRoot() throws IOException {
+        // Arrange
+        Path root = tempDir.resolve("root");
+        Files.createDirectories(root);
+        Files.writeString(tempDir.resolve("outside.txt"), "content");
+        FileObserver observer = mock(FileObserver.class);
+
+        // Act
+        new PathListWalker(observer, new NioFileSystemAdapter())
+                .walk(root, new ByteArrayInputStream("../outside.txt".getBytes(StandardCharsets.UTF_8)));
+
+        // Assert
+        verify(observer, never()).file(any());
+        verify(observer).fail(eq(tempDir.resolve("outside.txt")), any(IllegalArgumentException.class));
+    }
+
+    @Test
+    void reportsAnUnreadableListAsFailure() {
+        // Arrange
+        Path root = tempDir.resolve("root");
+        Path list = tempDir.resolve("no-such.lst");
+        FileObserver observer = mock(FileObserver.class);
+
+        // Act
+        new PathListWalker(observer, new NioFileSystemAdapter()).walk(root, list);
+
+        // Assert
+        verify(observer).fail(eq(list), any(NoSuchFileException.class));
+        verify(observer, never()).file(any());
+        verify(observer).scanFinished();
+        verify(observer).close();
+    }
+}
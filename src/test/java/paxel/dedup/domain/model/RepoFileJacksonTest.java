@@ -0,0 +1,48 @@
+package paxel.dedup.domain.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RepoFileJacksonTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void shouldStoreFingerprintsAsNumbers() throws Exception {
+        RepoFile original = RepoFile.builder().hash("h").relativePath("a.mp4")
+                .fingerprint(0x8000000000000001L)
+                .videoFingerprint(new long[]{1L, -1L, 0L})
+                .build();
+
+        String json = mapper.writeValueAsString(original);
+        assertThat(json).contains("\"f\":-9223372036854775807").contains("\"vf\":[1,-1,0]");
+
+        RepoFile deserialized = mapper.readValue(json, RepoFile.class);
+        assertThat(deserialized.fingerprint()).isEqualTo(0x8000000000000001L);
+        assertThat(deserialized.videoFingerprint()).containsExactly(1L, -1L, 0L);
+    }
+
+    @Test
+    void shouldReadHexFingerprintsOfOlderIndices() throws Exception {
+        String json = "{\"h\":\"h\",\"p\":\"a.mp4\",\"f\":\"800000000000000f\",\"vh\":\"" + "0".repeat(15) + "1" + "f".repeat(32) + "\"}";
+
+        RepoFile deserialized = mapper.readValue(json, RepoFile.class);
+
+        assertThat(deserialized.fingerprint()).isEqualTo(0x800000000000000fL);
+        assertThat(deserialized.videoFingerprint()).containsExactly(1L, -1L, -1L);
+        assertThat(deserialized.videoHash()).isNull();
+    }
+
+    @Test
+    void shouldKeepFallbackVideoHash() throws Exception {
+        String json = "{\"h\":\"h\",\"vh\":\"fallback:abc\",\"f\":\"\"}";
+
+        RepoFile deserialized = mapper.readValue(json, RepoFile.class);
+
+        assertThat(deserialized.videoHash()).isEqualTo("fallback:abc");
+        assertThat(deserialized.videoFingerprint()).isNull();
+        assertThat(deserialized.fingerprint()).isNull();
+    }
+}
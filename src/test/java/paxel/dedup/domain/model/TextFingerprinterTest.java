@@ -0,0 +1,50 @@
+package paxel.dedup.domain.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import paxel.dedup.infrastructure.adapter.out.filesystem.NioFileSystemAdapter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TextFingerprinterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final TextFingerprinter fingerprinter = new TextFingerprinter(new NioFileSystemAdapter());
+
+    @Test
+    void shouldStreamTextFilesIntoTheSignature() throws IOException {
+        // Arrange: a text larger than the read buffer, with umlauts split at buffer borders
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("Größe ").append(i).append(' ');
+        }
+        Path file = tempDir.resolve("text.txt");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+        MinHash expected = new MinHash();
+        expected.accept(text.toString());
+
+        // Act
+        int[] signature = fingerprinter.read(file);
+
+        // Assert
+        assertThat(signature).isEqualTo(expected.signature());
+    }
+
+    @Test
+    void shouldIgnoreMissingAndEmptyFiles() throws IOException {
+        // Arrange
+        Path empty = tempDir.resolve("empty.txt");
+        Files.createFile(empty);
+
+        // Act + Assert
+        assertThat(fingerprinter.read(empty)).isNull();
+        assertThat(fingerprinter.read(tempDir.resolve("missing.txt"))).isNull();
+    }
+}
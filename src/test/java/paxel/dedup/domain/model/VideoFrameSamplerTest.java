@@ -0,0 +1,95 @@
+package paxel.dedup.domain.model;
+
+import org.jcodec.api.awt.AWTSequenceEncoder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VideoFrameSamplerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void samplesTheRequestedFramesFromKeyFrames() throws Exception {
+        // Arrange
+        Path video = createVideo(tempDir.resolve("clip.mp4"), 50);
+        VideoFrameSampler sampler = new VideoFrameSampler(3, true, Duration.ofMinutes(1));
+        List<Integer> indices = new ArrayList<>();
+
+        // Act
+        VideoFrameSampler.Sample sample = sampler.sample(video, (index, frame) -> indices.add(index));
+
+        // Assert
+        assertThat(sample).isEqualTo(new VideoFrameSampler.Sample(3, 3, true));
+        assertThat(indices).containsExactly(0, 1, 2);
+    }
+
+    @Test
+    void stopsWhenTheBudgetIsExhausted() throws Exception {
+        // Arrange
+        Path video = createVideo(tempDir.resolve("clip.mp4"), 50);
+        // every reading of the clock advances it by one second
+        AtomicLong clock = new AtomicLong();
+        VideoFrameSampler sampler = new VideoFrameSampler(5, true, Duration.ofMillis(2500), () -> clock.getAndAdd(1_000_000_000L));
+
+        // Act
+        VideoFrameSampler.Sample sample = sampler.sample(video, (index, frame) -> {
+        });
+
+        // Assert
+        assertThat(sample.complete()).isFalse();
+        assertThat(sample.visited()).isEqualTo(2);
+        assertThat(sample.decoded()).isEqualTo(2);
+    }
+
+    @Test
+    void partialFingerprintKeepsTheDecodedFrames() throws Exception {
+        // Arrange
+        Path video = createVideo(tempDir.resolve("clip.mp4"), 50);
+        AtomicLong clock = new AtomicLong();
+        VideoFingerprinter fingerprinter = new VideoFingerprinter(
+                new VideoFrameSampler(3, true, Duration.ofMillis(1500), () -> clock.getAndAdd(1_000_000_000L)));
+
+        // Act
+        VideoFingerprinter.TemporalHash temporalHash = fingerprinter.calculateTemporalHash(video);
+
+        // Assert
+        assertThat(temporalHash.fingerprint()).hasSize(1);
+        assertThat(temporalHash.fallbackHash()).isNull();
+    }
+
+    @Test
+    void findsTheNearestKeyFrame() {
+        int[] keyFrames = {0, 25, 50, 75};
+
+        assertThat(VideoFrameSampler.nearest(keyFrames, 5)).isZero();
+        assertThat(VideoFrameSampler.nearest(keyFrames, 40)).isEqualTo(50);
+        assertThat(VideoFrameSampler.nearest(keyFrames, 99)).isEqualTo(75);
+    }
+
+    private static Path createVideo(Path file, int frames) throws Exception {
+        AWTSequenceEncoder encoder = AWTSequenceEncoder.createSequenceEncoder(file.toFile(), 25);
+        for (int i = 0; i < frames; i++) {
+            BufferedImage frame = new BufferedImage(64, 48, BufferedImage.TYPE_3BYTE_BGR);
+            Graphics2D g = frame.createGraphics();
+            g.setColor(Color.DARK_GRAY);
+            g.fillRect(0, 0, 64, 48);
+            g.setColor(Color.ORANGE);
+            g.fillRect(i, 10, 20, 20);
+            g.dispose();
+            encoder.encodeImage(frame);
+        }
+        encoder.finish();
+        return file;
+    }
+}
@@ -2,7 +2,9 @@ package paxel.dedup.infrastructure.config;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import paxel.dedup.domain.model.ImageHash;
 import paxel.dedup.domain.model.Repo;
+import paxel.dedup.domain.model.VideoSampling;
 import paxel.dedup.domain.model.errors.DedupError;
 import paxel.dedup.infrastructure.adapter.out.filesystem.NioFileSystemAdapter;
 import paxel.lib.Result;
@@ -110,4 +112,41 @@ class DefaultDedupConfigTest {
         assertThat(noop.isSuccess()).isTrue();
         assertThat(noop.value()).isFalse();
     }
+
+    @Test
+    void setImageHash_is_kept_by_config_changes_and_rename() {
+        // Arrange
+        DefaultDedupConfig cfg = newConfig();
+        assertThat(cfg.createRepo("old", tempDir.resolve("data"), 2).isSuccess()).isTrue();
+
+        // Act
+        Result<Repo, DedupError> changed = cfg.setImageHash("old", ImageHash.PHASH);
+        cfg.setRepoConfig("old", Repo.Codec.JSON, true);
+        cfg.renameRepo("old", "new");
+
+        // Assert
+        assertThat(changed.isSuccess()).isTrue();
+        Repo after = cfg.getRepo("new").value();
+        assertThat(after.imageHash()).isEqualTo(ImageHash.PHASH);
+        assertThat(after.codec()).isEqualTo(Repo.Codec.JSON);
+        assertThat(after.compressed()).isTrue();
+    }
+
+    @Test
+    void setVideoSampling_is_kept_by_config_changes_and_rename() {
+        // Arrange
+        DefaultDedupConfig cfg = newConfig();
+        assertThat(cfg.createRepo("old", tempDir.resolve("data"), 2).isSuccess()).isTrue();
+
+        // Act
+        Result<Repo, DedupError> changed = cfg.setVideoSampling("old", new VideoSampling(5, true));
+        cfg.setImageHash("old", ImageHash.PHASH);
+        cfg.renameRepo("old", "new");
+
+        // Assert
+        assertThat(changed.isSuccess()).isTrue();
+        Repo after = cfg.getRepo("new").value();
+        assertThat(after.videoSampling()).isEqualTo(new VideoSampling(5, true));
+        assertThat(after.imageHash()).isEqualTo(ImageHash.PHASH);
+    }
 }
@@ -0,0 +1,96 @@
+package paxel.dedup.repo.domain.repo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AcousticMatcherTest {
+
+    private final AcousticMatcher matcher = new AcousticMatcher();
+    private final Random random = new Random(42);
+
+    @Test
+    void matchesNoisyAndShiftedCopies() {
+        // Arrange: 1 is a noisy copy of 0, 3 the end of 0, 2 and 4 are unrelated
+        int[] original = randomFingerprint(400);
+        int[][] fingerprints = {
+                original,
+                noisy(original, 0, 400),
+                randomFingerprint(400),
+                noisy(original, 137, 263),
+                randomFingerprint(100),
+                null
+        };
+        ConcurrentUnionFind components = new ConcurrentUnionFind(fingerprints.length);
+
+        // Act
+        matcher.match(fingerprints, components);
+
+        // Assert
+        assertThat(components.components()).containsExactly(new int[]{0, 1, 3});
+    }
+
+    @Test
+    void ignoresSharedSilence() {
+        // Arrange: two unrelated sounds with the same 100 frames of hum, that is a bucket every file is in
+        int[] a = randomFingerprint(300);
+        int[] b = randomFingerprint(300);
+        int[][] fingerprints = new int[300][];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = randomFingerprint(100);
+            fingerprints[i][50] = 0;
+        }
+        fingerprints[0] = a;
+        fingerprints[1] = b;
+        for (int i = 0; i < 100; i++) {
+            a[i] = 0;
+            b[i] = 0;
+        }
+        ConcurrentUnionFind components = new ConcurrentUnionFind(fingerprints.length);
+
+        // Act
+        matcher.match(fingerprints, components);
+
+        // Assert
+        assertThat(components.components()).isEmpty();
+    }
+
+    @Test
+    void needsEnoughOverlap() {
+        int[] a = randomFingerprint(200);
+        int[] end = Arrays.copyOfRange(a, 200 - AcousticMatcher.MIN_OVERLAP, 200);
+        int[] shorterEnd = Arrays.copyOfRange(a, 201 - AcousticMatcher.MIN_OVERLAP, 200);
+
+        assertThat(matcher.matches(a, a, 0)).isTrue();
+        assertThat(matcher.matches(a, end, AcousticMatcher.MIN_OVERLAP - 200)).isTrue();
+        assertThat(matcher.matches(a, shorterEnd, AcousticMatcher.MIN_OVERLAP - 201)).isFalse();
+        assertThat(matcher.matches(a, randomFingerprint(200), 0)).isFalse();
+    }
+
+    private int[] randomFingerprint(int length) {
+        int[] fingerprint = new int[length];
+        for (int i = 0; i < length; i++) {
+            fingerprint[i] = random.nextInt();
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Flips every bit with a chance of 5%, which leaves about a fifth of the sub-fingerprints unchanged.
+     */
+    private int[] noisy(int[] fingerprint, int from, int length) {
+        int[] copy = new int[length];
+        for (int i = 0; i < length; i++) {
+            copy[i] = fingerprint[from + i];
+            for (int bit = 0; bit < Integer.SIZE; bit++) {
+                if (random.nextDouble() < 0.05) {
+                    copy[i] ^= 1 << bit;
+                }
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,70 @@
+package paxel.dedup.repo.domain.repo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BoundedStageTest {
+
+    @Test
+    void tracksDepthUntilTasksComplete() {
+        // Arrange
+        BoundedStage stage = new BoundedStage("hash", 2);
+        CompletableFuture<String> first = new CompletableFuture<>();
+
+        // Act
+        CompletableFuture<String> submitted = stage.submit(() -> first);
+
+        // Assert
+        assertThat(stage.depth()).isEqualTo(1);
+        assertThat(stage.describe()).isEqualTo("hash 1/2");
+        first.complete("done");
+        assertThat(submitted.join()).isEqualTo("done");
+        assertThat(stage.depth()).isZero();
+    }
+
+    @Test
+    void blocksSubmitterWhileFull() throws InterruptedException {
+        // Arrange
+        BoundedStage stage = new BoundedStage("write", 1);
+        CompletableFuture<String> running = new CompletableFuture<>();
+        stage.submit(() -> running);
+        CountDownLatch submitted = new CountDownLatch(1);
+
+        // Act
+        Thread producer = new Thread(() -> {
+            stage.submit(() -> CompletableFuture.completedFuture("second"));
+            submitted.countDown();
+        });
+        producer.start();
+
+        // Assert
+        assertThat(submitted.await(200, TimeUnit.MILLISECONDS)).isFalse();
+        running.complete("first");
+        assertThat(submitted.await(5, TimeUnit.SECONDS)).isTrue();
+        producer.join();
+        assertThat(stage.depth()).isZero();
+    }
+
+    @Test
+    void releasesPermitIfTaskThrows() {
+        // Arrange
+        BoundedStage stage = new BoundedStage("stat", 1);
+
+        // Act
+        try {
+            stage.submit(() -> {
+                throw new IllegalStateException("boom");
+            });
+        } catch (IllegalStateException ignored) {
+            // expected
+        }
+
+        // Assert
+        assertThat(stage.depth()).isZero();
+    }
+}
@@ -0,0 +1,84 @@
+package paxel.dedup.repo.domain.repo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import paxel.dedup.infrastructure.adapter.out.filesystem.NioFileSystemAdapter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readsTheLatestChunksOfTheRequestedContents() {
+        // Arrange
+        ChunkIndex index = new ChunkIndex(tempDir.resolve(ChunkIndex.FILE_NAME), new NioFileSystemAdapter());
+        index.add("a", new long[]{1, 2, 3});
+        index.add("b", new long[]{4});
+        index.add("a", new long[]{5, 6});
+        index.close();
+
+        // Act
+        Map<String, long[]> chunks = index.read(Set.of("a", "c")).value();
+
+        // Assert
+        assertThat(chunks).containsOnlyKeys("a");
+        assertThat(chunks.get("a")).containsExactly(5L, 6L);
+        assertThat(index.hashes().value()).containsExactlyInAnyOrder("a", "b");
+    }
+
+    @Test
+    void ignoresATruncatedRecord() throws IOException {
+        // Arrange: the last record was cut by a crash
+        Path file = tempDir.resolve(ChunkIndex.FILE_NAME);
+        ChunkIndex index = new ChunkIndex(file, new NioFileSystemAdapter());
+        index.add("a", new long[]{1, 2});
+        index.close();
+        long complete = Files.size(file);
+        index.add("b", new long[]{3, 4});
+        index.close();
+        try (var channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+            channel.truncate(complete + 10);
+        }
+
+        // Act
+        Map<String, long[]> chunks = index.read(Set.of("a", "b")).value();
+
+        // Assert
+        assertThat(chunks).containsOnlyKeys("a");
+    }
+
+    @Test
+    void copiesTheRemainingContentsOnly() {
+        // Arrange
+        ChunkIndex index = new ChunkIndex(tempDir.resolve(ChunkIndex.FILE_NAME), new NioFileSystemAdapter());
+        index.add("kept", new long[]{1});
+        index.add("gone", new long[]{2});
+        index.close();
+        ChunkIndex target = new ChunkIndex(tempDir.resolve("pruned.bin"), new NioFileSystemAdapter());
+
+        // Act
+        index.copyTo(target, Set.of("kept"));
+        target.close();
+
+        // Assert
+        assertThat(target.hashes().value()).containsExactly("kept");
+    }
+
+    @Test
+    void isEmptyWithoutFile() {
+        ChunkIndex index = new ChunkIndex(tempDir.resolve(ChunkIndex.FILE_NAME), new NioFileSystemAdapter());
+
+        assertThat(index.exists()).isFalse();
+        assertThat(index.read(Set.of("a")).value()).isEmpty();
+    }
+}
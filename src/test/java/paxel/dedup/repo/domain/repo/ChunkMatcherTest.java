@@ -0,0 +1,86 @@
+package paxel.dedup.repo.domain.repo;
+
+import org.junit.jupiter.api.Test;
+import paxel.dedup.domain.model.ContentChunker;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkMatcherTest {
+
+    private final ChunkMatcher matcher = new ChunkMatcher();
+    private final Random random = new Random(42);
+
+    @Test
+    void matchesFilesThatShareEnoughOfTheSmallerOne() {
+        // Arrange: 1 shares 80% of 0, 2 shares 20% of 0, 3 is unrelated
+        long[] base = randomChunks(100);
+        long[][] chunks = {
+                base,
+                merge(Arrays.copyOf(base, 80), randomChunks(20)),
+                merge(Arrays.copyOfRange(base, 80, 100), randomChunks(80)),
+                randomChunks(100),
+                null
+        };
+        long[] sizes = Arrays.stream(chunks).mapToLong(c -> c == null ? 0 : bytes(c)).toArray();
+        ConcurrentUnionFind components = new ConcurrentUnionFind(chunks.length);
+
+        // Act
+        List<ChunkMatcher.Shared> shared = matcher.match(chunks, sizes, 50, components);
+
+        // Assert
+        assertThat(components.components()).containsExactly(new int[]{0, 1});
+        assertThat(shared).singleElement().isEqualTo(new ChunkMatcher.Shared(0, 1, bytes(Arrays.copyOf(base, 80))));
+    }
+
+    @Test
+    void findsASmallFileInsideALargeOne() {
+        // Arrange: the large file has more chunks than are sampled, the small one is a part of it
+        long[] large = randomChunks(ChunkMatcher.SAMPLES * 4);
+        long[] small = Arrays.copyOfRange(large, 1000, 1500);
+        long[][] chunks = {large, small};
+        long[] sizes = {bytes(large), bytes(small)};
+        ConcurrentUnionFind components = new ConcurrentUnionFind(chunks.length);
+
+        // Act
+        matcher.match(chunks, sizes, 90, components);
+
+        // Assert
+        assertThat(components.components()).containsExactly(new int[]{0, 1});
+    }
+
+    @Test
+    void sumsTheLengthsOfTheCommonChunks() {
+        long[] a = {chunk(1, 100), chunk(2, 200), chunk(3, 300)};
+        long[] b = {chunk(2, 200), chunk(3, 300), chunk(4, 400)};
+
+        assertThat(matcher.sharedBytes(a, b)).isEqualTo(500L);
+    }
+
+    private long[] randomChunks(int count) {
+        long[] chunks = new long[count];
+        for (int i = 0; i < count; i++) {
+            chunks[i] = chunk(random.nextLong(), ContentChunker.MIN_SIZE + random.nextInt(ContentChunker.AVERAGE_SIZE));
+        }
+        Arrays.sort(chunks);
+        return chunks;
+    }
+
+    private static long chunk(long hash, int length) {
+        return (hash << 18) | (length - 1);
+    }
+
+    private static long[] merge(long[] a, long[] b) {
+        long[] merged = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, merged, a.length, b.length);
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    private static long bytes(long[] chunks) {
+        return Arrays.stream(chunks).map(ContentChunker::length).sum();
+    }
+}
@@ -0,0 +1,52 @@
+package paxel.dedup.repo.domain.repo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrentUnionFindTest {
+
+    @Test
+    void mergesTransitively() {
+        // Arrange
+        ConcurrentUnionFind unionFind = new ConcurrentUnionFind(6);
+
+        // Act: 4-2, 2-0 and 5-3; 1 stays alone
+        unionFind.union(4, 2);
+        unionFind.union(2, 0);
+        unionFind.union(5, 3);
+
+        // Assert
+        assertThat(unionFind.components()).containsExactly(new int[]{0, 2, 4}, new int[]{3, 5});
+        assertThat(unionFind.find(4)).isZero();
+    }
+
+    @Test
+    void concurrentUnionsGiveTheSameComponentsInAnyOrder() {
+        // Arrange: chains of 10 ids
+        List<int[]> pairs = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            if (i % 10 != 9) {
+                pairs.add(new int[]{i, i + 1});
+            }
+        }
+        Collections.shuffle(pairs, new Random(3));
+        ConcurrentUnionFind unionFind = new ConcurrentUnionFind(10_000);
+
+        // Act
+        pairs.parallelStream().forEach(p -> unionFind.union(p[1], p[0]));
+
+        // Assert
+        List<int[]> components = unionFind.components();
+        assertThat(components).hasSize(1000);
+        for (int c = 0; c < components.size(); c++) {
+            assertThat(components.get(c)).containsExactly(c * 10, c * 10 + 1, c * 10 + 2, c * 10 + 3, c * 10 + 4,
+                    c * 10 + 5, c * 10 + 6, c * 10 + 7, c * 10 + 8, c * 10 + 9);
+        }
+    }
+}
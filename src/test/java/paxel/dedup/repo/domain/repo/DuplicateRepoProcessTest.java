@@ -46,9 +46,9 @@ class DuplicateRepoProcessTest {
         when(dedupConfig.getRepo("repo1")).thenReturn(Result.ok(repo));
 
         // Create an index file with two similar images
-        // Using a fake fingerprint (hex string)
-        String fp1 = "000000000000000f"; // some bits set
-        String fp2 = "000000000000000e"; // 1 bit different
+        // Using a fake fingerprint
+        long fp1 = 0xfL; // some bits set
+        long fp2 = 0xeL; // 1 bit different
 
         RepoFile file1 = RepoFile.builder()
                 .hash("hash1")
@@ -93,7 +93,7 @@ class DuplicateRepoProcessTest {
     }
 
     @Test
-    void shouldNotFindImagesWhenFingerprintIsBlank() throws IOException {
+    void shouldNotFindImagesWithoutFingerprint() throws IOException {
         // Arrange
         Path repoPath = tempDir.resolve("repo2");
         Files.createDirectories(repoPath);
@@ -107,7 +107,7 @@ class DuplicateRepoProcessTest {
                 .hash("hash1")
                 .relativePath("img1.jpg")
                 .size(100L)
-                .fingerprint("") // Blank fingerprint
+                .fingerprint(null) // No fingerprint
                 .build();
 
         RepoManager repoManager = RepoManager.forRepo(repo, dedupConfig, new NioFileSystemAdapter());
@@ -202,8 +202,8 @@ class DuplicateRepoProcessTest {
         Repo repo = new Repo("repo4", repoPath.toString(), 1);
         when(dedupConfig.getRepo("repo4")).thenReturn(Result.ok(repo));
 
-        RepoFile small = RepoFile.builder().hash("h1").relativePath("small.jpg").size(11L).mimeType("image/jpeg").fingerprint("000000000000000e").build();
-        RepoFile large = RepoFile.builder().hash("h2").relativePath("large.jpg").size(12L).mimeType("image/jpeg").fingerprint("000000000000000f").build();
+        RepoFile small = RepoFile.builder().hash("h1").relativePath("small.jpg").size(11L).mimeType("image/jpeg").fingerprint(0xeL).build();
+        RepoFile large = RepoFile.builder().hash("h2").relativePath("large.jpg").size(12L).mimeType("image/jpeg").fingerprint(0xfL).build();
 
         RepoManager repoManager = RepoManager.forRepo(repo, dedupConfig, new NioFileSystemAdapter());
         repoManager.load();
@@ -351,6 +351,72 @@ class DuplicateRepoProcessTest {
         assertThat(updatedRf2.missing()).isTrue();
     }
 
+    @Test
+    void shouldNotDeleteTheOnlyLooseCopyOfAnArchiveEntry() throws IOException {
+        // Arrange: the entry in the archive is older, so it is sorted first
+        Path repoPath = tempDir.resolve("repo_archive");
+        Files.createDirectories(repoPath);
+        Path loose = repoPath.resolve("photo.jpg");
+        Files.writeString(loose, "content");
+
+        Repo repo = new Repo("repo_archive", repoPath.toString(), 1);
+        when(dedupConfig.getRepo("repo_archive")).thenReturn(Result.ok(repo));
+
+        RepoManager repoManager = RepoManager.forRepo(repo, dedupConfig, new NioFileSystemAdapter());
+        repoManager.load();
+        repoManager.addRepoFile(RepoFile.builder().hash("h").relativePath("backup.zip!/photo.jpg").size(7L).lastModified(1000L).build());
+        repoManager.addRepoFile(RepoFile.builder().hash("h").relativePath("photo.jpg").size(7L).lastModified(2000L).build());
+        repoManager.close();
+
+        DuplicateRepoProcess process = new DuplicateRepoProcess(cliParameter, List.of("repo_archive"), false, dedupConfig, null,
+                DuplicateRepoProcess.DupePrintMode.QUIET, null, null, null, true, false, new NioFileSystemAdapter());
+
+        // Act
+        process.dupes();
+
+        // Assert
+        assertThat(loose).exists();
+        repoManager.load();
+        assertThat(repoManager.getByPath("photo.jpg").missing()).isFalse();
+        assertThat(repoManager.getByPath("backup.zip!/photo.jpg").missing()).isFalse();
+    }
+
+    @Test
+    void shouldOnlyDeleteFilesSimilarToTheKeptOne() throws IOException {
+        // Arrange: a chain, a~b and b~c at 90% but a and c 6 bits apart
+        Path repoPath = tempDir.resolve("repo_chain");
+        Files.createDirectories(repoPath);
+        Path a = repoPath.resolve("a.jpg");
+        Path b = repoPath.resolve("b.jpg");
+        Path c = repoPath.resolve("c.jpg");
+        Files.writeString(a, "a");
+        Files.writeString(b, "b");
+        Files.writeString(c, "c");
+
+        Repo repo = new Repo("repo_chain", repoPath.toString(), 1);
+        when(dedupConfig.getRepo("repo_chain")).thenReturn(Result.ok(repo));
+
+        RepoManager repoManager = RepoManager.forRepo(repo, dedupConfig, new NioFileSystemAdapter());
+        repoManager.load();
+        repoManager.addRepoFile(RepoFile.builder().hash("ha").relativePath("a.jpg").size(300L).lastModified(1000L).fingerprint(0L).build());
+        repoManager.addRepoFile(RepoFile.builder().hash("hb").relativePath("b.jpg").size(200L).lastModified(1000L).fingerprint(0x7L).build());
+        repoManager.addRepoFile(RepoFile.builder().hash("hc").relativePath("c.jpg").size(100L).lastModified(1000L).fingerprint(0x3fL).build());
+        repoManager.close();
+
+        DuplicateRepoProcess process = new DuplicateRepoProcess(cliParameter, List.of("repo_chain"), false, dedupConfig, 95,
+                DuplicateRepoProcess.DupePrintMode.QUIET, null, null, null, true, false, new NioFileSystemAdapter());
+
+        // Act
+        process.dupes();
+
+        // Assert: the largest file a is kept, b is similar to it, c only to b
+        assertThat(a).exists();
+        assertThat(b).doesNotExist();
+        assertThat(c).exists();
+        repoManager.load();
+        assertThat(repoManager.getByPath("c.jpg").missing()).isFalse();
+    }
+
     @Test
     void shouldFindSimilarVideosWhenVideoHashIsPresent() throws IOException {
         // Arrange
@@ -359,12 +425,12 @@ class DuplicateRepoProcessTest {
         Repo repo = new Repo("repo_video", repoPath.toString(), 1);
         when(dedupConfig.getRepo("repo_video")).thenReturn(Result.ok(repo));
 
-        // 192-bit hash = 48 hex chars
-        String vh1 = "f".repeat(48);
-        String vh2 = "f".repeat(47) + "e"; // Very similar
+        // 192-bit hash = 3 key frames
+        long[] vh1 = {-1L, -1L, -1L};
+        long[] vh2 = {-1L, -1L, -2L}; // Very similar
 
-        RepoFile file1 = RepoFile.builder().hash("h1").relativePath("v1.mp4").size(1000L).videoHash(vh1).mimeType("video/mp4").build();
-        RepoFile file2 = RepoFile.builder().hash("h2").relativePath("v2.mp4").size(1000L).videoHash(vh2).mimeType("video/mp4").build();
+        RepoFile file1 = RepoFile.builder().hash("h1").relativePath("v1.mp4").size(1000L).videoFingerprint(vh1).mimeType("video/mp4").build();
+        RepoFile file2 = RepoFile.builder().hash("h2").relativePath("v2.mp4").size(1000L).videoFingerprint(vh2).mimeType("video/mp4").build();
 
         RepoManager repoManager = RepoManager.forRepo(repo, dedupConfig, new NioFileSystemAdapter());
         repoManager.load();
@@ -414,6 +480,43 @@ class DuplicateRepoProcessTest {
         assertThat(result.isSuccess()).isTrue();
     }
 
+    @Test
+    void shouldGroupPhotosOfTheSameShotByMetadata() throws IOException {
+        // Arrange: two encodings of one shot and an unrelated photo
+        Path repoPath = tempDir.resolve("repo_metadata");
+        Files.createDirectories(repoPath);
+        Repo repo = new Repo("repo_metadata", repoPath.toString(), 1);
+        when(dedupConfig.getRepo("repo_metadata")).thenReturn(Result.ok(repo));
+
+        RepoFile original = RepoFile.builder().hash("h1").relativePath("shot.jpg").size(100L).mimeType("image/jpeg").metadataSignature("0123456789abcdef").build();
+        RepoFile copy = RepoFile.builder().hash("h2").relativePath("shot_small.jpg").size(50L).mimeType("image/jpeg").metadataSignature("0123456789abcdef").build();
+        RepoFile other = RepoFile.builder().hash("h3").relativePath("other.jpg").size(100L).mimeType("image/jpeg").metadataSignature("fedcba9876543210").build();
+
+        RepoManager repoManager = RepoManager.forRepo(repo, dedupConfig, new NioFileSystemAdapter());
+        repoManager.load();
+        repoManager.addRepoFile(original);
+        repoManager.addRepoFile(copy);
+        repoManager.addRepoFile(other);
+        repoManager.close();
+
+        Path mdReport = tempDir.resolve("report_metadata.md");
+        DuplicateRepoProcess process = new DuplicateRepoProcess(
+                cliParameter, List.of("repo_metadata"), false, dedupConfig, null,
+                DuplicateRepoProcess.DupePrintMode.QUIET, mdReport.toString(), null, null, false, false, new NioFileSystemAdapter()
+        ).byMetadata(true);
+
+        // Act
+        Result<Integer, paxel.dedup.domain.model.errors.DedupError> result = process.dupes();
+
+        // Assert
+        assertThat(result.isSuccess()).isTrue();
+        String md = Files.readString(mdReport);
+        assertThat(md).contains("Type: Similarity (Same Metadata)");
+        assertThat(md).contains("shot.jpg");
+        assertThat(md).contains("shot_small.jpg");
+        assertThat(md).doesNotContain("other.jpg");
+    }
+
     @Test
     void shouldFindSimilarAudiosWhenAudioHashIsPresent() throws IOException {
         // Arrange
@@ -0,0 +1,103 @@
+package paxel.dedup.repo.domain.repo;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EnrichWatchdogTest {
+
+    @Test
+    void completesHangingFilesWithTheFallbackAndReplacesTheWorker() throws Exception {
+        // Arrange
+        EnrichWatchdog watchdog = new EnrichWatchdog(1, Duration.ofMillis(200));
+        CountDownLatch release = new CountDownLatch(1);
+        Path poisoned = Path.of("poisoned.pdf");
+
+        // Act
+        CompletableFuture<EnrichWatchdog.Outcome<String>> hanging = watchdog.run(poisoned, () -> {
+            // ignores the interrupt like a decoder stuck in a loop
+            while (true) {
+                try {
+                    if (release.await(10, TimeUnit.MILLISECONDS)) {
+                        return "late";
+                    }
+                } catch (InterruptedException e) {
+                    // keep hanging
+                }
+            }
+        }, () -> "hash only");
+        CompletableFuture<EnrichWatchdog.Outcome<String>> next = watchdog.run(Path.of("next.jpg"), () -> "fingerprint", () -> "hash only");
+
+        // Assert
+        assertThat(hanging.get(5, TimeUnit.SECONDS)).isEqualTo(new EnrichWatchdog.Outcome<>("hash only", false));
+        assertThat(next.get(5, TimeUnit.SECONDS)).isEqualTo(new EnrichWatchdog.Outcome<>("fingerprint", true));
+        assertThat(watchdog.timedOut()).extracting(EnrichWatchdog.TimedOut::path).containsExactly(poisoned);
+        assertThat(watchdog.poolSize()).isEqualTo(2);
+        release.countDown();
+        long end = System.currentTimeMillis() + 5000;
+        while (watchdog.poolSize() != 1 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertThat(watchdog.poolSize()).isEqualTo(1);
+        watchdog.close();
+    }
+
+    @Test
+    void neverInterruptsTheNextFileOfAWorkerThatReturnedAtTheDeadline() throws Exception {
+        // Arrange
+        EnrichWatchdog watchdog = new EnrichWatchdog(1, Duration.ofMillis(1));
+        List<CompletableFuture<EnrichWatchdog.Outcome<Boolean>>> results = new ArrayList<>();
+
+        // Act
+        for (int i = 0; i < 500; i++) {
+            // returns around the deadline, so that the deadline and the return race
+            results.add(watchdog.run(Path.of("slow" + i + ".jpg"), () -> {
+                long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1);
+                while (System.nanoTime() < end) {
+                    Thread.onSpinWait();
+                }
+                return true;
+            }, () -> true));
+            results.add(watchdog.run(Path.of("next" + i + ".jpg"), () -> Thread.currentThread().isInterrupted(), () -> false));
+        }
+
+        // Assert
+        for (int i = 0; i < results.size(); i += 2) {
+            assertThat(results.get(i).get(5, TimeUnit.SECONDS).value()).isTrue();
+            EnrichWatchdog.Outcome<Boolean> next = results.get(i + 1).get(5, TimeUnit.SECONDS);
+            assertThat(next.completed() && next.value()).as("next%d.jpg interrupted", i / 2).isFalse();
+        }
+        long end = System.currentTimeMillis() + 5000;
+        while (watchdog.poolSize() != 1 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertThat(watchdog.poolSize()).isEqualTo(1);
+        watchdog.close();
+    }
+
+    @Test
+    void passesResultsAndExceptionsOfFilesWithinTheDeadline() {
+        // Arrange
+        EnrichWatchdog watchdog = new EnrichWatchdog(2, Duration.ofSeconds(10));
+
+        // Act
+        CompletableFuture<EnrichWatchdog.Outcome<String>> ok = watchdog.run(Path.of("a.jpg"), () -> "fingerprint", () -> "hash only");
+        CompletableFuture<EnrichWatchdog.Outcome<String>> failed = watchdog.run(Path.of("b.jpg"), () -> {
+            throw new IllegalStateException("broken");
+        }, () -> "hash only");
+
+        // Assert
+        assertThat(ok.join()).isEqualTo(new EnrichWatchdog.Outcome<>("fingerprint", true));
+        assertThat(failed.handle((r, e) -> e.getMessage()).join()).isEqualTo("broken");
+        watchdog.close();
+        assertThat(watchdog.timedOut()).isEmpty();
+    }
+}
@@ -0,0 +1,118 @@
+package paxel.dedup.repo.domain.repo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import paxel.dedup.domain.model.Dimension;
+import paxel.dedup.domain.model.ImageHash;
+import paxel.dedup.domain.model.RepoFile;
+import paxel.dedup.domain.model.VideoSampling;
+import paxel.dedup.infrastructure.adapter.out.filesystem.NioFileSystemAdapter;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EnrichmentCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final NioFileSystemAdapter fileSystem = new NioFileSystemAdapter();
+
+    @Test
+    void keepsTheEnrichmentButNotThePathAcrossRuns() {
+        // Arrange
+        Path file = tempDir.resolve(EnrichmentCache.FILE_NAME);
+        EnrichmentCache first = EnrichmentCache.open(file, 1024 * 1024, fileSystem).value();
+        first.put(image("aaa", 0x1234L).toBuilder().relativePath("camera/a.jpg").fileKey("1:2").lastModified(5).build());
+        first.close();
+
+        // Act
+        EnrichmentCache second = EnrichmentCache.open(file, 1024 * 1024, fileSystem).value();
+        RepoFile cached = second.get("aaa", 100, "image/jpeg", ImageHash.PHASH, VideoSampling.DEFAULT);
+
+        // Assert
+        assertThat(cached.fingerprint()).isEqualTo(0x1234L);
+        assertThat(cached.imageSize()).isEqualTo(new Dimension(640, 480));
+        assertThat(cached.relativePath()).isNull();
+        assertThat(cached.fileKey()).isNull();
+        assertThat(cached.lastModified()).isEqualTo(0L);
+        assertThat(second.hits()).isEqualTo(1L);
+    }
+
+    @Test
+    void ignoresEntriesOfOtherMimeTypesAlgorithmsAndSizes() {
+        // Arrange
+        EnrichmentCache cache = EnrichmentCache.open(tempDir.resolve(EnrichmentCache.FILE_NAME), 1024 * 1024, fileSystem).value();
+        cache.put(image("aaa", 0x1234L));
+
+        // Act + Assert
+        assertThat(cache.get("aaa", 100, "image/png", ImageHash.PHASH, VideoSampling.DEFAULT)).isNull();
+        assertThat(cache.get("aaa", 100, "image/jpeg", ImageHash.DHASH, VideoSampling.DEFAULT)).isNull();
+        assertThat(cache.get("aaa", 101, "image/jpeg", ImageHash.PHASH, VideoSampling.DEFAULT)).isNull();
+        assertThat(cache.misses()).isEqualTo(3L);
+    }
+
+    @Test
+    void ignoresVideoEntriesOfOtherFrames() {
+        // Arrange
+        EnrichmentCache cache = EnrichmentCache.open(tempDir.resolve(EnrichmentCache.FILE_NAME), 1024 * 1024, fileSystem).value();
+        VideoSampling fiveFrames = new VideoSampling(5, false);
+        cache.put(RepoFile.builder().hash("aaa").size(100L).mimeType("video/mp4").videoFingerprint(new long[5]).frameSampling(fiveFrames).build());
+
+        // Act + Assert
+        assertThat(cache.get("aaa", 100, "video/mp4", ImageHash.DHASH, VideoSampling.DEFAULT)).isNull();
+        assertThat(cache.get("aaa", 100, "video/mp4", ImageHash.DHASH, fiveFrames.withPreciseSeek(true))).isNull();
+        assertThat(cache.get("aaa", 100, "video/mp4", ImageHash.DHASH, fiveFrames).videoSampling()).isEqualTo(fiveFrames);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntriesAboveTheLimit() {
+        // Arrange
+        Path file = tempDir.resolve(EnrichmentCache.FILE_NAME);
+        EnrichmentCache probe = EnrichmentCache.open(file, Long.MAX_VALUE, fileSystem).value();
+        probe.put(image("aaa", 1L));
+        probe.close();
+        long entrySize = file.toFile().length();
+        // room for two entries
+        EnrichmentCache cache = EnrichmentCache.open(tempDir.resolve("small.cache"), entrySize * 2, fileSystem).value();
+        cache.put(image("aaa", 1L));
+        cache.put(image("bbb", 2L));
+
+        // Act
+        cache.get("aaa", 100, "image/jpeg", ImageHash.PHASH, VideoSampling.DEFAULT);
+        cache.put(image("ccc", 3L));
+
+        // Assert
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("bbb", 100, "image/jpeg", ImageHash.PHASH, VideoSampling.DEFAULT)).isNull();
+        assertThat(cache.get("aaa", 100, "image/jpeg", ImageHash.PHASH, VideoSampling.DEFAULT)).isNotNull();
+        assertThat(cache.get("ccc", 100, "image/jpeg", ImageHash.PHASH, VideoSampling.DEFAULT)).isNotNull();
+    }
+
+    @Test
+    void disabledCacheStoresNothing() {
+        // Arrange
+        Path file = tempDir.resolve(EnrichmentCache.FILE_NAME);
+        EnrichmentCache cache = EnrichmentCache.open(file, 0, fileSystem).value();
+
+        // Act
+        cache.put(image("aaa", 1L));
+        cache.close();
+
+        // Assert
+        assertThat(cache.get("aaa", 100, "image/jpeg", ImageHash.PHASH, VideoSampling.DEFAULT)).isNull();
+        assertThat(file.toFile().exists()).isFalse();
+    }
+
+    private static RepoFile image(String hash, long fingerprint) {
+        return RepoFile.builder()
+                .hash(hash)
+                .size(100L)
+                .mimeType("image/jpeg")
+                .fingerprint(fingerprint)
+                .fingerprintAlgorithm(ImageHash.PHASH)
+                .imageSize(new Dimension(640, 480))
+                .build();
+    }
+}
@@ -0,0 +1,90 @@
+package paxel.dedup.repo.domain.repo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HammingIndexTest {
+
+    @Test
+    void findsTheSameNeighboursAsAFullScan() {
+        // Arrange: clusters of near copies plus random noise
+        long[][] fingerprints = randomClusters(new Random(42), 1, 2000);
+        HammingIndex index = new HammingIndex(fingerprints, 1);
+
+        // Act + Assert
+        for (int maxDistance : new int[]{0, 3, 6, 12, 40}) {
+            for (int id = 0; id < fingerprints.length; id += 37) {
+                assertThat(search(index, id, maxDistance)).isEqualTo(scan(fingerprints, id, maxDistance));
+            }
+        }
+    }
+
+    @Test
+    void searchesVideoFingerprintsWithSeveralWords() {
+        // Arrange
+        long[][] fingerprints = randomClusters(new Random(7), 3, 500);
+        // a fingerprint with a missing frame
+        fingerprints[1] = new long[]{fingerprints[0][0], fingerprints[0][1]};
+        HammingIndex index = new HammingIndex(fingerprints, 3);
+
+        // Act + Assert
+        for (int maxDistance : new int[]{0, 19, 30}) {
+            for (int id = 0; id < fingerprints.length; id += 11) {
+                assertThat(search(index, id, maxDistance)).isEqualTo(scan(fingerprints, id, maxDistance));
+            }
+        }
+    }
+
+    private static Set<Integer> search(HammingIndex index, int id, int maxDistance) {
+        Set<Integer> found = new TreeSet<>();
+        index.searcher().neighbours(id, maxDistance, other -> assertThat(found.add(other)).isTrue());
+        return found;
+    }
+
+    private static Set<Integer> scan(long[][] fingerprints, int id, int maxDistance) {
+        Set<Integer> found = new TreeSet<>();
+        for (int other = 0; other < fingerprints.length; other++) {
+            if (other != id && distance(pad(fingerprints[id]), pad(fingerprints[other])) <= maxDistance) {
+                found.add(other);
+            }
+        }
+        return found;
+    }
+
+    private static int distance(long[] a, long[] b) {
+        int distance = 0;
+        for (int w = 0; w < a.length; w++) {
+            distance += Long.bitCount(a[w] ^ b[w]);
+        }
+        return distance;
+    }
+
+    private static long[] pad(long[] fingerprint) {
+        return Arrays.copyOf(fingerprint, 3);
+    }
+
+    private static long[][] randomClusters(Random random, int words, int count) {
+        List<long[]> fingerprints = new ArrayList<>();
+        while (fingerprints.size() < count) {
+            long[] center = random.longs(words).toArray();
+            int copies = random.nextInt(5);
+            fingerprints.add(center);
+            for (int c = 0; c < copies && fingerprints.size() < count; c++) {
+                long[] copy = center.clone();
+                for (int flip = random.nextInt(8); flip > 0; flip--) {
+                    copy[random.nextInt(words)] ^= 1L << random.nextInt(64);
+                }
+                fingerprints.add(copy);
+            }
+        }
+        return fingerprints.toArray(long[][]::new);
+    }
+}
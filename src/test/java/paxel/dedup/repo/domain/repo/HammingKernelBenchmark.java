@@ -0,0 +1,100 @@
+package paxel.dedup.repo.domain.repo;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distances from one query to 1M fingerprints, as in a scan of {@link HammingIndex}: {@code pairwise} calls
+ * {@link Fingerprints#distance(long[], long[])} per fingerprint, {@code bitCount} is the {@link ScalarHammingKernel}
+ * and {@code vector} the {@code VectorHammingKernel}. {@code words} 1 are image, 3 video fingerprints.
+ * Run {@link #main(String[])} from the test classpath of a build with {@code -Pvector}; the forks get
+ * {@code --add-modules jdk.incubator.vector}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HammingKernelBenchmark {
+
+    private static final int FINGERPRINTS = 1_000_000;
+    private static final int BLOCK = 1024;
+
+    @Param({"1", "3"})
+    public int words;
+
+    private long[][] fingerprints;
+    private long[][] columns;
+    private long[] query;
+    private final int[] distances = new int[BLOCK];
+    private final HammingKernel scalar = HammingKernel.scalar();
+    private HammingKernel vector;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        fingerprints = new long[FINGERPRINTS][words];
+        columns = new long[words][FINGERPRINTS];
+        for (int i = 0; i < FINGERPRINTS; i++) {
+            for (int w = 0; w < words; w++) {
+                long value = random.nextLong();
+                fingerprints[i][w] = value;
+                columns[w][i] = value;
+            }
+        }
+        query = fingerprints[0].clone();
+        vector = HammingKernel.best();
+        if (vector == scalar) {
+            throw new IllegalStateException("VectorHammingKernel not available, build with -Pvector");
+        }
+    }
+
+    @Benchmark
+    public int pairwise() {
+        int close = 0;
+        for (long[] fingerprint : fingerprints) {
+            int distance = 0;
+            for (int w = 0; w < words; w++) {
+                distance += Long.bitCount(query[w] ^ fingerprint[w]);
+            }
+            if (distance <= 10) {
+                close++;
+            }
+        }
+        return close;
+    }
+
+    @Benchmark
+    public int bitCount() {
+        return scan(scalar);
+    }
+
+    @Benchmark
+    public int vector() {
+        return scan(vector);
+    }
+
+    private int scan(HammingKernel kernel) {
+        int close = 0;
+        for (int from = 0; from < FINGERPRINTS; from += BLOCK) {
+            int count = Math.min(BLOCK, FINGERPRINTS - from);
+            kernel.distances(query, columns, from, count, distances);
+            for (int i = 0; i < count; i++) {
+                if (distances[i] <= 10) {
+                    close++;
+                }
+            }
+        }
+        return close;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HammingKernelBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,67 @@
+package paxel.dedup.repo.domain.repo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HammingKernelTest {
+
+    @Test
+    void scalarKernelMatchesThePairwiseDistance() {
+        verify(HammingKernel.scalar());
+    }
+
+    @Test
+    void bestKernelMatchesThePairwiseDistance() {
+        // the vectorised kernel if built and tested with -Pvector, else the scalar one again
+        verify(HammingKernel.best());
+    }
+
+    private static void verify(HammingKernel kernel) {
+        Random random = new Random(42);
+        for (int words : new int[]{1, 3}) {
+            // Arrange
+            long[][] fingerprints = new long[1000][words];
+            for (long[] fingerprint : fingerprints) {
+                for (int w = 0; w < words; w++) {
+                    fingerprint[w] = random.nextLong();
+                }
+            }
+            fingerprints[5] = fingerprints[0].clone();
+            fingerprints[5][0] ^= 0b1011;
+            long[][] columns = new long[words][fingerprints.length];
+            for (int i = 0; i < fingerprints.length; i++) {
+                for (int w = 0; w < words; w++) {
+                    columns[w][i] = fingerprints[i][w];
+                }
+            }
+            int[] distances = new int[fingerprints.length];
+
+            // offsets and counts that leave tails of every length
+            for (int from : new int[]{0, 1, 7, 500}) {
+                for (int count : new int[]{0, 1, 3, 8, 13, 499}) {
+                    // Act
+                    kernel.distances(fingerprints[0], columns, from, count, distances);
+
+                    // Assert
+                    for (int i = 0; i < count; i++) {
+                        assertThat(distances[i]).isEqualTo(distance(fingerprints[0], fingerprints[from + i]));
+                    }
+                }
+            }
+            kernel.distances(fingerprints[0], columns, 0, 8, distances);
+            assertThat(distances[0]).isEqualTo(0);
+            assertThat(distances[5]).isEqualTo(3);
+        }
+    }
+
+    private static int distance(long[] a, long[] b) {
+        int distance = 0;
+        for (int w = 0; w < a.length; w++) {
+            distance += Long.bitCount(a[w] ^ b[w]);
+        }
+        return distance;
+    }
+}
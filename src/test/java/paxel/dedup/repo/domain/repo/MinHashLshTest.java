@@ -0,0 +1,79 @@
+package paxel.dedup.repo.domain.repo;
+
+import org.junit.jupiter.api.Test;
+import paxel.dedup.domain.model.MinHash;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MinHashLshTest {
+
+    private final MinHashLsh lsh = new MinHashLsh();
+    private final Random random = new Random(42);
+
+    @Test
+    void findsSimilarSignaturesAboveTheThreshold() {
+        // Arrange: 1 shares 60 of 64 values with 0, 2 only 40, 3 is unrelated
+        int[] original = randomSignature();
+        int[][] signatures = {
+                original,
+                edited(original, 4),
+                edited(original, 24),
+                randomSignature(),
+                null
+        };
+        ConcurrentUnionFind components = new ConcurrentUnionFind(signatures.length);
+
+        // Act
+        lsh.match(signatures, 0.9, components);
+
+        // Assert
+        assertThat(components.find(1)).isEqualTo(components.find(0));
+        assertThat(components.find(2)).isNotEqualTo(components.find(0));
+        assertThat(components.find(3)).isNotEqualTo(components.find(0));
+    }
+
+    @Test
+    void unitesCopiesWithoutComparingThemPairwise() {
+        // Arrange: 10k copies would be 50M pairs in one bucket
+        int[] original = randomSignature();
+        int[][] signatures = new int[10_001][];
+        for (int i = 0; i < 10_000; i++) {
+            signatures[i] = original.clone();
+        }
+        signatures[10_000] = edited(original, 4);
+        ConcurrentUnionFind components = new ConcurrentUnionFind(signatures.length);
+
+        // Act
+        lsh.match(signatures, 0.9, components);
+
+        // Assert
+        assertThat(components.find(9_999)).isEqualTo(components.find(0));
+        assertThat(components.find(10_000)).isEqualTo(components.find(0));
+    }
+
+    @Test
+    void lowerThresholdsUseNarrowerBands() {
+        assertThat(lsh.rows(0.3)).isEqualTo(2);
+        assertThat(lsh.rows(0.6)).isEqualTo(4);
+        assertThat(lsh.rows(0.9)).isEqualTo(8);
+        assertThat(lsh.rows(1.0)).isEqualTo(8);
+    }
+
+    private int[] randomSignature() {
+        int[] signature = new int[MinHash.SIZE];
+        for (int i = 0; i < signature.length; i++) {
+            signature[i] = random.nextInt();
+        }
+        return signature;
+    }
+
+    private int[] edited(int[] signature, int changes) {
+        int[] copy = signature.clone();
+        for (int i = 0; i < changes; i++) {
+            copy[i * (MinHash.SIZE / changes)] = random.nextInt();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,80 @@
+package paxel.dedup.repo.domain.repo;
+
+import org.junit.jupiter.api.Test;
+import paxel.dedup.domain.model.RepoFile;
+import paxel.dedup.domain.port.out.FileSystem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MoveDetectorTest {
+
+    private static final Path ROOT = Path.of("/repo");
+
+    private final FileSystem fileSystem = mock(FileSystem.class);
+
+    @Test
+    void matchesUnseenEntryWithSameSizeTimeAndFileKey() throws IOException {
+        // Arrange
+        Path from = Path.of("/repo/a/photo.jpg");
+        Path to = Path.of("/repo/b/renamed.jpg");
+        RepoFile previous = RepoFile.builder().hash("h").relativePath("a/photo.jpg").size(100L).lastModified(5000L).fileKey("ino1").build();
+        ReconciliationSet remaining = ReconciliationSet.of(ROOT, Stream.of(previous));
+        stat(to, 100L, 5000L, "ino1");
+
+        // Act
+        MoveDetector.Move move = new MoveDetector(remaining, fileSystem).find(to);
+
+        // Assert
+        assertThat(move).isNotNull();
+        assertThat(move.from()).isEqualTo(from);
+        assertThat(move.previous()).isEqualTo(previous);
+        assertThat(move.fileKey()).isEqualTo("ino1");
+    }
+
+    @Test
+    void rejectsDifferentFileKeyOrAlreadySeenEntries() throws IOException {
+        // Arrange
+        Path from = Path.of("/repo/a/photo.jpg");
+        Path to = Path.of("/repo/b/photo.jpg");
+        RepoFile previous = RepoFile.builder().hash("h").relativePath("a/photo.jpg").size(100L).lastModified(5000L).fileKey("ino1").build();
+        ReconciliationSet remaining = ReconciliationSet.of(ROOT, Stream.of(previous));
+        MoveDetector moveDetector = new MoveDetector(remaining, fileSystem);
+
+        // Act + Assert: a copy has its own inode
+        stat(to, 100L, 5000L, "ino2");
+        assertThat(moveDetector.find(to)).isNull();
+
+        // Act + Assert: the old path was visited in the meantime
+        stat(to, 100L, 5000L, "ino1");
+        remaining.markSeen(from);
+        assertThat(moveDetector.find(to)).isNull();
+    }
+
+    @Test
+    void fallsBackToFileNameForEntriesWithoutFileKey() throws IOException {
+        // Arrange
+        RepoFile previous = RepoFile.builder().hash("h").relativePath("a/photo.jpg").size(100L).lastModified(5000L).build();
+        MoveDetector moveDetector = new MoveDetector(ReconciliationSet.of(ROOT, Stream.of(previous)), fileSystem);
+        Path sameName = Path.of("/repo/b/photo.jpg");
+        Path otherName = Path.of("/repo/b/other.jpg");
+        stat(sameName, 100L, 5000L, "ino1");
+        stat(otherName, 100L, 5000L, "ino1");
+
+        // Act + Assert
+        assertThat(moveDetector.find(otherName)).isNull();
+        assertThat(moveDetector.find(sameName)).isNotNull();
+    }
+
+    private void stat(Path path, long size, long lastModified, String fileKey) throws IOException {
+        when(fileSystem.size(path)).thenReturn(size);
+        when(fileSystem.getLastModifiedTime(path)).thenReturn(FileTime.fromMillis(lastModified));
+        when(fileSystem.fileKey(path)).thenReturn(fileKey);
+    }
+}
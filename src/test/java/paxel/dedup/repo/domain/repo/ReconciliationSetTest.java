@@ -0,0 +1,82 @@
+package paxel.dedup.repo.domain.repo;
+
+import org.junit.jupiter.api.Test;
+import paxel.dedup.domain.model.RepoFile;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReconciliationSetTest {
+
+    private static final Path ROOT = Path.of("/repo");
+
+    @Test
+    void marksEachEntryOnlyOnce() {
+        // Arrange
+        RepoFile a = entry("a.txt");
+        RepoFile b = entry("dir/b.txt");
+        ReconciliationSet set = ReconciliationSet.of(ROOT, Stream.of(b, a));
+
+        // Act
+        RepoFile first = set.markSeen(ROOT.resolve("dir/b.txt"));
+        RepoFile second = set.markSeen(ROOT.resolve("dir/b.txt"));
+
+        // Assert
+        assertThat(first).isSameAs(b);
+        assertThat(second).isNull();
+        assertThat(set.remaining()).isEqualTo(1);
+        assertThat(set.unseen()).containsExactly(a);
+    }
+
+    @Test
+    void marksTheEntriesInsideAnArchive() {
+        // Arrange
+        RepoFile archive = entry("a.zip");
+        RepoFile first = entry("a.zip!/one.txt");
+        RepoFile second = entry("a.zip!/dir/two.txt");
+        RepoFile other = entry("a.zip2");
+        RepoFile loose = entry("b.txt");
+        ReconciliationSet set = ReconciliationSet.of(ROOT, Stream.of(loose, second, other, first, archive));
+
+        // Act
+        List<RepoFile> within = set.markSeenWithin(ROOT.resolve("a.zip"));
+
+        // Assert
+        assertThat(within).containsExactlyInAnyOrder(first, second);
+        assertThat(set.markSeenWithin(ROOT.resolve("a.zip"))).isEmpty();
+        assertThat(set.remaining()).isEqualTo(3);
+        assertThat(set.unseen()).containsExactlyInAnyOrder(archive, other, loose);
+    }
+
+    @Test
+    void ignoresUnknownPathsAndPathsOutsideTheRoot() {
+        // Arrange
+        ReconciliationSet set = ReconciliationSet.of(ROOT, Stream.of(entry("a.txt")));
+
+        // Act + Assert
+        assertThat(set.markSeen(ROOT.resolve("b.txt"))).isNull();
+        assertThat(set.markSeen(Path.of("/other/a.txt"))).isNull();
+        assertThat(set.remaining()).isEqualTo(1);
+    }
+
+    @Test
+    void resolvesAbsolutePathsOfEntries() {
+        // Arrange
+        ReconciliationSet set = ReconciliationSet.of(ROOT, Stream.of(entry("z.txt"), entry("m/a.txt")));
+
+        // Act + Assert
+        assertThat(set.size()).isEqualTo(2);
+        assertThat(set.absolutePath(0)).isEqualTo(ROOT.resolve("m/a.txt"));
+        assertThat(set.isSeen(0)).isFalse();
+        set.markSeen(ROOT.resolve("m/a.txt"));
+        assertThat(set.isSeen(0)).isTrue();
+        assertThat(ReconciliationSet.empty(ROOT).isEmpty()).isTrue();
+    }
+
+    private static RepoFile entry(String relativePath) {
+        return RepoFile.builder().relativePath(relativePath).hash("h").size(1L).build();
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.io.TempDir;
 import paxel.dedup.domain.model.Repo;
 import paxel.dedup.domain.model.RepoFile;
 import paxel.dedup.domain.model.Statistics;
+import paxel.dedup.domain.model.VideoSampling;
 import paxel.dedup.domain.model.errors.DedupError;
 import paxel.dedup.infrastructure.adapter.out.filesystem.NioFileSystemAdapter;
 import paxel.dedup.infrastructure.adapter.out.serialization.JacksonMapperLineCodec;
@@ -100,4 +101,54 @@ class RepoManagerTest {
         assertThat(files).hasSize(2);
         assertThat(files).extracting(RepoFile::relativePath).containsExactlyInAnyOrder("p0", "p1");
     }
+
+    @Test
+    void testLoadLeavesTheSimilarityIndexToWritingCommands() throws IOException {
+        // Arrange
+        Path repoBaseDir = tempDir.resolve("repos");
+        Path indexDir = repoBaseDir.resolve("testRepo");
+        Files.createDirectories(indexDir);
+        ObjectMapper mapper = new ObjectMapper();
+        RepoFile image = RepoFile.builder().hash("h0").relativePath("a.jpg").size(1L).fingerprint(7L).build();
+        Files.writeString(indexDir.resolve("0.idx"), mapper.writeValueAsString(image) + "\n");
+        RepoManager repoManager = new RepoManager(new Repo("testRepo", "/tmp/fake", 1), new StubDedupConfig(repoBaseDir),
+                new JacksonMapperLineCodec<>(mapper, RepoFile.class), new NioFileSystemAdapter());
+
+        // Act
+        repoManager.load();
+        boolean afterLoad = Files.exists(indexDir.resolve(SimilarityIndex.FILE_NAME));
+        Result<Void, DedupError> ensure = repoManager.ensureSimilarityIndex();
+
+        // Assert
+        assertThat(afterLoad).isFalse();
+        assertThat(ensure.isSuccess()).isTrue();
+        assertThat(repoManager.getSimilarityIndex().search(SimilarityIndex.Kind.IMAGE, new long[]{7L}, 100).value())
+                .extracting(SimilarityIndex.Match::relativePath).containsExactly("a.jpg");
+    }
+
+    @Test
+    void testVideoFingerprintsOfOtherFramesAreStale() throws IOException {
+        // Arrange
+        Path repoBaseDir = tempDir.resolve("repos");
+        Path indexDir = repoBaseDir.resolve("testRepo");
+        Files.createDirectories(indexDir);
+        ObjectMapper mapper = new ObjectMapper();
+        RepoFile sampled = RepoFile.builder().hash("h0").relativePath("a.mp4").size(1L).videoFingerprint(new long[]{1L, 2L, 3L, 4L, 5L})
+                .frameSampling(new VideoSampling(5, false)).build();
+        RepoFile byDefault = RepoFile.builder().hash("h1").relativePath("b.mp4").size(1L).videoFingerprint(new long[]{1L, 2L, 3L}).build();
+        Files.writeString(indexDir.resolve("0.idx"), mapper.writeValueAsString(sampled) + "\n" + mapper.writeValueAsString(byDefault) + "\n");
+        Repo repo = new Repo("testRepo", "/tmp/fake", 1).withVideoSampling(new VideoSampling(5, false));
+        RepoManager repoManager = new RepoManager(repo, new StubDedupConfig(repoBaseDir),
+                new JacksonMapperLineCodec<>(mapper, RepoFile.class), new NioFileSystemAdapter());
+        repoManager.load();
+
+        // Act
+        boolean sampledStale = repoManager.hasStaleFingerprint(repoManager.getByPath("a.mp4"));
+        boolean byDefaultStale = repoManager.hasStaleFingerprint(repoManager.getByPath("b.mp4"));
+
+        // Assert
+        assertThat(repoManager.getByPath("a.mp4").videoSampling()).isEqualTo(new VideoSampling(5, false));
+        assertThat(sampledStale).isFalse();
+        assertThat(byDefaultStale).isTrue();
+    }
 }
@@ -0,0 +1,158 @@
+package paxel.dedup.repo.domain.repo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import paxel.dedup.domain.model.RepoFile;
+import paxel.dedup.infrastructure.adapter.out.filesystem.NioFileSystemAdapter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SimilarityIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void findsSimilarImagesOfTheLatestState() {
+        // Arrange
+        SimilarityIndex index = new SimilarityIndex(tempDir.resolve(SimilarityIndex.FILE_NAME), new NioFileSystemAdapter());
+        RepoFile same = image("same.jpg", 0xff00L);
+        RepoFile close = image("close.jpg", 0xff01L);
+        RepoFile far = image("far.jpg", ~0xff00L);
+        RepoFile changed = image("changed.jpg", 0xff00L);
+        RepoFile deleted = image("deleted.jpg", 0xff00L);
+        index.rebuild(Stream.of(same, close, far, changed, deleted));
+        index.update(changed, changed.withFingerprint(0x00ffL));
+        index.update(deleted, deleted.withMissing(true));
+        index.close();
+
+        // Act
+        List<SimilarityIndex.Match> matches = index.search(SimilarityIndex.Kind.IMAGE, new long[]{0xff00L}, 90).value();
+
+        // Assert
+        assertThat(matches).extracting(SimilarityIndex.Match::relativePath).containsExactly("same.jpg", "close.jpg");
+        assertThat(matches.get(0).similarity()).isEqualTo(100);
+        assertThat(matches.get(1).distance()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsImagesAndVideosApart() {
+        // Arrange
+        SimilarityIndex index = new SimilarityIndex(tempDir.resolve(SimilarityIndex.FILE_NAME), new NioFileSystemAdapter());
+        index.update(null, image("a.jpg", 7L));
+        index.update(null, RepoFile.builder().relativePath("a.mp4").hash("h").size(1L).videoFingerprint(new long[]{7L, 7L, 7L}).build());
+        index.close();
+
+        // Act
+        List<SimilarityIndex.Match> images = index.search(SimilarityIndex.Kind.IMAGE, new long[]{7L}, 100).value();
+        List<SimilarityIndex.Match> videos = index.search(SimilarityIndex.Kind.VIDEO, new long[]{7L, 7L, 7L}, 100).value();
+
+        // Assert
+        assertThat(images).extracting(SimilarityIndex.Match::relativePath).containsExactly("a.jpg");
+        assertThat(videos).extracting(SimilarityIndex.Match::relativePath).containsExactly("a.mp4");
+    }
+
+    @Test
+    void skipsUpdatesThatKeepTheFingerprint() {
+        // Arrange
+        Path log = tempDir.resolve(SimilarityIndex.LOG_FILE_NAME);
+        SimilarityIndex index = new SimilarityIndex(tempDir.resolve(SimilarityIndex.FILE_NAME), new NioFileSystemAdapter());
+        RepoFile image = image("a.jpg", 7L);
+        index.update(null, image);
+        long size = log.toFile().length();
+
+        // Act
+        index.update(image, image.withLastModified(5L));
+        index.update(null, RepoFile.builder().relativePath("a.txt").hash("h").size(1L).build());
+        index.close();
+
+        // Assert
+        assertThat(log.toFile().length()).isEqualTo(size);
+    }
+
+    @Test
+    void findsTheSameMatchesAsAFullScan() {
+        // Arrange
+        SimilarityIndex index = new SimilarityIndex(tempDir.resolve(SimilarityIndex.FILE_NAME), new NioFileSystemAdapter());
+        Random random = new Random(7);
+        List<RepoFile> files = new ArrayList<>();
+        long query = random.nextLong();
+        for (int i = 0; i < 5000; i++) {
+            // every tenth image is a copy of the query with up to 7 flipped bits
+            long fingerprint = i % 10 == 0 ? query ^ flip(random, i % 8) : random.nextLong();
+            files.add(image("img" + i + ".jpg", fingerprint));
+        }
+        files.add(RepoFile.builder().relativePath("a.mp4").hash("h").size(1L).videoFingerprint(new long[]{query, query}).build());
+        index.rebuild(files.stream());
+
+        for (int threshold : new int[]{100, 95, 90, 80}) {
+            // Act
+            List<SimilarityIndex.Match> matches = index.search(SimilarityIndex.Kind.IMAGE, new long[]{query}, threshold).value();
+
+            // Assert
+            int maxDistance = DuplicateRepoProcess.maxDistance(threshold, Long.SIZE);
+            List<String> expected = files.stream()
+                    .filter(f -> f.fingerprint() != null && Long.bitCount(f.fingerprint() ^ query) <= maxDistance)
+                    .map(RepoFile::relativePath)
+                    .sorted()
+                    .toList();
+            assertThat(matches.stream().map(SimilarityIndex.Match::relativePath).sorted().toList()).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void compactsALargeLogIntoTheSnapshot() {
+        // Arrange
+        Path log = tempDir.resolve(SimilarityIndex.LOG_FILE_NAME);
+        SimilarityIndex index = new SimilarityIndex(tempDir.resolve(SimilarityIndex.FILE_NAME), new NioFileSystemAdapter());
+        RepoFile gone = image("gone.jpg", 1L);
+        index.rebuild(Stream.of(gone));
+        index.update(gone, gone.withMissing(true));
+        for (int i = 0; i < SimilarityIndex.COMPACT_RECORDS; i++) {
+            index.update(null, image("img" + i + ".jpg", i));
+        }
+
+        // Act
+        index.close();
+
+        // Assert
+        assertThat(log).doesNotExist();
+        List<SimilarityIndex.Match> matches = index.search(SimilarityIndex.Kind.IMAGE, new long[]{1L}, 100).value();
+        assertThat(matches).extracting(SimilarityIndex.Match::relativePath).containsExactly("img1.jpg");
+    }
+
+    @Test
+    void keepsASmallLogUntilItGrows() {
+        // Arrange
+        Path log = tempDir.resolve(SimilarityIndex.LOG_FILE_NAME);
+        SimilarityIndex index = new SimilarityIndex(tempDir.resolve(SimilarityIndex.FILE_NAME), new NioFileSystemAdapter());
+        index.rebuild(Stream.of(image("a.jpg", 1L)));
+
+        // Act
+        index.update(null, image("b.jpg", 1L));
+        index.close();
+
+        // Assert
+        assertThat(log).exists();
+        List<SimilarityIndex.Match> matches = index.search(SimilarityIndex.Kind.IMAGE, new long[]{1L}, 100).value();
+        assertThat(matches).extracting(SimilarityIndex.Match::relativePath).containsExactly("a.jpg", "b.jpg");
+    }
+
+    private static long flip(Random random, int bits) {
+        long mask = 0;
+        while (Long.bitCount(mask) < bits) {
+            mask |= 1L << random.nextInt(Long.SIZE);
+        }
+        return mask;
+    }
+
+    private static RepoFile image(String relativePath, long fingerprint) {
+        return RepoFile.builder().relativePath(relativePath).hash("h").size(1L).fingerprint(fingerprint).build();
+    }
+}
@@ -13,7 +13,6 @@ import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
-import java.util.Collections;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -91,7 +90,7 @@ class UpdateProgressPrinterEtaTest {
 
         Statistics stats = new Statistics("test");
         UpdateProgressPrinter upp = new UpdateProgressPrinter(
-                Collections.emptyMap(),
+                ReconciliationSet.empty(Path.of("/tmp")),
                 printer,
                 repoManager,
                 stats,
@@ -18,10 +18,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.awaitility.Awaitility.await;
@@ -104,11 +103,10 @@ class UpdateProgressPrinterTest {
         Result<Statistics, DedupError> load = repoManager.load();
         assertThat(load.hasFailed()).isFalse();
 
-        // Remaining paths map: exclude the file (will be removed) and a second leftover
-        Map<Path, RepoFile> remaining = new HashMap<>();
+        // Remaining entries: exclude the file (will be removed) and a second leftover
         // Note: we do NOT put 'file' in remaining, so it's treated as a new file and hashed
-        Path leftover = dataDir.resolve("leftover.bin");
-        remaining.put(leftover, RepoFile.builder().relativePath("leftover.bin").size(1L).hash("x").build());
+        ReconciliationSet remaining = ReconciliationSet.of(dataDir,
+                Stream.of(RepoFile.builder().relativePath("leftover.bin").size(1L).hash("x").build()));
 
         StatisticPrinter sp = new StatisticPrinter();
         // No-op change listener so calls don't NPE
@@ -147,7 +145,7 @@ class UpdateProgressPrinterTest {
         String dirLine = sp.getLineAt(3); // "Directories: ..."
         assertThat(dirLine).contains("1");
 
-        // Deleted count should be the size of the remaining map after processing the file (leftover only => 1)
+        // Deleted count should be the number of unseen entries after processing the file (leftover only => 1)
         String deletedLine = sp.getLineAt(5); // "    Deleted: ..."
         assertThat(deletedLine).contains("1");
 
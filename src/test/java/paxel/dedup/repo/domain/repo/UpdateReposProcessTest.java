@@ -5,16 +5,28 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import paxel.dedup.application.cli.parameter.CliParameter;
+import paxel.dedup.domain.model.ContentChunker;
 import paxel.dedup.domain.model.Repo;
+import paxel.dedup.domain.model.RepoFile;
+import paxel.dedup.domain.model.errors.DedupError;
 import paxel.dedup.domain.port.out.FileSystem;
 import paxel.dedup.infrastructure.adapter.out.filesystem.NioFileSystemAdapter;
 import paxel.dedup.infrastructure.config.DedupConfig;
 import paxel.lib.Result;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -79,4 +91,289 @@ class UpdateReposProcessTest {
         assertThat(lines).hasSize(1);
         assertThat(lines.getFirst()).contains("file1.txt");
     }
+
+    @Test
+    void testUpdateSeveralReposConcurrently() throws IOException {
+        // Arrange
+        for (String name : List.of("one", "two", "three")) {
+            Path repoPath = Files.createDirectories(tempDir.resolve("data-" + name));
+            Files.writeString(repoPath.resolve(name + ".txt"), "content of " + name);
+            Files.createDirectories(tempDir.resolve("config/" + name));
+            when(dedupConfig.getRepo(name)).thenReturn(Result.ok(new Repo(name, repoPath.toString(), 1)));
+        }
+        UpdateReposProcess process = new UpdateReposProcess(cliParameter, List.of("one", "two", "three"), false, 2, dedupConfig,
+                false, new NioFileSystemAdapter(), UpdateOptions.DEFAULTS.withParallelRepos(2));
+
+        // Act
+        int exitCode = process.update().value();
+
+        // Assert
+        assertThat(exitCode).isEqualTo(0);
+        for (String name : List.of("one", "two", "three")) {
+            List<String> lines = Files.readAllLines(tempDir.resolve("config/" + name + "/0.idx"));
+            assertThat(lines).hasSize(1);
+            assertThat(lines.getFirst()).contains(name + ".txt");
+        }
+    }
+
+    @Test
+    void testUpdateFromListOnlyTouchesListedPaths() throws IOException {
+        // Arrange
+        Path repoPath = tempDir.resolve("data");
+        Files.createDirectories(repoPath);
+        Files.writeString(repoPath.resolve("file1.txt"), "content1");
+        Path file2 = Files.writeString(repoPath.resolve("file2.txt"), "content2");
+
+        Path configRepoDir = tempDir.resolve("config/testRepo");
+        Files.createDirectories(configRepoDir);
+
+        Repo repo = new Repo("testRepo", repoPath.toString(), 1);
+        when(dedupConfig.getRepo("testRepo")).thenReturn(Result.ok(repo));
+        assertThat(new UpdateReposProcess(cliParameter, List.of("testRepo"), false, 1, dedupConfig, false, false).update().value()).isEqualTo(0);
+
+        Files.delete(file2);
+        Files.writeString(repoPath.resolve("file3.txt"), "content3");
+        Files.writeString(repoPath.resolve("unlisted.txt"), "content4");
+        Path list = Files.writeString(tempDir.resolve("changes.lst"), "file3.txt\0file2.txt\0");
+
+        UpdateReposProcess process = new UpdateReposProcess(cliParameter, List.of("testRepo"), false, 1, dedupConfig,
+                false, new NioFileSystemAdapter(), UpdateOptions.DEFAULTS.withFromList(list.toString()));
+
+        // Act
+        int exitCode = process.update().value();
+
+        // Assert
+        assertThat(exitCode).isEqualTo(0);
+        List<String> lines = Files.readAllLines(configRepoDir.resolve("0.idx"));
+        assertThat(lines).hasSize(4);
+        // file3 is written by the pipeline, so it may come after the missing marker of file2
+        assertThat(lines.subList(2, 4)).anySatisfy(l -> assertThat(l).contains("file3.txt"));
+        assertThat(lines.subList(2, 4)).anySatisfy(l -> assertThat(l).contains("file2.txt").contains("\"d\":true"));
+        assertThat(String.join("\n", lines)).doesNotContain("unlisted.txt");
+    }
+
+    @Test
+    void testUpdateFromAnUnreadableListFailsLikeAnUnreadableRepo() throws IOException {
+        // Arrange
+        Path repoPath = Files.createDirectories(tempDir.resolve("data"));
+        Files.createDirectories(tempDir.resolve("config/testRepo"));
+        when(dedupConfig.getRepo("testRepo")).thenReturn(Result.ok(new Repo("testRepo", repoPath.toString(), 1)));
+        Path list = tempDir.resolve("no-such.lst");
+
+        // Act
+        Result<Integer, DedupError> result = new UpdateReposProcess(cliParameter, List.of("testRepo"), false, 1, dedupConfig,
+                false, new NioFileSystemAdapter(), UpdateOptions.DEFAULTS.withFromList(list.toString())).update();
+
+        // Assert
+        assertThat(result.hasFailed()).isTrue();
+        assertThat(result.error().describe()).contains("Repository walk failed").contains(list.toString());
+    }
+
+    @Test
+    void testUpdateReusesEntryOfMovedFile() throws IOException {
+        // Arrange
+        Path repoPath = tempDir.resolve("data");
+        Files.createDirectories(repoPath.resolve("sorted"));
+        Path original = Files.writeString(repoPath.resolve("photo.jpg"), "not really a photo but long enough to be hashed");
+
+        Path configRepoDir = tempDir.resolve("config/testRepo");
+        Files.createDirectories(configRepoDir);
+
+        Repo repo = new Repo("testRepo", repoPath.toString(), 1);
+        when(dedupConfig.getRepo("testRepo")).thenReturn(Result.ok(repo));
+        assertThat(new UpdateReposProcess(cliParameter, List.of("testRepo"), false, 1, dedupConfig, false, false).update().value()).isEqualTo(0);
+        RepoFile before = loadRepo(repo).getByPath("photo.jpg");
+
+        Files.move(original, repoPath.resolve("sorted/renamed.jpg"));
+
+        // Act
+        int exitCode = new UpdateReposProcess(cliParameter, List.of("testRepo"), false, 1, dedupConfig, false, false).update().value();
+
+        // Assert
+        assertThat(exitCode).isEqualTo(0);
+        RepoManager repoManager = loadRepo(repo);
+        RepoFile moved = repoManager.getByPath(Path.of("sorted", "renamed.jpg").toString());
+        assertThat(moved).isNotNull();
+        assertThat(moved.missing()).isFalse();
+        assertThat(moved.hash()).isEqualTo(before.hash());
+        assertThat(moved.mimeType()).isEqualTo(before.mimeType());
+        assertThat(repoManager.getByPath("photo.jpg").missing()).isTrue();
+    }
+
+    @Test
+    void testUpdateReindexesAMovedFileWhoseContentChanged() throws IOException {
+        // Arrange: same size, modification time and inode, but different content
+        Path repoPath = tempDir.resolve("data");
+        Files.createDirectories(repoPath.resolve("sorted"));
+        Path original = Files.writeString(repoPath.resolve("notes.txt"), "the first version of the notes");
+        FileTime lastModified = Files.getLastModifiedTime(original);
+        Files.createDirectories(tempDir.resolve("config/testRepo"));
+        Repo repo = new Repo("testRepo", repoPath.toString(), 1);
+        when(dedupConfig.getRepo("testRepo")).thenReturn(Result.ok(repo));
+        assertThat(update(UpdateOptions.DEFAULTS)).isEqualTo(0);
+        RepoFile before = loadRepo(repo).getByPath("notes.txt");
+
+        Files.writeString(original, "the other version of the notes");
+        Files.setLastModifiedTime(original, lastModified);
+        Files.move(original, repoPath.resolve("sorted/notes.txt"));
+
+        // Act
+        int exitCode = update(UpdateOptions.DEFAULTS.withVerifyMoves(true));
+
+        // Assert
+        assertThat(exitCode).isEqualTo(0);
+        RepoManager repoManager = loadRepo(repo);
+        RepoFile moved = repoManager.getByPath(Path.of("sorted", "notes.txt").toString());
+        assertThat(moved.missing()).isFalse();
+        assertThat(moved.hash()).isNotEqualTo(before.hash());
+        assertThat(moved.mimeType()).isEqualTo("text/plain");
+        assertThat(repoManager.getByPath("notes.txt").missing()).isTrue();
+    }
+
+    @Test
+    void testUpdateIndexesTheEntriesOfArchives() throws IOException {
+        // Arrange
+        Path repoPath = tempDir.resolve("data");
+        Files.createDirectories(repoPath);
+        byte[] content = "the content of a file that is long enough to be hashed".getBytes(StandardCharsets.UTF_8);
+        Files.write(repoPath.resolve("loose.txt"), content);
+        writeZip(repoPath.resolve("backup.zip"), Map.of("docs/copy.txt", content, "docs/other.txt", "other".getBytes(StandardCharsets.UTF_8)));
+
+        Files.createDirectories(tempDir.resolve("config/testRepo"));
+        Repo repo = new Repo("testRepo", repoPath.toString(), 1);
+        when(dedupConfig.getRepo("testRepo")).thenReturn(Result.ok(repo));
+
+        // Act
+        int exitCode = update(UpdateOptions.DEFAULTS.withArchives(true));
+
+        // Assert
+        assertThat(exitCode).isEqualTo(0);
+        RepoManager repoManager = loadRepo(repo);
+        RepoFile copy = repoManager.getByPath("backup.zip!/docs/copy.txt");
+        assertThat(copy).isNotNull();
+        assertThat(copy.missing()).isFalse();
+        assertThat(copy.size()).isEqualTo(content.length);
+        assertThat(copy.hash()).isEqualTo(repoManager.getByPath("loose.txt").hash());
+        assertThat(copy.mimeType()).isEqualTo("text/plain");
+        assertThat(repoManager.getByPath("backup.zip!/docs/other.txt")).isNotNull();
+        assertThat(repoManager.getByPath("backup.zip").missing()).isFalse();
+    }
+
+    @Test
+    void testUpdateMarksTheEntriesOfDeletedArchivesMissing() throws IOException {
+        // Arrange
+        Path repoPath = tempDir.resolve("data");
+        Files.createDirectories(repoPath);
+        Path archive = repoPath.resolve("backup.tar");
+        Files.write(archive, new byte[1024]);
+        writeZip(repoPath.resolve("backup.zip"), Map.of("copy.txt", "the content of a file inside".getBytes(StandardCharsets.UTF_8)));
+        Files.createDirectories(tempDir.resolve("config/testRepo"));
+        Repo repo = new Repo("testRepo", repoPath.toString(), 1);
+        when(dedupConfig.getRepo("testRepo")).thenReturn(Result.ok(repo));
+        assertThat(update(UpdateOptions.DEFAULTS.withArchives(true))).isEqualTo(0);
+        Files.delete(repoPath.resolve("backup.zip"));
+
+        // Act
+        int exitCode = update(UpdateOptions.DEFAULTS.withArchives(true));
+
+        // Assert
+        assertThat(exitCode).isEqualTo(0);
+        assertThat(loadRepo(repo).getByPath("backup.zip!/copy.txt").missing()).isTrue();
+        assertThat(loadRepo(repo).getByPath("backup.tar").missing()).isFalse();
+    }
+
+    @Test
+    void testUpdateReindexesARewrittenArchive() throws IOException {
+        // Arrange
+        Path repoPath = tempDir.resolve("data");
+        Files.createDirectories(repoPath);
+        Path archive = repoPath.resolve("backup.zip");
+        writeZip(archive, Map.of("old.txt", "the content of the first version".getBytes(StandardCharsets.UTF_8)));
+        Files.setLastModifiedTime(archive, FileTime.fromMillis(1_000_000));
+        Files.createDirectories(tempDir.resolve("config/testRepo"));
+        Repo repo = new Repo("testRepo", repoPath.toString(), 1);
+        when(dedupConfig.getRepo("testRepo")).thenReturn(Result.ok(repo));
+        assertThat(update(UpdateOptions.DEFAULTS.withArchives(true))).isEqualTo(0);
+        String before = loadRepo(repo).getByPath("backup.zip").hash();
+        writeZip(archive, Map.of("new.txt", "the content of the second version of the archive".getBytes(StandardCharsets.UTF_8)));
+        Files.setLastModifiedTime(archive, FileTime.fromMillis(2_000_000));
+
+        // Act
+        int exitCode = update(UpdateOptions.DEFAULTS.withArchives(true));
+
+        // Assert
+        assertThat(exitCode).isEqualTo(0);
+        RepoManager repoManager = loadRepo(repo);
+        assertThat(repoManager.getByPath("backup.zip!/old.txt").missing()).isTrue();
+        assertThat(repoManager.getByPath("backup.zip!/new.txt").missing()).isFalse();
+        assertThat(repoManager.getByPath("backup.zip").hash()).isNotEqualTo(before);
+    }
+
+    @Test
+    void testUpdateWithoutArchivesDropsTheirEntries() throws IOException {
+        // Arrange
+        Path repoPath = tempDir.resolve("data");
+        Files.createDirectories(repoPath);
+        writeZip(repoPath.resolve("backup.zip"), Map.of("copy.txt", "the content of a file inside".getBytes(StandardCharsets.UTF_8)));
+        Files.createDirectories(tempDir.resolve("config/testRepo"));
+        Repo repo = new Repo("testRepo", repoPath.toString(), 1);
+        when(dedupConfig.getRepo("testRepo")).thenReturn(Result.ok(repo));
+        assertThat(update(UpdateOptions.DEFAULTS.withArchives(true))).isEqualTo(0);
+        assertThat(loadRepo(repo).getByPath("backup.zip!/copy.txt").missing()).isFalse();
+
+        // Act
+        int exitCode = update(UpdateOptions.DEFAULTS);
+
+        // Assert
+        assertThat(exitCode).isEqualTo(0);
+        assertThat(loadRepo(repo).getByPath("backup.zip!/copy.txt").missing()).isTrue();
+        assertThat(loadRepo(repo).getByPath("backup.zip").missing()).isFalse();
+    }
+
+    @Test
+    void testUpdateChunksLargeFilesIndexedBefore() throws IOException {
+        // Arrange: the large file was indexed without chunks
+        Path repoPath = tempDir.resolve("data");
+        Files.createDirectories(repoPath);
+        byte[] large = new byte[2 * 1024 * 1024];
+        new Random(3).nextBytes(large);
+        Files.write(repoPath.resolve("image.raw"), large);
+        Files.writeString(repoPath.resolve("small.txt"), "the content of a small file");
+        Files.createDirectories(tempDir.resolve("config/testRepo"));
+        Repo repo = new Repo("testRepo", repoPath.toString(), 1);
+        when(dedupConfig.getRepo("testRepo")).thenReturn(Result.ok(repo));
+        assertThat(update(UpdateOptions.DEFAULTS)).isEqualTo(0);
+        assertThat(loadRepo(repo).getChunkIndex().exists()).isFalse();
+
+        // Act
+        int exitCode = update(UpdateOptions.DEFAULTS.withChunks(true));
+
+        // Assert
+        assertThat(exitCode).isEqualTo(0);
+        RepoManager repoManager = loadRepo(repo);
+        String hash = repoManager.getByPath("image.raw").hash();
+        assertThat(repoManager.getChunkIndex().hashes().value()).containsExactly(hash);
+        long[] chunks = repoManager.getChunkIndex().read(Set.of(hash)).value().get(hash);
+        assertThat(Arrays.stream(chunks).map(ContentChunker::length).sum()).isEqualTo(large.length);
+    }
+
+    private int update(UpdateOptions options) {
+        return new UpdateReposProcess(cliParameter, List.of("testRepo"), false, 1, dedupConfig, false, new NioFileSystemAdapter(), options)
+                .update().value();
+    }
+
+    private static void writeZip(Path archive, Map<String, byte[]> entries) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+            for (Map.Entry<String, byte[]> entry : new TreeMap<>(entries).entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+            }
+        }
+    }
+
+    private RepoManager loadRepo(Repo repo) {
+        RepoManager repoManager = RepoManager.forRepo(repo, dedupConfig, new NioFileSystemAdapter());
+        assertThat(repoManager.load().isSuccess()).isTrue();
+        return repoManager;
+    }
 }
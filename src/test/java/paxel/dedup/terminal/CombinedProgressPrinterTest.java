@@ -0,0 +1,33 @@
+package paxel.dedup.terminal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CombinedProgressPrinterTest {
+
+    @Test
+    void showsAllLinesOfRunningReposAndCollapsesFinishedOnes() {
+        // Arrange
+        CombinedProgressPrinter printer = new CombinedProgressPrinter(2);
+        AtomicInteger changes = new AtomicInteger();
+        printer.registerChangeListener(changes::incrementAndGet);
+        printer.get(0).set("first", "/a");
+        printer.get(1).set("second", "/b");
+        int lines = printer.getLines();
+
+        // Act
+        printer.finished(0);
+
+        // Assert
+        assertThat(changes.get()).isEqualTo(3);
+        assertThat(printer.getLineAt(0)).contains("1 / 2 finished");
+        assertThat(printer.getLineAt(2)).contains("first").contains("finished");
+        assertThat(printer.getLineAt(3)).contains("second");
+        // the display does not shrink, the freed lines are blank
+        assertThat(printer.getLines()).isEqualTo(lines);
+        assertThat(printer.getLineAt(lines - 1)).isEmpty();
+    }
+}